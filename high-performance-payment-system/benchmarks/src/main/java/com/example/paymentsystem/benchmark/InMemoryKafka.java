@@ -0,0 +1,65 @@
+package com.example.paymentsystem.benchmark;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基准测试用的内存 Kafka 替身：发送立即在调用线程上确认，不保留消息，也不经过网络。
+ * <p>
+ * 与 {@link MockProducer} 不同，消息不会累积在内存中，可以在长时间的基准测试中使用；测得的是接入路径自身的开销，
+ * 不包括真实生产者的批量、压缩和网络往返。
+ */
+final class InMemoryKafka {
+
+    private InMemoryKafka() {
+    }
+
+    static KafkaTemplate<String, byte[]> template() {
+        DiscardingProducer producer = new DiscardingProducer();
+        return new KafkaTemplate<>(() -> producer);
+    }
+
+    private static final class DiscardingProducer extends MockProducer<String, byte[]> {
+
+        private final StringSerializer keySerializer = new StringSerializer();
+        private final AtomicLong offset = new AtomicLong();
+
+        DiscardingProducer() {
+            super(true, new StringSerializer(), new ByteArraySerializer());
+        }
+
+        @Override
+        public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record) {
+            return send(record, null);
+        }
+
+        @Override
+        public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+            // 与真实生产者一样在调用线程上序列化键，值已是编码后的字节
+            byte[] key = keySerializer.serialize(record.topic(), record.key());
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0),
+                    offset.getAndIncrement(), 0, System.currentTimeMillis(),
+                    key == null ? -1 : key.length, record.value() == null ? -1 : record.value().length);
+            if (callback != null) {
+                callback.onCompletion(metadata, null);
+            }
+            return CompletableFuture.completedFuture(metadata);
+        }
+
+        @Override
+        public void close(Duration timeout) {
+            // KafkaTemplate 在每次发送后关闭非事务生产者，共享的替身不能真正关闭
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.paymentsystem.benchmark;
+
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusEntry;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基准测试用的内存 Redis 替身：管道回调直接执行，每次追加立即得到一个递增的流记录 ID，不保留状态。
+ * <p>
+ * 只支持 {@link com.example.paymentsystem.service.RedisStreamBatchWriter} 的写入路径，
+ * 测得的是批量写入器的排队与合并开销，不包括 Redis 的网络往返。
+ */
+final class InMemoryRedis extends StringRedisTemplate {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<List<Object>> pipeline = new ThreadLocal<>();
+    private final PaymentStatusLayout layout = new Layout();
+
+    PaymentStatusLayout layout() {
+        return layout;
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action) {
+        List<Object> results = new ArrayList<>();
+        pipeline.set(results);
+        try {
+            action.doInRedis(null);
+        } finally {
+            pipeline.remove();
+        }
+        return results;
+    }
+
+    private final class Layout implements PaymentStatusLayout {
+
+        @Override
+        public void append(RedisConnection connection, String orderId, PaymentStatus status, byte[] paymentEvent) {
+            pipeline.get().add(RecordId.of(System.currentTimeMillis(), sequence.getAndIncrement()));
+        }
+
+        @Override
+        public RecordId toRecordId(Object pipelineResult) {
+            return (RecordId) pipelineResult;
+        }
+
+        @Override
+        public void remove(String orderId, RecordId recordId) {
+        }
+
+        @Override
+        public Optional<PaymentStatusEntry> latest(String orderId) {
+            return Optional.empty();
+        }
+    }
+}
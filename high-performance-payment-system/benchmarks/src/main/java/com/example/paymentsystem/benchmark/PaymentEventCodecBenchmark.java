@@ -0,0 +1,105 @@
+package com.example.paymentsystem.benchmark;
+
+import com.example.paymentsystem.codec.BinaryPaymentEventCodec;
+import com.example.paymentsystem.codec.JsonPaymentEventCodec;
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比原有的 {@code toString()} 序列化路径与二进制、JSON 编解码器的耗时和分配。
+ * <p>
+ * 运行方式见 USAGE.md 的“性能基准测试”一节，或在 IDE 中直接运行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class PaymentEventCodecBenchmark {
+
+    private final BinaryPaymentEventCodec binaryCodec = new BinaryPaymentEventCodec();
+    private final JsonPaymentEventCodec jsonCodec = new JsonPaymentEventCodec(new ObjectMapper());
+
+    private PaymentRequest paymentRequest;
+    private byte[] binaryPayload;
+    private byte[] jsonPayload;
+    private byte[] reusableBuffer;
+
+    @Setup
+    public void setUp() {
+        paymentRequest = samplePaymentRequest();
+        binaryPayload = binaryCodec.encode(paymentRequest);
+        jsonPayload = jsonCodec.encode(paymentRequest);
+        reusableBuffer = new byte[256];
+    }
+
+    @Benchmark
+    public byte[] encodeToString() {
+        // 原有路径：Lombok toString() 后由 StringSerializer 转为 UTF-8 字节
+        return paymentRequest.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return binaryCodec.encode(paymentRequest);
+    }
+
+    @Benchmark
+    public int encodeBinaryIntoReusableBuffer() {
+        return binaryCodec.encode(paymentRequest, reusableBuffer, 0);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return jsonCodec.encode(paymentRequest);
+    }
+
+    @Benchmark
+    public PaymentRequest decodeBinary() {
+        return binaryCodec.decode(binaryPayload);
+    }
+
+    @Benchmark
+    public PaymentRequest decodeJson() {
+        return jsonCodec.decode(jsonPayload);
+    }
+
+    static PaymentRequest samplePaymentRequest() {
+        PaymentRequest paymentRequest = new PaymentRequest();
+        paymentRequest.setOrderId("ORDER-12345");
+        paymentRequest.setAmount(Money.ofMinor(CurrencyUnit.of("USD"), 9999));
+        paymentRequest.setUserId("USER-001");
+        return paymentRequest;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        PaymentRequest sample = samplePaymentRequest();
+        System.out.printf("事件大小: toString=%d 字节, json=%d 字节, binary=%d 字节%n",
+                sample.toString().getBytes(StandardCharsets.UTF_8).length,
+                new JsonPaymentEventCodec(new ObjectMapper()).encode(sample).length,
+                new BinaryPaymentEventCodec().encode(sample).length);
+        new Runner(new OptionsBuilder()
+                .include(PaymentEventCodecBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
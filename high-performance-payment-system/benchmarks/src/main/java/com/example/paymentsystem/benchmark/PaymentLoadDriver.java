@@ -0,0 +1,248 @@
+package com.example.paymentsystem.benchmark;
+
+import com.example.paymentsystem.PaymentSystemApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.util.FileSystemUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端负载驱动：在同一进程内启动嵌入式 Redis、嵌入式 Kafka 和完整的 Spring 应用，以固定并发向
+ * {@code POST /api/payments} 发送请求，报告吞吐量和接入延迟的 p50/p90/p99/p999，再等待消费者处理完积压后
+ * 从 {@code /actuator/paymentlatency} 读取端到端延迟。
+ * <p>
+ * 参数（均为 {@code --name=value}）：
+ * <ul>
+ *     <li>{@code concurrency}：并发连接数，默认 32</li>
+ *     <li>{@code duration}：测量时长（秒），默认 30</li>
+ *     <li>{@code warmup}：预热时长（秒），预热期间的请求不计入统计，默认 10</li>
+ *     <li>{@code users}：随机选取的 userId 数量，默认 100000</li>
+ *     <li>{@code max-p99-ms}、{@code min-throughput}：可选阈值，未达到时以退出码 1 结束，便于在持续集成中发现性能回退</li>
+ * </ul>
+ * 其余参数原样传给应用，例如 {@code --payment.ingest.mode=async}。
+ */
+public final class PaymentLoadDriver {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long MAX_RECORDED_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final int concurrency;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int users;
+    private final Double maxP99Millis;
+    private final Double minThroughput;
+    private final List<String> applicationArgs;
+
+    private PaymentLoadDriver(Map<String, String> options, List<String> applicationArgs) {
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        this.duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        this.warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+        this.users = Integer.parseInt(options.getOrDefault("users", "100000"));
+        this.maxP99Millis = options.containsKey("max-p99-ms") ? Double.valueOf(options.get("max-p99-ms")) : null;
+        this.minThroughput = options.containsKey("min-throughput") ? Double.valueOf(options.get("min-throughput")) : null;
+        this.applicationArgs = applicationArgs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = arg.startsWith("--") && separator > 2 ? arg.substring(2, separator) : null;
+            if (name != null && (name.equals("concurrency") || name.equals("duration") || name.equals("warmup")
+                    || name.equals("users") || name.equals("max-p99-ms") || name.equals("min-throughput"))) {
+                options.put(name, arg.substring(separator + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        boolean passed = new PaymentLoadDriver(options, applicationArgs).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        Path dataDir = Files.createTempDirectory("payment-load");
+        int redisPort = freePort();
+        int serverPort = freePort();
+        RedisServer redis = RedisServer.newRedisServer()
+                .port(redisPort)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        EmbeddedKafkaBroker kafka = new EmbeddedKafkaBroker(1);
+        ConfigurableApplicationContext application = null;
+        try {
+            redis.start();
+            kafka.afterPropertiesSet();
+            List<String> args = new ArrayList<>();
+            args.add("--server.port=" + serverPort);
+            args.add("--spring.kafka.bootstrap-servers=" + kafka.getBrokersAsString());
+            args.add("--spring.redis.host=localhost");
+            args.add("--spring.redis.port=" + redisPort);
+            args.add("--payment.state.snapshot-dir=" + dataDir.resolve("state-snapshots"));
+            args.add("--payment.journal.dir=" + dataDir.resolve("journal"));
+            args.addAll(applicationArgs);
+            application = new SpringApplicationBuilder(PaymentSystemApplication.class)
+                    .run(args.toArray(new String[0]));
+            return drive("http://localhost:" + serverPort);
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+            kafka.destroy();
+            stopQuietly(redis);
+            FileSystemUtils.deleteRecursively(dataDir);
+        }
+    }
+
+    private boolean drive(String baseUrl) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        URI paymentsUri = URI.create(baseUrl + "/api/payments");
+        Recorder recorder = new Recorder(MAX_RECORDED_NANOS, 3);
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+
+        System.out.printf("并发 %d，预热 %d 秒，测量 %d 秒%n", concurrency, warmup.getSeconds(), duration.getSeconds());
+        List<Thread> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long sequence = 0;
+                for (long now = System.nanoTime(); now < endNanos; now = System.nanoTime()) {
+                    String body = "{\"orderId\":\"LOAD-" + worker + "-" + sequence++ + "\",\"amount\":"
+                            + (1 + random.nextInt(100000)) / 100.0 + ",\"currency\":\"USD\",\"userId\":\"U"
+                            + random.nextInt(users) + "\"}";
+                    HttpRequest request = HttpRequest.newBuilder(paymentsUri)
+                            .timeout(Duration.ofSeconds(10))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                    String outcome;
+                    try {
+                        outcome = String.valueOf(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+                    } catch (IOException e) {
+                        outcome = e.getClass().getSimpleName();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    long finished = System.nanoTime();
+                    if (now >= measureFromNanos) {
+                        recorder.recordValue(Math.min(finished - now, MAX_RECORDED_NANOS));
+                        outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+                    }
+                }
+            }, "load-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        double seconds = duration.toNanos() / 1e9;
+        double throughput = histogram.getTotalCount() / seconds;
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        System.out.printf("请求: %d %s%n", histogram.getTotalCount(), counts);
+        System.out.printf("吞吐量: %.0f 请求/秒%n", throughput);
+        System.out.printf("接入延迟 (ms): p50=%.2f p90=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+
+        reportEndToEnd(client, URI.create(baseUrl + "/actuator/paymentlatency"));
+
+        boolean passed = true;
+        double p99 = millis(histogram.getValueAtPercentile(99));
+        if (maxP99Millis != null && p99 > maxP99Millis) {
+            System.out.printf("未达标: p99 %.2f ms 超过 %.2f ms%n", p99, maxP99Millis);
+            passed = false;
+        }
+        if (minThroughput != null && throughput < minThroughput) {
+            System.out.printf("未达标: 吞吐量 %.0f 低于 %.0f 请求/秒%n", throughput, minThroughput);
+            passed = false;
+        }
+        return passed;
+    }
+
+    /**
+     * 等待消费者的端到端计数不再增长（积压已处理完），然后输出各阶段的延迟。
+     * 注意 paymentlatency 的百分位按统计窗口滚动，测量时长超过窗口时只反映最后一个窗口。
+     */
+    private static void reportEndToEnd(HttpClient client, URI uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).GET().build();
+        JsonNode stages = null;
+        long previous = -1;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            stages = MAPPER.readTree(client.send(request, HttpResponse.BodyHandlers.ofString()).body()).path("stages");
+            long count = stages.path("end-to-end").path("count").asLong();
+            if (count == previous) {
+                break;
+            }
+            previous = count;
+            Thread.sleep(2000);
+        }
+        if (stages == null) {
+            return;
+        }
+        System.out.println("流水线延迟 (ms，最近统计窗口):");
+        stages.fields().forEachRemaining(stage -> {
+            JsonNode summary = stage.getValue();
+            System.out.printf("  %-17s count=%d p50=%.2f p99=%.2f p999=%.2f max=%.2f%n", stage.getKey(),
+                    summary.path("count").asLong(), summary.path("p50").asDouble(), summary.path("p99").asDouble(),
+                    summary.path("p999").asDouble(), summary.path("max").asDouble());
+        });
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void stopQuietly(RedisServer redis) {
+        try {
+            redis.stop();
+        } catch (IOException e) {
+            System.err.println("停止嵌入式 Redis 失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.paymentsystem.benchmark;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 HTTP 请求体按原有的 {@code BigDecimal} + {@code String} 模型与按 {@code Money} 流式解析、写出的耗时和分配。
+ * <p>
+ * 运行方式见 USAGE.md 的“性能基准测试”一节，或在 IDE 中直接运行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class PaymentRequestJsonBenchmark {
+
+    private static final byte[] REQUEST_BODY = ("{\"orderId\":\"ORDER-12345\",\"amount\":99.99,"
+            + "\"currency\":\"USD\",\"userId\":\"USER-001\"}").getBytes(StandardCharsets.UTF_8);
+
+    private ObjectReader legacyReader;
+    private ObjectWriter legacyWriter;
+    private ObjectReader moneyReader;
+    private ObjectWriter moneyWriter;
+    private LegacyPaymentRequest legacyRequest;
+    private PaymentRequest moneyRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        legacyReader = objectMapper.readerFor(LegacyPaymentRequest.class);
+        legacyWriter = objectMapper.writerFor(LegacyPaymentRequest.class);
+        moneyReader = objectMapper.readerFor(PaymentRequest.class);
+        moneyWriter = objectMapper.writerFor(PaymentRequest.class);
+        legacyRequest = legacyReader.readValue(REQUEST_BODY);
+        moneyRequest = moneyReader.readValue(REQUEST_BODY);
+    }
+
+    @Benchmark
+    public LegacyPaymentRequest parseLegacy() throws IOException {
+        return legacyReader.readValue(REQUEST_BODY);
+    }
+
+    @Benchmark
+    public PaymentRequest parseMoney() throws IOException {
+        return moneyReader.readValue(REQUEST_BODY);
+    }
+
+    @Benchmark
+    public byte[] writeLegacy() throws IOException {
+        return legacyWriter.writeValueAsBytes(legacyRequest);
+    }
+
+    @Benchmark
+    public byte[] writeMoney() throws IOException {
+        return moneyWriter.writeValueAsBytes(moneyRequest);
+    }
+
+    /**
+     * 引入 {@code Money} 之前的请求模型。
+     */
+    public static class LegacyPaymentRequest {
+
+        public String orderId;
+        public BigDecimal amount;
+        public String currency;
+        public String userId;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaymentRequestJsonBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
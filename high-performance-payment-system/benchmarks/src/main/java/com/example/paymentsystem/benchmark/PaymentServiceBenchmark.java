@@ -0,0 +1,110 @@
+package com.example.paymentsystem.benchmark;
+
+import com.example.paymentsystem.codec.BinaryPaymentEventCodec;
+import com.example.paymentsystem.codec.DelegatingPaymentEventCodec;
+import com.example.paymentsystem.codec.JsonPaymentEventCodec;
+import com.example.paymentsystem.codec.PaymentEventCodec;
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.idempotency.Acceptance;
+import com.example.paymentsystem.idempotency.IdempotencyGuard;
+import com.example.paymentsystem.journal.PaymentJournal;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.limit.AdaptiveConcurrencyLimiter;
+import com.example.paymentsystem.service.PaymentService;
+import com.example.paymentsystem.service.RedisStreamBatchWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PaymentService} 接入路径的吞吐量：编码、Redis 批量写入器的排队与合并、Kafka 发送，
+ * Redis 和 Kafka 由 {@link InMemoryRedis} 和 {@link InMemoryKafka} 代替。
+ * <p>
+ * 同步路径的每次调用都要等待写入器刷写，单线程吞吐受 {@code max-delay-micros} 限制，因此以多线程运行，
+ * 与接入端点的并发请求相同。幂等检查、预写日志和并发限制器均未启用。
+ * <p>
+ * 运行方式见 USAGE.md 的“性能基准测试”一节，或在 IDE 中直接运行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class PaymentServiceBenchmark {
+
+    private RedisStreamBatchWriter statusWriter;
+    private PaymentService paymentService;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InMemoryRedis redis = new InMemoryRedis();
+        statusWriter = new RedisStreamBatchWriter(redis, redis.layout(), meterRegistry, 256, 1000, 16384, 10, 4);
+        statusWriter.start();
+        PaymentEventCodec binary = new BinaryPaymentEventCodec();
+        PaymentEventCodec codec = new DelegatingPaymentEventCodec(binary,
+                List.of(binary, new JsonPaymentEventCodec(new ObjectMapper())));
+        paymentService = new PaymentService(InMemoryKafka.template(), statusWriter, codec,
+                absent(PaymentJournal.class), absent(IdempotencyGuard.class), absent(AdaptiveConcurrencyLimiter.class),
+                new PipelineLatency(meterRegistry, 60));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        statusWriter.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        PaymentRequest paymentRequest;
+
+        @Setup
+        public void setUp() {
+            paymentRequest = PaymentEventCodecBenchmark.samplePaymentRequest();
+        }
+    }
+
+    @Benchmark
+    public Acceptance processPayment(RequestState state) {
+        return paymentService.processPayment(state.paymentRequest);
+    }
+
+    @Benchmark
+    public Acceptance processPaymentAsync(RequestState state) {
+        return paymentService.processPaymentAsync(state.paymentRequest).join();
+    }
+
+    private static <T> ObjectProvider<T> absent(Class<T> type) {
+        return new StaticListableBeanFactory().getBeanProvider(type);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaymentServiceBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
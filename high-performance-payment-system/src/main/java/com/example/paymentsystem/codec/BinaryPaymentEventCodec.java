@@ -0,0 +1,329 @@
+package com.example.paymentsystem.codec;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑的、带版本号的二进制支付事件编解码器。
+ * <p>
+ * 当前写出版本 2，布局如下（多字节整数均为大端序）：
+ * <pre>
+ * +---------+-------+--------------------------------+-----------------+-------------+------------+
+ * | version | flags | amount: int64 最小单位 + int8 精度 | currency        | orderId     | userId     |
+ * | 1 字节  | 1 字节 | 9 字节                          | 3 字节 ISO 代码  | varint 长度  | varint 长度 |
+ * +---------+-------+--------------------------------+-----------------+-------------+------------+
+ * </pre>
+ * 金额为空时设置 {@link #FLAG_AMOUNT_NULL}，金额和货币都不写出。字符串以 {@code varint(长度 + 1)} 加 UTF-8 字节的
+ * 形式写入，长度前缀 0 表示 null。金额以货币的最小单位和精度写出，解码时按货币精度换算。
+ * <p>
+ * 版本 1 是引入 {@link Money} 之前的格式，只用于解码滚动升级期间仍在 Kafka 和 Redis 中的旧消息：金额为未缩放值和
+ * 任意精度，货币总是写出，非 ISO 货币设置 {@link #FLAG_CUSTOM_CURRENCY} 并按字符串写入。旧消息的金额无法表示为
+ * {@link Money}（货币不是已知的 ISO 代码，或小数位数超出货币精度）时抛出 {@link IllegalArgumentException}。
+ * <p>
+ * 编码时先计算精确长度再一次性写入目标数组，除结果数组外不会产生中间对象；
+ * 解码时货币直接返回缓存的 {@link CurrencyUnit}，仅为金额和两个 ID 分配对象。
+ */
+public class BinaryPaymentEventCodec implements PaymentEventCodec {
+
+    /**
+     * 引入 {@link Money} 之前的格式版本，只解码不写出。
+     */
+    public static final byte VERSION_1 = 0x01;
+
+    /**
+     * 当前写出的格式版本。
+     */
+    public static final byte VERSION_2 = 0x02;
+
+    static final int FLAG_AMOUNT_NULL = 1;
+    static final int FLAG_CUSTOM_CURRENCY = 1 << 1;
+
+    private static final int AMOUNT_BYTES = Long.BYTES + 1;
+    private static final int ISO_CURRENCY_BYTES = 3;
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return payload != null && payload.length > 0 && (payload[0] == VERSION_2 || payload[0] == VERSION_1);
+    }
+
+    @Override
+    public byte[] encode(PaymentRequest paymentRequest) {
+        byte[] target = new byte[encodedSize(paymentRequest)];
+        encode(paymentRequest, target, 0);
+        return target;
+    }
+
+    /**
+     * 计算支付请求编码后的精确字节数。
+     *
+     * @param paymentRequest 要编码的支付请求。
+     * @return 编码后的字节数。
+     */
+    public int encodedSize(PaymentRequest paymentRequest) {
+        int size = 2;
+        if (paymentRequest.getAmount() != null) {
+            size += AMOUNT_BYTES + ISO_CURRENCY_BYTES;
+        }
+        size += stringSize(paymentRequest.getOrderId());
+        size += stringSize(paymentRequest.getUserId());
+        return size;
+    }
+
+    /**
+     * 将支付请求编码到调用方提供的数组中，便于复用缓冲区。
+     *
+     * @param paymentRequest 要编码的支付请求。
+     * @param target         目标数组，剩余空间必须不小于 {@link #encodedSize(PaymentRequest)}。
+     * @param offset         写入的起始位置。
+     * @return 写入的字节数。
+     */
+    public int encode(PaymentRequest paymentRequest, byte[] target, int offset) {
+        int pos = offset;
+        Money amount = paymentRequest.getAmount();
+        target[pos++] = VERSION_2;
+        target[pos++] = (byte) (amount == null ? FLAG_AMOUNT_NULL : 0);
+
+        if (amount != null) {
+            String currency = amount.getCurrency().getCode();
+            pos = writeLong(target, pos, amount.getMinorUnits());
+            target[pos++] = (byte) amount.getCurrency().getMinorDigits();
+            target[pos++] = (byte) currency.charAt(0);
+            target[pos++] = (byte) currency.charAt(1);
+            target[pos++] = (byte) currency.charAt(2);
+        }
+        pos = writeString(target, pos, paymentRequest.getOrderId());
+        pos = writeString(target, pos, paymentRequest.getUserId());
+        return pos - offset;
+    }
+
+    @Override
+    public PaymentRequest decode(byte[] payload) {
+        if (!canDecode(payload)) {
+            throw new IllegalArgumentException("不支持的二进制支付事件版本");
+        }
+        try {
+            PaymentRequest paymentRequest = new PaymentRequest();
+            int pos = payload[0] == VERSION_2
+                    ? decodeAmount(payload, paymentRequest)
+                    : decodeLegacyAmount(payload, paymentRequest);
+
+            int orderIdPrefix = readVarint(payload, pos);
+            pos += varintSize(orderIdPrefix);
+            paymentRequest.setOrderId(readString(payload, pos, orderIdPrefix));
+            pos += Math.max(orderIdPrefix - 1, 0);
+
+            int userIdPrefix = readVarint(payload, pos);
+            pos += varintSize(userIdPrefix);
+            paymentRequest.setUserId(readString(payload, pos, userIdPrefix));
+            pos += Math.max(userIdPrefix - 1, 0);
+
+            if (pos != payload.length) {
+                throw new IllegalArgumentException("二进制支付事件末尾存在多余的 " + (payload.length - pos) + " 字节");
+            }
+            return paymentRequest;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("二进制支付事件已被截断", e);
+        }
+    }
+
+    /**
+     * 解码版本 2 的标志位、金额和货币。
+     *
+     * @return 下一个字段的位置。
+     */
+    private static int decodeAmount(byte[] payload, PaymentRequest paymentRequest) {
+        int pos = 1;
+        int flags = payload[pos++];
+        if ((flags & ~FLAG_AMOUNT_NULL) != 0) {
+            throw new IllegalArgumentException("未知的二进制支付事件标志位: " + flags);
+        }
+        if ((flags & FLAG_AMOUNT_NULL) == 0) {
+            long unscaled = readLong(payload, pos);
+            pos += Long.BYTES;
+            int scale = payload[pos++];
+            CurrencyUnit currency = CurrencyUnit.find(payload[pos], payload[pos + 1], payload[pos + 2]);
+            pos += ISO_CURRENCY_BYTES;
+            paymentRequest.setAmount(toMoney(currency, unscaled, scale));
+        }
+        return pos;
+    }
+
+    /**
+     * 解码版本 1 的标志位、金额和货币。金额为空时货币被读取后丢弃。
+     *
+     * @return 下一个字段的位置。
+     */
+    private static int decodeLegacyAmount(byte[] payload, PaymentRequest paymentRequest) {
+        int pos = 1;
+        int flags = payload[pos++];
+        boolean hasAmount = (flags & FLAG_AMOUNT_NULL) == 0;
+        long unscaled = 0;
+        int scale = 0;
+        if (hasAmount) {
+            unscaled = readLong(payload, pos);
+            pos += Long.BYTES;
+            scale = payload[pos++];
+        }
+        CurrencyUnit currency = null;
+        String customCurrency = null;
+        if ((flags & FLAG_CUSTOM_CURRENCY) == 0) {
+            currency = CurrencyUnit.find(payload[pos], payload[pos + 1], payload[pos + 2]);
+            pos += ISO_CURRENCY_BYTES;
+        } else {
+            int prefix = readVarint(payload, pos);
+            pos += varintSize(prefix);
+            customCurrency = readString(payload, pos, prefix);
+            pos += Math.max(prefix - 1, 0);
+        }
+        if (hasAmount) {
+            if ((flags & FLAG_CUSTOM_CURRENCY) != 0) {
+                throw new IllegalArgumentException("版本 1 支付事件的货币 " + customCurrency + " 不是 ISO 4217 代码，"
+                        + "无法转换为金额");
+            }
+            paymentRequest.setAmount(toMoney(currency, unscaled, scale));
+        }
+        return pos;
+    }
+
+    private static Money toMoney(CurrencyUnit currency, long unscaled, int scale) {
+        if (currency == null) {
+            throw new IllegalArgumentException("未知的货币代码");
+        }
+        try {
+            return Money.ofScaled(currency, unscaled, scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("金额 " + unscaled + "×10^-" + scale + " 无法按 " + currency
+                    + " 的精度表示", e);
+        }
+    }
+
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintSize(length + 1) + length;
+    }
+
+    private static int writeString(byte[] target, int pos, String value) {
+        if (value == null) {
+            target[pos] = 0;
+            return pos + 1;
+        }
+        pos = writeVarint(target, pos, utf8Length(value) + 1);
+        return writeUtf8(target, pos, value);
+    }
+
+    private static String readString(byte[] payload, int pos, int prefix) {
+        if (prefix == 0) {
+            return null;
+        }
+        int length = prefix - 1;
+        if (pos + length > payload.length) {
+            throw new ArrayIndexOutOfBoundsException(pos + length);
+        }
+        return new String(payload, pos, length, StandardCharsets.UTF_8);
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    static int writeUtf8(byte[] target, int pos, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                target[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                target[pos++] = (byte) (0xC0 | c >> 6);
+                target[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                target[pos++] = (byte) (0xF0 | codePoint >> 18);
+                target[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                target[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                target[pos++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // 孤立的代理字符与 String.getBytes 的行为保持一致，替换为 '?'
+                target[pos++] = '?';
+            } else {
+                target[pos++] = (byte) (0xE0 | c >> 12);
+                target[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                target[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return pos;
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static int writeVarint(byte[] target, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[pos++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        target[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int readVarint(byte[] payload, int pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = payload[pos++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint 长度前缀已损坏");
+    }
+
+    static int writeLong(byte[] target, int pos, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            target[pos++] = (byte) (value >>> shift);
+        }
+        return pos;
+    }
+
+    static long readLong(byte[] payload, int pos) {
+        if (pos + Long.BYTES > payload.length) {
+            throw new ArrayIndexOutOfBoundsException(pos + Long.BYTES);
+        }
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = value << 8 | payload[pos + i] & 0xFF;
+        }
+        return value;
+    }
+}
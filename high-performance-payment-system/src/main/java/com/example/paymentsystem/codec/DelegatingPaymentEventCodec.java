@@ -0,0 +1,59 @@
+package com.example.paymentsystem.codec;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+
+import java.util.List;
+
+/**
+ * 使用指定格式编码、按负载首字节自动识别格式解码的编解码器。
+ * <p>
+ * 生产者切换编码格式时，消费者仍能处理主题中残留的旧格式消息，从而支持滚动升级。
+ */
+public class DelegatingPaymentEventCodec implements PaymentEventCodec {
+
+    private final PaymentEventCodec encoder;
+    private final List<PaymentEventCodec> decoders;
+
+    /**
+     * @param encoder  用于编码的编解码器。
+     * @param decoders 按顺序尝试的解码器列表。
+     */
+    public DelegatingPaymentEventCodec(PaymentEventCodec encoder, List<PaymentEventCodec> decoders) {
+        this.encoder = encoder;
+        this.decoders = List.copyOf(decoders);
+    }
+
+    @Override
+    public String name() {
+        return encoder.name();
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return findDecoder(payload) != null;
+    }
+
+    @Override
+    public byte[] encode(PaymentRequest paymentRequest) {
+        return encoder.encode(paymentRequest);
+    }
+
+    @Override
+    public PaymentRequest decode(byte[] payload) {
+        PaymentEventCodec decoder = findDecoder(payload);
+        if (decoder == null) {
+            throw new IllegalArgumentException("无法识别的支付事件格式");
+        }
+        return decoder.decode(payload);
+    }
+
+    private PaymentEventCodec findDecoder(byte[] payload) {
+        for (int i = 0; i < decoders.size(); i++) {
+            PaymentEventCodec decoder = decoders.get(i);
+            if (decoder.canDecode(payload)) {
+                return decoder;
+            }
+        }
+        return null;
+    }
+}
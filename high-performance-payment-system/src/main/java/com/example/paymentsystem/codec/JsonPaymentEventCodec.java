@@ -0,0 +1,52 @@
+package com.example.paymentsystem.codec;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+
+/**
+ * 基于 Jackson 的 JSON 支付事件编解码器。
+ * <p>
+ * 作为二进制格式的后备方案，适用于需要人工排查消息或与其他语言的消费者互通的场景。
+ */
+public class JsonPaymentEventCodec implements PaymentEventCodec {
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public JsonPaymentEventCodec(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(PaymentRequest.class);
+        this.writer = objectMapper.writerFor(PaymentRequest.class);
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return payload != null && payload.length > 0 && payload[0] == '{';
+    }
+
+    @Override
+    public byte[] encode(PaymentRequest paymentRequest) {
+        try {
+            return writer.writeValueAsBytes(paymentRequest);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法将支付请求编码为 JSON", e);
+        }
+    }
+
+    @Override
+    public PaymentRequest decode(byte[] payload) {
+        try {
+            return reader.readValue(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法解析 JSON 支付事件", e);
+        }
+    }
+}
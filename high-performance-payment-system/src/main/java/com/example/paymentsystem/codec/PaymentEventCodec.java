@@ -0,0 +1,42 @@
+package com.example.paymentsystem.codec;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+
+/**
+ * 支付事件的编解码器。
+ * <p>
+ * {@link com.example.paymentsystem.service.PaymentService} 使用它把支付请求编码后写入 Kafka 和 Redis，
+ * {@link com.example.paymentsystem.service.PaymentConsumer} 使用它把收到的消息还原为 {@link PaymentRequest}。
+ */
+public interface PaymentEventCodec {
+
+    /**
+     * @return 编码格式的名称，例如 binary 或 json。
+     */
+    String name();
+
+    /**
+     * 判断给定的负载是否为本编解码器产生的格式。
+     *
+     * @param payload 编码后的字节。
+     * @return 如果可以由本编解码器解码则返回 true。
+     */
+    boolean canDecode(byte[] payload);
+
+    /**
+     * 将支付请求编码为字节数组。
+     *
+     * @param paymentRequest 要编码的支付请求。
+     * @return 编码后的字节。
+     */
+    byte[] encode(PaymentRequest paymentRequest);
+
+    /**
+     * 将字节数组解码为支付请求。
+     *
+     * @param payload 编码后的字节。
+     * @return 解码得到的支付请求。
+     * @throws IllegalArgumentException 如果负载格式无法识别或已损坏。
+     */
+    PaymentRequest decode(byte[] payload);
+}
@@ -0,0 +1,37 @@
+package com.example.paymentsystem.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+/**
+ * Kafka 消费者配置。
+ */
+@Configuration
+public class KafkaConsumerConfig {
+
+    /**
+     * 批量消费模式使用的监听容器工厂。
+     * <p>
+     * 每次 poll 得到的整批消息一次性交给监听方法，监听方法返回后统一提交一次位移。
+     *
+     * @param configurer      Spring Boot 提供的容器工厂配置器，用于继承 spring.kafka.* 配置。
+     * @param consumerFactory Spring Boot 自动配置的消费者工厂。
+     * @return 批量监听容器工厂。
+     */
+    @Bean
+    @ConditionalOnProperty(name = "payment.consumer.mode", havingValue = "batch")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+}
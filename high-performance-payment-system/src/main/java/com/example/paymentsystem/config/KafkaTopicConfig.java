@@ -1,6 +1,7 @@
 package com.example.paymentsystem.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -23,4 +24,35 @@ public class KafkaTopicConfig {
                 .replicas(1)        // 设置副本数为1（在生产环境中建议设置为更高的值，例如3）
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * 创建结算窗口快照使用的压缩主题，每个窗口只保留最新的快照。
+     * 单分区保证同一窗口的快照按写入顺序读回。
+     *
+     * @return NewTopic 对象。
+     */
+    @Bean
+    @ConditionalOnProperty(name = "payment.settlement.enabled", havingValue = "true", matchIfMissing = true)
+    public NewTopic settlementSnapshotsTopic() {
+        return TopicBuilder.name("payment-settlement-snapshots")
+                .partitions(1)
+                .replicas(1)
+                .compact()
+                .build();
+    }
+
+    /**
+     * 创建速率窗口快照使用的压缩主题，每个分区的每组用户只保留最新的快照。
+     *
+     * @return NewTopic 对象。
+     */
+    @Bean
+    @ConditionalOnProperty(name = "payment.velocity.enabled", havingValue = "true", matchIfMissing = true)
+    public NewTopic velocitySnapshotsTopic() {
+        return TopicBuilder.name("payment-velocity-snapshots")
+                .partitions(1)
+                .replicas(1)
+                .compact()
+                .build();
+    }
+}
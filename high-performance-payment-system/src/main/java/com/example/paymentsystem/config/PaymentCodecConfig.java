@@ -0,0 +1,45 @@
+package com.example.paymentsystem.config;
+
+import com.example.paymentsystem.codec.BinaryPaymentEventCodec;
+import com.example.paymentsystem.codec.DelegatingPaymentEventCodec;
+import com.example.paymentsystem.codec.JsonPaymentEventCodec;
+import com.example.paymentsystem.codec.PaymentEventCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 支付事件编解码器配置。
+ */
+@Configuration
+public class PaymentCodecConfig {
+
+    /**
+     * 根据 payment.codec.format 选择编码格式，解码时同时支持二进制和 JSON 两种格式。
+     *
+     * @param format       编码格式，binary 或 json。
+     * @param objectMapper Spring Boot 自动配置的 ObjectMapper。
+     * @return PaymentEventCodec 对象。
+     */
+    @Bean
+    public PaymentEventCodec paymentEventCodec(@Value("${payment.codec.format:binary}") String format,
+                                               ObjectMapper objectMapper) {
+        PaymentEventCodec binary = new BinaryPaymentEventCodec();
+        PaymentEventCodec json = new JsonPaymentEventCodec(objectMapper);
+        PaymentEventCodec encoder;
+        switch (format) {
+            case "binary":
+                encoder = binary;
+                break;
+            case "json":
+                encoder = json;
+                break;
+            default:
+                throw new IllegalArgumentException("未知的支付事件编码格式: " + format);
+        }
+        return new DelegatingPaymentEventCodec(encoder, List.of(binary, json));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.paymentsystem.config;
+
+import com.example.paymentsystem.query.PaymentStatusQueryService;
+import com.example.paymentsystem.status.StatusInvalidations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 状态查询配置。
+ */
+@Configuration
+public class PaymentQueryConfig {
+
+    /**
+     * 订阅状态变更通知，用于失效查询服务的近端缓存。容器的生命周期由 Spring 管理。
+     *
+     * @param connectionFactory Redis 连接工厂。
+     * @param queryService      状态查询服务。
+     * @return RedisMessageListenerContainer 对象。
+     */
+    @Bean
+    public RedisMessageListenerContainer statusInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                              PaymentStatusQueryService queryService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(queryService, new ChannelTopic(StatusInvalidations.CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.paymentsystem.controller;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.idempotency.Acceptance;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.limit.AdaptiveConcurrencyLimiter;
+import com.example.paymentsystem.service.PaymentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 以非阻塞方式处理支付请求的 REST 控制器。
+ * <p>
+ * 请求线程在发出 Kafka 和 Redis 写入后立即释放，响应在两者都确认后由 Servlet 异步机制写回，
+ * 因此每个实例无需增加线程即可承载更多并发请求。在 payment.ingest.mode=async 时启用。
+ */
+@RestController
+@RequestMapping("/api/payments")
+@ConditionalOnProperty(name = "payment.ingest.mode", havingValue = "async")
+public class AsyncPaymentController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncPaymentController.class);
+
+    private final PaymentService paymentService;
+    private final long timeoutMillis;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final PipelineLatency latency;
+
+    /**
+     * @param limiter 启用 payment.limiter.enabled 时存在的并发限制器；超出限制的请求直接返回 503。
+     * @param latency 受理成功的请求从进入端点到写入确认的耗时记为 ingest 阶段，包括等待并发名额的时间。
+     */
+    @Autowired
+    public AsyncPaymentController(PaymentService paymentService,
+                                  @Value("${payment.ingest.async.timeout-ms:5000}") long timeoutMillis,
+                                  ObjectProvider<AdaptiveConcurrencyLimiter> limiter, PipelineLatency latency) {
+        this.paymentService = paymentService;
+        this.timeoutMillis = timeoutMillis;
+        this.limiter = limiter.getIfAvailable();
+        this.latency = latency;
+    }
+
+    /**
+     * 处理一个支付请求。
+     *
+     * @param paymentRequest 支付请求的详细信息。
+     * @return 在 Kafka 与 Redis 都确认写入后完成的响应；任一写入失败或超时时返回错误响应，
+     * 超出并发限制时立即返回 503 和 {@code Retry-After}。
+     */
+    @PostMapping
+    public CompletableFuture<ResponseEntity<String>> processPayment(@RequestBody PaymentRequest paymentRequest) {
+        long start = System.nanoTime();
+        if (limiter != null && !limiter.tryAcquire()) {
+            return CompletableFuture.completedFuture(PaymentController.overloaded(limiter));
+        }
+        CompletableFuture<Acceptance> accepted;
+        try {
+            accepted = paymentService.processPaymentAsync(paymentRequest);
+        } catch (RuntimeException e) {
+            if (limiter != null) {
+                limiter.release();
+            }
+            if (e instanceof IllegalArgumentException) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("支付请求无效: " + e.getMessage()));
+            }
+            throw e;
+        }
+        if (limiter != null) {
+            // 名额在写入真正完成时归还。超时只作用于下面的响应副本，不会提前完成 accepted，
+            // 响应超时后仍在进行的写入继续占用名额，依赖变慢时限制器才能感知到积压
+            accepted.whenComplete((acceptance, error) -> limiter.release());
+        }
+        accepted.thenRun(() -> latency.record(PipelineStage.INGEST, System.nanoTime() - start));
+        return accepted.copy()
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .handle((acceptance, error) -> error == null
+                        ? PaymentController.accepted(acceptance)
+                        : failure(paymentRequest, error));
+    }
+
+    private ResponseEntity<String> failure(PaymentRequest paymentRequest, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        logger.warn("支付请求 {} 提交失败: {}", paymentRequest.getOrderId(), cause.toString());
+        String message = cause instanceof TimeoutException
+                ? "支付请求提交超时，请稍后重试。"
+                : "支付请求提交失败，请稍后重试。";
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(message);
+    }
+}
@@ -1,37 +1,97 @@
 package com.example.paymentsystem.controller;
 
 import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.idempotency.Acceptance;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.limit.AdaptiveConcurrencyLimiter;
 import com.example.paymentsystem.service.PaymentService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
+
 /**
  * 用于处理支付请求的 REST 控制器。
+ * <p>
+ * 这是 payment.ingest.mode=sync（默认）时启用的同步接入方式，非阻塞方式见 {@link AsyncPaymentController}。
  */
 @RestController
+@ConditionalOnProperty(name = "payment.ingest.mode", havingValue = "sync", matchIfMissing = true)
 @RequestMapping("/api/payments")
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final PipelineLatency latency;
 
+    /**
+     * @param limiter 启用 payment.limiter.enabled 时存在的并发限制器；超出限制的请求直接返回 503。
+     * @param latency 受理成功的请求从进入端点到返回的耗时记为 ingest 阶段，包括等待并发名额的时间。
+     */
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, ObjectProvider<AdaptiveConcurrencyLimiter> limiter,
+                             PipelineLatency latency) {
         this.paymentService = paymentService;
+        this.limiter = limiter.getIfAvailable();
+        this.latency = latency;
     }
 
     /**
      * 处理一个支付请求。
      *
      * @param paymentRequest 支付请求的详细信息。
-     * @return 一个响应实体，表明支付处理的结果。
+     * @return 一个响应实体，表明支付处理的结果。重复提交的 orderId 返回与首次受理相同的响应；
+     * 超出并发限制时返回 503 和 {@code Retry-After}。
      */
     @PostMapping
     public ResponseEntity<String> processPayment(@RequestBody PaymentRequest paymentRequest) {
-        paymentService.processPayment(paymentRequest);
-        return ResponseEntity.ok("支付请求已收到，正在处理中。");
+        long start = System.nanoTime();
+        if (limiter == null) {
+            return ingest(paymentRequest, start);
+        }
+        if (!limiter.tryAcquire()) {
+            return overloaded(limiter);
+        }
+        try {
+            return ingest(paymentRequest, start);
+        } finally {
+            limiter.release();
+        }
+    }
+
+    private ResponseEntity<String> ingest(PaymentRequest paymentRequest, long startNanos) {
+        Acceptance acceptance = paymentService.processPayment(paymentRequest);
+        latency.record(PipelineStage.INGEST, System.nanoTime() - startNanos);
+        return accepted(acceptance);
+    }
+
+    /**
+     * 构造受理响应。响应体与首次受理时相同，重复提交额外带有 {@code Idempotent-Replayed} 头。
+     */
+    static ResponseEntity<String> accepted(Acceptance acceptance) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header("X-Payment-Accepted-At", Instant.ofEpochMilli(acceptance.getAcceptedAtMillis()).toString());
+        if (acceptance.isReplay()) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response.body("支付请求已收到，正在处理中。");
+    }
+
+    /**
+     * 构造过载响应。请求在进入服务之前即被拒绝，客户端可以按 {@code Retry-After} 安全重试。
+     */
+    static ResponseEntity<String> overloaded(AdaptiveConcurrencyLimiter limiter) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(limiter.getRetryAfterSeconds()))
+                .body("服务繁忙，请稍后重试。");
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.paymentsystem.controller;
+
+import com.example.paymentsystem.dto.PaymentStatusResponse;
+import com.example.paymentsystem.query.PaymentStatusQueryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 支付状态查询的 REST 控制器，与接入模式无关，始终启用。
+ */
+@RestController
+@RequestMapping("/api/payments")
+public class PaymentStatusController {
+
+    private final PaymentStatusQueryService queryService;
+
+    @Autowired
+    public PaymentStatusController(PaymentStatusQueryService queryService) {
+        this.queryService = queryService;
+    }
+
+    /**
+     * 查询一个支付的最新状态。
+     *
+     * @param orderId 订单 ID。
+     * @return 最新状态及其更新时间；订单不存在时返回 404。
+     */
+    @GetMapping("/{orderId}")
+    public ResponseEntity<PaymentStatusResponse> getStatus(@PathVariable String orderId) {
+        return queryService.find(orderId)
+                .map(entry -> ResponseEntity.ok(PaymentStatusResponse.from(entry)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.paymentsystem.controller;
+
+import com.example.paymentsystem.dto.SettlementWindowResponse;
+import com.example.paymentsystem.settlement.SettlementAggregator;
+import com.example.paymentsystem.settlement.SettlementWindow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * 结算汇总查询的 REST 控制器，读取内存中的窗口，不访问 Redis 或 Kafka。
+ * <p>
+ * 窗口用 {@code current} 或窗口内的任意时刻（ISO-8601，例如 {@code 2024-05-01T10:00:00Z}）指定。
+ * 在 payment.settlement.enabled=true（默认）时启用。
+ */
+@RestController
+@ConditionalOnProperty(name = "payment.settlement.enabled", havingValue = "true", matchIfMissing = true)
+@RequestMapping("/api/settlements")
+public class SettlementController {
+
+    private static final String CURRENT = "current";
+
+    private final SettlementAggregator aggregator;
+
+    @Autowired
+    public SettlementController(SettlementAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * 列出保留范围内的全部窗口及其按货币的合计，最新的在前。
+     */
+    @GetMapping
+    public List<SettlementWindowResponse> listWindows() {
+        return aggregator.windows().stream()
+                .map(window -> SettlementWindowResponse.from(window, aggregator.isClosed(window), null,
+                        window.currencyTotals()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 查询一个窗口按货币的合计。
+     *
+     * @return 窗口不存在（没有结算或已超出保留范围）时返回 404，时刻格式错误时返回 400。
+     */
+    @GetMapping("/{window}")
+    public ResponseEntity<SettlementWindowResponse> getWindow(@PathVariable String window) {
+        Optional<SettlementWindow> found;
+        try {
+            found = resolve(window);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return found
+                .map(w -> ResponseEntity.ok(SettlementWindowResponse.from(w, aggregator.isClosed(w), null,
+                        w.currencyTotals())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 查询一个用户在窗口内按货币的合计。
+     *
+     * @return 窗口不存在时返回 404；用户在窗口内没有结算时 totals 为空。
+     */
+    @GetMapping("/{window}/users/{userId}")
+    public ResponseEntity<SettlementWindowResponse> getUserTotals(@PathVariable String window,
+                                                                  @PathVariable String userId) {
+        Optional<SettlementWindow> found;
+        try {
+            found = resolve(window);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return found
+                .map(w -> ResponseEntity.ok(SettlementWindowResponse.from(w, aggregator.isClosed(w), userId,
+                        w.userTotals(userId))))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private Optional<SettlementWindow> resolve(String window) {
+        if (CURRENT.equals(window)) {
+            return Optional.of(aggregator.current());
+        }
+        return aggregator.find(aggregator.windowStart(Instant.parse(window).toEpochMilli()));
+    }
+}
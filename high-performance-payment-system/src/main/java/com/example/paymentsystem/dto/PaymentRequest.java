@@ -1,13 +1,19 @@
 package com.example.paymentsystem.dto;
 
+import com.example.paymentsystem.money.Money;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Data;
 
-import java.math.BigDecimal;
-
 /**
  * 代表支付请求的数据传输对象 (DTO)。
+ * <p>
+ * JSON 格式保持不变，金额和货币仍是两个独立字段，例如 {@code "amount": 10.50, "currency": "USD"}，
+ * 由 {@link PaymentRequestJsonDeserializer} 直接从词法单元解析为 {@link Money}。
  */
 @Data
+@JsonSerialize(using = PaymentRequestJsonSerializer.class)
+@JsonDeserialize(using = PaymentRequestJsonDeserializer.class)
 public class PaymentRequest {
 
     /**
@@ -16,17 +22,12 @@ public class PaymentRequest {
     private String orderId;
 
     /**
-     * 支付金额。
-     */
-    private BigDecimal amount;
-
-    /**
-     * 支付货币单位。
+     * 支付金额及货币单位。
      */
-    private String currency;
+    private Money amount;
 
     /**
      * 发起支付的用户的ID。
      */
     private String userId;
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.example.paymentsystem.dto;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * 流式解析 {@link PaymentRequest}。
+ * <p>
+ * 金额文本从解析器的字符缓冲区复制到线程本地缓冲区，读完整个对象后按货币精度逐位累加为 long；
+ * 货币代码直接在解析器的缓冲区上查找缓存的 {@link CurrencyUnit}。两者都不经过中间的 {@code BigDecimal} 或 {@code String}，
+ * 且两个字段可以以任意顺序出现。
+ */
+public class PaymentRequestJsonDeserializer extends StdDeserializer<PaymentRequest> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<char[]> AMOUNT_TEXT = ThreadLocal.withInitial(() -> new char[32]);
+
+    public PaymentRequestJsonDeserializer() {
+        super(PaymentRequest.class);
+    }
+
+    @Override
+    public PaymentRequest deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            parser.nextToken();
+        }
+        PaymentRequest paymentRequest = new PaymentRequest();
+        CurrencyUnit currency = null;
+        char[] amountText = AMOUNT_TEXT.get();
+        int amountLength = -1;
+
+        for (JsonToken token = parser.currentToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "orderId":
+                    paymentRequest.setOrderId(parser.getValueAsString());
+                    break;
+                case "userId":
+                    paymentRequest.setUserId(parser.getValueAsString());
+                    break;
+                case "currency":
+                    currency = CurrencyUnit.find(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    if (currency == null) {
+                        return context.reportInputMismatch(this, "未知的货币代码: %s", parser.getText());
+                    }
+                    break;
+                case "amount":
+                    if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT
+                            && value != JsonToken.VALUE_STRING) {
+                        return context.reportInputMismatch(this, "amount 必须是数字");
+                    }
+                    // 货币可能出现在金额之后，先把金额文本复制到线程本地缓冲区，读完对象后再解析
+                    amountLength = parser.getTextLength();
+                    if (amountLength > amountText.length) {
+                        return context.reportInputMismatch(this, "金额超出范围: %s", parser.getText());
+                    }
+                    System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), amountText, 0, amountLength);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (amountLength >= 0) {
+            if (currency == null) {
+                return context.reportInputMismatch(this, "指定了 amount 时必须同时指定 currency");
+            }
+            try {
+                paymentRequest.setAmount(Money.parse(currency, amountText, 0, amountLength));
+            } catch (NumberFormatException | ArithmeticException e) {
+                return context.reportInputMismatch(this, "%s", e.getMessage());
+            }
+        }
+        return paymentRequest;
+    }
+}
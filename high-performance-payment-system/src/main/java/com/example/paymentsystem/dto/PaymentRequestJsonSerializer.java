@@ -0,0 +1,41 @@
+package com.example.paymentsystem.dto;
+
+import com.example.paymentsystem.money.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * 把 {@link PaymentRequest} 写为与原有格式相同的 JSON，金额按货币精度格式化到线程本地的字符缓冲区后直接写出。
+ */
+public class PaymentRequestJsonSerializer extends StdSerializer<PaymentRequest> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<char[]> AMOUNT_BUFFER = ThreadLocal.withInitial(() -> new char[24]);
+
+    public PaymentRequestJsonSerializer() {
+        super(PaymentRequest.class);
+    }
+
+    @Override
+    public void serialize(PaymentRequest paymentRequest, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(paymentRequest);
+        generator.writeStringField("orderId", paymentRequest.getOrderId());
+        Money amount = paymentRequest.getAmount();
+        if (amount == null) {
+            generator.writeNullField("amount");
+            generator.writeNullField("currency");
+        } else {
+            char[] buffer = AMOUNT_BUFFER.get();
+            generator.writeFieldName("amount");
+            generator.writeNumber(buffer, 0, amount.formatAmount(buffer, 0));
+            generator.writeStringField("currency", amount.getCurrency().getCode());
+        }
+        generator.writeStringField("userId", paymentRequest.getUserId());
+        generator.writeEndObject();
+    }
+}
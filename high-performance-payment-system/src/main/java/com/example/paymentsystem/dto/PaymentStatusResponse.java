@@ -0,0 +1,42 @@
+package com.example.paymentsystem.dto;
+
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusEntry;
+
+import java.time.Instant;
+
+/**
+ * 状态查询接口的响应。
+ */
+public class PaymentStatusResponse {
+
+    private final String orderId;
+    private final PaymentStatus status;
+    private final Instant updatedAt;
+
+    public PaymentStatusResponse(String orderId, PaymentStatus status, Instant updatedAt) {
+        this.orderId = orderId;
+        this.status = status;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * 由状态记录构造响应，更新时间取自流记录 ID 中的毫秒时间戳。
+     */
+    public static PaymentStatusResponse from(PaymentStatusEntry entry) {
+        return new PaymentStatusResponse(entry.getOrderId(), entry.getStatus(),
+                Instant.ofEpochMilli(entry.getRecordId().getTimestamp()));
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public PaymentStatus getStatus() {
+        return status;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.paymentsystem.dto;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.settlement.SettlementTotal;
+
+import java.math.BigDecimal;
+
+/**
+ * 结算汇总中一种货币的笔数与金额。
+ */
+public class SettlementTotalResponse {
+
+    private final String currency;
+    private final long count;
+    private final BigDecimal amount;
+
+    public SettlementTotalResponse(String currency, long count, BigDecimal amount) {
+        this.currency = currency;
+        this.count = count;
+        this.amount = amount;
+    }
+
+    public static SettlementTotalResponse from(CurrencyUnit currency, SettlementTotal total) {
+        return new SettlementTotalResponse(currency.getCode(), total.getCount(), total.getAmount().toBigDecimal());
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.paymentsystem.dto;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.settlement.SettlementTotal;
+import com.example.paymentsystem.settlement.SettlementWindow;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 结算窗口查询接口的响应，按货币列出窗口合计或某个用户的合计。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SettlementWindowResponse {
+
+    private final Instant windowStart;
+    private final Instant windowEnd;
+    private final boolean closed;
+    private final String userId;
+    private final List<SettlementTotalResponse> totals;
+
+    public SettlementWindowResponse(Instant windowStart, Instant windowEnd, boolean closed, String userId,
+                                    List<SettlementTotalResponse> totals) {
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.closed = closed;
+        this.userId = userId;
+        this.totals = totals;
+    }
+
+    /**
+     * @param userId 为 null 时 totals 为整个窗口的合计，否则为该用户的合计。
+     */
+    public static SettlementWindowResponse from(SettlementWindow window, boolean closed, String userId,
+                                                Map<CurrencyUnit, SettlementTotal> totals) {
+        List<SettlementTotalResponse> responses = new ArrayList<>(totals.size());
+        totals.forEach((currency, total) -> responses.add(SettlementTotalResponse.from(currency, total)));
+        return new SettlementWindowResponse(Instant.ofEpochMilli(window.getStart()),
+                Instant.ofEpochMilli(window.getEnd()), closed, userId, responses);
+    }
+
+    public Instant getWindowStart() {
+        return windowStart;
+    }
+
+    public Instant getWindowEnd() {
+        return windowEnd;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public List<SettlementTotalResponse> getTotals() {
+        return totals;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.paymentsystem.idempotency;
+
+/**
+ * 一个 orderId 的受理结果。
+ * <p>
+ * 首次提交时 {@link #isReplay()} 为 false；重复提交时返回首次受理的时间，调用方据此向客户端返回与原请求相同的确认。
+ */
+public final class Acceptance {
+
+    private final String orderId;
+    private final long acceptedAtMillis;
+    private final boolean replay;
+    private final boolean recorded;
+
+    Acceptance(String orderId, long acceptedAtMillis, boolean replay, boolean recorded) {
+        this.orderId = orderId;
+        this.acceptedAtMillis = acceptedAtMillis;
+        this.replay = replay;
+        this.recorded = recorded;
+    }
+
+    /**
+     * 未启用幂等过滤时使用的受理结果。
+     */
+    public static Acceptance unchecked(String orderId) {
+        return new Acceptance(orderId, System.currentTimeMillis(), false, true);
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * @return 首次受理的时间（毫秒时间戳）。
+     */
+    public long getAcceptedAtMillis() {
+        return acceptedAtMillis;
+    }
+
+    /**
+     * @return 该 orderId 之前已被受理，本次请求不会再次发布。
+     */
+    public boolean isReplay() {
+        return replay;
+    }
+
+    /**
+     * @return 幂等键已写入 Redis；为 false 时需要通过 {@link IdempotencyGuard#guard} 的守卫命令写入。
+     */
+    boolean isRecorded() {
+        return recorded;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.paymentsystem.idempotency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的布隆过滤器，位数组保存在 {@link AtomicLongArray} 中，多个线程可以同时插入和查询。
+ * <p>
+ * 位数和哈希函数个数按预期插入数和目标误判率计算；每个键只计算一次 64 位哈希，
+ * 再用双重哈希（h1 + i·h2）派生出 k 个位置。
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final AtomicLong bitCount = new AtomicLong();
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("预期插入数必须大于 0");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("误判率必须在 0 到 1 之间");
+        }
+        long bits = optimalBitSize(expectedInsertions, falsePositiveRate);
+        int wordCount = Math.toIntExact((bits + Long.SIZE - 1) / Long.SIZE);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitSize = (long) wordCount * Long.SIZE;
+        this.hashFunctions = optimalHashFunctions(expectedInsertions, bitSize);
+    }
+
+    static long optimalBitSize(long expectedInsertions, double falsePositiveRate) {
+        return Math.max(Long.SIZE,
+                (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+    }
+
+    static int optimalHashFunctions(long expectedInsertions, long bitSize) {
+        return Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * @return 键可能已存在时返回 true；返回 false 时键一定未插入过。
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = Long.rotateLeft(hash, 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 插入一个键。
+     *
+     * @return 至少有一位由 0 变为 1 时返回 true，即插入前该键一定不存在。
+     */
+    boolean put(String key) {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = Long.rotateLeft(hash, 32) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if (setBit((int) (bit >>> 6), 1L << bit)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private boolean setBit(int index, long mask) {
+        long current;
+        do {
+            current = words.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, current, current | mask));
+        bitCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 根据当前置位比例估算的误判率 (置位数 / 总位数)^k。
+     */
+    double estimatedFalsePositiveRate() {
+        return Math.pow((double) bitCount.get() / bitSize, hashFunctions);
+    }
+
+    long memoryBytes() {
+        return bitSize / Byte.SIZE;
+    }
+
+    int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * 对字符串的 UTF-16 码元做 64 位 FNV-1a 哈希，再用 MurmurHash3 的 fmix64 打散，避免为键分配字节数组。
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = key.length(); i < n; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.paymentsystem.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 接入路径上的 orderId 幂等检查。
+ * <p>
+ * 本地的轮换布隆过滤器挡在 Redis 之前：过滤器确定没见过的 orderId 暂时受理，不单独检查 Redis，
+ * 其幂等键由状态写入器在同一批次中以 {@code SET NX} 写入，写入成功后才追加 PENDING 状态；
+ * {@code SET NX} 失败说明该 orderId 已被其他实例受理，调用方不写入状态也不发布，改用 {@link #duplicate(String)}
+ * 返回首次受理的结果。过滤器命中的 orderId（重复提交或误判）才在 Redis 中单独执行权威的 {@code SET NX} 检查，
+ * 重复时返回首次受理的时间。
+ * <p>
+ * 首次受理的请求在发布完成或被撤销之前登记在本地，同一实例上此期间到达的重复请求等待它的结果：发布成功后得到首次受理的结果，
+ * 发布失败时以同样的异常失败，客户端重试时重新受理，不会对一笔从未发布的支付返回成功。
+ * <p>
+ * 启动时后台扫描 Redis 中现存的幂等键预热过滤器，预热完成前所有检查都走 Redis。
+ * 过滤器只记录本实例见过的 orderId，且只保留一到两个窗口；跨实例或超出窗口的重复提交由下游状态机按 orderId 去重。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.idempotency.enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyGuard.class);
+    private static final String KEY_PREFIX = "payment-idempotency:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RotatingBloomFilter filter;
+    private final Duration keyTtl;
+    private final Expiration keyExpiration;
+    private final Map<String, CompletableFuture<Acceptance>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService redisChecks;
+
+    private final Counter filterMisses;
+    private final Counter redisNew;
+    private final Counter duplicates;
+
+    private volatile boolean warm;
+
+    @Autowired
+    public IdempotencyGuard(StringRedisTemplate redisTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${payment.idempotency.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${payment.idempotency.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${payment.idempotency.window-minutes:60}") long windowMinutes,
+                            @Value("${payment.idempotency.redis-check-threads:4}") int redisCheckThreads) {
+        this.redisTemplate = redisTemplate;
+        this.filter = new RotatingBloomFilter(expectedInsertions, falsePositiveRate,
+                TimeUnit.MINUTES.toNanos(windowMinutes));
+        // Redis 中的键至少要覆盖过滤器记住一个键的最长时间（两个窗口）
+        this.keyTtl = Duration.ofMinutes(windowMinutes * 2);
+        this.keyExpiration = Expiration.from(keyTtl);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.redisChecks = Executors.newFixedThreadPool(redisCheckThreads, r -> {
+            Thread thread = new Thread(r, "payment-idempotency-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.filterMisses = checks(meterRegistry, "filter-miss");
+        this.redisNew = checks(meterRegistry, "redis-new");
+        this.duplicates = checks(meterRegistry, "duplicate");
+        Gauge.builder("payment.idempotency.filter.fpp.target", () -> falsePositiveRate)
+                .description("配置的布隆过滤器目标误判率")
+                .register(meterRegistry);
+        Gauge.builder("payment.idempotency.filter.fpp.estimated", filter, RotatingBloomFilter::estimatedFalsePositiveRate)
+                .description("按当前置位比例估算的误判率")
+                .register(meterRegistry);
+        Gauge.builder("payment.idempotency.filter.memory", filter, RotatingBloomFilter::memoryBytes)
+                .description("布隆过滤器占用的内存")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("payment.idempotency.checks")
+                .description("幂等检查次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread warmup = new Thread(this::warmUp, "payment-idempotency-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    private void warmUp() {
+        long loaded = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build();
+        try (Cursor<String> keys = redisTemplate.scan(options)) {
+            while (keys.hasNext()) {
+                filter.put(keys.next().substring(KEY_PREFIX.length()));
+                loaded++;
+            }
+            logger.info("幂等过滤器预热完成，载入 {} 个 orderId", loaded);
+        } catch (RuntimeException e) {
+            logger.warn("幂等过滤器预热失败，已载入 {} 个 orderId: {}", loaded, e.toString());
+        }
+        warm = true;
+    }
+
+    /**
+     * 检查 orderId 是否已被受理。
+     * <p>
+     * 首次受理的请求在 {@link #settle} 之前登记在本地，同一实例上并发到达的重复请求不会穿透到 Redis，而是等待它的结果。
+     * 受理结果不是重复提交时，调用方必须在发布完成或撤销受理之后调用 {@link #settle}。
+     *
+     * @return 过滤器未命中时立即完成；命中时在 Redis 检查完成后完成；首次受理的请求尚未结束时在其结束后完成，
+     * 首次受理的请求失败时以同样的异常完成。
+     */
+    public CompletableFuture<Acceptance> admit(String orderId) {
+        if (orderId == null) {
+            throw new IllegalArgumentException("orderId 不能为空");
+        }
+        if (filter.put(orderId) && warm) {
+            CompletableFuture<Acceptance> outcome = new CompletableFuture<>();
+            CompletableFuture<Acceptance> existing = inFlight.putIfAbsent(orderId, outcome);
+            if (existing == null) {
+                filterMisses.increment();
+                return CompletableFuture.completedFuture(
+                        new Acceptance(orderId, System.currentTimeMillis(), false, false));
+            }
+            return replayOf(orderId, existing);
+        }
+        return CompletableFuture.supplyAsync(() -> checkRedis(orderId), redisChecks)
+                .thenCompose(acceptance -> acceptance);
+    }
+
+    private CompletableFuture<Acceptance> checkRedis(String orderId) {
+        CompletableFuture<Acceptance> outcome = new CompletableFuture<>();
+        CompletableFuture<Acceptance> existing = inFlight.putIfAbsent(orderId, outcome);
+        if (existing != null) {
+            return replayOf(orderId, existing);
+        }
+        try {
+            long now = System.currentTimeMillis();
+            String key = KEY_PREFIX + orderId;
+            Boolean created = redisTemplate.opsForValue().setIfAbsent(key, Long.toString(now), keyTtl);
+            if (Boolean.TRUE.equals(created)) {
+                redisNew.increment();
+                return CompletableFuture.completedFuture(new Acceptance(orderId, now, false, true));
+            }
+            // 已被其他实例或更早的请求受理，不会发布，登记的结果立即确定
+            String original = redisTemplate.opsForValue().get(key);
+            duplicates.increment();
+            Acceptance replay = new Acceptance(orderId, original == null ? now : Long.parseLong(original), true, true);
+            settle(orderId, replay, null);
+            return CompletableFuture.completedFuture(replay);
+        } catch (RuntimeException e) {
+            settle(orderId, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 等待首次受理的请求结束，以它的受理时间作为重复提交的结果。
+     */
+    private CompletableFuture<Acceptance> replayOf(String orderId, CompletableFuture<Acceptance> original) {
+        duplicates.increment();
+        return original.thenApply(acceptance -> new Acceptance(orderId, acceptance.getAcceptedAtMillis(), true, true));
+    }
+
+    /**
+     * 返回写入过滤器未命中时受理的幂等键的守卫命令，供 {@link com.example.paymentsystem.service.RedisStreamBatchWriter}
+     * 在追加 PENDING 状态之前执行。命令是 {@code SET NX}，结果为 false 表示该 orderId 已被受理过。
+     *
+     * @return 守卫命令；幂等键已在 Redis 检查中写入时为 null。
+     */
+    public Consumer<RedisConnection> guard(Acceptance acceptance) {
+        return acceptance.isRecorded() ? null : connection -> record(connection, acceptance);
+    }
+
+    private void record(RedisConnection connection, Acceptance acceptance) {
+        connection.stringCommands().set(
+                (KEY_PREFIX + acceptance.getOrderId()).getBytes(StandardCharsets.UTF_8),
+                Long.toString(acceptance.getAcceptedAtMillis()).getBytes(StandardCharsets.UTF_8),
+                keyExpiration,
+                RedisStringCommands.SetOption.ifAbsent());
+    }
+
+    /**
+     * {@link #guard} 的守卫命令返回 false 时调用，读取首次受理的时间。
+     *
+     * @return 重复提交的受理结果。
+     */
+    public CompletableFuture<Acceptance> duplicate(String orderId) {
+        duplicates.increment();
+        return CompletableFuture.supplyAsync(() -> {
+            String original = redisTemplate.opsForValue().get(KEY_PREFIX + orderId);
+            long acceptedAt = original == null ? System.currentTimeMillis() : Long.parseLong(original);
+            return new Acceptance(orderId, acceptedAt, true, true);
+        }, redisChecks);
+    }
+
+    /**
+     * 首次受理的请求结束后调用：发布成功、被判定为重复提交，或撤销受理完成之后。移除本地登记，并把结果交给等待中的重复请求。
+     *
+     * @param orderId 首次受理的 orderId。
+     * @param outcome 请求的最终结果，失败时为 null。
+     * @param error   失败的原因，成功时为 null。
+     */
+    public void settle(String orderId, Acceptance outcome, Throwable error) {
+        CompletableFuture<Acceptance> pending = inFlight.remove(orderId);
+        if (pending == null) {
+            return;
+        }
+        if (error != null) {
+            pending.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+        } else {
+            pending.complete(outcome);
+        }
+    }
+
+    /**
+     * 受理后 PENDING 状态写入失败时删除本次写入的幂等键，客户端重试时可以重新受理，而不是得到一个从未发布的重复结果。
+     */
+    public void abandon(Acceptance acceptance) {
+        abandon(acceptance, null);
+    }
+
+    /**
+     * 撤销一次受理：先执行 {@code rollback}（例如删除已写入的 PENDING 状态），再删除本次写入的幂等键。
+     * 用于 PENDING 已写入但支付事件发布失败的情况，客户端重试时重新受理并发布。
+     *
+     * @param rollback 删除幂等键之前执行的撤销操作，可以为 null。
+     * @return 撤销完成后完成的 Future；失败只记录日志，Future 仍正常完成。
+     */
+    public CompletableFuture<Void> abandon(Acceptance acceptance, Runnable rollback) {
+        String key = KEY_PREFIX + acceptance.getOrderId();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                if (rollback != null) {
+                    rollback.run();
+                }
+            } finally {
+                redisTemplate.delete(key);
+            }
+        }, redisChecks).handle((result, error) -> {
+            if (error != null) {
+                logger.warn("撤销受理 {} 失败: {}", key, error.toString());
+            }
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        redisChecks.shutdown();
+    }
+}
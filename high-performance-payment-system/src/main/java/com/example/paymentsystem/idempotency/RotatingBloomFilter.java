@@ -0,0 +1,80 @@
+package com.example.paymentsystem.idempotency;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按时间轮换的双代布隆过滤器。
+ * <p>
+ * 新键插入当前代，查询同时检查当前代和上一代。每经过一个窗口，当前代变为上一代，上一代被丢弃，
+ * 因此一个键至少被记住一个窗口、最多两个窗口，过滤器的误判率也不会随运行时间无限上升。
+ * 轮换由访问线程通过 CAS 完成，不需要后台线程或锁。
+ */
+final class RotatingBloomFilter {
+
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long windowNanos;
+    private final AtomicReference<Generations> generations;
+
+    RotatingBloomFilter(long expectedInsertions, double falsePositiveRate, long windowNanos) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.windowNanos = windowNanos;
+        BloomFilter empty = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.generations = new AtomicReference<>(new Generations(empty, null, System.nanoTime() + windowNanos));
+    }
+
+    boolean mightContain(String key) {
+        Generations current = current();
+        return current.active.mightContain(key) || current.previous != null && current.previous.mightContain(key);
+    }
+
+    /**
+     * @return 插入前该键一定不在任何一代中时返回 true。
+     */
+    boolean put(String key) {
+        Generations current = current();
+        boolean changed = current.active.put(key);
+        return changed && (current.previous == null || !current.previous.mightContain(key));
+    }
+
+    double estimatedFalsePositiveRate() {
+        Generations current = current();
+        double active = current.active.estimatedFalsePositiveRate();
+        double previous = current.previous == null ? 0 : current.previous.estimatedFalsePositiveRate();
+        // 查询命中任一代即为误判
+        return 1 - (1 - active) * (1 - previous);
+    }
+
+    long memoryBytes() {
+        Generations current = current();
+        return current.active.memoryBytes() + (current.previous == null ? 0 : current.previous.memoryBytes());
+    }
+
+    private Generations current() {
+        Generations current = generations.get();
+        long now = System.nanoTime();
+        while (now - current.rotateAt >= 0) {
+            Generations rotated = new Generations(new BloomFilter(expectedInsertions, falsePositiveRate),
+                    current.active, now + windowNanos);
+            if (generations.compareAndSet(current, rotated)) {
+                return rotated;
+            }
+            current = generations.get();
+        }
+        return current;
+    }
+
+    private static final class Generations {
+
+        final BloomFilter active;
+        final BloomFilter previous;
+        final long rotateAt;
+
+        Generations(BloomFilter active, BloomFilter previous, long rotateAt) {
+            this.active = active;
+            this.previous = previous;
+            this.rotateAt = rotateAt;
+        }
+    }
+}
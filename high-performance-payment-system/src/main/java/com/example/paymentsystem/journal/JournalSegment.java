@@ -0,0 +1,279 @@
+package com.example.paymentsystem.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 日志的一个内存映射段文件，文件名中包含段内第一条记录的序号。
+ * <p>
+ * 每条记录的布局如下（多字节整数均为大端序）：
+ * <pre>
+ * +--------+--------+----------+------------+-------------+---------+-------------+---------+----------+
+ * | length | crc32  | sequence | 受理时间     | orderId 长度 | orderId | 消息键长度    | 消息键   | 支付事件   |
+ * | int32  | int32  | int64    | int64 毫秒  | uint16      | UTF-8   | uint16      | UTF-8   | 剩余字节   |
+ * +--------+--------+----------+------------+-------------+---------+-------------+---------+----------+
+ * </pre>
+ * length 与 crc32 覆盖从 sequence 开始的记录体。受理时间在投递时作为接入时间戳消息头写入 Kafka。每条记录之后都写入一个值为 0 的长度作为段尾标记，
+ * 新段文件由操作系统以 0 填充，因此恢复时不会把上次崩溃前未提交的残留字节当作有效记录。
+ * <p>
+ * 只有写入线程调用 {@link #append}；已提交的位置和最后序号通过 volatile 字段发布，
+ * 投递线程使用独立的 {@link Reader} 读取已提交的记录，无需加锁。
+ */
+final class JournalSegment {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalSegment.class);
+
+    static final String PREFIX = "journal-";
+    static final String SUFFIX = ".seg";
+    static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int FIXED_BODY_BYTES = Long.BYTES * 2 + Short.BYTES;
+    private static final int KEY_LENGTH_BYTES = Short.BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writeView;
+    private final long baseSequence;
+    private final CRC32 crc = new CRC32();
+
+    private volatile int committedPosition;
+    private volatile long lastSequence;
+    private volatile boolean sealed;
+
+    private JournalSegment(Path file, FileChannel channel, MappedByteBuffer buffer, long baseSequence) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.writeView = buffer.duplicate();
+        this.baseSequence = baseSequence;
+        this.lastSequence = baseSequence - 1;
+    }
+
+    /**
+     * 创建一个新的段文件。
+     */
+    static JournalSegment create(Path directory, long baseSequence, int size) throws IOException {
+        Path file = directory.resolve(fileName(baseSequence));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), baseSequence);
+    }
+
+    /**
+     * 打开已有的段文件，并扫描出最后一条完整且校验通过的记录。
+     * 扫描在遇到长度为 0、校验和不符或序号不连续的记录时停止，之后的字节视为未提交，会被后续写入覆盖。
+     */
+    static JournalSegment open(Path file, long baseSequence) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        JournalSegment segment = new JournalSegment(file, channel, buffer, baseSequence);
+        segment.recover();
+        return segment;
+    }
+
+    static String fileName(long baseSequence) {
+        return String.format("%s%020d%s", PREFIX, baseSequence, SUFFIX);
+    }
+
+    static long parseBaseSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 编码后记录占用的字节数。
+     */
+    static int entrySize(byte[] orderId, byte[] key, byte[] paymentEvent) {
+        return HEADER_BYTES + FIXED_BODY_BYTES + orderId.length + KEY_LENGTH_BYTES + key.length + paymentEvent.length;
+    }
+
+    boolean hasRoomFor(int entrySize, int writePosition) {
+        return writePosition + entrySize <= buffer.capacity();
+    }
+
+    /**
+     * 在给定位置写入一条记录，返回下一条记录的写入位置。写入的内容在 {@link #commit} 之前对读取方不可见。
+     */
+    int append(int position, long sequence, long acceptedAtMillis, byte[] orderId, byte[] key, byte[] paymentEvent) {
+        int bodyLength = FIXED_BODY_BYTES + orderId.length + KEY_LENGTH_BYTES + key.length + paymentEvent.length;
+        int bodyStart = position + HEADER_BYTES;
+        buffer.putLong(bodyStart, sequence);
+        buffer.putLong(bodyStart + Long.BYTES, acceptedAtMillis);
+        buffer.putShort(bodyStart + Long.BYTES * 2, (short) orderId.length);
+        writeView.clear().position(bodyStart + FIXED_BODY_BYTES);
+        writeView.put(orderId).putShort((short) key.length).put(key).put(paymentEvent);
+        writeView.position(bodyStart).limit(bodyStart + bodyLength);
+        crc.reset();
+        crc.update(writeView);
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(position, bodyLength);
+        int next = bodyStart + bodyLength;
+        if (next + Integer.BYTES <= buffer.capacity()) {
+            buffer.putInt(next, 0);
+        }
+        return next;
+    }
+
+    /**
+     * 把到给定位置为止的内容刷到磁盘，然后向读取方发布。
+     */
+    void commit(int position, long sequence) {
+        buffer.force();
+        lastSequence = sequence;
+        committedPosition = position;
+    }
+
+    /**
+     * 标记该段不再写入，读取方读完已提交的内容后即可转到下一个段。
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    int committedPosition() {
+        return committedPosition;
+    }
+
+    long baseSequence() {
+        return baseSequence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * 关闭文件通道并删除段文件。映射内存在缓冲区被回收后释放，Linux 上删除仍被映射的文件是安全的。
+     */
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除日志段 {} 失败", file, e);
+        }
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("关闭日志段 {} 失败", file, e);
+        }
+    }
+
+    private void recover() {
+        int position = 0;
+        long expected = baseSequence;
+        while (position + HEADER_BYTES + FIXED_BODY_BYTES <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(position);
+            int bodyStart = position + HEADER_BYTES;
+            if (bodyLength < FIXED_BODY_BYTES || bodyStart + bodyLength > buffer.capacity()
+                    || buffer.getLong(bodyStart) != expected) {
+                break;
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position(bodyStart).limit(bodyStart + bodyLength);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                logger.warn("日志段 {} 在位置 {} 的记录校验失败，之后的内容将被丢弃", file, position);
+                break;
+            }
+            position = bodyStart + bodyLength;
+            expected++;
+        }
+        committedPosition = position;
+        lastSequence = expected - 1;
+    }
+
+    /**
+     * 已提交记录的顺序读取器，位置可以回退以便重新投递。
+     */
+    final class Reader {
+
+        private int position;
+
+        /**
+         * @return 下一条已提交的记录；已读到当前提交位置时返回 null。
+         */
+        Entry next() {
+            if (position >= committedPosition) {
+                return null;
+            }
+            int bodyLength = buffer.getInt(position);
+            int bodyStart = position + HEADER_BYTES;
+            long sequence = buffer.getLong(bodyStart);
+            long acceptedAtMillis = buffer.getLong(bodyStart + Long.BYTES);
+            int orderIdLength = buffer.getShort(bodyStart + Long.BYTES * 2) & 0xFFFF;
+            byte[] orderId = new byte[orderIdLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(bodyStart + FIXED_BODY_BYTES).limit(bodyStart + bodyLength);
+            view.get(orderId);
+            byte[] key = new byte[view.getShort() & 0xFFFF];
+            view.get(key);
+            byte[] paymentEvent = new byte[view.remaining()];
+            view.get(paymentEvent);
+            position = bodyStart + bodyLength;
+            return new Entry(sequence, acceptedAtMillis, new String(orderId, StandardCharsets.UTF_8),
+                    new String(key, StandardCharsets.UTF_8), paymentEvent);
+        }
+
+        /**
+         * @return 已读完该段全部内容且该段不会再有新记录。
+         */
+        boolean isExhausted() {
+            return sealed && position >= committedPosition;
+        }
+
+        int position() {
+            return position;
+        }
+
+        void reset(int position) {
+            this.position = position;
+        }
+
+        JournalSegment segment() {
+            return JournalSegment.this;
+        }
+    }
+
+    /**
+     * 从日志中读出的一条记录。
+     */
+    static final class Entry {
+
+        final long sequence;
+        final long acceptedAtMillis;
+        final String orderId;
+        final String key;
+        final byte[] paymentEvent;
+
+        Entry(long sequence, long acceptedAtMillis, String orderId, String key, byte[] paymentEvent) {
+            this.sequence = sequence;
+            this.acceptedAtMillis = acceptedAtMillis;
+            this.orderId = orderId;
+            this.key = key;
+            this.paymentEvent = paymentEvent;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package com.example.paymentsystem.journal;
+
+import com.example.paymentsystem.latency.IngestTimestamp;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 位于 Kafka 之前的本地预写日志。
+ * <p>
+ * 请求线程把编码后的支付事件放入有界队列，写入线程把一批记录追加到内存映射的段文件后只调用一次
+ * {@code force()}（组提交），落盘后才完成各自的 Future，因此客户端收到确认时事件已经持久化，
+ * 而确认延迟与 Kafka 的可用性无关。
+ * <p>
+ * 投递线程在后台按顺序把已提交的记录发送到 Kafka，等整批发送得到确认后推进检查点；发送失败时回退到批次起点重试。
+ * 事件以追加时给出的消息键发送，并带上受理时间作为接入时间戳消息头，最近投递过的 orderId 会被记住，重复的订单不会再次发送。所有记录都已确认的段文件会被删除。
+ * 重启时从检查点之后继续投递，检查点之后、崩溃之前已发送的记录可能被重复投递，由下游状态机按 orderId 去重。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.journal.enabled", havingValue = "true")
+public class PaymentJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentJournal.class);
+    private static final String PAYMENT_TOPIC = "payment-events";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxBatchSize;
+    private final int drainBatchSize;
+    private final long retryBackoffMillis;
+    private final long offerTimeoutMillis;
+    private final BlockingQueue<PendingAppend> queue;
+    private final ConcurrentLinkedDeque<JournalSegment> segments = new ConcurrentLinkedDeque<>();
+    private final Set<String> recentlyDelivered;
+
+    private final DistributionSummary commitSizeSummary;
+    private final Timer fsyncTimer;
+    private final Counter rejectedCounter;
+    private final Counter deduplicatedCounter;
+
+    // 以下字段只由写入线程访问
+    private JournalSegment active;
+    private int writePosition;
+    private long nextSequence;
+
+    private FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(Long.BYTES);
+    private volatile long committedSequence;
+    private volatile long deliveredSequence;
+
+    private volatile boolean running = true;
+    private Thread writer;
+    private Thread drainer;
+
+    @Autowired
+    public PaymentJournal(KafkaTemplate<String, byte[]> kafkaTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${payment.journal.dir:./data/journal}") String directory,
+                          @Value("${payment.journal.segment-size-mb:64}") int segmentSizeMb,
+                          @Value("${payment.journal.max-batch-size:512}") int maxBatchSize,
+                          @Value("${payment.journal.queue-capacity:16384}") int queueCapacity,
+                          @Value("${payment.journal.offer-timeout-ms:10}") long offerTimeoutMillis,
+                          @Value("${payment.journal.drain-batch-size:500}") int drainBatchSize,
+                          @Value("${payment.journal.dedup-capacity:100000}") int dedupCapacity,
+                          @Value("${payment.journal.retry-backoff-ms:1000}") long retryBackoffMillis) {
+        if (segmentSizeMb < 1 || segmentSizeMb > 1024) {
+            throw new IllegalArgumentException("payment.journal.segment-size-mb 必须在 1 到 1024 之间");
+        }
+        if (maxBatchSize < 1 || queueCapacity < 1 || drainBatchSize < 1) {
+            throw new IllegalArgumentException("payment.journal.max-batch-size、queue-capacity 和 drain-batch-size 必须大于 0");
+        }
+        this.kafkaTemplate = kafkaTemplate;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSizeMb << 20;
+        this.maxBatchSize = maxBatchSize;
+        this.drainBatchSize = drainBatchSize;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.recentlyDelivered = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupCapacity;
+            }
+        });
+        this.commitSizeSummary = DistributionSummary.builder("payment.journal.commit.size")
+                .description("每次组提交落盘的记录数")
+                .register(meterRegistry);
+        this.fsyncTimer = Timer.builder("payment.journal.fsync")
+                .description("日志段刷盘耗时")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("payment.journal.rejected")
+                .description("因队列已满被拒绝的追加数")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("payment.journal.deduplicated")
+                .description("因 orderId 重复而跳过投递的记录数")
+                .register(meterRegistry);
+        Gauge.builder("payment.journal.backlog", this, journal -> journal.committedSequence - journal.deliveredSequence)
+                .description("已落盘但尚未被 Kafka 确认的记录数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        deliveredSequence = readCheckpoint();
+        recover();
+
+        writer = new Thread(this::runWriteLoop, "payment-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        drainer = new Thread(this::runDrainLoop, "payment-journal-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * 追加一条支付事件。
+     *
+     * @param orderId      订单 ID，作为投递时的去重键。
+     * @param key              Kafka 消息键，决定事件所在的分区。
+     * @param acceptedAtMillis 受理时间，投递时写入 {@link IngestTimestamp#HEADER} 消息头。
+     * @param paymentEvent     编码后的支付事件。
+     * @return 事件落盘后以其日志序号完成的 Future；队列已满或写入失败时以异常完成。
+     */
+    public CompletableFuture<Long> append(String orderId, String key, long acceptedAtMillis, byte[] paymentEvent) {
+        byte[] orderIdBytes = orderId.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (orderIdBytes.length > 0xFFFF || keyBytes.length > 0xFFFF
+                || JournalSegment.entrySize(orderIdBytes, keyBytes, paymentEvent) + Integer.BYTES > segmentSize) {
+            CompletableFuture<Long> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("支付事件超出日志段容量"));
+            return failed;
+        }
+        PendingAppend pending = new PendingAppend(orderIdBytes, keyBytes, acceptedAtMillis, paymentEvent);
+        boolean accepted;
+        try {
+            accepted = running && queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            rejectedCounter.increment();
+            pending.future.completeExceptionally(new RejectedExecutionException("日志写入队列已满"));
+        }
+        return pending.future;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(JournalSegment.PREFIX) && name.endsWith(JournalSegment.SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+        long expected = -1;
+        for (Path file : files) {
+            long baseSequence = JournalSegment.parseBaseSequence(file);
+            if (expected >= 0 && baseSequence != expected) {
+                // 前一个段在崩溃时被截断，之后的段不再连续，只能丢弃
+                logger.warn("日志段 {} 与之前的段不连续，将被删除", file);
+                Files.delete(file);
+                continue;
+            }
+            JournalSegment previous = segments.peekLast();
+            if (previous != null) {
+                previous.seal();
+            }
+            JournalSegment segment = JournalSegment.open(file, baseSequence);
+            segments.add(segment);
+            expected = segment.lastSequence() + 1;
+        }
+        nextSequence = Math.max(expected, deliveredSequence + 1);
+        committedSequence = nextSequence - 1;
+
+        JournalSegment last = segments.peekLast();
+        if (last != null && last.lastSequence() == committedSequence) {
+            // 继续向最后一个段追加
+            active = last;
+            writePosition = last.committedPosition();
+        } else {
+            if (last != null) {
+                last.seal();
+            }
+            active = JournalSegment.create(directory, nextSequence, segmentSize);
+            segments.add(active);
+            writePosition = 0;
+        }
+        deleteDeliveredSegments();
+        logger.info("支付日志已打开: 目录={}, 段数={}, 下一序号={}, 已投递序号={}",
+                directory, segments.size(), nextSequence, deliveredSequence);
+    }
+
+    private void runWriteLoop() {
+        List<PendingAppend> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingAppend> batch) {
+        try {
+            for (PendingAppend pending : batch) {
+                int size = JournalSegment.entrySize(pending.orderId, pending.key, pending.paymentEvent) + Integer.BYTES;
+                if (!active.hasRoomFor(size, writePosition)) {
+                    roll();
+                }
+                pending.sequence = nextSequence;
+                writePosition = active.append(writePosition, nextSequence++, pending.acceptedAtMillis,
+                        pending.orderId, pending.key, pending.paymentEvent);
+            }
+            long start = System.nanoTime();
+            active.commit(writePosition, nextSequence - 1);
+            fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (IOException | RuntimeException e) {
+            // 已写入映射内存但未提交的记录对投递线程不可见，回退到最后提交的位置后由下一批覆盖。
+            // 换段时已提交的记录仍会被投递，客户端重试产生的重复订单由投递线程按 orderId 去重。
+            logger.error("支付日志写入失败，{} 条记录受影响", batch.size(), e);
+            nextSequence = active.lastSequence() + 1;
+            writePosition = active.committedPosition();
+            committedSequence = nextSequence - 1;
+            for (PendingAppend pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        committedSequence = nextSequence - 1;
+        commitSizeSummary.record(batch.size());
+        for (PendingAppend pending : batch) {
+            pending.future.complete(pending.sequence);
+        }
+    }
+
+    /**
+     * 提交当前段中已写入的记录，封存该段并创建下一个段。
+     */
+    private void roll() throws IOException {
+        active.commit(writePosition, nextSequence - 1);
+        JournalSegment next = JournalSegment.create(directory, nextSequence, segmentSize);
+        segments.add(next);
+        active.seal();
+        active = next;
+        writePosition = 0;
+    }
+
+    private void runDrainLoop() {
+        JournalSegment.Reader reader = null;
+        List<JournalSegment.Entry> batch = new ArrayList<>(drainBatchSize);
+        List<String> sentOrderIds = new ArrayList<>(drainBatchSize);
+        List<CompletableFuture<?>> sends = new ArrayList<>(drainBatchSize);
+        while (running) {
+            try {
+                if (reader == null) {
+                    JournalSegment first = segments.peekFirst();
+                    if (first == null) {
+                        TimeUnit.MILLISECONDS.sleep(1);
+                        continue;
+                    }
+                    reader = first.reader();
+                }
+                JournalSegment.Reader batchStartReader = reader;
+                int batchStartPosition = reader.position();
+                reader = readBatch(reader, batch);
+                if (batch.isEmpty()) {
+                    TimeUnit.MICROSECONDS.sleep(200);
+                    continue;
+                }
+                try {
+                    for (JournalSegment.Entry entry : batch) {
+                        if (!recentlyDelivered.add(entry.orderId)) {
+                            deduplicatedCounter.increment();
+                            continue;
+                        }
+                        sentOrderIds.add(entry.orderId);
+                        sends.add(kafkaTemplate.send(paymentRecord(entry)).completable());
+                    }
+                    CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+                } catch (ExecutionException | RuntimeException e) {
+                    logger.warn("向 Kafka 投递日志记录失败，{} 毫秒后从序号 {} 重试: {}",
+                            retryBackoffMillis, batch.get(0).sequence, e.toString());
+                    recentlyDelivered.removeAll(sentOrderIds);
+                    reader = batchStartReader;
+                    reader.reset(batchStartPosition);
+                    TimeUnit.MILLISECONDS.sleep(retryBackoffMillis);
+                    continue;
+                }
+                deliveredSequence = batch.get(batch.size() - 1).sequence;
+                writeCheckpoint(deliveredSequence);
+                deleteDeliveredSegments();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.error("支付日志投递线程发生意外错误", e);
+            } finally {
+                batch.clear();
+                sentOrderIds.clear();
+                sends.clear();
+            }
+        }
+    }
+
+    /**
+     * 从读取器开始读出至多 {@code drain-batch-size} 条未投递的记录，必要时跨入下一个段。
+     *
+     * @return 读取结束时所在段的读取器。
+     */
+    private JournalSegment.Reader readBatch(JournalSegment.Reader reader, List<JournalSegment.Entry> batch) {
+        while (batch.size() < drainBatchSize) {
+            JournalSegment.Entry entry = reader.next();
+            if (entry != null) {
+                if (entry.sequence > deliveredSequence) {
+                    batch.add(entry);
+                }
+                continue;
+            }
+            if (!reader.isExhausted()) {
+                break;
+            }
+            JournalSegment next = nextSegment(reader.segment());
+            if (next == null) {
+                break;
+            }
+            reader = next.reader();
+        }
+        return reader;
+    }
+
+    private static ProducerRecord<String, byte[]> paymentRecord(JournalSegment.Entry entry) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(PAYMENT_TOPIC, entry.key, entry.paymentEvent);
+        record.headers().add(IngestTimestamp.HEADER, IngestTimestamp.encode(entry.acceptedAtMillis));
+        return record;
+    }
+
+    private JournalSegment nextSegment(JournalSegment current) {
+        if (!segments.contains(current)) {
+            // 当前段已投递完并被删除，剩下的第一个段就是下一个
+            return segments.peekFirst();
+        }
+        boolean found = false;
+        for (JournalSegment segment : segments) {
+            if (found) {
+                return segment;
+            }
+            found = segment == current;
+        }
+        return null;
+    }
+
+    private void deleteDeliveredSegments() {
+        JournalSegment first;
+        while ((first = segments.peekFirst()) != null && first.isSealed()
+                && first.lastSequence() <= deliveredSequence && segments.size() > 1) {
+            segments.pollFirst();
+            first.delete();
+            logger.debug("日志段 {} 已全部投递，已删除", first.baseSequence());
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        checkpointBuffer.clear();
+        if (checkpointChannel.read(checkpointBuffer, 0) < Long.BYTES) {
+            return -1;
+        }
+        return checkpointBuffer.getLong(0);
+    }
+
+    /**
+     * 检查点只在投递线程中写入，且不强制刷盘：丢失最近的检查点只会导致少量记录重复投递。
+     */
+    private void writeCheckpoint(long sequence) {
+        checkpointBuffer.clear();
+        checkpointBuffer.putLong(0, sequence);
+        try {
+            checkpointChannel.write(checkpointBuffer, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        PendingAppend pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("支付日志已关闭"));
+        }
+        if (drainer != null) {
+            drainer.interrupt();
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        for (JournalSegment segment : segments) {
+            segment.close();
+        }
+        try {
+            if (checkpointChannel != null) {
+                checkpointChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("关闭日志检查点文件失败", e);
+        }
+    }
+
+    private static final class PendingAppend {
+
+        private final byte[] orderId;
+        private final byte[] key;
+        private final long acceptedAtMillis;
+        private final byte[] paymentEvent;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private long sequence;
+
+        private PendingAppend(byte[] orderId, byte[] key, long acceptedAtMillis, byte[] paymentEvent) {
+            this.orderId = orderId;
+            this.key = key;
+            this.acceptedAtMillis = acceptedAtMillis;
+            this.paymentEvent = paymentEvent;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.paymentsystem.latency;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 随支付事件写入 Kafka 消息头的接入时间戳，消费侧据此计算端到端延迟。
+ * <p>
+ * 值为接入实例的墙上时间（毫秒，8 字节大端），跨实例计算时包含各主机之间的时钟偏差。
+ */
+public final class IngestTimestamp {
+
+    /**
+     * Kafka 消息头名称。
+     */
+    public static final String HEADER = "payment-ingest-ts";
+
+    private IngestTimestamp() {
+    }
+
+    public static byte[] encode(long epochMillis) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(epochMillis).array();
+    }
+
+    /**
+     * @return 消息头中的接入时间戳；消息没有该头（例如由旧版本发布）时返回 -1。
+     */
+    public static long read(Headers headers) {
+        Header header = headers.lastHeader(HEADER);
+        if (header == null || header.value() == null || header.value().length != Long.BYTES) {
+            return -1;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+}
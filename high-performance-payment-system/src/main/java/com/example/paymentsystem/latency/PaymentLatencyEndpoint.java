@@ -0,0 +1,70 @@
+package com.example.paymentsystem.latency;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /actuator/paymentlatency}：按阶段和分区报告流水线延迟的 p50/p99/p999（毫秒）。
+ * <p>
+ * 百分位为最近一个统计窗口内的值，count 为启动以来的累计次数。
+ */
+@Component
+@Endpoint(id = "paymentlatency")
+public class PaymentLatencyEndpoint {
+
+    private final PipelineLatency latency;
+
+    @Autowired
+    public PaymentLatencyEndpoint(PipelineLatency latency) {
+        this.latency = latency;
+    }
+
+    @ReadOperation
+    public Map<String, Object> latency() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (PipelineStage stage : PipelineStage.values()) {
+            Map<String, Object> summary = summarize(latency.stageTimer(stage));
+            if (stage.isPartitioned()) {
+                Map<Integer, Object> partitions = new TreeMap<>();
+                latency.partitionTimers(stage).forEach((partition, timer) -> partitions.put(partition, summarize(timer)));
+                summary.put("partitions", partitions);
+            }
+            stages.put(stage.getLabel(), summary);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("window", latency.getWindow().toString());
+        result.put("unit", "milliseconds");
+        result.put("stages", stages);
+        return result;
+    }
+
+    private static Map<String, Object> summarize(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", timer.count());
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put(label(percentile.percentile()), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        summary.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        return summary;
+    }
+
+    private static String label(double percentile) {
+        // 0.5 -> p50, 0.99 -> p99, 0.999 -> p999
+        String digits = Double.toString(percentile * 100).replace(".", "");
+        while (digits.length() > 2 && digits.endsWith("0")) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return "p" + digits;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.paymentsystem.latency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付流水线各阶段的延迟计时器。
+ * <p>
+ * 每个阶段一个 {@code payment.pipeline.latency} 计时器（按 stage 标签区分）；消费侧的阶段另有按分区的
+ * {@code payment.pipeline.partition.latency} 计时器，用于定位尾延迟来自哪个分区。计时器在客户端计算 p50/p99/p999，
+ * 底层为 HdrHistogram，统计窗口为最近 {@code payment.latency.window-seconds} 秒，记录一次的开销为常数且不分配内存。
+ */
+@Component
+public class PipelineLatency {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private final MeterRegistry meterRegistry;
+    private final Duration window;
+    private final Map<PipelineStage, Timer> stageTimers = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, Map<Integer, Timer>> partitionTimers = new EnumMap<>(PipelineStage.class);
+
+    @Autowired
+    public PipelineLatency(MeterRegistry meterRegistry,
+                           @Value("${payment.latency.window-seconds:60}") long windowSeconds) {
+        this.meterRegistry = meterRegistry;
+        this.window = Duration.ofSeconds(windowSeconds);
+        for (PipelineStage stage : PipelineStage.values()) {
+            stageTimers.put(stage, Timer.builder("payment.pipeline.latency")
+                    .description("支付流水线各阶段的耗时")
+                    .tag("stage", stage.getLabel())
+                    .publishPercentiles(PERCENTILES)
+                    .distributionStatisticExpiry(window)
+                    .register(meterRegistry));
+            if (stage.isPartitioned()) {
+                partitionTimers.put(stage, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * 记录一个接入侧阶段的耗时。
+     */
+    public void record(PipelineStage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一个消费侧阶段的耗时，同时计入阶段总体和所在分区。
+     */
+    public void record(PipelineStage stage, int partition, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        partitionTimer(stage, partition).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 按接入时间戳记录截至当前时刻的耗时。
+     *
+     * @param ingestMillis {@link IngestTimestamp#read} 的结果，为 -1 时忽略。
+     */
+    public void recordSinceIngest(PipelineStage stage, int partition, long ingestMillis) {
+        if (ingestMillis < 0) {
+            return;
+        }
+        // 主机之间的时钟偏差可能使差值为负，按 0 计
+        long millis = Math.max(0, System.currentTimeMillis() - ingestMillis);
+        record(stage, partition, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    Timer stageTimer(PipelineStage stage) {
+        return stageTimers.get(stage);
+    }
+
+    Map<Integer, Timer> partitionTimers(PipelineStage stage) {
+        Map<Integer, Timer> timers = partitionTimers.get(stage);
+        return timers == null ? Map.of() : timers;
+    }
+
+    Duration getWindow() {
+        return window;
+    }
+
+    private Timer partitionTimer(PipelineStage stage, int partition) {
+        Map<Integer, Timer> timers = partitionTimers.get(stage);
+        Timer timer = timers.get(partition);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(partition, p -> Timer.builder("payment.pipeline.partition.latency")
+                    .description("支付流水线消费侧各阶段按分区的耗时")
+                    .tag("stage", stage.getLabel())
+                    .tag("partition", Integer.toString(p))
+                    .publishPercentiles(PERCENTILES)
+                    .distributionStatisticExpiry(window)
+                    .register(meterRegistry));
+        }
+        return timer;
+    }
+}
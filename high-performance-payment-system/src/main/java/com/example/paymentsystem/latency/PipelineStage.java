@@ -0,0 +1,69 @@
+package com.example.paymentsystem.latency;
+
+/**
+ * 支付流水线中被计时的阶段。
+ */
+public enum PipelineStage {
+
+    /**
+     * 接入端点从收到请求到返回响应。
+     */
+    INGEST("ingest", false),
+
+    /**
+     * PENDING 状态提交给批量写入器到 Redis 管道确认。
+     */
+    REDIS_WRITE("redis-write", false),
+
+    /**
+     * 支付事件发送到 Kafka 到 Broker 确认。
+     */
+    KAFKA_ACK("kafka-ack", false),
+
+    /**
+     * 启用预写日志时，支付事件追加到日志到落盘确认。
+     */
+    JOURNAL_WRITE("journal-write", false),
+
+    /**
+     * 从接入时间戳到消费者收到消息，包括 Kafka 传输和消费积压。
+     */
+    CONSUMER_RECEIVE("consumer-receive", true),
+
+    /**
+     * 事件发布到分区状态机到处理完成。
+     */
+    STATE_UPDATE("state-update", true),
+
+    /**
+     * 消费者把状态迁移通过管道写入 Redis。
+     */
+    STATUS_WRITE("status-write", true),
+
+    /**
+     * 从接入时间戳到最终状态写入 Redis。
+     */
+    END_TO_END("end-to-end", true);
+
+    private final String label;
+    private final boolean partitioned;
+
+    PipelineStage(String label, boolean partitioned) {
+        this.label = label;
+        this.partitioned = partitioned;
+    }
+
+    /**
+     * @return 用于指标标签和端点输出的阶段名称。
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return 该阶段发生在消费侧，额外按 Kafka 分区统计。
+     */
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.paymentsystem.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 接入端点前的自适应并发限制（梯度算法）。
+ * <p>
+ * 接入路径把 Redis 写入和 Kafka 确认（或本地日志落盘）的耗时作为样本报告给限制器。后台线程每个更新周期计算一次
+ * 本周期的平均耗时（短期 RTT），并与其指数移动平均（长期 RTT）比较：
+ * {@code gradient = clamp(tolerance × longRtt / shortRtt, 0.5, 1)}，
+ * {@code newLimit = limit × gradient + √limit}，再按 {@code smoothing} 与旧值平滑并限制在 [min, max] 之间。
+ * 依赖变慢时短期 RTT 上升，限制随之收缩；恢复后限制以每周期约 √limit 的速度增长。依赖调用失败时限制直接乘以 0.9。
+ * 并发数低于限制的一半时说明负载并不受限，此时不再提高限制。
+ * <p>
+ * 请求在并发数达到限制时最多等待 {@code max-wait-ms}，等待中的请求数超过 {@code max-queue} 或等待超时即被拒绝。
+ * 在 payment.limiter.enabled=true（默认）时启用。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.limiter.enabled", havingValue = "true", matchIfMissing = true)
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double DROP_BACKOFF = 0.9;
+    // 长期 RTT 约等于最近 100 个更新周期的平均值
+    private static final double LONG_RTT_ALPHA = 2.0 / (100 + 1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final double smoothing;
+    private final double tolerance;
+    private final long updateIntervalMillis;
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final LongAdder sampleNanos = new LongAdder();
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final Counter shed;
+    private final ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "payment-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下字段只由更新线程写入
+    private volatile double estimatedLimit;
+    private volatile int limit;
+    private volatile double longRttNanos;
+    private volatile double shortRttNanos;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${payment.limiter.initial-limit:100}") int initialLimit,
+                                      @Value("${payment.limiter.min-limit:10}") int minLimit,
+                                      @Value("${payment.limiter.max-limit:1000}") int maxLimit,
+                                      @Value("${payment.limiter.max-queue:50}") int maxQueue,
+                                      @Value("${payment.limiter.max-wait-ms:50}") long maxWaitMillis,
+                                      @Value("${payment.limiter.smoothing:0.2}") double smoothing,
+                                      @Value("${payment.limiter.rtt-tolerance:1.5}") double tolerance,
+                                      @Value("${payment.limiter.update-interval-ms:100}") long updateIntervalMillis,
+                                      @Value("${payment.limiter.retry-after-seconds:1}") long retryAfterSeconds) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("payment.limiter 的限制需满足 1 <= min-limit <= initial-limit <= max-limit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+
+        this.shed = Counter.builder("payment.limiter.shed")
+                .description("因超出并发限制被拒绝的请求数")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("当前的并发限制")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.in-flight", inFlight, AtomicInteger::get)
+                .description("正在处理的请求数")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.queue", queued, AtomicInteger::get)
+                .description("等待并发名额的请求数")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.rtt.long", this, limiter -> limiter.longRttNanos / 1_000_000)
+                .description("依赖耗时的长期平均值")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.rtt.short", this, limiter -> limiter.shortRttNanos / 1_000_000)
+                .description("最近一个更新周期的依赖平均耗时")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        updater.scheduleWithFixedDelay(this::updateLimit, updateIntervalMillis, updateIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return 被拒绝的请求建议的重试间隔，用于 {@code Retry-After} 响应头。
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * 申请一个并发名额，已满时最多等待 {@code max-wait-ms}。
+     *
+     * @return 获得名额时返回 true，调用方必须在请求结束后调用 {@link #release()}；被拒绝时返回 false。
+     */
+    public boolean tryAcquire() {
+        if (acquireNow()) {
+            return true;
+        }
+        if (maxWaitNanos > 0) {
+            try {
+                if (queued.incrementAndGet() <= maxQueue && awaitPermit()) {
+                    return true;
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        shed.increment();
+        return false;
+    }
+
+    private boolean awaitPermit() {
+        long remaining = maxWaitNanos;
+        lock.lock();
+        try {
+            while (!acquireNow()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean acquireNow() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (current + 1 > peakInFlight.get()) {
+                    peakInFlight.accumulateAndGet(current + 1, Math::max);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还 {@link #tryAcquire()} 获得的名额。
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (queued.get() > 0) {
+            lock.lock();
+            try {
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 报告一次依赖调用（Redis 写入、Kafka 确认或日志落盘）的耗时。
+     */
+    public void onSample(long latencyNanos) {
+        sampleNanos.add(latencyNanos);
+        sampleCount.increment();
+    }
+
+    /**
+     * 报告一次依赖调用失败或被依赖拒绝，下个更新周期限制会直接收缩。
+     */
+    public void onDropped() {
+        drops.increment();
+    }
+
+    /**
+     * 执行一个更新周期。由更新线程按 {@code update-interval-ms} 调用，包可见以便测试直接驱动。
+     */
+    void updateLimit() {
+        try {
+            long count = sampleCount.sumThenReset();
+            long total = sampleNanos.sumThenReset();
+            long dropped = drops.sumThenReset();
+            int peak = peakInFlight.getAndSet(inFlight.get());
+            double current = estimatedLimit;
+            double next;
+            if (dropped > 0) {
+                next = current * DROP_BACKOFF;
+            } else if (count == 0) {
+                return;
+            } else {
+                double shortRtt = (double) total / count;
+                double longRtt = longRttNanos == 0 ? shortRtt : longRttNanos;
+                longRtt += LONG_RTT_ALPHA * (shortRtt - longRtt);
+                if (longRtt / shortRtt > 2) {
+                    // 依赖已明显恢复，长期 RTT 向短期值收敛，避免旧的高延迟让限制长时间偏高
+                    longRtt *= 0.95;
+                }
+                shortRttNanos = shortRtt;
+                longRttNanos = longRtt;
+                if (peak < current / 2) {
+                    // 并发远低于限制，样本不能说明限制是否合适
+                    return;
+                }
+                double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRtt / shortRtt));
+                double target = current * gradient + Math.sqrt(current);
+                next = current * (1 - smoothing) + target * smoothing;
+            }
+            next = Math.max(minLimit, Math.min(maxLimit, next));
+            estimatedLimit = next;
+            int previous = limit;
+            int rounded = (int) next;
+            limit = rounded;
+            if (rounded != previous) {
+                logger.debug("并发限制调整为 {} (in-flight 峰值 {})", rounded, peak);
+            }
+            if (rounded > previous && queued.get() > 0) {
+                lock.lock();
+                try {
+                    released.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("更新并发限制失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updater.shutdownNow();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.paymentsystem.money;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ISO 4217 货币及其最小单位精度。
+ * <p>
+ * 所有实例在类加载时按 JDK 的货币表一次性创建并缓存，用法与枚举相同：同一货币总是同一个实例，可以用 {@code ==} 比较。
+ * 三个 ASCII 字母被打包成一个 24 位整数，查找时通过二分查找直接返回缓存的实例，
+ * 因此从字节、字符数组或字符串解析已知货币都不会产生任何分配。
+ */
+public final class CurrencyUnit {
+
+    private static final int[] PACKED;
+    private static final CurrencyUnit[] UNITS;
+
+    static {
+        TreeMap<Integer, CurrencyUnit> sorted = new TreeMap<>();
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            String code = currency.getCurrencyCode();
+            if (isIsoCode(code)) {
+                // 贵金属、测试代码等没有最小单位的货币，精度按 0 处理
+                int digits = Math.max(currency.getDefaultFractionDigits(), 0);
+                sorted.put(pack(code.charAt(0), code.charAt(1), code.charAt(2)), new CurrencyUnit(code.intern(), digits));
+            }
+        }
+        PACKED = new int[sorted.size()];
+        UNITS = new CurrencyUnit[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Integer, CurrencyUnit> entry : sorted.entrySet()) {
+            PACKED[i] = entry.getKey();
+            UNITS[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    private final String code;
+    private final int minorDigits;
+    private final long minorFactor;
+
+    private CurrencyUnit(String code, int minorDigits) {
+        this.code = code;
+        this.minorDigits = minorDigits;
+        long factor = 1;
+        for (int i = 0; i < minorDigits; i++) {
+            factor *= 10;
+        }
+        this.minorFactor = factor;
+    }
+
+    /**
+     * @return 货币代码对应的实例。
+     * @throws IllegalArgumentException 不是已知的 ISO 4217 货币代码。
+     */
+    public static CurrencyUnit of(String code) {
+        CurrencyUnit unit = code == null || code.length() != 3
+                ? null
+                : find(pack(code.charAt(0), code.charAt(1), code.charAt(2)));
+        if (unit == null) {
+            throw new IllegalArgumentException("未知的货币代码: " + code);
+        }
+        return unit;
+    }
+
+    /**
+     * 从字符数组的一段中查找货币，供流式 JSON 解析使用。
+     *
+     * @return 对应的实例；不是已知货币代码时返回 null。
+     */
+    public static CurrencyUnit find(char[] chars, int offset, int length) {
+        if (length != 3) {
+            return null;
+        }
+        return find(pack(chars[offset], chars[offset + 1], chars[offset + 2]));
+    }
+
+    /**
+     * 从三个 ASCII 字节中查找货币，供二进制编解码器使用。
+     *
+     * @return 对应的实例；不是已知货币代码时返回 null。
+     */
+    public static CurrencyUnit find(byte b0, byte b1, byte b2) {
+        return find(pack(b0, b1, b2));
+    }
+
+    private static CurrencyUnit find(int packed) {
+        int index = Arrays.binarySearch(PACKED, packed);
+        return index >= 0 ? UNITS[index] : null;
+    }
+
+    private static boolean isIsoCode(String code) {
+        if (code.length() != 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int pack(int c0, int c1, int c2) {
+        if ((c0 | c1 | c2) > 0x7F) {
+            return -1;
+        }
+        return c0 << 16 | c1 << 8 | c2;
+    }
+
+    /**
+     * @return 三个大写字母的货币代码，为驻留字符串。
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return 最小单位的小数位数，例如 USD 为 2，JPY 为 0，BHD 为 3。
+     */
+    public int getMinorDigits() {
+        return minorDigits;
+    }
+
+    /**
+     * @return 一个主单位包含的最小单位数，即 10 的 {@link #getMinorDigits()} 次方。
+     */
+    public long getMinorFactor() {
+        return minorFactor;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.paymentsystem.money;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * 以最小单位定点存储的不可变金额，例如 USD 10.50 保存为 1050 美分。
+ * <p>
+ * 与 {@link BigDecimal} 相比，一个金额只占一个小对象，比较和加减都是 long 运算；
+ * 精度由货币决定，超出货币精度的金额在构造时即被拒绝，而不是在后续计算中被悄悄舍入。
+ * 所有运算在溢出时抛出 {@link ArithmeticException}，不同货币之间的运算抛出 {@link IllegalArgumentException}。
+ */
+public final class Money implements Comparable<Money> {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // 超过此值的指数必然使金额溢出或超出精度，提前拒绝以免小数位数的计算溢出
+    private static final int MAX_EXPONENT = 1000;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final CurrencyUnit currency;
+    private final long minorUnits;
+
+    private Money(CurrencyUnit currency, long minorUnits) {
+        this.currency = currency;
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * @param currency   货币。
+     * @param minorUnits 以最小单位计的金额。
+     */
+    public static Money ofMinor(CurrencyUnit currency, long minorUnits) {
+        return new Money(Objects.requireNonNull(currency, "currency"), minorUnits);
+    }
+
+    /**
+     * 由未缩放的整数值和小数位数构造金额，即金额为 {@code unscaled × 10^-scale}。
+     *
+     * @throws ArithmeticException 小数位数超出货币精度且无法无损转换，或结果溢出。
+     */
+    public static Money ofScaled(CurrencyUnit currency, long unscaled, int scale) {
+        int digits = currency.getMinorDigits();
+        if (scale == digits) {
+            return new Money(currency, unscaled);
+        }
+        if (scale < digits) {
+            return new Money(currency, Math.multiplyExact(unscaled, powerOfTen(digits - scale)));
+        }
+        long divisor = powerOfTen(scale - digits);
+        if (unscaled % divisor != 0) {
+            throw new ArithmeticException("金额的小数位数超出 " + currency + " 的精度 " + digits);
+        }
+        return new Money(currency, unscaled / divisor);
+    }
+
+    /**
+     * 由 {@link BigDecimal} 构造金额，用于与外部 API 互通。
+     *
+     * @throws ArithmeticException 小数位数超出货币精度，或超出 long 的表示范围。
+     */
+    public static Money of(CurrencyUnit currency, BigDecimal amount) {
+        return new Money(currency, amount.movePointRight(currency.getMinorDigits()).longValueExact());
+    }
+
+    /**
+     * 解析十进制金额字符串，例如 {@code "10.5"}、{@code "-3"} 或 {@code "1.05e1"}。
+     *
+     * @throws NumberFormatException 格式不正确。
+     * @throws ArithmeticException   小数位数超出货币精度，或结果溢出。
+     */
+    public static Money parse(CurrencyUnit currency, String text) {
+        return parse(currency, text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * 解析字符数组中的一段十进制金额，逐位累加为 long，不创建任何中间对象。
+     * <p>
+     * 接受 {@code e} 或 {@code E} 引导的十进制指数，JSON 数字的金额可能以这种形式出现；指数只调整小数位数，
+     * 结果同样必须能按货币精度无损表示。
+     *
+     * @throws NumberFormatException 格式不正确。
+     * @throws ArithmeticException   小数位数超出货币精度，或结果溢出。
+     */
+    public static Money parse(CurrencyUnit currency, char[] chars, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        boolean negative = pos < end && chars[pos] == '-';
+        if (negative || pos < end && chars[pos] == '+') {
+            pos++;
+        }
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        int exponent = 0;
+        for (; pos < end; pos++) {
+            char c = chars[pos];
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if ((c == 'e' || c == 'E') && digits > 0) {
+                exponent = parseExponent(chars, offset, length, pos + 1);
+                break;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("无效的金额: " + new String(chars, offset, length));
+            }
+            unscaled = Math.addExact(Math.multiplyExact(unscaled, 10), c - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("无效的金额: " + new String(chars, offset, length));
+        }
+        return ofScaled(currency, negative ? -unscaled : unscaled, Math.subtractExact(Math.max(scale, 0), exponent));
+    }
+
+    private static int parseExponent(char[] chars, int offset, int length, int start) {
+        int end = offset + length;
+        int pos = start;
+        boolean negative = pos < end && chars[pos] == '-';
+        if (negative || pos < end && chars[pos] == '+') {
+            pos++;
+        }
+        if (pos == end) {
+            throw new NumberFormatException("无效的金额: " + new String(chars, offset, length));
+        }
+        int exponent = 0;
+        for (; pos < end; pos++) {
+            char c = chars[pos];
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("无效的金额: " + new String(chars, offset, length));
+            }
+            exponent = exponent * 10 + c - '0';
+            if (exponent > MAX_EXPONENT) {
+                throw new ArithmeticException("金额的指数超出范围: " + new String(chars, offset, length));
+            }
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    static long powerOfTen(int exponent) {
+        if (exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("10^" + exponent + " 超出 long 的表示范围");
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+
+    public CurrencyUnit getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return 以最小单位计的金额。
+     */
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public Money plus(Money other) {
+        checkSameCurrency(other);
+        return new Money(currency, Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        checkSameCurrency(other);
+        return new Money(currency, Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money times(long factor) {
+        return new Money(currency, Math.multiplyExact(minorUnits, factor));
+    }
+
+    public Money negate() {
+        return new Money(currency, Math.negateExact(minorUnits));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getMinorDigits());
+    }
+
+    /**
+     * 把金额按货币精度格式化为十进制数写入字符数组，例如 1050 美分写为 {@code 10.50}。
+     *
+     * @param target 目标数组，剩余空间至少 22 个字符。
+     * @return 写入的字符数。
+     */
+    public int formatAmount(char[] target, int offset) {
+        int digits = currency.getMinorDigits();
+        int pos = offset;
+        long value = minorUnits;
+        if (value < 0) {
+            target[pos++] = '-';
+        }
+        // 从个位开始倒序写出 |value| 的各位数字，至少写出 digits + 1 位，不足时补零
+        int start = pos;
+        int written = 0;
+        do {
+            if (written == digits && digits > 0) {
+                target[pos++] = '.';
+            }
+            target[pos++] = (char) ('0' + Math.abs(value % 10));
+            value /= 10;
+            written++;
+        } while (value != 0 || written <= digits);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char c = target[i];
+            target[i] = target[j];
+            target[j] = c;
+        }
+        return pos - offset;
+    }
+
+    private void checkSameCurrency(Money other) {
+        if (other.currency != currency) {
+            throw new IllegalArgumentException("货币不一致: " + currency + " 与 " + other.currency);
+        }
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency == money.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * currency.hashCode() + Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        char[] buffer = new char[24];
+        return currency.getCode() + " " + new String(buffer, 0, formatAmount(buffer, 0));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.paymentsystem.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按容量和存活时间淘汰的本地缓存。
+ * <p>
+ * 键按哈希分散到多个分段，每个分段是一个按访问顺序排列的 {@link LinkedHashMap}，由各自的锁保护，
+ * 超出分段容量时淘汰最久未访问的条目。过期条目在被读到时移除，其余的随容量淘汰自然清出。
+ */
+final class NearCache<V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final List<Segment<V>> segments = new ArrayList<>(SEGMENTS);
+    private final long ttlNanos;
+
+    NearCache(int maxSize, long ttlNanos) {
+        if (maxSize < 1 || ttlNanos < 1) {
+            throw new IllegalArgumentException("缓存容量和存活时间必须大于 0");
+        }
+        this.ttlNanos = ttlNanos;
+        int segmentCapacity = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new Segment<>(segmentCapacity));
+        }
+    }
+
+    /**
+     * @return 未过期的缓存值，不存在或已过期时返回 null。
+     */
+    V get(String key) {
+        Segment<V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                segment.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    void put(String key, V value) {
+        Segment<V> segment = segmentFor(key);
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    void invalidate(String key) {
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments.get((hash ^ hash >>> 16) & (SEGMENTS - 1));
+    }
+
+    private static final class Entry<V> {
+
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+
+        // 分段从不被序列化，声明版本号只是为了满足 LinkedHashMap 的 Serializable 约定
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(Math.min(capacity, 1 << 16), 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            return size() > capacity;
+        }
+    }
+}
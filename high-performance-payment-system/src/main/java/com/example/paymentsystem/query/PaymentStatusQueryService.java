@@ -0,0 +1,121 @@
+package com.example.paymentsystem.query;
+
+import com.example.paymentsystem.status.PaymentStatusEntry;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import com.example.paymentsystem.status.StatusInvalidations;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付状态查询，在 Redis 之前放置一层本地近端缓存。
+ * <p>
+ * 命中缓存时不访问 Redis；未命中时经 {@link PaymentStatusLayout#latest(String)} 读取流中的最新记录。
+ * 同一 orderId 的并发未命中合并为一次加载，其余请求等待同一个结果，热点订单不会同时向 Redis 发出多个查询。
+ * <p>
+ * 消费者写入状态迁移后会在 {@link StatusInvalidations#CHANNEL} 上发布变更通知，收到通知即失效对应条目和进行中的加载。
+ * Pub/Sub 不保证送达，订阅断线期间的通知会丢失，此时由存活时间限制状态滞后的上限。
+ * 查询不到的订单不缓存，订单在首次写入 PENDING 之后即可被查到。
+ */
+@Service
+public class PaymentStatusQueryService implements MessageListener {
+
+    private final PaymentStatusLayout layout;
+    private final NearCache<PaymentStatusEntry> cache;
+    private final ConcurrentMap<String, CompletableFuture<Optional<PaymentStatusEntry>>> loading =
+            new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter invalidations;
+
+    @Autowired
+    public PaymentStatusQueryService(PaymentStatusLayout layout,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${payment.query.cache.max-size:100000}") int maxSize,
+                                     @Value("${payment.query.cache.ttl-ms:10000}") long ttlMillis) {
+        this.layout = layout;
+        this.cache = new NearCache<>(maxSize, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.coalesced = requests(meterRegistry, "coalesced");
+        this.invalidations = Counter.builder("payment.query.cache.invalidations")
+                .description("收到的状态变更通知所失效的订单数")
+                .register(meterRegistry);
+        Gauge.builder("payment.query.cache.size", cache, NearCache::size)
+                .description("近端缓存中的订单数")
+                .register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("payment.query.cache.requests")
+                .description("状态查询次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查询订单的最新状态。
+     *
+     * @param orderId 订单 ID。
+     * @return 最新的状态记录，不含支付事件；订单不存在时为空。
+     */
+    public Optional<PaymentStatusEntry> find(String orderId) {
+        PaymentStatusEntry cached = cache.get(orderId);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        CompletableFuture<Optional<PaymentStatusEntry>> load = new CompletableFuture<>();
+        CompletableFuture<Optional<PaymentStatusEntry>> inFlight = loading.putIfAbsent(orderId, load);
+        if (inFlight != null) {
+            coalesced.increment();
+            return await(inFlight);
+        }
+        misses.increment();
+        try {
+            Optional<PaymentStatusEntry> latest = layout.latest(orderId).map(entry ->
+                    new PaymentStatusEntry(entry.getOrderId(), entry.getRecordId(), entry.getStatus(), null));
+            // 加载期间收到变更通知时，加载已从 loading 中移除，读到的可能是旧值，不写入缓存
+            if (loading.remove(orderId, load) && latest.isPresent()) {
+                cache.put(orderId, latest.get());
+            }
+            load.complete(latest);
+            return latest;
+        } catch (RuntimeException e) {
+            loading.remove(orderId, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Optional<PaymentStatusEntry> await(CompletableFuture<Optional<PaymentStatusEntry>> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        for (String orderId : StatusInvalidations.parse(message.getBody())) {
+            loading.remove(orderId);
+            cache.invalidate(orderId);
+            invalidations.increment();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.paymentsystem.service;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.latency.IngestTimestamp;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.settlement.SettlementAggregator;
+import com.example.paymentsystem.state.PaymentStateMachine;
+import com.example.paymentsystem.state.TransitionBuffer;
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量、按分区并行的支付事件消费者。
+ * <p>
+ * 每次 poll 得到的整批消息按分区拆分，同一分区的消息总是交给同一个单线程工作者按顺序解码，
+ * 并发布到该分区的状态机，因此同一 orderId（即同一消息键）的处理顺序不变。所有分区处理完成后，
+ * 本批次产生的状态迁移通过一次 Redis 管道写入，监听方法返回后由容器统一提交位移。
+ * <p>
+ * 在 payment.consumer.mode=batch 时启用。
+ */
+@Service
+@ConditionalOnProperty(name = "payment.consumer.mode", havingValue = "batch")
+public class BatchPaymentConsumer implements ConsumerSeekAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchPaymentConsumer.class);
+
+    private final PaymentEventProcessor paymentEventProcessor;
+    private final PaymentStateMachine stateMachine;
+    private final StringRedisTemplate redisTemplate;
+    private final PaymentStatusLayout statusLayout;
+    private final MeterRegistry meterRegistry;
+    private final PipelineLatency latency;
+    private final SettlementAggregator settlement;
+    private final ExecutorService[] workers;
+
+    private final Counter recordsCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer batchTimer;
+    private final Map<Integer, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+
+    /**
+     * @param settlement 启用 payment.settlement.enabled 时存在的结算汇总；已结算的支付由分区工作者计入。
+     */
+    @Autowired
+    public BatchPaymentConsumer(PaymentEventProcessor paymentEventProcessor,
+                                PaymentStateMachine stateMachine,
+                                StringRedisTemplate redisTemplate,
+                                PaymentStatusLayout statusLayout,
+                                MeterRegistry meterRegistry,
+                                PipelineLatency latency,
+                                ObjectProvider<SettlementAggregator> settlement,
+                                @Value("${payment.consumer.batch.workers:3}") int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("payment.consumer.batch.workers 必须大于 0");
+        }
+        this.paymentEventProcessor = paymentEventProcessor;
+        this.stateMachine = stateMachine;
+        this.redisTemplate = redisTemplate;
+        this.statusLayout = statusLayout;
+        this.meterRegistry = meterRegistry;
+        this.latency = latency;
+        this.settlement = settlement.getIfAvailable();
+        this.workers = new ExecutorService[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            String threadName = "payment-partition-worker-" + i;
+            this.workers[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, threadName));
+        }
+        this.recordsCounter = Counter.builder("payment.consumer.records")
+                .description("批量模式下处理的支付事件数")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("payment.consumer.batch.size")
+                .description("每次 poll 得到的批次大小")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("payment.consumer.batch.duration")
+                .description("处理一个批次（含 Redis 管道写入）的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 批量监听 payment-events 主题上的消息。
+     *
+     * @param records  本次 poll 得到的全部消息。
+     * @param consumer 当前监听容器的消费者，仅用于读取本地缓存的分区积压，不发起远程调用。
+     */
+    @KafkaListener(topics = "payment-events", groupId = "payment-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            properties = "max.poll.records=${payment.consumer.batch.max-poll-records:500}")
+    public void consumeBatch(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        long start = System.nanoTime();
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> byPartition = new LinkedHashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), tp -> new ArrayList<>())
+                    .add(record);
+        }
+
+        List<CompletableFuture<TransitionBuffer>> futures = new ArrayList<>(byPartition.size());
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, byte[]>>> entry : byPartition.entrySet()) {
+            ExecutorService worker = workers[Math.floorMod(entry.getKey().partition(), workers.length)];
+            futures.add(CompletableFuture.supplyAsync(() -> processPartition(entry.getValue()), worker));
+        }
+
+        List<TransitionBuffer> processed = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<TransitionBuffer> future : futures) {
+                processed.add(future.join());
+            }
+        } catch (CompletionException e) {
+            // 抛出异常使容器不提交本批次位移，由错误处理器决定重试或跳过。
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+
+        if (processed.stream().anyMatch(transitions -> !transitions.isEmpty())) {
+            long writeStart = System.nanoTime();
+            statusLayout.executePipelined(redisTemplate, (RedisCallback<Object>) connection -> {
+                for (TransitionBuffer transitions : processed) {
+                    transitions.appendTo(connection, statusLayout);
+                }
+                return null;
+            });
+            // 整批只有一次管道写入，只计入阶段总体，不按分区区分
+            latency.record(PipelineStage.STATUS_WRITE, System.nanoTime() - writeStart);
+        }
+        for (ConsumerRecord<String, byte[]> record : records) {
+            latency.recordSinceIngest(PipelineStage.END_TO_END, record.partition(),
+                    IngestTimestamp.read(record.headers()));
+        }
+
+        recordsCounter.increment(records.size());
+        batchSizeSummary.record(records.size());
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        recordLag(byPartition.keySet(), consumer);
+        logger.debug("批次处理完成: {} 条消息, {} 个分区", records.size(), byPartition.size());
+    }
+
+    private TransitionBuffer processPartition(List<ConsumerRecord<String, byte[]>> partitionRecords) {
+        TransitionBuffer transitions = new TransitionBuffer();
+        int partition = partitionRecords.get(0).partition();
+        List<PaymentRequest> paymentRequests = new ArrayList<>(partitionRecords.size());
+        long lastSequence = -1;
+        for (ConsumerRecord<String, byte[]> record : partitionRecords) {
+            latency.recordSinceIngest(PipelineStage.CONSUMER_RECEIVE, partition, IngestTimestamp.read(record.headers()));
+            PaymentRequest paymentRequest = paymentEventProcessor.process(record.value());
+            paymentRequests.add(paymentRequest);
+            if (paymentRequest != null) {
+                lastSequence = stateMachine.publish(partition, record.offset(), paymentRequest, transitions);
+            }
+        }
+        if (lastSequence >= 0) {
+            stateMachine.awaitProcessed(partition, lastSequence);
+        }
+        if (settlement != null && !transitions.isEmpty()) {
+            recordSettlements(partition, partitionRecords, paymentRequests, transitions);
+        }
+        return transitions;
+    }
+
+    private void recordSettlements(int partition, List<ConsumerRecord<String, byte[]>> partitionRecords,
+                                   List<PaymentRequest> paymentRequests, TransitionBuffer transitions) {
+        // 同一批次内重复的 orderId 只有第一次出现会产生迁移
+        Map<String, Integer> indexByOrderId = new HashMap<>();
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            PaymentRequest paymentRequest = paymentRequests.get(i);
+            if (paymentRequest != null) {
+                indexByOrderId.putIfAbsent(paymentRequest.getOrderId(), i);
+            }
+        }
+        transitions.forEach((orderId, status) -> {
+            Integer index = status == PaymentStatus.SETTLED ? indexByOrderId.get(orderId) : null;
+            if (index != null) {
+                ConsumerRecord<String, byte[]> record = partitionRecords.get(index);
+                settlement.record(partition, record.offset(), record.timestamp(), paymentRequests.get(index));
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        stateMachine.onPartitionsAssigned(assignments, callback);
+        if (settlement != null) {
+            settlement.onPartitionsAssigned(assignments.keySet());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        stateMachine.onPartitionsRevoked(partitions);
+        if (settlement != null) {
+            settlement.onPartitionsRevoked(partitions);
+        }
+    }
+
+    private void recordLag(Iterable<TopicPartition> partitions, Consumer<?, ?> consumer) {
+        for (TopicPartition partition : partitions) {
+            OptionalLong lag = consumer.currentLag(partition);
+            if (lag.isPresent()) {
+                partitionLag.computeIfAbsent(partition.partition(), this::registerLagGauge).set(lag.getAsLong());
+            }
+        }
+    }
+
+    private AtomicLong registerLagGauge(int partition) {
+        AtomicLong lag = new AtomicLong();
+        Gauge.builder("payment.consumer.lag", lag, AtomicLong::get)
+                .description("分区当前的消费积压（消息数）")
+                .tag("partition", String.valueOf(partition))
+                .register(meterRegistry);
+        return lag;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -1,30 +1,116 @@
 package com.example.paymentsystem.service;
 
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.latency.IngestTimestamp;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.settlement.SettlementAggregator;
+import com.example.paymentsystem.state.PaymentStateMachine;
+import com.example.paymentsystem.state.TransitionBuffer;
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
- * 用于处理支付事件的 Kafka 消费者。
+ * 用于处理支付事件的 Kafka 消费者，逐条消费消息。
+ * <p>
+ * 这是 payment.consumer.mode=record（默认）时启用的消费模式，批量模式见 {@link BatchPaymentConsumer}。
  */
 @Service
-public class PaymentConsumer {
+@ConditionalOnProperty(name = "payment.consumer.mode", havingValue = "record", matchIfMissing = true)
+public class PaymentConsumer implements ConsumerSeekAware {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentConsumer.class);
 
+    private final PaymentEventProcessor paymentEventProcessor;
+    private final PaymentStateMachine stateMachine;
+    private final StringRedisTemplate redisTemplate;
+    private final PaymentStatusLayout statusLayout;
+    private final PipelineLatency latency;
+    private final SettlementAggregator settlement;
+
+    /**
+     * @param settlement 启用 payment.settlement.enabled 时存在的结算汇总；已结算的支付在状态机迁移后、状态写入前计入，
+     *                   写入失败后的重投只补写状态，不会重复计入。
+     */
+    @Autowired
+    public PaymentConsumer(PaymentEventProcessor paymentEventProcessor, PaymentStateMachine stateMachine,
+                           StringRedisTemplate redisTemplate, PaymentStatusLayout statusLayout,
+                           PipelineLatency latency, ObjectProvider<SettlementAggregator> settlement) {
+        this.paymentEventProcessor = paymentEventProcessor;
+        this.stateMachine = stateMachine;
+        this.redisTemplate = redisTemplate;
+        this.statusLayout = statusLayout;
+        this.latency = latency;
+        this.settlement = settlement.getIfAvailable();
+    }
+
     /**
      * 监听 payment-events 主题上的消息。
      *
-     * @param message 从 Kafka 收到的消息。
+     * @param record 从 Kafka 收到的消息。
      */
     @KafkaListener(topics = "payment-events", groupId = "payment-group")
-    public void consume(String message) {
-        logger.info("消费到的消息: {}", message);
-        // 在实际应用中，您将在此处添加逻辑以：
-        // 1. 将消息反序列化为 PaymentRequest 对象。
-        // 2. 执行支付验证（例如，检查欺诈、验证资金）。
-        // 3. 在 Redis 和持久化数据库中更新支付状态。
-        // 4. 处理任何潜在的错误，并在必要时将消息发送到死信队列。
+    public void consume(ConsumerRecord<String, byte[]> record) {
+        long ingestMillis = IngestTimestamp.read(record.headers());
+        latency.recordSinceIngest(PipelineStage.CONSUMER_RECEIVE, record.partition(), ingestMillis);
+        PaymentRequest paymentRequest = paymentEventProcessor.process(record.value());
+        if (paymentRequest == null) {
+            return;
+        }
+        logger.info("消费到的支付事件: {}", paymentRequest);
+
+        // 交给该分区的状态机线程处理，等待完成后把产生的状态迁移（以及重放的当前状态）写入 Redis。
+        TransitionBuffer transitions = new TransitionBuffer();
+        long sequence = stateMachine.publish(record.partition(), record.offset(), paymentRequest, transitions);
+        stateMachine.awaitProcessed(record.partition(), sequence);
+        if (settlement != null) {
+            transitions.forEach((orderId, status) -> {
+                if (status == PaymentStatus.SETTLED) {
+                    settlement.record(record.partition(), record.offset(), record.timestamp(), paymentRequest);
+                }
+            });
+        }
+        if (!transitions.isEmpty()) {
+            long start = System.nanoTime();
+            statusLayout.executePipelined(redisTemplate, (RedisCallback<Object>) connection -> {
+                transitions.appendTo(connection, statusLayout);
+                return null;
+            });
+            latency.record(PipelineStage.STATUS_WRITE, record.partition(), System.nanoTime() - start);
+        }
+        latency.recordSinceIngest(PipelineStage.END_TO_END, record.partition(), ingestMillis);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        stateMachine.onPartitionsAssigned(assignments, callback);
+        if (settlement != null) {
+            settlement.onPartitionsAssigned(assignments.keySet());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        stateMachine.onPartitionsRevoked(partitions);
+        if (settlement != null) {
+            // 撤销的分区的结算快照与状态机的最终快照同时写入，接手的实例在分配时恢复这些分区的汇总，
+            // 快照中的位移保证从状态机快照之后重放的事件不会被重复计入
+            settlement.onPartitionsRevoked(partitions);
+        }
     }
-}
\ No newline at end of file
+}
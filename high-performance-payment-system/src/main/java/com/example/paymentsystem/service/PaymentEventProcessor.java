@@ -0,0 +1,48 @@
+package com.example.paymentsystem.service;
+
+import com.example.paymentsystem.codec.PaymentEventCodec;
+import com.example.paymentsystem.dto.PaymentRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * 单条支付事件的处理逻辑，由逐条消费和批量消费两种模式共用。
+ */
+@Service
+public class PaymentEventProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentEventProcessor.class);
+
+    private final PaymentEventCodec paymentEventCodec;
+
+    @Autowired
+    public PaymentEventProcessor(PaymentEventCodec paymentEventCodec) {
+        this.paymentEventCodec = paymentEventCodec;
+    }
+
+    /**
+     * 解码并处理一条支付事件。
+     *
+     * @param message 从 Kafka 收到的消息。
+     * @return 处理后的支付请求；如果消息是墓碑（值为 null）或无法解码则返回 null，调用方应跳过该消息。
+     */
+    public PaymentRequest process(byte[] message) {
+        if (message == null) {
+            logger.warn("收到值为 null 的支付事件（墓碑消息），已跳过");
+            return null;
+        }
+        PaymentRequest paymentRequest;
+        try {
+            paymentRequest = paymentEventCodec.decode(message);
+        } catch (IllegalArgumentException e) {
+            logger.warn("无法解码的支付事件 ({} 字节)，已跳过: {}", message.length, e.getMessage());
+            return null;
+        }
+        // 校验、速率检查与状态更新由 PaymentStateMachine 完成。在实际应用中，您还将在此处添加逻辑以：
+        // 1. 在持久化数据库中更新支付状态。
+        // 2. 处理任何潜在的错误，并在必要时将消息发送到死信队列。
+        return paymentRequest;
+    }
+}
@@ -1,14 +1,25 @@
 package com.example.paymentsystem.service;
 
+import com.example.paymentsystem.codec.PaymentEventCodec;
 import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.idempotency.Acceptance;
+import com.example.paymentsystem.idempotency.IdempotencyGuard;
+import com.example.paymentsystem.journal.PaymentJournal;
+import com.example.paymentsystem.latency.IngestTimestamp;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.limit.AdaptiveConcurrencyLimiter;
+import com.example.paymentsystem.status.PaymentStatus;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 用于处理支付业务逻辑的服务类。
@@ -19,32 +30,206 @@ public class PaymentService {
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
     private static final String PAYMENT_TOPIC = "payment-events";
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final StringRedisTemplate redisTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final RedisStreamBatchWriter statusWriter;
+    private final PaymentEventCodec paymentEventCodec;
+    private final PaymentJournal journal;
+    private final IdempotencyGuard idempotencyGuard;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final PipelineLatency latency;
 
+    /**
+     * @param journal          启用 payment.journal.enabled 时存在的本地预写日志；存在时事件先写入日志，由日志在后台投递到 Kafka。
+     * @param idempotencyGuard 启用 payment.idempotency.enabled 时存在的幂等检查；重复的 orderId 不会再次发布。
+     * @param limiter          启用 payment.limiter.enabled 时存在的并发限制器；Redis 写入和 Kafka 确认的耗时会报告给它。
+     * @param latency          流水线各阶段的延迟计时器。
+     */
     @Autowired
-    public PaymentService(KafkaTemplate<String, String> kafkaTemplate, StringRedisTemplate redisTemplate) {
+    public PaymentService(KafkaTemplate<String, byte[]> kafkaTemplate, RedisStreamBatchWriter statusWriter,
+                          PaymentEventCodec paymentEventCodec, ObjectProvider<PaymentJournal> journal,
+                          ObjectProvider<IdempotencyGuard> idempotencyGuard,
+                          ObjectProvider<AdaptiveConcurrencyLimiter> limiter, PipelineLatency latency) {
         this.kafkaTemplate = kafkaTemplate;
-        this.redisTemplate = redisTemplate;
+        this.statusWriter = statusWriter;
+        this.paymentEventCodec = paymentEventCodec;
+        this.journal = journal.getIfAvailable();
+        this.idempotencyGuard = idempotencyGuard.getIfAvailable();
+        this.limiter = limiter.getIfAvailable();
+        this.latency = latency;
     }
 
     /**
      * 处理支付请求，将其发送到 Kafka 主题，并在 Redis 中缓存初始状态。
+     * <p>
+     * 等待 Kafka 确认（或事件写入本地日志）后才返回；发布失败时撤销本次受理并抛出异常，客户端重试时会重新发布。
      *
      * @param paymentRequest 要处理的支付请求。
+     * @return 受理结果；orderId 之前已被受理时返回首次受理的结果，且不会再次发布。
      */
-    public void processPayment(PaymentRequest paymentRequest) {
-        // 为简单起见，我们将支付请求序列化为字符串。
-        // 在实际应用中，您可能会使用更健壮的序列化格式，如 JSON 或 Avro。
-        String paymentEvent = paymentRequest.toString();
+    public Acceptance processPayment(PaymentRequest paymentRequest) {
+        // 使用可插拔的编解码器序列化支付请求，Kafka 与 Redis 共用同一份编码结果。
+        byte[] paymentEvent = paymentEventCodec.encode(paymentRequest);
 
-        // 将支付事件发送到 Kafka 主题。
-        logger.info("向 Kafka 发送支付事件: {}", paymentEvent);
-        kafkaTemplate.send(PAYMENT_TOPIC, paymentRequest.getOrderId(), paymentEvent);
+        Acceptance acceptance = admit(paymentRequest).join();
+        if (acceptance.isReplay()) {
+            logger.info("支付请求 {} 重复提交，返回首次受理结果。", paymentRequest.getOrderId());
+            return acceptance;
+        }
 
         // 使用 Redis Streams 存储支付的初始状态。
-        // 这允许快速查找，并可用于事件溯源。
-        redisTemplate.opsForStream().add(paymentRequest.getOrderId(), Map.of("status", "PENDING", "request", paymentEvent));
-        logger.info("支付请求 {} 已在 Redis 中存储，状态为 PENDING。", paymentRequest.getOrderId());
+        // 这允许快速查找，并可用于事件溯源。写入由批量写入器与其他请求合并为一次管道往返。
+        // 先写 PENDING 再发送 Kafka，保证消费者写入的后续状态总是排在 PENDING 之后。
+        CompletableFuture<Acceptance> outcome = writePendingStatus(paymentRequest, paymentEvent, acceptance)
+                .thenCompose(recordId -> {
+                    if (recordId == null) {
+                        logger.info("支付请求 {} 已被其他实例受理，返回首次受理结果。", paymentRequest.getOrderId());
+                        return idempotencyGuard.duplicate(paymentRequest.getOrderId());
+                    }
+                    logger.info("支付请求 {} 已在 Redis 中存储，状态为 PENDING。", paymentRequest.getOrderId());
+                    if (journal == null) {
+                        logger.info("向 Kafka 发送支付事件: orderId={}, 格式={}, {} 字节",
+                                paymentRequest.getOrderId(), paymentEventCodec.name(), paymentEvent.length);
+                    }
+                    return publish(paymentRequest, paymentEvent, acceptance, recordId);
+                });
+        return settled(acceptance, outcome).join();
+    }
+
+    /**
+     * 以非阻塞方式处理支付请求。
+     * <p>
+     * 调用线程不等待任何网络往返：Redis 写入由 {@link RedisStreamBatchWriter} 与其他请求合并后通过管道发送，
+     * 确认后再在回调中发送 Kafka 消息，从而保证 PENDING 状态先于消费者的状态更新写入。
+     * 启用本地预写日志时，Kafka 发送换成日志追加，Future 在事件落盘后完成。
+     * <p>
+     * Kafka 发送在写入器的完成线程上执行，而不是刷写线程：生产者因缺少元数据或缓冲区已满而阻塞（最长 {@code max.block.ms}）时，
+     * 只会推迟这些请求的完成，其他请求的 Redis 状态写入照常进行。
+     *
+     * @param paymentRequest 要处理的支付请求。
+     * @return 当 Redis 写入成功且 Kafka 确认收到消息（或事件已写入本地日志）后以受理结果完成的 Future；
+     * 重复提交时直接以首次受理的结果完成；任一操作失败时以该异常完成，发布失败时在撤销受理之后完成。
+     */
+    public CompletableFuture<Acceptance> processPaymentAsync(PaymentRequest paymentRequest) {
+        byte[] paymentEvent = paymentEventCodec.encode(paymentRequest);
+        return admit(paymentRequest).thenCompose(acceptance -> {
+            if (acceptance.isReplay()) {
+                return CompletableFuture.completedFuture(acceptance);
+            }
+            return settled(acceptance, writePendingStatus(paymentRequest, paymentEvent, acceptance)
+                    .thenCompose(recordId -> recordId != null
+                            ? publish(paymentRequest, paymentEvent, acceptance, recordId)
+                            : idempotencyGuard.duplicate(paymentRequest.getOrderId())));
+        });
+    }
+
+    private CompletableFuture<Acceptance> admit(PaymentRequest paymentRequest) {
+        if (idempotencyGuard == null) {
+            return CompletableFuture.completedFuture(Acceptance.unchecked(paymentRequest.getOrderId()));
+        }
+        return idempotencyGuard.admit(paymentRequest.getOrderId());
+    }
+
+    /**
+     * 首次受理的请求结束后通知幂等检查，同一 orderId 上等待中的重复请求随之得到相同的结果。
+     * 失败的 {@code outcome} 在撤销受理之后才完成，重复请求的客户端重试时可以重新受理。
+     */
+    private CompletableFuture<Acceptance> settled(Acceptance acceptance, CompletableFuture<Acceptance> outcome) {
+        if (idempotencyGuard == null) {
+            return outcome;
+        }
+        return outcome.whenComplete((result, error) ->
+                idempotencyGuard.settle(acceptance.getOrderId(), result, error));
+    }
+
+    /**
+     * 写入 PENDING 状态。写入失败时在删除本次写入的幂等键之后才以原异常完成。
+     *
+     * @return 写入的记录 ID；过滤器未命中的 orderId 在写入幂等键时发现已被受理过则为 null，
+     * 此时没有写入状态，调用方也不应发布，而是通过 {@link IdempotencyGuard#duplicate(String)} 返回首次受理的结果。
+     */
+    private CompletableFuture<RecordId> writePendingStatus(PaymentRequest paymentRequest, byte[] paymentEvent,
+                                                           Acceptance acceptance) {
+        String orderId = paymentRequest.getOrderId();
+        if (idempotencyGuard == null) {
+            return measured(PipelineStage.REDIS_WRITE, statusWriter.write(orderId, PaymentStatus.PENDING, paymentEvent));
+        }
+        // 过滤器未命中的新订单由写入器先执行幂等键的 SET NX，成功后才追加 PENDING，与同批次的其他请求共用管道往返
+        return measured(PipelineStage.REDIS_WRITE,
+                statusWriter.write(orderId, PaymentStatus.PENDING, paymentEvent, idempotencyGuard.guard(acceptance)))
+                .handle((recordId, error) -> error == null
+                        ? CompletableFuture.completedFuture(recordId)
+                        : idempotencyGuard.abandon(acceptance, null)
+                                .thenCompose(ignored -> CompletableFuture.<RecordId>failedFuture(error)))
+                .thenCompose(written -> written);
+    }
+
+    /**
+     * 把已写入 PENDING 的支付事件发送到 Kafka，启用本地预写日志时改为追加到日志。
+     * <p>
+     * 发布失败时幂等键和 PENDING 状态都已写入，若不撤销，客户端的重试会被当作重复提交返回成功，而事件从未发布。
+     * 因此失败时先删除这条 PENDING 记录和幂等键，再以原异常完成，客户端重试时重新受理并发布。
+     *
+     * @return 发布成功后以受理结果完成的 Future。
+     */
+    private CompletableFuture<Acceptance> publish(PaymentRequest paymentRequest, byte[] paymentEvent,
+                                                  Acceptance acceptance, RecordId recordId) {
+        CompletableFuture<?> published = journal != null
+                ? measured(PipelineStage.JOURNAL_WRITE,
+                        journal.append(paymentRequest.getOrderId(), messageKey(paymentRequest),
+                                acceptance.getAcceptedAtMillis(), paymentEvent))
+                : measured(PipelineStage.KAFKA_ACK,
+                        kafkaTemplate.send(paymentRecord(paymentRequest, paymentEvent, acceptance)).completable());
+        return published.handle((result, error) -> error).thenCompose(error -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(acceptance);
+            }
+            logger.warn("支付事件发布失败，撤销受理: orderId={}, {}", paymentRequest.getOrderId(), error.toString());
+            if (idempotencyGuard == null) {
+                return CompletableFuture.<Acceptance>failedFuture(error);
+            }
+            Runnable removePending = () -> statusWriter.remove(paymentRequest.getOrderId(), recordId);
+            return idempotencyGuard.abandon(acceptance, removePending)
+                    .thenCompose(ignored -> CompletableFuture.<Acceptance>failedFuture(error));
+        });
+    }
+
+    /**
+     * 带接入时间戳头的支付事件，消费者据此计算端到端延迟。
+     */
+    private static ProducerRecord<String, byte[]> paymentRecord(PaymentRequest paymentRequest, byte[] paymentEvent,
+                                                                Acceptance acceptance) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(PAYMENT_TOPIC, messageKey(paymentRequest),
+                paymentEvent);
+        record.headers().add(IngestTimestamp.HEADER, IngestTimestamp.encode(acceptance.getAcceptedAtMillis()));
+        return record;
+    }
+
+    /**
+     * 支付事件的消息键。使用 userId，同一用户的支付落在同一分区，由同一个状态机线程按顺序处理，速率窗口因此可以按分区保存；
+     * 缺少 userId 的事件会被状态机拒绝，按 orderId 分区即可。
+     */
+    private static String messageKey(PaymentRequest paymentRequest) {
+        String userId = paymentRequest.getUserId();
+        return userId == null || userId.isEmpty() ? paymentRequest.getOrderId() : userId;
+    }
+
+    /**
+     * 记录一次依赖调用从发起到完成的耗时，并报告给并发限制器；失败（包括写入队列已满被拒绝）按丢弃报告。
+     */
+    private <T> CompletableFuture<T> measured(PipelineStage stage, CompletableFuture<T> call) {
+        long start = System.nanoTime();
+        return call.whenComplete((result, error) -> {
+            long elapsed = System.nanoTime() - start;
+            if (error == null) {
+                latency.record(stage, elapsed);
+            }
+            if (limiter != null) {
+                if (error == null) {
+                    limiter.onSample(elapsed);
+                } else {
+                    limiter.onDropped();
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,328 @@
+package com.example.paymentsystem.service;
+
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 将多个请求线程的 Redis Streams 写入合并为管道批量发送的写入器。
+ * <p>
+ * 调用方把记录放入有界队列后立即获得一个 Future；后台刷写线程在凑满 {@code max-size} 条或等待超过
+ * {@code max-delay-micros} 后，通过一次 Redis 管道往返写入整批记录，再逐条完成对应的 Future。
+ * 队列已满时调用方最多等待 {@code offer-timeout-ms}，仍无空间则以 {@link RejectedExecutionException}
+ * 完成 Future，从而把 Redis 的压力反馈给上游。
+ * <p>
+ * 带守卫命令的写入（如幂等键的 {@code SET NX}）在同一批次中分两步执行：先用一次管道往返发出本批次全部守卫命令并读取结果，
+ * 再只为守卫成功的记录追加状态。守卫失败的记录不写入，其 Future 以 null 完成。
+ * <p>
+ * 刷写线程只负责 Redis I/O：一批记录的结果确定后，整批 Future 交给完成线程池（{@code completion-threads}）完成，
+ * 调用方挂在 Future 上的后续阶段（例如发送 Kafka 消息）在完成线程上执行，即使阻塞也不会拖住后续批次的 Redis 写入。
+ */
+@Component
+public class RedisStreamBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisStreamBatchWriter.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final PaymentStatusLayout layout;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutMillis;
+    private final ExecutorService completions;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Counter rejectedCounter;
+
+    private volatile boolean running = true;
+    private Thread flusher;
+
+    @Autowired
+    public RedisStreamBatchWriter(StringRedisTemplate redisTemplate,
+                                  PaymentStatusLayout layout,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${payment.redis.batch.max-size:256}") int maxBatchSize,
+                                  @Value("${payment.redis.batch.max-delay-micros:1000}") long maxDelayMicros,
+                                  @Value("${payment.redis.batch.queue-capacity:16384}") int queueCapacity,
+                                  @Value("${payment.redis.batch.offer-timeout-ms:10}") long offerTimeoutMillis,
+                                  @Value("${payment.redis.batch.completion-threads:4}") int completionThreads) {
+        if (maxBatchSize < 1 || queueCapacity < 1 || completionThreads < 1) {
+            throw new IllegalArgumentException(
+                    "payment.redis.batch.max-size、queue-capacity 和 completion-threads 必须大于 0");
+        }
+        this.redisTemplate = redisTemplate;
+        this.layout = layout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.completions = Executors.newFixedThreadPool(completionThreads, r -> {
+            Thread thread = new Thread(r, "redis-stream-batch-completion-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSizeSummary = DistributionSummary.builder("payment.redis.batch.size")
+                .description("每次 Redis 管道刷写的记录数")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("payment.redis.batch.rejected")
+                .description("因队列已满被拒绝的写入数")
+                .register(meterRegistry);
+        Gauge.builder("payment.redis.batch.queue", queue, BlockingQueue::size)
+                .description("等待刷写的记录数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = new Thread(this::runFlushLoop, "redis-stream-batch-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 提交一条状态写入，具体的 Redis 命令由当前的 {@link PaymentStatusLayout} 决定。
+     *
+     * @param orderId      订单 ID。
+     * @param status       支付状态。
+     * @param paymentEvent 编码后的支付事件，为 null 时只写入状态。
+     * @return 记录写入成功后以其 ID 完成的 Future；队列已满或 Redis 写入失败时以异常完成。
+     */
+    public CompletableFuture<RecordId> write(String orderId, PaymentStatus status, byte[] paymentEvent) {
+        return write(orderId, status, paymentEvent, null);
+    }
+
+    /**
+     * 提交一条只在守卫命令成功后才执行的状态写入。
+     * <p>
+     * 守卫命令与同批次其他记录的守卫命令合并为一次管道往返，先于状态写入执行。
+     *
+     * @param guard 在给定连接上发出恰好一个返回布尔值的命令（如 {@code SET NX}）；为 null 时等同于
+     *              {@link #write(String, PaymentStatus, byte[])}。
+     * @return 记录写入成功后以其 ID 完成的 Future；守卫命令返回 false 时不写入，以 null 完成；
+     * 队列已满或 Redis 写入失败时以异常完成。
+     */
+    public CompletableFuture<RecordId> write(String orderId, PaymentStatus status, byte[] paymentEvent,
+                                             Consumer<RedisConnection> guard) {
+        PendingWrite pending = new PendingWrite(orderId, status, paymentEvent, guard);
+        boolean accepted;
+        try {
+            accepted = running && queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            rejectedCounter.increment();
+            pending.future.completeExceptionally(new RejectedExecutionException("Redis 写入队列已满"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * 删除一条已写入的状态记录，用于撤销发布失败的受理。删除很少发生，在调用线程上直接执行，不经过批量队列。
+     *
+     * @param recordId {@link #write} 返回的记录 ID。
+     */
+    public void remove(String orderId, RecordId recordId) {
+        layout.remove(orderId, recordId);
+    }
+
+    private void runFlushLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSizeSummary.record(batch.size());
+        List<PendingWrite> admitted = guard(batch);
+        if (!admitted.isEmpty()) {
+            append(admitted);
+        }
+        complete(new ArrayList<>(batch));
+    }
+
+    /**
+     * 在完成线程上完成一批已确定结果的 Future；线程池已关闭时在当前线程完成。
+     */
+    private void complete(List<PendingWrite> batch) {
+        Runnable completion = () -> {
+            for (PendingWrite pending : batch) {
+                pending.complete();
+            }
+        };
+        try {
+            completions.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    /**
+     * 执行本批次的守卫命令，守卫失败或出错的记录直接确定结果。
+     *
+     * @return 需要追加状态的记录。
+     */
+    private List<PendingWrite> guard(List<PendingWrite> batch) {
+        List<PendingWrite> guarded = new ArrayList<>();
+        for (PendingWrite pending : batch) {
+            if (pending.guard != null) {
+                guarded.add(pending);
+            }
+        }
+        if (guarded.isEmpty()) {
+            return batch;
+        }
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (PendingWrite pending : guarded) {
+                    pending.guard.accept(connection);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Redis 守卫命令执行失败，{} 条记录受影响: {}", guarded.size(), e.toString());
+            for (PendingWrite pending : guarded) {
+                pending.error = e;
+            }
+            results = null;
+        }
+        List<PendingWrite> admitted = new ArrayList<>(batch.size());
+        int guardIndex = 0;
+        for (PendingWrite pending : batch) {
+            if (pending.guard == null) {
+                admitted.add(pending);
+            } else if (results != null) {
+                Object result = guardIndex < results.size() ? results.get(guardIndex) : null;
+                guardIndex++;
+                // 守卫返回 false 的记录不追加，result 保持为 null，其 Future 以 null 完成
+                if (Boolean.TRUE.equals(result)) {
+                    admitted.add(pending);
+                }
+            }
+        }
+        return admitted;
+    }
+
+    private void append(List<PendingWrite> batch) {
+        List<Object> results;
+        try {
+            results = layout.executePipelined(redisTemplate, (RedisCallback<Object>) connection -> {
+                for (PendingWrite pending : batch) {
+                    layout.append(connection, pending.orderId, pending.status, pending.paymentEvent);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Redis 管道写入失败，{} 条记录受影响: {}", batch.size(), e.toString());
+            for (PendingWrite pending : batch) {
+                pending.error = e;
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Object result = i < results.size() ? results.get(i) : null;
+            try {
+                batch.get(i).result = layout.toRecordId(result);
+            } catch (RuntimeException e) {
+                batch.get(i).error = new IllegalStateException("Redis 返回了意外的写入结果: " + result, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Redis 写入器已关闭"));
+        }
+        completions.shutdown();
+        completions.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static final class PendingWrite {
+
+        private final String orderId;
+        private final PaymentStatus status;
+        private final byte[] paymentEvent;
+        private final Consumer<RedisConnection> guard;
+        private final CompletableFuture<RecordId> future = new CompletableFuture<>();
+        // 由刷写线程在 complete() 之前写入，经线程池提交任务的 happens-before 关系对完成线程可见
+        private RecordId result;
+        private RuntimeException error;
+
+        private PendingWrite(String orderId, PaymentStatus status, byte[] paymentEvent,
+                             Consumer<RedisConnection> guard) {
+            this.orderId = orderId;
+            this.status = status;
+            this.paymentEvent = paymentEvent;
+            this.guard = guard;
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
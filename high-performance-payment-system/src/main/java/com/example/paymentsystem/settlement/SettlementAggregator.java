@@ -0,0 +1,312 @@
+package com.example.paymentsystem.settlement;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.Money;
+import com.example.paymentsystem.snapshot.CompactedTopicReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 按货币和 userId 增量汇总已结算支付的滚动窗口。
+ * <p>
+ * 消费者在状态机产生 SETTLED 迁移后调用 {@link #record}，支付按其 Kafka 消息时间戳（即发布时间）归入
+ * {@code payment.settlement.window-ms} 长的窗口，重放时归属不变。窗口终点之后再过 {@code grace-ms} 视为关闭，
+ * 关闭后到达的结算仍计入原窗口并计入 {@code payment.settlement.late}；早于保留范围的结算被丢弃。
+ * <p>
+ * 窗口按 Kafka 分区分别汇总。有变化的分区每 {@code snapshot-interval-ms} 以及分区撤销、服务关闭时写入压缩主题
+ * {@value #SNAPSHOT_TOPIC}，键为 {@code 窗口起点:分区}，每个实例只写入自己拥有的分区，不会覆盖其他实例的汇总；
+ * 超出保留范围的窗口写入墓碑删除。分区被分配时读取该主题，只恢复分配到的分区并合并到内存中的窗口；
+ * 分区被撤销时先同步写入它们的快照，再从内存中移除。因此每个实例只汇总自己拥有的分区。崩溃后，
+ * 状态机从其本地快照之后重放，若结算快照早于状态机快照，两者之间结算的支付不会再产生迁移，也就不会计入汇总；
+ * 正常关闭和分区撤销时两者同时写入，不存在这一差距。
+ * <p>
+ * 在 payment.settlement.enabled=true（默认）时启用。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.settlement.enabled", havingValue = "true", matchIfMissing = true)
+public class SettlementAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettlementAggregator.class);
+    static final String SNAPSHOT_TOPIC = "payment-settlement-snapshots";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final ConsumerFactory<?, ?> consumerFactory;
+    private final long windowMillis;
+    private final long graceMillis;
+    private final int retainedWindows;
+    private final long snapshotIntervalMillis;
+    private final long kafkaTimeoutMillis;
+    private final Map<Long, SettlementWindow> windows = new ConcurrentHashMap<>();
+    private final Counter settled;
+    private final Counter late;
+    private final Counter dropped;
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "payment-settlement-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SettlementAggregator(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                ConsumerFactory<?, ?> consumerFactory,
+                                MeterRegistry meterRegistry,
+                                @Value("${payment.settlement.window-ms:3600000}") long windowMillis,
+                                @Value("${payment.settlement.grace-ms:300000}") long graceMillis,
+                                @Value("${payment.settlement.retained-windows:48}") int retainedWindows,
+                                @Value("${payment.settlement.snapshot-interval-ms:30000}") long snapshotIntervalMillis,
+                                @Value("${payment.settlement.kafka-timeout-ms:10000}") long kafkaTimeoutMillis) {
+        if (windowMillis < 1000 || retainedWindows < 1) {
+            throw new IllegalArgumentException("payment.settlement.window-ms 至少为 1000，retained-windows 必须大于 0");
+        }
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.windowMillis = windowMillis;
+        this.graceMillis = graceMillis;
+        this.retainedWindows = retainedWindows;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.kafkaTimeoutMillis = kafkaTimeoutMillis;
+        this.settled = Counter.builder("payment.settlement.settled")
+                .description("计入结算汇总的支付数")
+                .register(meterRegistry);
+        this.late = Counter.builder("payment.settlement.late")
+                .description("所属窗口关闭后才到达的结算数")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("payment.settlement.dropped")
+                .description("早于保留范围而未计入的结算数")
+                .register(meterRegistry);
+        Gauge.builder("payment.settlement.windows", windows, Map::size)
+                .description("内存中的结算窗口数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        snapshotter.scheduleWithFixedDelay(this::snapshot, snapshotIntervalMillis, snapshotIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 计入一笔已结算的支付。
+     * <p>
+     * 由拥有该分区的消费线程调用，同一分区的位移单调递增。
+     *
+     * @param partition       事件所在的 Kafka 分区。
+     * @param offset          事件的 Kafka 位移。
+     * @param eventTimeMillis 事件的 Kafka 消息时间戳，决定所属窗口。
+     * @param paymentRequest  已结算的支付请求。
+     */
+    public void record(int partition, long offset, long eventTimeMillis, PaymentRequest paymentRequest) {
+        long now = System.currentTimeMillis();
+        long start = windowStart(eventTimeMillis);
+        if (start < retentionCutoff(now)) {
+            dropped.increment();
+            logger.warn("支付 {} 的结算时间 {} 早于保留范围，未计入汇总", paymentRequest.getOrderId(), eventTimeMillis);
+            return;
+        }
+        SettlementWindow window = windows.get(start);
+        if (window == null) {
+            window = windows.computeIfAbsent(start, s -> new SettlementWindow(s, s + windowMillis));
+        }
+        Money amount = paymentRequest.getAmount();
+        if (window.add(partition, offset, amount.getCurrency(), paymentRequest.getUserId(), amount.getMinorUnits())) {
+            settled.increment();
+            if (isClosed(window, now)) {
+                late.increment();
+            }
+        }
+    }
+
+    /**
+     * @return 包含给定时刻的窗口起点。
+     */
+    public long windowStart(long epochMillis) {
+        return Math.floorDiv(epochMillis, windowMillis) * windowMillis;
+    }
+
+    /**
+     * 按起点查找窗口。
+     *
+     * @return 窗口；该窗口内还没有结算或已超出保留范围时为空。
+     */
+    public Optional<SettlementWindow> find(long windowStart) {
+        return Optional.ofNullable(windows.get(windowStart));
+    }
+
+    /**
+     * @return 当前时刻所在的窗口，还没有结算时返回一个空窗口。
+     */
+    public SettlementWindow current() {
+        long start = windowStart(System.currentTimeMillis());
+        SettlementWindow window = windows.get(start);
+        return window != null ? window : new SettlementWindow(start, start + windowMillis);
+    }
+
+    /**
+     * @return 内存中的全部窗口，最新的在前。
+     */
+    public List<SettlementWindow> windows() {
+        return windows.values().stream()
+                .sorted(Comparator.comparingLong(SettlementWindow::getStart).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return 窗口终点之后已超过宽限期，不再预期有新的结算。
+     */
+    public boolean isClosed(SettlementWindow window) {
+        return isClosed(window, System.currentTimeMillis());
+    }
+
+    private boolean isClosed(SettlementWindow window, long now) {
+        return now >= window.getEnd() + graceMillis;
+    }
+
+    private long retentionCutoff(long now) {
+        return windowStart(now) - (retainedWindows - 1) * windowMillis;
+    }
+
+    /**
+     * 把有变化的分区汇总写入快照主题并等待确认，超出保留范围的窗口从内存和主题中删除。
+     */
+    public synchronized void snapshot() {
+        try {
+            long cutoff = retentionCutoff(System.currentTimeMillis());
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            for (SettlementWindow window : new ArrayList<>(windows.values())) {
+                if (window.getStart() < cutoff) {
+                    windows.remove(window.getStart(), window);
+                    for (int partition : window.partitions()) {
+                        sends.add(kafkaTemplate.send(SNAPSHOT_TOPIC, key(window.getStart(), partition), null).completable());
+                    }
+                    continue;
+                }
+                for (Map.Entry<Integer, byte[]> snapshot : window.snapshotsIfDirty().entrySet()) {
+                    int partition = snapshot.getKey();
+                    sends.add(kafkaTemplate.send(SNAPSHOT_TOPIC, key(window.getStart(), partition), snapshot.getValue())
+                            .completable()
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    window.markDirty(partition);
+                                }
+                            }));
+                }
+            }
+            if (!sends.isEmpty()) {
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]))
+                        .get(kafkaTimeoutMillis, TimeUnit.MILLISECONDS);
+                logger.debug("写入了 {} 个结算窗口快照", sends.size());
+            }
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            logger.warn("写入结算快照失败，下个周期重试", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 分区被分配时从快照主题恢复这些分区在各窗口中的汇总，合并到内存中的窗口。
+     * <p>
+     * 由消费线程在开始消费这些分区之前调用。
+     */
+    public synchronized void onPartitionsAssigned(Collection<TopicPartition> assigned) {
+        Set<Integer> partitions = assigned.stream().map(TopicPartition::partition).collect(Collectors.toSet());
+        if (!partitions.isEmpty()) {
+            restore(partitions);
+        }
+    }
+
+    /**
+     * 分区被撤销时同步写入快照，再从内存中移除这些分区的汇总，由接手的实例从快照主题恢复。
+     */
+    public synchronized void onPartitionsRevoked(Collection<TopicPartition> revoked) {
+        if (revoked.isEmpty()) {
+            return;
+        }
+        snapshot();
+        Set<Integer> partitions = revoked.stream().map(TopicPartition::partition).collect(Collectors.toSet());
+        for (SettlementWindow window : new ArrayList<>(windows.values())) {
+            if (window.removePartitions(partitions)) {
+                windows.remove(window.getStart(), window);
+            }
+        }
+    }
+
+    private static String key(long windowStart, int partition) {
+        return windowStart + ":" + partition;
+    }
+
+    private void restore(Set<Integer> assigned) {
+        Map<String, byte[]> latest;
+        try {
+            latest = CompactedTopicReader.readLatest(consumerFactory, "-settlement-restore", SNAPSHOT_TOPIC,
+                    Duration.ofMillis(kafkaTimeoutMillis), key -> isAssigned(key, assigned));
+        } catch (TimeoutException | RuntimeException e) {
+            logger.warn("从 {} 恢复结算窗口失败，将从空状态开始", SNAPSHOT_TOPIC, e);
+            return;
+        }
+        long cutoff = retentionCutoff(System.currentTimeMillis());
+        int restored = 0;
+        for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+            String key = entry.getKey();
+            try {
+                SettlementWindow restoredWindow = SettlementWindow.restore(entry.getValue());
+                if (restoredWindow.getStart() < cutoff) {
+                    // 拥有者在窗口过期前没有机会删除，由接手的实例补写墓碑
+                    kafkaTemplate.send(SNAPSHOT_TOPIC, key, null);
+                    continue;
+                }
+                windows.computeIfAbsent(restoredWindow.getStart(), s -> new SettlementWindow(s, s + windowMillis))
+                        .merge(restoredWindow);
+                restored++;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("忽略无法解析的结算窗口快照 {}", key, e);
+            }
+        }
+        logger.info("从 {} 为分区 {} 恢复了 {} 个窗口汇总", SNAPSHOT_TOPIC, assigned, restored);
+    }
+
+    private static boolean isAssigned(String key, Set<Integer> assigned) {
+        int separator = key.indexOf(':');
+        try {
+            return separator >= 0 && assigned.contains(Integer.parseInt(key.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshotter.shutdownNow();
+        snapshot();
+    }
+}
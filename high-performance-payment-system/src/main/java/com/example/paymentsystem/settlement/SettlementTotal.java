@@ -0,0 +1,25 @@
+package com.example.paymentsystem.settlement;
+
+import com.example.paymentsystem.money.Money;
+
+/**
+ * 一个窗口内某种货币（或某用户在该货币下）的结算笔数与金额。
+ */
+public final class SettlementTotal {
+
+    private final long count;
+    private final Money amount;
+
+    SettlementTotal(long count, Money amount) {
+        this.count = count;
+        this.amount = amount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.paymentsystem.settlement;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+
+/**
+ * 以 (货币, userId) 为键的结算次数与金额，开放寻址哈希表。
+ * <p>
+ * 键以 64 位哈希存放在 long 数组中，次数和金额存放在并行的 long 数组中，累加已有的键时不产生任何分配；
+ * 哈希相同的键再比较货币实例和 userId，因此哈希碰撞不会合并不同的用户。非线程安全，由所属窗口加锁。
+ */
+final class SettlementTotals {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] hashes;
+    private CurrencyUnit[] currencies;
+    private String[] userIds;
+    private long[] counts;
+    private long[] sums;
+    private int size;
+
+    SettlementTotals() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 把次数和金额累加到给定键。
+     */
+    void add(CurrencyUnit currency, String userId, long count, long minorUnits) {
+        long hash = hash(currency, userId);
+        int index = find(hash, currency, userId);
+        if (index < 0) {
+            if ((size + 1) * 3 > hashes.length * 2) {
+                resize();
+            }
+            index = insert(hash, currency, userId);
+        }
+        counts[index] += count;
+        sums[index] += minorUnits;
+    }
+
+    /**
+     * @return 键所在的槽位，不存在时返回 -1，可用于 {@link #count(int)} 和 {@link #sum(int)}。
+     */
+    int indexOf(CurrencyUnit currency, String userId) {
+        return find(hash(currency, userId), currency, userId);
+    }
+
+    long count(int index) {
+        return counts[index];
+    }
+
+    long sum(int index) {
+        return sums[index];
+    }
+
+    /**
+     * @return 槽位容量，与 {@link #isOccupied(int)} 一起用于遍历全部键。
+     */
+    int capacity() {
+        return hashes.length;
+    }
+
+    boolean isOccupied(int index) {
+        return userIds[index] != null;
+    }
+
+    CurrencyUnit currency(int index) {
+        return currencies[index];
+    }
+
+    String userId(int index) {
+        return userIds[index];
+    }
+
+    private int find(long hash, CurrencyUnit currency, String userId) {
+        int mask = hashes.length - 1;
+        for (int index = spread(hash) & mask; userIds[index] != null; index = (index + 1) & mask) {
+            if (hashes[index] == hash && currencies[index] == currency && userIds[index].equals(userId)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(long hash, CurrencyUnit currency, String userId) {
+        int mask = hashes.length - 1;
+        int index = spread(hash) & mask;
+        while (userIds[index] != null) {
+            index = (index + 1) & mask;
+        }
+        hashes[index] = hash;
+        currencies[index] = currency;
+        userIds[index] = userId;
+        size++;
+        return index;
+    }
+
+    private void resize() {
+        long[] oldHashes = hashes;
+        CurrencyUnit[] oldCurrencies = currencies;
+        String[] oldUserIds = userIds;
+        long[] oldCounts = counts;
+        long[] oldSums = sums;
+        allocate(oldHashes.length * 2);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldUserIds[i] != null) {
+                int index = insert(oldHashes[i], oldCurrencies[i], oldUserIds[i]);
+                counts[index] = oldCounts[i];
+                sums[index] = oldSums[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        currencies = new CurrencyUnit[capacity];
+        userIds = new String[capacity];
+        counts = new long[capacity];
+        sums = new long[capacity];
+        size = 0;
+    }
+
+    private static long hash(CurrencyUnit currency, String userId) {
+        return (long) userId.hashCode() << 32 ^ currency.getCode().hashCode();
+    }
+
+    private static int spread(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
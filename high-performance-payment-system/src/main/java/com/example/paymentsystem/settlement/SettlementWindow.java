@@ -0,0 +1,262 @@
+package com.example.paymentsystem.settlement;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个滚动窗口 [start, end) 内按货币和 userId 汇总的结算。
+ * <p>
+ * 窗口按 Kafka 分区分别记录各分区计入的汇总和最后计入的位移，快照也按分区生成，每个实例只写入自己拥有的分区，
+ * 分区转移到其他实例后由新的拥有者读取并合并。从快照恢复后，重放的事件只要位移不大于快照中的位移就不会被重复计入，
+ * 因此每个分区的快照各自一致，不依赖其他分区、其他窗口或全局检查点。查询使用各分区合并后的汇总。
+ */
+public final class SettlementWindow {
+
+    private static final int MAGIC = 0x50535732; // "PSW2"
+
+    private final long start;
+    private final long end;
+    private final Map<Integer, PartitionTotals> partitions = new HashMap<>();
+    // 各分区合并后的汇总，供查询使用
+    private SettlementTotals totals = new SettlementTotals();
+    private final Map<CurrencyUnit, long[]> currencyTotals = new IdentityHashMap<>();
+
+    SettlementWindow(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return 窗口起点（毫秒时间戳，含）。
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return 窗口终点（毫秒时间戳，不含）。
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * 计入一笔结算。
+     *
+     * @return 位移不大于该分区已计入的位移（即重放的事件）时返回 false，不计入。
+     */
+    synchronized boolean add(int partition, long offset, CurrencyUnit currency, String userId, long minorUnits) {
+        PartitionTotals partitionTotals = partitions.computeIfAbsent(partition, p -> new PartitionTotals());
+        if (offset <= partitionTotals.offset) {
+            return false;
+        }
+        partitionTotals.offset = offset;
+        partitionTotals.totals.add(currency, userId, 1, minorUnits);
+        partitionTotals.dirty = true;
+        addToMerged(currency, userId, 1, minorUnits);
+        return true;
+    }
+
+    /**
+     * @return 窗口内有结算的用户与货币组合数。
+     */
+    public synchronized int getUserCount() {
+        return totals.size();
+    }
+
+    /**
+     * @return 按货币代码排序的各货币合计。
+     */
+    public synchronized Map<CurrencyUnit, SettlementTotal> currencyTotals() {
+        Map<CurrencyUnit, SettlementTotal> result = new LinkedHashMap<>();
+        currencyTotals.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(CurrencyUnit::getCode)))
+                .forEach(entry -> result.put(entry.getKey(),
+                        new SettlementTotal(entry.getValue()[0], Money.ofMinor(entry.getKey(), entry.getValue()[1]))));
+        return result;
+    }
+
+    /**
+     * 查询一个用户在窗口内各货币的合计，每种货币一次哈希查找。
+     *
+     * @return 按货币代码排序；用户在窗口内没有结算时为空。
+     */
+    public synchronized Map<CurrencyUnit, SettlementTotal> userTotals(String userId) {
+        Map<CurrencyUnit, SettlementTotal> result = new LinkedHashMap<>();
+        currencyTotals.keySet().stream()
+                .sorted(Comparator.comparing(CurrencyUnit::getCode))
+                .forEach(currency -> {
+                    int index = totals.indexOf(currency, userId);
+                    if (index >= 0) {
+                        result.put(currency,
+                                new SettlementTotal(totals.count(index), Money.ofMinor(currency, totals.sum(index))));
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * @return 窗口内有汇总的分区。
+     */
+    synchronized List<Integer> partitions() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    /**
+     * 序列化自上次快照以来有新结算的分区并清除它们的修改标记。
+     *
+     * @return 分区到快照内容；没有修改时为空。
+     */
+    synchronized Map<Integer, byte[]> snapshotsIfDirty() {
+        Map<Integer, byte[]> snapshots = new HashMap<>();
+        for (Map.Entry<Integer, PartitionTotals> entry : partitions.entrySet()) {
+            PartitionTotals partitionTotals = entry.getValue();
+            if (partitionTotals.dirty) {
+                snapshots.put(entry.getKey(), serialize(entry.getKey(), partitionTotals));
+                partitionTotals.dirty = false;
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * 快照发送失败时恢复分区的修改标记，下个周期重新发送。
+     */
+    synchronized void markDirty(int partition) {
+        PartitionTotals partitionTotals = partitions.get(partition);
+        if (partitionTotals != null) {
+            partitionTotals.dirty = true;
+        }
+    }
+
+    /**
+     * 合并另一个窗口（通常是刚从快照恢复的分区）的分区汇总。两边都有的分区保留位移较大的一份。
+     */
+    synchronized void merge(SettlementWindow other) {
+        boolean replaced = false;
+        for (Map.Entry<Integer, PartitionTotals> entry : other.partitions.entrySet()) {
+            PartitionTotals existing = partitions.get(entry.getKey());
+            if (existing != null && existing.offset >= entry.getValue().offset) {
+                continue;
+            }
+            partitions.put(entry.getKey(), entry.getValue());
+            if (existing != null) {
+                replaced = true;
+            } else {
+                addToMerged(entry.getValue().totals);
+            }
+        }
+        if (replaced) {
+            rebuildMerged();
+        }
+    }
+
+    /**
+     * 移除给定分区的汇总，用于分区被撤销时。
+     *
+     * @return 窗口中不再有任何分区。
+     */
+    synchronized boolean removePartitions(Collection<Integer> removed) {
+        if (partitions.keySet().removeAll(removed)) {
+            rebuildMerged();
+        }
+        return partitions.isEmpty();
+    }
+
+    private void addToMerged(CurrencyUnit currency, String userId, long count, long minorUnits) {
+        totals.add(currency, userId, count, minorUnits);
+        long[] total = currencyTotals.computeIfAbsent(currency, c -> new long[2]);
+        total[0] += count;
+        total[1] += minorUnits;
+    }
+
+    private void addToMerged(SettlementTotals partitionTotals) {
+        for (int i = 0; i < partitionTotals.capacity(); i++) {
+            if (partitionTotals.isOccupied(i)) {
+                addToMerged(partitionTotals.currency(i), partitionTotals.userId(i),
+                        partitionTotals.count(i), partitionTotals.sum(i));
+            }
+        }
+    }
+
+    private void rebuildMerged() {
+        totals = new SettlementTotals();
+        currencyTotals.clear();
+        for (PartitionTotals partitionTotals : partitions.values()) {
+            addToMerged(partitionTotals.totals);
+        }
+    }
+
+    private byte[] serialize(int partition, PartitionTotals partitionTotals) {
+        SettlementTotals partitionSums = partitionTotals.totals;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + partitionSums.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(start);
+            out.writeLong(end);
+            out.writeInt(partition);
+            out.writeLong(partitionTotals.offset);
+            out.writeInt(partitionSums.size());
+            for (int i = 0; i < partitionSums.capacity(); i++) {
+                if (partitionSums.isOccupied(i)) {
+                    out.writeUTF(partitionSums.currency(i).getCode());
+                    out.writeUTF(partitionSums.userId(i));
+                    out.writeLong(partitionSums.count(i));
+                    out.writeLong(partitionSums.sum(i));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 从一个分区的快照恢复只含该分区的窗口，再用 {@link #merge(SettlementWindow)} 合并到内存中的窗口。
+     */
+    static SettlementWindow restore(byte[] snapshot) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("结算窗口快照格式不符");
+        }
+        SettlementWindow window = new SettlementWindow(in.readLong(), in.readLong());
+        int partition = in.readInt();
+        PartitionTotals partitionTotals = new PartitionTotals();
+        partitionTotals.offset = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            CurrencyUnit currency = CurrencyUnit.of(in.readUTF());
+            String userId = in.readUTF();
+            long count = in.readLong();
+            long sum = in.readLong();
+            partitionTotals.totals.add(currency, userId, count, sum);
+            window.addToMerged(currency, userId, count, sum);
+        }
+        window.partitions.put(partition, partitionTotals);
+        return window;
+    }
+
+    /**
+     * 一个分区计入窗口的汇总、最后计入的位移和修改标记。
+     */
+    private static final class PartitionTotals {
+
+        final SettlementTotals totals = new SettlementTotals();
+        long offset = -1;
+        boolean dirty;
+    }
+}
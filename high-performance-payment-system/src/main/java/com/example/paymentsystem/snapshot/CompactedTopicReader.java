@@ -0,0 +1,86 @@
+package com.example.paymentsystem.snapshot;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 读取保存快照的压缩主题的当前内容，供分区被分配时恢复状态。
+ * <p>
+ * 使用不加入消费组的临时消费者，从各分区开头读到读取开始时的末尾位移。压缩前的主题可能仍含同一键的旧快照，
+ * 按顺序以最后一条为准，墓碑表示该键已删除。
+ */
+public final class CompactedTopicReader {
+
+    private CompactedTopicReader() {
+    }
+
+    /**
+     * @param consumerFactory 创建临时消费者的工厂。
+     * @param clientIdSuffix  临时消费者的 client.id 后缀，用于区分调用方。
+     * @param topic           压缩主题。
+     * @param timeout         获取元数据以及读到末尾的总时限。
+     * @param keyFilter       只保留键满足条件的记录。
+     * @return 每个键最新的值；主题不存在时为空。
+     * @throws TimeoutException 未能在时限内读到末尾。
+     */
+    public static Map<String, byte[]> readLatest(ConsumerFactory<?, ?> consumerFactory, String clientIdSuffix,
+                                                 String topic, Duration timeout, Predicate<String> keyFilter)
+            throws TimeoutException {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.ALLOW_AUTO_CREATE_TOPICS_CONFIG, "false");
+        Map<String, byte[]> latest = new HashMap<>();
+        try (Consumer<?, ?> consumer = consumerFactory.createConsumer(null, null, clientIdSuffix, properties)) {
+            List<PartitionInfo> infos = consumer.partitionsFor(topic, timeout);
+            if (infos == null || infos.isEmpty()) {
+                return latest;
+            }
+            List<TopicPartition> partitions = infos.stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .collect(Collectors.toList());
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions, timeout);
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (!caughtUp(consumer, endOffsets)) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new TimeoutException("读取 " + topic + " 超时");
+                }
+                for (ConsumerRecord<?, ?> record : consumer.poll(Duration.ofMillis(200))) {
+                    String key = String.valueOf(record.key());
+                    if (!keyFilter.test(key)) {
+                        continue;
+                    }
+                    if (record.value() == null) {
+                        latest.remove(key);
+                    } else {
+                        latest.put(key, (byte[]) record.value());
+                    }
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static boolean caughtUp(Consumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+            if (consumer.position(entry.getKey()) < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
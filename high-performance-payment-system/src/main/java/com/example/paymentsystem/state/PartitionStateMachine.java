@@ -0,0 +1,318 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.latency.PipelineStage;
+import com.example.paymentsystem.money.Money;
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.velocity.VelocityEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 单个 Kafka 分区的支付状态机。
+ * <p>
+ * 消费线程把事件发布到预分配的环形缓冲区，专属的状态机线程按顺序取出并应用，订单状态只由这一个线程读写，
+ * 因此无需任何锁。环形缓冲区是单生产者单消费者结构：Kafka 保证同一时刻只有一个消费线程拥有该分区。
+ * <p>
+ * 幂等性由两层保证：位移不大于最后应用位移的事件不再应用；已存在的订单再次提交时不产生任何迁移。
+ * 这两种重放都会重新发出订单的当前状态：状态机先于 Redis 写入推进，写入失败后 Kafka 重投同一事件时，
+ * 靠重放补写状态，订单不会停留在 PENDING。
+ * <p>
+ * 快照不在状态机线程上序列化。状态机线程只记录自上次快照以来的状态变更，生成快照时把变更交给快照线程，
+ * 由它回放到自己持有的订单副本上再序列化，状态机线程上不再有与订单数成正比的工作。
+ */
+final class PartitionStateMachine implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionStateMachine.class);
+    private static final int SPIN_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // 未交给快照线程的变更达到此数量时提前生成快照，限制变更列表占用的内存
+    private static final int MAX_PENDING_CHANGES = 1 << 16;
+
+    private final int partition;
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(-1);
+    private final AtomicLong processed = new AtomicLong(-1);
+    private final PaymentStateMachine.Metrics metrics;
+    private final SnapshotStore snapshots;
+    private final long snapshotIntervalNanos;
+    private final VelocityEngine velocity;
+    private final long restoredOffset;
+    private final Thread thread;
+
+    // 以下字段只由状态机线程访问
+    private final LinkedHashMap<String, PaymentStatus> orders;
+    private long lastAppliedOffset;
+    private long nextSnapshotAt;
+    private boolean dirty;
+    private List<String> changedOrderIds = new ArrayList<>();
+    private List<PaymentStatus> changedStatuses = new ArrayList<>();
+
+    // 只由快照线程访问
+    private final LinkedHashMap<String, PaymentStatus> snapshotOrders;
+
+    // 只由生产者线程访问
+    private long claimed = -1;
+
+    private volatile boolean running = true;
+
+    PartitionStateMachine(int partition, int ringSize, int maxOrders, SnapshotStore snapshots,
+                          long snapshotIntervalNanos, VelocityEngine velocity, PaymentStateMachine.Metrics metrics) {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("payment.state.ring-size 必须是 2 的幂");
+        }
+        this.partition = partition;
+        this.ring = new Slot[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = ringSize - 1;
+        this.snapshots = snapshots;
+        this.snapshotIntervalNanos = snapshotIntervalNanos;
+        this.velocity = velocity;
+        this.metrics = metrics;
+
+        SnapshotStore.Snapshot snapshot = snapshots.read(partition);
+        LinkedHashMap<String, PaymentStatus> restored = snapshot == null ? new LinkedHashMap<>() : snapshot.orders;
+        this.orders = boundedOrders(restored, maxOrders);
+        // 副本与 orders 以相同顺序执行相同的 put，淘汰的也是相同的订单
+        this.snapshotOrders = boundedOrders(restored, maxOrders);
+        this.lastAppliedOffset = snapshot == null ? -1 : snapshot.lastAppliedOffset;
+        this.restoredOffset = lastAppliedOffset;
+        this.nextSnapshotAt = System.nanoTime() + snapshotIntervalNanos;
+        this.thread = new Thread(this, "payment-state-" + partition);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * @return 从快照恢复的最后应用位移，没有快照时为 -1。
+     */
+    long restoredOffset() {
+        return restoredOffset;
+    }
+
+    /**
+     * 发布一个事件，环形缓冲区已满时等待状态机线程腾出空间。
+     *
+     * @return 事件的序号，可用于 {@link #awaitProcessed(long)}。
+     */
+    long publish(long offset, PaymentRequest paymentRequest, TransitionListener listener) {
+        long sequence = ++claimed;
+        long wrapPoint = sequence - ring.length;
+        int idle = 0;
+        while (processed.get() < wrapPoint) {
+            ensureRunning();
+            idle = idle(idle);
+        }
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.offset = offset;
+        slot.paymentRequest = paymentRequest;
+        slot.listener = listener;
+        slot.publishedAt = System.nanoTime();
+        published.lazySet(sequence);
+        return sequence;
+    }
+
+    /**
+     * 等待直到给定序号及之前的事件全部处理完毕。返回后可以安全读取监听器收集的结果。
+     */
+    void awaitProcessed(long sequence) {
+        int idle = 0;
+        while (processed.get() < sequence) {
+            ensureRunning();
+            idle = idle(idle);
+        }
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (running) {
+            long next = processed.get() + 1;
+            long available = published.get();
+            if (available >= next) {
+                for (long sequence = next; sequence <= available; sequence++) {
+                    apply(ring[(int) (sequence & mask)]);
+                }
+                processed.lazySet(available);
+                idle = 0;
+            } else {
+                idle = idle(idle);
+            }
+            if (dirty && (System.nanoTime() - nextSnapshotAt >= 0 || changedOrderIds.size() >= MAX_PENDING_CHANGES)) {
+                snapshots.writeAsync(partition, snapshot());
+            }
+        }
+    }
+
+    /**
+     * 停止状态机线程并同步写入最终快照。
+     * <p>
+     * 快照读取的变更列表只由状态机线程写入，只有线程确实退出后才能在调用线程上生成快照。线程在超时内没有退出时先中断它，
+     * 仍未退出则跳过最终快照：写出的快照可能与其位移不一致，不如让接手的实例从上一个一致的快照位移开始重放。
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        if (thread.isAlive()) {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        if (thread.isAlive()) {
+            logger.warn("分区 {} 的状态机线程未能按时停止，跳过最终快照，恢复时从上一个快照位移重放", partition);
+            return;
+        }
+        if (dirty) {
+            snapshots.write(partition, snapshot());
+        }
+    }
+
+    private void apply(Slot slot) {
+        PaymentRequest paymentRequest = slot.paymentRequest;
+        TransitionListener listener = slot.listener;
+        long offset = slot.offset;
+        long publishedAt = slot.publishedAt;
+        slot.paymentRequest = null;
+        slot.listener = null;
+        try {
+            String orderId = paymentRequest.getOrderId();
+            if (offset <= lastAppliedOffset) {
+                replay(orderId, listener);
+                return;
+            }
+            lastAppliedOffset = offset;
+            dirty = true;
+            if (orderId == null || orders.containsKey(orderId)) {
+                replay(orderId, listener);
+                return;
+            }
+            put(orderId, PaymentStatus.PENDING);
+            String failure = validate(paymentRequest);
+            if (failure == null && velocity != null) {
+                failure = velocity.check(partition, offset, paymentRequest);
+            }
+            if (failure == null) {
+                if (transition(orderId, PaymentStatus.AUTHORIZED, listener)) {
+                    transition(orderId, PaymentStatus.SETTLED, listener);
+                }
+            } else {
+                logger.info("支付 {} 校验失败: {}", orderId, failure);
+                transition(orderId, PaymentStatus.FAILED, listener);
+            }
+        } catch (RuntimeException e) {
+            logger.error("分区 {} 位移 {} 的事件处理失败", partition, offset, e);
+        } finally {
+            metrics.latency.record(PipelineStage.STATE_UPDATE, partition, System.nanoTime() - publishedAt);
+        }
+    }
+
+    private boolean transition(String orderId, PaymentStatus next, TransitionListener listener) {
+        PaymentStatus current = orders.get(orderId);
+        if (current == null || !current.canTransitionTo(next)) {
+            metrics.rejected.increment();
+            logger.warn("拒绝非法的状态迁移: orderId={}, {} -> {}", orderId, current, next);
+            return false;
+        }
+        put(orderId, next);
+        metrics.transitions(next).increment();
+        listener.onTransition(orderId, next);
+        return true;
+    }
+
+    private void replay(String orderId, TransitionListener listener) {
+        metrics.duplicates.increment();
+        PaymentStatus current = orderId == null ? null : orders.get(orderId);
+        if (current != null) {
+            listener.onReplay(orderId, current);
+        }
+    }
+
+    private void put(String orderId, PaymentStatus status) {
+        orders.put(orderId, status);
+        changedOrderIds.add(orderId);
+        changedStatuses.add(status);
+    }
+
+    private static String validate(PaymentRequest paymentRequest) {
+        // 货币代码在解码时已校验为 ISO 4217 代码
+        Money amount = paymentRequest.getAmount();
+        if (amount == null || amount.signum() <= 0) {
+            return "金额必须大于 0";
+        }
+        if (paymentRequest.getUserId() == null || paymentRequest.getUserId().isEmpty()) {
+            return "缺少用户 ID";
+        }
+        return null;
+    }
+
+    /**
+     * 交出自上次快照以来的变更，返回在快照线程上把变更回放到副本并序列化的任务。
+     */
+    private Supplier<byte[]> snapshot() {
+        dirty = false;
+        nextSnapshotAt = System.nanoTime() + snapshotIntervalNanos;
+        List<String> orderIds = changedOrderIds;
+        List<PaymentStatus> statuses = changedStatuses;
+        long offset = lastAppliedOffset;
+        changedOrderIds = new ArrayList<>();
+        changedStatuses = new ArrayList<>();
+        return () -> {
+            for (int i = 0; i < orderIds.size(); i++) {
+                snapshotOrders.put(orderIds.get(i), statuses.get(i));
+            }
+            return SnapshotStore.serialize(partition, offset, snapshotOrders);
+        };
+    }
+
+    private static LinkedHashMap<String, PaymentStatus> boundedOrders(Map<String, PaymentStatus> initial, int maxOrders) {
+        return new LinkedHashMap<String, PaymentStatus>(initial) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PaymentStatus> eldest) {
+                // 订单在一次提交内即到达终态，最早插入的订单可以安全淘汰
+                return size() > maxOrders;
+            }
+        };
+    }
+
+    private void ensureRunning() {
+        if (!running) {
+            throw new IllegalStateException("分区 " + partition + " 的状态机已停止");
+        }
+    }
+
+    private static int idle(int idle) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (idle < SPIN_TRIES * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(MAX_PARK_NANOS);
+        }
+        return Math.min(idle + 1, SPIN_TRIES * 2);
+    }
+
+    /**
+     * 环形缓冲区中的预分配槽位，事件处理完毕后清空引用以便复用。
+     */
+    private static final class Slot {
+
+        long offset;
+        long publishedAt;
+        PaymentRequest paymentRequest;
+        TransitionListener listener;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.velocity.VelocityEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerSeekAware.ConsumerSeekCallback;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的支付状态机（PENDING→AUTHORIZED→SETTLED/FAILED），每个 Kafka 分区一个单写线程。
+ * <p>
+ * 消费者把解码后的事件连同分区和位移发布进来，再等待处理完成并把产生的状态迁移写入 Redis。
+ * 每个分区的状态会定期在本地生成快照；分区被分配时从快照恢复，消费者从快照位移之后开始消费，
+ * 重启时无需重放整个主题。快照之后、已提交位移之前的事件会被重放，由状态机的幂等性保证结果不变。
+ * 快照可能领先于已提交位移（状态已应用但还没写入 Redis），此时从已提交位移开始消费，
+ * 这些事件作为重放重新发出订单的当前状态，由消费者补写到 Redis。
+ */
+@Component
+public class PaymentStateMachine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentStateMachine.class);
+
+    private final Map<Integer, PartitionStateMachine> partitions = new ConcurrentHashMap<>();
+    private final SnapshotStore snapshots;
+    private final int ringSize;
+    private final int maxOrdersPerPartition;
+    private final long snapshotIntervalNanos;
+    private final VelocityEngine velocity;
+    private final Metrics metrics;
+
+    @Autowired
+    public PaymentStateMachine(MeterRegistry meterRegistry,
+                               PipelineLatency latency,
+                               ObjectProvider<VelocityEngine> velocityEngine,
+                               @Value("${payment.state.ring-size:1024}") int ringSize,
+                               @Value("${payment.state.max-orders-per-partition:1000000}") int maxOrdersPerPartition,
+                               @Value("${payment.state.snapshot-dir:./data/state-snapshots}") String snapshotDir,
+                               @Value("${payment.state.snapshot-interval-ms:30000}") long snapshotIntervalMillis) {
+        this.snapshots = new SnapshotStore(Paths.get(snapshotDir));
+        this.ringSize = ringSize;
+        this.maxOrdersPerPartition = maxOrdersPerPartition;
+        this.snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(snapshotIntervalMillis);
+        this.velocity = velocityEngine.getIfAvailable();
+        this.metrics = new Metrics(meterRegistry, latency);
+    }
+
+    /**
+     * 发布一个支付事件。
+     *
+     * @param partition      事件所在的 Kafka 分区。
+     * @param offset         事件的 Kafka 位移。
+     * @param paymentRequest 解码后的支付请求。
+     * @param listener       接收本事件产生的状态迁移。
+     * @return 事件在该分区内的序号。
+     */
+    public long publish(int partition, long offset, PaymentRequest paymentRequest, TransitionListener listener) {
+        return partitions.computeIfAbsent(partition, this::startPartition).publish(offset, paymentRequest, listener);
+    }
+
+    /**
+     * 等待分区中给定序号及之前的事件全部处理完毕。
+     */
+    public void awaitProcessed(int partition, long sequence) {
+        PartitionStateMachine machine = partitions.get(partition);
+        if (machine == null) {
+            throw new IllegalStateException("分区 " + partition + " 未分配给本实例");
+        }
+        machine.awaitProcessed(sequence);
+    }
+
+    /**
+     * 分区分配后从快照恢复状态和速率窗口，并让消费者从快照位移之后继续消费，但不越过已提交位移。
+     *
+     * @param assignments 分配到的分区及其当前消费位置。
+     */
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (velocity != null) {
+            velocity.onPartitionsAssigned(assignments.keySet());
+        }
+        for (Map.Entry<TopicPartition, Long> assignment : assignments.entrySet()) {
+            TopicPartition topicPartition = assignment.getKey();
+            PartitionStateMachine machine = partitions.computeIfAbsent(topicPartition.partition(), this::startPartition);
+            long restoredOffset = machine.restoredOffset();
+            if (restoredOffset >= 0) {
+                long position = assignment.getValue() == null ? Long.MAX_VALUE : assignment.getValue();
+                logger.info("分区 {} 从快照恢复，位移 {}，当前位置 {}", topicPartition, restoredOffset, position);
+                if (restoredOffset + 1 < position) {
+                    callback.seek(topicPartition.topic(), topicPartition.partition(), restoredOffset + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * 分区被撤销时写入最终快照并释放内存中的状态；状态机线程停止后再写出并移除这些分区的速率窗口。
+     */
+    public void onPartitionsRevoked(Collection<TopicPartition> revoked) {
+        for (TopicPartition topicPartition : revoked) {
+            PartitionStateMachine machine = partitions.remove(topicPartition.partition());
+            if (machine != null) {
+                stop(machine);
+            }
+        }
+        if (velocity != null) {
+            velocity.onPartitionsRevoked(revoked);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (PartitionStateMachine machine : partitions.values()) {
+            stop(machine);
+        }
+        partitions.clear();
+        // 状态机线程全部停止后再写速率窗口快照，快照包含所有已处理的事件
+        if (velocity != null) {
+            velocity.snapshot();
+        }
+        snapshots.shutdown();
+    }
+
+    private PartitionStateMachine startPartition(int partition) {
+        PartitionStateMachine machine = new PartitionStateMachine(partition, ringSize, maxOrdersPerPartition,
+                snapshots, snapshotIntervalNanos, velocity, metrics);
+        machine.start();
+        return machine;
+    }
+
+    private void stop(PartitionStateMachine machine) {
+        try {
+            machine.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 状态机共用的指标。
+     */
+    static final class Metrics {
+
+        final Counter duplicates;
+        final Counter rejected;
+        // 事件从发布到状态机处理完成的耗时记为 state-update 阶段
+        final PipelineLatency latency;
+        private final Map<PaymentStatus, Counter> transitions = new EnumMap<>(PaymentStatus.class);
+
+        Metrics(MeterRegistry meterRegistry, PipelineLatency latency) {
+            this.duplicates = Counter.builder("payment.state.duplicates")
+                    .description("因重放或重复提交而被忽略的事件数")
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("payment.state.rejected")
+                    .description("被拒绝的非法状态迁移数")
+                    .register(meterRegistry);
+            this.latency = latency;
+            for (PaymentStatus status : PaymentStatus.values()) {
+                transitions.put(status, Counter.builder("payment.state.transitions")
+                        .description("状态迁移次数")
+                        .tag("status", status.name())
+                        .register(meterRegistry));
+            }
+        }
+
+        Counter transitions(PaymentStatus status) {
+            return transitions.get(status);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.status.PaymentStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 分区状态快照的本地文件存储。
+ * <p>
+ * 快照的序列化和文件写入都在同一个后台线程上按提交顺序执行，避免与订单数成正比的工作和磁盘 IO 影响处理延迟。
+ * 写入先落到临时文件再原子重命名，读取时不会看到写了一半的快照。
+ */
+class SnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final int MAGIC = 0x50534D31; // "PSM1"
+
+    private final Path directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "payment-state-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 快照内容：最后应用的 Kafka 位移和按插入顺序排列的订单状态。
+     */
+    static final class Snapshot {
+
+        final long lastAppliedOffset;
+        final LinkedHashMap<String, PaymentStatus> orders;
+
+        Snapshot(long lastAppliedOffset, LinkedHashMap<String, PaymentStatus> orders) {
+            this.lastAppliedOffset = lastAppliedOffset;
+            this.orders = orders;
+        }
+    }
+
+    static byte[] serialize(int partition, long lastAppliedOffset, Map<String, PaymentStatus> orders) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + orders.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(partition);
+            out.writeLong(lastAppliedOffset);
+            out.writeInt(orders.size());
+            for (Map.Entry<String, PaymentStatus> entry : orders.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(entry.getValue().ordinal());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 在后台线程生成并写入快照。
+     *
+     * @param data 在后台线程上调用，返回序列化后的快照。
+     */
+    void writeAsync(int partition, Supplier<byte[]> data) {
+        writer.execute(() -> write(partition, data.get()));
+    }
+
+    /**
+     * 在后台线程生成并写入快照，等待写入完成，用于分区撤销和关闭时。排在它之前提交的快照会先写完。
+     */
+    void write(int partition, Supplier<byte[]> data) throws InterruptedException {
+        try {
+            writer.submit(() -> write(partition, data.get())).get();
+        } catch (ExecutionException e) {
+            logger.error("生成分区 {} 的状态快照失败", partition, e.getCause());
+        }
+    }
+
+    private void write(int partition, byte[] data) {
+        Path target = file(partition);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("写入分区 {} 的状态快照失败", partition, e);
+        }
+    }
+
+    /**
+     * 读取分区快照。
+     *
+     * @return 快照；文件不存在或已损坏时返回 null，此时状态从空开始。
+     */
+    Snapshot read(int partition) {
+        Path file = file(partition);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        PaymentStatus[] statuses = PaymentStatus.values();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != MAGIC || in.readInt() != partition) {
+                logger.warn("忽略格式不符的状态快照 {}", file);
+                return null;
+            }
+            long lastAppliedOffset = in.readLong();
+            int count = in.readInt();
+            LinkedHashMap<String, PaymentStatus> orders = new LinkedHashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                orders.put(in.readUTF(), statuses[in.readUnsignedByte()]);
+            }
+            return new Snapshot(lastAppliedOffset, orders);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("读取状态快照 {} 失败，将从空状态开始", file, e);
+            return null;
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private Path file(int partition) {
+        return directory.resolve("payment-events-" + partition + ".snapshot");
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.status.PaymentStatus;
+import com.example.paymentsystem.status.PaymentStatusLayout;
+import com.example.paymentsystem.status.StatusInvalidations;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 收集一个分区在一批消息中产生的状态迁移，供消费者随后一次性写入 Redis。
+ * <p>
+ * 只由该分区的状态机线程写入；调用方在 {@link PaymentStateMachine#awaitProcessed(int, long)} 返回后再读取，
+ * 该方法建立了必要的 happens-before 关系，因此无需加锁。
+ * <p>
+ * 重放的订单状态和新迁移一起写入 Redis，但不会出现在 {@link #forEach(TransitionListener)} 中。
+ */
+public class TransitionBuffer implements TransitionListener {
+
+    private final List<String> orderIds = new ArrayList<>();
+    private final List<PaymentStatus> statuses = new ArrayList<>();
+    private final BitSet replayed = new BitSet();
+
+    @Override
+    public void onTransition(String orderId, PaymentStatus status) {
+        orderIds.add(orderId);
+        statuses.add(status);
+    }
+
+    @Override
+    public void onReplay(String orderId, PaymentStatus status) {
+        replayed.set(orderIds.size());
+        onTransition(orderId, status);
+    }
+
+    public boolean isEmpty() {
+        return orderIds.isEmpty();
+    }
+
+    public int size() {
+        return orderIds.size();
+    }
+
+    /**
+     * 按产生顺序把全部新迁移交给给定监听器，跳过重放的状态。
+     */
+    public void forEach(TransitionListener listener) {
+        for (int i = 0; i < orderIds.size(); i++) {
+            if (!replayed.get(i)) {
+                listener.onTransition(orderIds.get(i), statuses.get(i));
+            }
+        }
+    }
+
+    /**
+     * 按产生顺序把全部迁移和重放的状态追加到给定连接（通常处于管道模式），随后发布一条覆盖这些订单的变更通知。
+     *
+     * @param connection Redis 连接。
+     * @param layout     状态存储布局。
+     */
+    public void appendTo(RedisConnection connection, PaymentStatusLayout layout) {
+        for (int i = 0; i < orderIds.size(); i++) {
+            layout.append(connection, orderIds.get(i), statuses.get(i), null);
+        }
+        StatusInvalidations.publish(connection, orderIds);
+    }
+}
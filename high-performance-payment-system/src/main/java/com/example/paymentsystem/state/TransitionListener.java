@@ -0,0 +1,28 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.status.PaymentStatus;
+
+/**
+ * 接收状态机产生的状态迁移。
+ * <p>
+ * 回调总是在所属分区的状态机线程上执行，实现必须足够快且不能阻塞。
+ */
+@FunctionalInterface
+public interface TransitionListener {
+
+    /**
+     * @param orderId 发生迁移的订单 ID。
+     * @param status  迁移后的状态。
+     */
+    void onTransition(String orderId, PaymentStatus status);
+
+    /**
+     * 已处理过的订单被重放（Kafka 重投或重复提交）时，重新发出它的当前状态，使上次没能写入 Redis 的状态得以补写。
+     * 重放不是新的迁移，不应再次计入结算等统计。默认忽略。
+     *
+     * @param orderId 被重放的订单 ID。
+     * @param status  订单的当前状态。
+     */
+    default void onReplay(String orderId, PaymentStatus status) {
+    }
+}
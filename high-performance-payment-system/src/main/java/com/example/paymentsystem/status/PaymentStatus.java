@@ -0,0 +1,65 @@
+package com.example.paymentsystem.status;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 支付状态及其合法的状态迁移。
+ * <p>
+ * 合法迁移为 PENDING→AUTHORIZED、PENDING→FAILED、AUTHORIZED→SETTLED 和 AUTHORIZED→FAILED；
+ * SETTLED 与 FAILED 为终态。
+ */
+public enum PaymentStatus {
+
+    /**
+     * 接入服务已受理，等待消费者处理。
+     */
+    PENDING,
+
+    /**
+     * 支付已通过校验并完成授权。
+     */
+    AUTHORIZED,
+
+    /**
+     * 支付已结算，终态。
+     */
+    SETTLED,
+
+    /**
+     * 支付失败，终态。
+     */
+    FAILED;
+
+    private final byte[] bytes = name().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @return 预先编码好的状态值，调用方不得修改返回的数组。
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 是否为终态。
+     */
+    public boolean isTerminal() {
+        return this == SETTLED || this == FAILED;
+    }
+
+    /**
+     * 判断从当前状态迁移到目标状态是否合法。
+     *
+     * @param next 目标状态。
+     * @return 合法时返回 true。
+     */
+    public boolean canTransitionTo(PaymentStatus next) {
+        switch (this) {
+            case PENDING:
+                return next == AUTHORIZED || next == FAILED;
+            case AUTHORIZED:
+                return next == SETTLED || next == FAILED;
+            default:
+                return false;
+        }
+    }
+}
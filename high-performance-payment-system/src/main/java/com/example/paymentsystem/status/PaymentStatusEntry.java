@@ -0,0 +1,73 @@
+package com.example.paymentsystem.status;
+
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 从 Redis Streams 读出的一条支付状态记录。
+ */
+public final class PaymentStatusEntry {
+
+    static final byte[] ORDER_ID_FIELD = "orderId".getBytes(StandardCharsets.UTF_8);
+    static final byte[] STATUS_FIELD = "status".getBytes(StandardCharsets.UTF_8);
+    static final byte[] REQUEST_FIELD = "request".getBytes(StandardCharsets.UTF_8);
+
+    private final String orderId;
+    private final RecordId recordId;
+    private final PaymentStatus status;
+    private final byte[] paymentEvent;
+
+    public PaymentStatusEntry(String orderId, RecordId recordId, PaymentStatus status, byte[] paymentEvent) {
+        this.orderId = orderId;
+        this.recordId = recordId;
+        this.status = status;
+        this.paymentEvent = paymentEvent;
+    }
+
+    /**
+     * 从流记录中解析状态字段。
+     *
+     * @param orderId 订单 ID。
+     * @param record  XRANGE/XREVRANGE 返回的记录。
+     * @return 解析得到的状态记录。
+     */
+    static PaymentStatusEntry fromRecord(String orderId, ByteRecord record) {
+        byte[] status = null;
+        byte[] paymentEvent = null;
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            if (Arrays.equals(field.getKey(), STATUS_FIELD)) {
+                status = field.getValue();
+            } else if (Arrays.equals(field.getKey(), REQUEST_FIELD)) {
+                paymentEvent = field.getValue();
+            }
+        }
+        if (status == null) {
+            throw new IllegalStateException("流记录 " + record.getId() + " 缺少 status 字段");
+        }
+        return new PaymentStatusEntry(orderId, record.getId(),
+                PaymentStatus.valueOf(new String(status, StandardCharsets.UTF_8)), paymentEvent);
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public RecordId getRecordId() {
+        return recordId;
+    }
+
+    public PaymentStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return PENDING 记录附带的编码后支付事件，其他状态为 null。
+     */
+    public byte[] getPaymentEvent() {
+        return paymentEvent;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.paymentsystem.status;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 支付状态在 Redis 中的存储布局。
+ * <p>
+ * 由 payment.redis.layout 选择具体实现：per-order 为每个订单创建一个流，sharded 写入固定数量的分片流并维护订单索引。
+ */
+public interface PaymentStatusLayout {
+
+    /**
+     * 在给定连接上发出追加一条状态记录的命令。连接可能处于管道模式，此时命令的结果在管道结束时返回，
+     * 每次调用恰好产生一个结果。
+     *
+     * @param connection   Redis 连接。
+     * @param orderId      订单 ID。
+     * @param status       支付状态。
+     * @param paymentEvent 编码后的支付事件，为 null 时只写入状态。
+     */
+    void append(RedisConnection connection, String orderId, PaymentStatus status, byte[] paymentEvent);
+
+    /**
+     * 把 {@link #append} 在管道中产生的结果转换为流记录 ID。
+     *
+     * @param pipelineResult 管道返回的结果。
+     * @return 新追加记录的 ID。
+     */
+    RecordId toRecordId(Object pipelineResult);
+
+    /**
+     * 在管道中执行包含 {@link #append} 的写入。调用方应通过此方法而不是直接调用
+     * {@link StringRedisTemplate#executePipelined(RedisCallback)}，布局可以借此在可恢复的失败后重试整个管道。
+     *
+     * @return 管道中各命令的结果。
+     */
+    default List<Object> executePipelined(StringRedisTemplate redisTemplate, RedisCallback<?> callback) {
+        return redisTemplate.executePipelined(callback);
+    }
+
+    /**
+     * 删除一条刚追加的状态记录，用于撤销发布失败的受理。订单的其他记录不受影响。
+     *
+     * @param orderId  订单 ID。
+     * @param recordId {@link #append} 返回的记录 ID。
+     */
+    void remove(String orderId, RecordId recordId);
+
+    /**
+     * 读取订单最新的状态记录。
+     *
+     * @param orderId 订单 ID。
+     * @return 最新的状态记录；订单不存在或记录已被裁剪时为空。
+     */
+    Optional<PaymentStatusEntry> latest(String orderId);
+}
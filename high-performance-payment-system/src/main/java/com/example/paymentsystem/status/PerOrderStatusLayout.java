@@ -0,0 +1,68 @@
+package com.example.paymentsystem.status;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 每个订单一个流的布局，流的键即订单 ID。
+ * <p>
+ * 这是默认布局（payment.redis.layout=per-order），与早期版本写入的数据兼容。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.redis.layout", havingValue = "per-order", matchIfMissing = true)
+public class PerOrderStatusLayout implements PaymentStatusLayout {
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Autowired
+    public PerOrderStatusLayout(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void append(RedisConnection connection, String orderId, PaymentStatus status, byte[] paymentEvent) {
+        Map<byte[], byte[]> fields = paymentEvent == null
+                ? Map.of(PaymentStatusEntry.STATUS_FIELD, status.bytes())
+                : Map.of(PaymentStatusEntry.STATUS_FIELD, status.bytes(), PaymentStatusEntry.REQUEST_FIELD, paymentEvent);
+        MapRecord<byte[], byte[], byte[]> record = StreamRecords.newRecord()
+                .in(orderId.getBytes(StandardCharsets.UTF_8))
+                .ofMap(fields);
+        connection.streamCommands().xAdd(record);
+    }
+
+    @Override
+    public RecordId toRecordId(Object pipelineResult) {
+        return (RecordId) pipelineResult;
+    }
+
+    @Override
+    public void remove(String orderId, RecordId recordId) {
+        redisTemplate.opsForStream().delete(orderId, recordId);
+    }
+
+    @Override
+    public Optional<PaymentStatusEntry> latest(String orderId) {
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRevRange(orderId.getBytes(StandardCharsets.UTF_8),
+                        Range.unbounded(), Limit.limit().count(1)));
+        if (records == null || records.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(PaymentStatusEntry.fromRecord(orderId, records.get(0)));
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.paymentsystem.status;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 哈希分片的流布局：所有订单的状态写入 N 个分片流，并用近似 MAXLEN 裁剪控制内存。
+ * <p>
+ * 每个分片有一个配套的索引哈希，记录订单 ID 到其最新流记录 ID 的映射，查询时先 HGET 再按 ID 读取单条记录，
+ * 复杂度为 O(1)。分片流与索引使用相同的哈希标签（例如 {@code payment-status:{3}} 与
+ * {@code payment-status-index:{3}}），在 Redis Cluster 中位于同一槽位，追加和更新索引由一个 Lua 脚本原子完成。
+ * 同一个脚本负责裁剪：流长度超出 MAXLEN {@value #TRIM_BATCH} 条以上时，脚本删除即将被裁剪的记录对应的索引项，
+ * 再精确裁剪到 MAXLEN，索引因此不会随被裁剪的记录无限增长。
+ * <p>
+ * 脚本以 EVALSHA 调用，只发送 SHA1；服务端脚本缓存中没有该脚本（例如 Redis 重启后）时加载脚本并重试整个管道。
+ * <p>
+ * 在 payment.redis.layout=sharded 时启用。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.redis.layout", havingValue = "sharded")
+public class ShardedStatusLayout implements PaymentStatusLayout {
+
+    static final String STREAM_PREFIX = "payment-status:";
+    static final String INDEX_PREFIX = "payment-status-index:";
+    static final String MIGRATED_PREFIX = "payment-status-migrated:";
+    static final String MIGRATED_TARGET_PREFIX = "payment-status-migrated-target:";
+    // 超出 MAXLEN 的记录攒够这么多条才裁剪一次，与近似 MAXLEN 的宏节点大小相当
+    static final int TRIM_BATCH = 100;
+    // 一次追加最多裁剪的记录数，调小 MAXLEN 后积压的超出部分分摊到后续追加中
+    private static final int MAX_TRIM = 1000;
+
+    /**
+     * KEYS[1] 分片流，KEYS[2] 索引哈希；ARGV[1] MAXLEN，ARGV[2] 订单 ID，ARGV[3] 状态，其余参数为附加字段。
+     * 裁剪时只删除仍指向被裁剪记录的索引项，同一订单之后追加的记录不受影响；orderId 总是记录的第一个字段。
+     */
+    private static final RedisScript<byte[]> APPEND_SCRIPT = RedisScript.of(
+            "local id = redis.call('XADD', KEYS[1], '*', 'orderId', ARGV[2], 'status', ARGV[3], unpack(ARGV, 4)) "
+                    + "redis.call('HSET', KEYS[2], ARGV[2], id) "
+                    + "local length = redis.call('XLEN', KEYS[1]) "
+                    + "local excess = length - tonumber(ARGV[1]) "
+                    + "if excess >= " + TRIM_BATCH + " then "
+                    + "  local trimmed = redis.call('XRANGE', KEYS[1], '-', '+', 'COUNT', "
+                    + "math.min(excess, " + MAX_TRIM + ")) "
+                    + "  for _, entry in ipairs(trimmed) do "
+                    + "    local orderId = entry[2][2] "
+                    + "    if redis.call('HGET', KEYS[2], orderId) == entry[1] then "
+                    + "      redis.call('HDEL', KEYS[2], orderId) "
+                    + "    end "
+                    + "  end "
+                    + "  redis.call('XTRIM', KEYS[1], 'MAXLEN', length - #trimmed) "
+                    + "end "
+                    + "return id", byte[].class);
+
+    /**
+     * 仅当索引仍指向已被裁剪的记录时才删除索引项，避免误删并发写入的新 ID。
+     */
+    private static final RedisScript<Long> CLEAN_INDEX_SCRIPT = RedisScript.of(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then "
+                    + "return redis.call('HDEL', KEYS[1], ARGV[1]) end "
+                    + "return 0", Long.class);
+
+    /**
+     * KEYS[1] 分片流，KEYS[2] 索引哈希；ARGV[1] 订单 ID，ARGV[2] 记录 ID。删除记录，索引仍指向它时一并删除索引项。
+     */
+    private static final RedisScript<Long> REMOVE_SCRIPT = RedisScript.of(
+            "local removed = redis.call('XDEL', KEYS[1], ARGV[2]) "
+                    + "if redis.call('HGET', KEYS[2], ARGV[1]) == ARGV[2] then "
+                    + "redis.call('HDEL', KEYS[2], ARGV[1]) end "
+                    + "return removed", Long.class);
+
+    /**
+     * 迁移旧布局记录时使用的追加脚本。KEYS[1] 分片流，KEYS[2] 索引哈希，KEYS[3] 迁移进度哈希，
+     * KEYS[4] 最近一条迁移记录在分片中的 ID；ARGV[1] 订单 ID，ARGV[2] 旧流中的记录 ID，ARGV[3] 状态，
+     * 其余参数为附加字段。追加、更新索引和记录迁移进度原子完成，迁移中断后从进度之后继续，不会重复追加。
+     * <p>
+     * 迁移与切换后的写入同时进行，迁移记录的流 ID 可能比切换后写入的新状态更大，因此只有订单还没有索引项，
+     * 或索引项仍指向上一条迁移记录时才更新索引，切换后写入的状态不会被旧状态覆盖。
+     */
+    private static final RedisScript<byte[]> MIGRATE_SCRIPT = RedisScript.of(
+            "local id = redis.call('XADD', KEYS[1], '*', 'orderId', ARGV[1], 'status', ARGV[3], unpack(ARGV, 4)) "
+                    + "local current = redis.call('HGET', KEYS[2], ARGV[1]) "
+                    + "if not current or current == redis.call('HGET', KEYS[4], ARGV[1]) then "
+                    + "redis.call('HSET', KEYS[2], ARGV[1], id) end "
+                    + "redis.call('HSET', KEYS[3], ARGV[1], ARGV[2]) "
+                    + "redis.call('HSET', KEYS[4], ARGV[1], id) "
+                    + "return id", byte[].class);
+
+    private static final byte[] APPEND_SHA = APPEND_SCRIPT.getSha1().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLEAN_INDEX_SHA = CLEAN_INDEX_SCRIPT.getSha1().getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final int shards;
+    private final byte[] maxLen;
+    private final byte[][] streamKeys;
+    private final byte[][] indexKeys;
+    private final byte[][] migratedKeys;
+    private final byte[][] migratedTargetKeys;
+
+    @Autowired
+    public ShardedStatusLayout(StringRedisTemplate redisTemplate,
+                               @Value("${payment.redis.sharded.shards:16}") int shards,
+                               @Value("${payment.redis.sharded.max-len:1000000}") long maxLen) {
+        if (shards < 1 || maxLen < 1) {
+            throw new IllegalArgumentException("payment.redis.sharded.shards 和 max-len 必须大于 0");
+        }
+        this.redisTemplate = redisTemplate;
+        this.shards = shards;
+        this.maxLen = Long.toString(maxLen).getBytes(StandardCharsets.UTF_8);
+        this.streamKeys = new byte[shards][];
+        this.indexKeys = new byte[shards][];
+        this.migratedKeys = new byte[shards][];
+        this.migratedTargetKeys = new byte[shards][];
+        for (int i = 0; i < shards; i++) {
+            this.streamKeys[i] = (STREAM_PREFIX + "{" + i + "}").getBytes(StandardCharsets.UTF_8);
+            this.indexKeys[i] = (INDEX_PREFIX + "{" + i + "}").getBytes(StandardCharsets.UTF_8);
+            this.migratedKeys[i] = (MIGRATED_PREFIX + "{" + i + "}").getBytes(StandardCharsets.UTF_8);
+            this.migratedTargetKeys[i] = (MIGRATED_TARGET_PREFIX + "{" + i + "}").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 计算订单所在的分片。使用 {@link String#hashCode()}，其算法由语言规范固定，不同实例间结果一致。
+     *
+     * @param orderId 订单 ID。
+     * @return 分片序号。
+     */
+    public int shardOf(String orderId) {
+        return Math.floorMod(orderId.hashCode(), shards);
+    }
+
+    @Override
+    public void append(RedisConnection connection, String orderId, PaymentStatus status, byte[] paymentEvent) {
+        int shard = shardOf(orderId);
+        byte[] orderIdBytes = orderId.getBytes(StandardCharsets.UTF_8);
+        byte[][] keysAndArgs = paymentEvent == null
+                ? new byte[][]{streamKeys[shard], indexKeys[shard], maxLen, orderIdBytes, status.bytes()}
+                : new byte[][]{streamKeys[shard], indexKeys[shard], maxLen, orderIdBytes, status.bytes(),
+                PaymentStatusEntry.REQUEST_FIELD, paymentEvent};
+        connection.scriptingCommands().evalSha(APPEND_SHA, ReturnType.VALUE, 2, keysAndArgs);
+    }
+
+    /**
+     * 在给定连接上追加一条从旧布局迁移来的记录，并原子地把 {@code sourceId} 记为该订单的迁移进度。
+     * 订单在切换后已写入新状态时不更新索引。
+     * 脚本以 EVAL 发送，迁移只执行一次，不必处理脚本缓存。
+     *
+     * @param sourceId 记录在旧流中的 ID。
+     */
+    void appendMigrated(RedisConnection connection, String orderId, RecordId sourceId, PaymentStatus status,
+                        byte[] paymentEvent) {
+        int shard = shardOf(orderId);
+        byte[] orderIdBytes = orderId.getBytes(StandardCharsets.UTF_8);
+        byte[] sourceIdBytes = sourceId.getValue().getBytes(StandardCharsets.UTF_8);
+        byte[][] keysAndArgs = paymentEvent == null
+                ? new byte[][]{streamKeys[shard], indexKeys[shard], migratedKeys[shard], migratedTargetKeys[shard],
+                orderIdBytes, sourceIdBytes, status.bytes()}
+                : new byte[][]{streamKeys[shard], indexKeys[shard], migratedKeys[shard], migratedTargetKeys[shard],
+                orderIdBytes, sourceIdBytes, status.bytes(), PaymentStatusEntry.REQUEST_FIELD, paymentEvent};
+        connection.scriptingCommands().eval(MIGRATE_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8),
+                ReturnType.VALUE, 4, keysAndArgs);
+    }
+
+    /**
+     * @return 订单已迁移到的旧流记录 ID；尚未开始迁移时为 null。
+     */
+    String migratedUpTo(String orderId) {
+        Object value = redisTemplate.opsForHash().get(MIGRATED_PREFIX + "{" + shardOf(orderId) + "}", orderId);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 旧流删除后清除订单的迁移进度。
+     */
+    void clearMigrated(String orderId) {
+        int shard = shardOf(orderId);
+        redisTemplate.opsForHash().delete(MIGRATED_PREFIX + "{" + shard + "}", orderId);
+        redisTemplate.opsForHash().delete(MIGRATED_TARGET_PREFIX + "{" + shard + "}", orderId);
+    }
+
+    @Override
+    public List<Object> executePipelined(StringRedisTemplate redisTemplate, RedisCallback<?> callback) {
+        try {
+            return redisTemplate.executePipelined(callback);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // 脚本缓存中没有追加脚本时管道中的追加全部失败，加载后整体重试
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.scriptingCommands().scriptLoad(
+                            APPEND_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+            return redisTemplate.executePipelined(callback);
+        }
+    }
+
+    @Override
+    public RecordId toRecordId(Object pipelineResult) {
+        if (pipelineResult instanceof byte[]) {
+            return RecordId.of(new String((byte[]) pipelineResult, StandardCharsets.UTF_8));
+        }
+        return RecordId.of(String.valueOf(pipelineResult));
+    }
+
+    @Override
+    public void remove(String orderId, RecordId recordId) {
+        int shard = shardOf(orderId);
+        List<String> keys = List.of(STREAM_PREFIX + "{" + shard + "}", INDEX_PREFIX + "{" + shard + "}");
+        redisTemplate.execute(REMOVE_SCRIPT, keys, orderId, recordId.getValue());
+    }
+
+    @Override
+    public Optional<PaymentStatusEntry> latest(String orderId) {
+        int shard = shardOf(orderId);
+        byte[] orderIdBytes = orderId.getBytes(StandardCharsets.UTF_8);
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> {
+            byte[] recordId = connection.hashCommands().hGet(indexKeys[shard], orderIdBytes);
+            if (recordId == null) {
+                return List.of();
+            }
+            String id = new String(recordId, StandardCharsets.UTF_8);
+            List<ByteRecord> found = connection.streamCommands().xRange(streamKeys[shard], Range.closed(id, id));
+            if (found == null || found.isEmpty()) {
+                // 记录已被裁剪但索引项还在（例如裁剪前写入的旧数据），顺便清理失效的索引项
+                cleanIndex(connection, indexKeys[shard], orderIdBytes, recordId);
+            }
+            return found;
+        });
+        if (records == null || records.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(PaymentStatusEntry.fromRecord(orderId, records.get(0)));
+    }
+
+    private static void cleanIndex(RedisConnection connection, byte[] indexKey, byte[] orderId, byte[] recordId) {
+        try {
+            connection.scriptingCommands().evalSha(CLEAN_INDEX_SHA, ReturnType.INTEGER, 1, indexKey, orderId, recordId);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            connection.scriptingCommands().eval(CLEAN_INDEX_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8),
+                    ReturnType.INTEGER, 1, indexKey, orderId, recordId);
+        }
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
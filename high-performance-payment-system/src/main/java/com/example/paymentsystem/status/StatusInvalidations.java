@@ -0,0 +1,67 @@
+package com.example.paymentsystem.status;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 状态变更通知：写入状态记录的一方在同一连接上发布变更的订单 ID，查询侧的本地缓存据此失效对应条目。
+ * <p>
+ * 一条消息携带一批订单 ID，以换行分隔，因此一次管道写入无论包含多少条状态迁移都只产生一条 PUBLISH。
+ * 发布命令排在状态写入之后，Redis 按顺序执行同一连接上的命令，订阅方收到通知时新记录一定已经可读。
+ */
+public final class StatusInvalidations {
+
+    /**
+     * 通知使用的 Pub/Sub 频道。
+     */
+    public static final String CHANNEL = "payment-status-invalidations";
+
+    private static final byte[] CHANNEL_BYTES = CHANNEL.getBytes(StandardCharsets.UTF_8);
+    private static final char SEPARATOR = '\n';
+
+    private StatusInvalidations() {
+    }
+
+    /**
+     * 在给定连接（通常处于管道模式）上发布一批订单 ID 的变更通知。
+     *
+     * @param connection Redis 连接。
+     * @param orderIds   状态发生变化的订单 ID，为空时不发布。
+     */
+    public static void publish(RedisConnection connection, List<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(orderIds.size() * 24);
+        for (int i = 0; i < orderIds.size(); i++) {
+            if (i > 0) {
+                message.append(SEPARATOR);
+            }
+            message.append(orderIds.get(i));
+        }
+        connection.publish(CHANNEL_BYTES, message.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析一条通知消息。
+     *
+     * @param message 消息体。
+     * @return 消息中的订单 ID。
+     */
+    public static List<String> parse(byte[] message) {
+        List<String> orderIds = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= message.length; i++) {
+            if (i == message.length || message[i] == SEPARATOR) {
+                if (i > start) {
+                    orderIds.add(new String(message, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        return orderIds;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.paymentsystem.status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把旧的“每个订单一个流”布局迁移到分片布局的工具。
+ * <p>
+ * 服务就绪后在后台线程中执行，不阻塞启动和就绪探针。通过 SCAN 逐个处理与 {@code migrate-key-pattern} 匹配的流键，
+ * 只有全部记录都符合旧布局（只含 status 和 request 字段，且 status 可以识别）的键才会被迁移，其他流原样保留。
+ * <p>
+ * 每条记录由脚本追加到对应分片，同时更新索引并把旧记录 ID 记为该订单的迁移进度，迁移中断（包括进程崩溃）后
+ * 从进度之后继续，不会重复追加。迁移期间消费者已在向分片写入，订单在切换后已有新状态时脚本不改动其索引，
+ * 迁移来的旧状态不会覆盖它；每批追加之后发布 {@link StatusInvalidations} 通知，查询侧的本地缓存随之失效。
+ * 追加完成后由脚本删除旧键，删除前确认旧流的最后一条记录仍是已迁移的最后一条；
+ * 滚动部署期间旧布局的实例在此期间写入的记录会被发现并在下一轮迁移，而不是随旧键一起被删除。
+ * <p>
+ * 在 payment.redis.layout=sharded 且 payment.redis.sharded.migrate-on-startup=true 时启用，
+ * 此时必须设置 payment.redis.sharded.migrate-key-pattern。
+ */
+@Component
+@ConditionalOnExpression("'${payment.redis.layout:per-order}' == 'sharded' "
+        + "and ${payment.redis.sharded.migrate-on-startup:false}")
+public class StatusStreamMigrationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatusStreamMigrationRunner.class);
+    // 旧流在迁移过程中持续被写入时，最多追赶这么多轮，剩余的留给下次启动
+    private static final int MAX_PASSES = 3;
+
+    /**
+     * KEYS[1] 旧流；ARGV[1] 已迁移的最后一条记录 ID。旧流为空或最后一条记录仍是它时才删除。
+     */
+    private static final RedisScript<Long> DELETE_IF_MIGRATED_SCRIPT = RedisScript.of(
+            "local last = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1) "
+                    + "if #last == 0 or last[1][1] == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) end "
+                    + "return -1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ShardedStatusLayout layout;
+    private final String keyPattern;
+
+    /**
+     * @param keyPattern 旧布局订单流键的 SCAN MATCH 模式，例如 {@code ORDER-*}。
+     */
+    @Autowired
+    public StatusStreamMigrationRunner(StringRedisTemplate redisTemplate, ShardedStatusLayout layout,
+                                       @Value("${payment.redis.sharded.migrate-key-pattern:}") String keyPattern) {
+        if (keyPattern.isEmpty()) {
+            throw new IllegalArgumentException("启用 payment.redis.sharded.migrate-on-startup 时必须设置 "
+                    + "payment.redis.sharded.migrate-key-pattern");
+        }
+        this.redisTemplate = redisTemplate;
+        this.layout = layout;
+        this.keyPattern = keyPattern;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread migration = new Thread(this::migrateAll, "payment-status-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    private void migrateAll() {
+        long keys = 0;
+        long skippedKeys = 0;
+        long migratedRecords = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(keyPattern).type(DataType.STREAM).count(1000).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                if (key.startsWith(ShardedStatusLayout.STREAM_PREFIX)) {
+                    continue;
+                }
+                int migrated = migrate(key);
+                if (migrated < 0) {
+                    skippedKeys++;
+                } else {
+                    keys++;
+                    migratedRecords += migrated;
+                }
+            }
+            logger.info("状态流迁移完成: {} 个键, {} 条记录, {} 个键不符合旧布局已跳过", keys, migratedRecords, skippedKeys);
+        } catch (RuntimeException e) {
+            logger.warn("状态流迁移中断，已迁移 {} 个键、{} 条记录，下次启动时继续: {}", keys, migratedRecords, e.toString());
+        }
+    }
+
+    /**
+     * 迁移一个旧流。
+     *
+     * @return 迁移的记录数；流中有不符合旧布局的记录时返回 -1，流保持不变。
+     */
+    private int migrate(String orderId) {
+        byte[] key = orderId.getBytes(StandardCharsets.UTF_8);
+        String lastId = layout.migratedUpTo(orderId);
+        int migrated = 0;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            String from = lastId;
+            Range<String> range = from == null ? Range.unbounded() : Range.rightUnbounded(Range.Bound.inclusive(from));
+            List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xRange(key, range));
+            List<PaymentStatusEntry> entries = new ArrayList<>(records == null ? 0 : records.size());
+            if (records != null) {
+                for (ByteRecord record : records) {
+                    if (record.getId().getValue().equals(from)) {
+                        continue;
+                    }
+                    if (!isPerOrderRecord(record)) {
+                        logger.warn("流 {} 的记录 {} 不符合旧布局，跳过该流", orderId, record.getId());
+                        return -1;
+                    }
+                    entries.add(PaymentStatusEntry.fromRecord(orderId, record));
+                }
+            }
+            if (!entries.isEmpty()) {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (PaymentStatusEntry entry : entries) {
+                        layout.appendMigrated(connection, orderId, entry.getRecordId(), entry.getStatus(),
+                                entry.getPaymentEvent());
+                    }
+                    StatusInvalidations.publish(connection, List.of(orderId));
+                    return null;
+                });
+                lastId = entries.get(entries.size() - 1).getRecordId().getValue();
+                migrated += entries.size();
+            }
+            Long deleted = redisTemplate.execute(DELETE_IF_MIGRATED_SCRIPT, List.of(orderId),
+                    lastId == null ? "" : lastId);
+            if (deleted != null && deleted >= 0) {
+                layout.clearMigrated(orderId);
+                return migrated;
+            }
+        }
+        logger.warn("流 {} 在迁移期间持续被写入，已迁移到 {}，下次启动时继续", orderId, lastId);
+        return migrated;
+    }
+
+    /**
+     * 旧布局的记录只有 status 字段和可选的 request 字段，且 status 是已知的状态。
+     */
+    private static boolean isPerOrderRecord(ByteRecord record) {
+        Map<byte[], byte[]> fields = record.getValue();
+        byte[] status = null;
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            if (Arrays.equals(field.getKey(), PaymentStatusEntry.STATUS_FIELD)) {
+                status = field.getValue();
+            } else if (!Arrays.equals(field.getKey(), PaymentStatusEntry.REQUEST_FIELD)) {
+                return false;
+            }
+        }
+        if (status == null) {
+            return false;
+        }
+        try {
+            PaymentStatus.valueOf(new String(status, StandardCharsets.UTF_8));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
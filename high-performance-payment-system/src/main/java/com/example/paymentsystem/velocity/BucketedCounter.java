@@ -0,0 +1,93 @@
+package com.example.paymentsystem.velocity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个滑动窗口内按时间桶累计的次数和金额，可被多个分区线程并发更新，不使用锁。
+ * <p>
+ * 每个桶占数组中相邻的两个 long：第一个高 32 位为桶的纪元（时间除以桶宽），低 32 位为次数，两者通过一次 CAS 同时更新；
+ * 第二个为金额之和。桶所在的槽位被新纪元复用时，由一个线程先把纪元字段置为 {@link #RESETTING}，清零金额后再发布新纪元，
+ * 其他线程在这一短暂过程中自旋等待，因此不会有增量被清零操作覆盖。
+ */
+final class BucketedCounter {
+
+    private static final long RESETTING = -1L;
+
+    private final VelocityWindow window;
+    private final AtomicLongArray cells;
+
+    BucketedCounter(VelocityWindow window) {
+        this.window = window;
+        this.cells = new AtomicLongArray(window.getBuckets() * 2);
+    }
+
+    void add(long nowMillis, long amount) {
+        long epoch = nowMillis / window.getBucketMillis();
+        int index = (int) (epoch % window.getBuckets()) * 2;
+        while (true) {
+            long current = cells.get(index);
+            if (current == RESETTING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long currentEpoch = current >>> 32;
+            if (currentEpoch == epoch) {
+                if (cells.compareAndSet(index, current, current + 1)) {
+                    cells.addAndGet(index + 1, amount);
+                    return;
+                }
+            } else if (currentEpoch < epoch && cells.compareAndSet(index, current, RESETTING)) {
+                cells.set(index + 1, amount);
+                cells.set(index, epoch << 32 | 1);
+                return;
+            } else if (currentEpoch > epoch) {
+                // 调用方的时间落后于槽位中已有的更新纪元，计入已有的桶
+                if (cells.compareAndSet(index, current, current + 1)) {
+                    cells.addAndGet(index + 1, amount);
+                    return;
+                }
+            }
+        }
+    }
+
+    long count(long nowMillis) {
+        long oldest = nowMillis / window.getBucketMillis() - window.getBuckets() + 1;
+        long count = 0;
+        for (int i = 0; i < cells.length(); i += 2) {
+            long cell = cells.get(i);
+            if (cell != RESETTING && cell >>> 32 >= oldest) {
+                count += cell & 0xFFFFFFFFL;
+            }
+        }
+        return count;
+    }
+
+    long sum(long nowMillis) {
+        long oldest = nowMillis / window.getBucketMillis() - window.getBuckets() + 1;
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += 2) {
+            long cell = cells.get(i);
+            if (cell != RESETTING && cell >>> 32 >= oldest) {
+                sum += cells.get(i + 1);
+            }
+        }
+        return sum;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        for (int i = 0; i < cells.length(); i++) {
+            long cell = cells.get(i);
+            // 正在复用的桶按空桶写出
+            out.writeLong(cell == RESETTING ? 0 : cell);
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, in.readLong());
+        }
+    }
+}
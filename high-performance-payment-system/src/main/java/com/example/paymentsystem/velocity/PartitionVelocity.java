@@ -0,0 +1,148 @@
+package com.example.paymentsystem.velocity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 一个 Kafka 分区内全部用户的速率窗口。
+ * <p>
+ * 用户按 userId 的哈希分为 {@value #GROUPS} 组，快照以组为单位写出，单条快照的大小与分区内的用户总数无关。
+ * 每组快照记录写出时该分区已计入的位移，恢复后位移不大于该值的重放事件不会被重复计入。
+ * <p>
+ * 只有拥有该分区的状态机线程计入支付；快照和淘汰由维护线程执行，读取的计数器本身是无锁的。
+ */
+final class PartitionVelocity {
+
+    static final int GROUPS = 256;
+    private static final int MAGIC = 0x50564532; // "PVE2"
+
+    private final int partition;
+    private final Map<String, UserVelocity> users = new ConcurrentHashMap<>();
+    private final long[] restoredOffsets = new long[GROUPS];
+    private final AtomicIntegerArray dirty = new AtomicIntegerArray(GROUPS);
+    private volatile long recordedOffset = -1;
+
+    PartitionVelocity(int partition) {
+        this.partition = partition;
+        Arrays.fill(restoredOffsets, -1);
+    }
+
+    static int group(String userId) {
+        return Math.floorMod(userId.hashCode(), GROUPS);
+    }
+
+    int getPartition() {
+        return partition;
+    }
+
+    Map<String, UserVelocity> users() {
+        return users;
+    }
+
+    /**
+     * @return 位移不大于已计入或快照中记录的位移，即该事件是重放。
+     */
+    boolean isReplay(UserVelocity velocity, long offset) {
+        return offset <= recordedOffset || offset <= restoredOffsets[group(velocity.getUserId())];
+    }
+
+    /**
+     * 把一笔支付计入用户的窗口；重放的事件不计入，见 {@link #isReplay}。
+     */
+    void record(UserVelocity velocity, long offset, long nowMillis, long minorUnits) {
+        if (isReplay(velocity, offset)) {
+            return;
+        }
+        int group = group(velocity.getUserId());
+        velocity.add(nowMillis, minorUnits);
+        recordedOffset = offset;
+        dirty.set(group, 1);
+    }
+
+    void markDirty(int group) {
+        dirty.set(group, 1);
+    }
+
+    /**
+     * 取出有变化的组的快照并清除其变化标记，写出失败时由调用方通过 {@link #markDirty} 重新标记。
+     * 先读取已计入的位移再序列化计数，并发计入的少量支付在恢复后可能被重复计入，但不会丢失。
+     *
+     * @return 组号到快照的映射。
+     */
+    Map<Integer, byte[]> snapshotsIfDirty() throws IOException {
+        long offset = recordedOffset;
+        Map<Integer, List<UserVelocity>> groups = new HashMap<>();
+        for (int group = 0; group < GROUPS; group++) {
+            if (dirty.getAndSet(group, 0) == 1) {
+                groups.put(group, new ArrayList<>());
+            }
+        }
+        if (groups.isEmpty()) {
+            return Map.of();
+        }
+        for (UserVelocity velocity : users.values()) {
+            List<UserVelocity> members = groups.get(group(velocity.getUserId()));
+            if (members != null) {
+                members.add(velocity);
+            }
+        }
+        Map<Integer, byte[]> snapshots = new HashMap<>();
+        for (Map.Entry<Integer, List<UserVelocity>> entry : groups.entrySet()) {
+            int group = entry.getKey();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeInt(partition);
+                out.writeInt(group);
+                out.writeLong(Math.max(offset, restoredOffsets[group]));
+                out.writeInt(entry.getValue().size());
+                for (UserVelocity velocity : entry.getValue()) {
+                    velocity.writeTo(out);
+                }
+            }
+            snapshots.put(group, bytes.toByteArray());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 把一个组的快照恢复到该分区，只在分区开始消费之前调用。
+     *
+     * @return 恢复的用户数。
+     */
+    int restore(byte[] snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("速率窗口快照格式不符");
+            }
+            if (in.readInt() != partition) {
+                throw new IOException("速率窗口快照不属于分区 " + partition);
+            }
+            int group = in.readInt();
+            if (group < 0 || group >= GROUPS) {
+                throw new IOException("速率窗口快照的组号 " + group + " 无效");
+            }
+            long offset = in.readLong();
+            int count = in.readInt();
+            List<UserVelocity> restored = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                restored.add(UserVelocity.readFrom(in));
+            }
+            restoredOffsets[group] = offset;
+            for (UserVelocity velocity : restored) {
+                users.put(VelocityEngine.key(velocity.getUserId(), velocity.getCurrency()), velocity);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.paymentsystem.velocity;
+
+import com.example.paymentsystem.money.CurrencyUnit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 一个用户在一种货币下各滑动窗口内的支付次数和金额。
+ */
+final class UserVelocity {
+
+    private final String userId;
+    private final CurrencyUnit currency;
+    private final BucketedCounter[] counters;
+
+    private volatile long lastSeenMillis;
+
+    UserVelocity(String userId, CurrencyUnit currency) {
+        this.userId = userId;
+        this.currency = currency;
+        VelocityWindow[] windows = VelocityWindow.values();
+        this.counters = new BucketedCounter[windows.length];
+        for (VelocityWindow window : windows) {
+            counters[window.ordinal()] = new BucketedCounter(window);
+        }
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    CurrencyUnit getCurrency() {
+        return currency;
+    }
+
+    long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    void add(long nowMillis, long minorUnits) {
+        for (BucketedCounter counter : counters) {
+            counter.add(nowMillis, minorUnits);
+        }
+        lastSeenMillis = nowMillis;
+    }
+
+    long count(VelocityWindow window, long nowMillis) {
+        return counters[window.ordinal()].count(nowMillis);
+    }
+
+    long sum(VelocityWindow window, long nowMillis) {
+        return counters[window.ordinal()].sum(nowMillis);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(userId);
+        out.writeUTF(currency.getCode());
+        out.writeLong(lastSeenMillis);
+        for (BucketedCounter counter : counters) {
+            counter.writeTo(out);
+        }
+    }
+
+    static UserVelocity readFrom(DataInput in) throws IOException {
+        UserVelocity velocity = new UserVelocity(in.readUTF(), CurrencyUnit.of(in.readUTF()));
+        velocity.lastSeenMillis = in.readLong();
+        for (BucketedCounter counter : velocity.counters) {
+            counter.readFrom(in);
+        }
+        return velocity;
+    }
+}
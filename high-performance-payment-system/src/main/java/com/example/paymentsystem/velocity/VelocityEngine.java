@@ -0,0 +1,342 @@
+package com.example.paymentsystem.velocity;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.example.paymentsystem.snapshot.CompactedTopicReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 按 userId 统计滑动窗口（1m/1h/24h）内支付次数和金额的流式速率检查。
+ * <p>
+ * 状态机线程对每笔通过校验的新支付调用 {@link #check}：把支付计入该用户的时间桶并与阈值比较，全程只访问内存，
+ * 不访问 Redis。action=flag 时先计入再比较；action=reject 时以现有的次数和金额加上这笔支付比较，只计入被接受的支付，
+ * 被拒绝的尝试不会占用额度，也不会因客户端反复重试而延长封锁。支付事件以 userId 为消息键，同一用户的支付都落在同一分区，窗口按分区保存，由拥有该分区的实例完整统计。
+ * 金额按货币分别统计，阈值以该货币的主单位表示，对每种货币分别生效。
+ * <p>
+ * 跟踪的用户数不超过 {@code max-keys}；后台线程定期淘汰超过最长窗口未活动的用户，必要时再淘汰最久未活动的用户。
+ * 有变化的窗口每 {@code snapshot-interval-ms} 以及分区撤销、服务关闭时写入压缩主题 {@value #SNAPSHOT_TOPIC}，
+ * 键为 {@code 分区:组}，见 {@link PartitionVelocity}。分区被分配时从该主题恢复分配到的分区，被撤销时先同步写入快照再从内存中移除，
+ * 因此再均衡后接手的实例继续使用原有的窗口；位移不大于快照记录的重放事件只检查不重复计入。
+ * <p>
+ * 在 payment.velocity.enabled=true（默认）时启用。
+ */
+@Component
+@ConditionalOnProperty(name = "payment.velocity.enabled", havingValue = "true", matchIfMissing = true)
+public class VelocityEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(VelocityEngine.class);
+    static final String SNAPSHOT_TOPIC = "payment-velocity-snapshots";
+    private static final VelocityWindow[] WINDOWS = VelocityWindow.values();
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final ConsumerFactory<?, ?> consumerFactory;
+    private final Map<Integer, PartitionVelocity> partitions = new ConcurrentHashMap<>();
+    private final long[] maxCounts = new long[WINDOWS.length];
+    private final long[] maxAmounts = new long[WINDOWS.length];
+    private final Counter[] flagged = new Counter[WINDOWS.length];
+    private final boolean reject;
+    private final int maxKeys;
+    private final long idleMillis;
+    private final long snapshotIntervalMillis;
+    private final long kafkaTimeoutMillis;
+    private final Counter untracked;
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "payment-velocity-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public VelocityEngine(KafkaTemplate<String, byte[]> kafkaTemplate,
+                          ConsumerFactory<?, ?> consumerFactory,
+                          Environment environment,
+                          MeterRegistry meterRegistry,
+                          @Value("${payment.velocity.action:flag}") String action,
+                          @Value("${payment.velocity.max-keys:100000}") int maxKeys,
+                          @Value("${payment.velocity.snapshot-interval-ms:30000}") long snapshotIntervalMillis,
+                          @Value("${payment.velocity.kafka-timeout-ms:10000}") long kafkaTimeoutMillis) {
+        switch (action) {
+            case "flag":
+                this.reject = false;
+                break;
+            case "reject":
+                this.reject = true;
+                break;
+            default:
+                throw new IllegalArgumentException("未知的 payment.velocity.action: " + action);
+        }
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("payment.velocity.max-keys 必须大于 0");
+        }
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.maxKeys = maxKeys;
+        this.idleMillis = VelocityWindow.DAY.getLengthMillis();
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.kafkaTimeoutMillis = kafkaTimeoutMillis;
+        for (VelocityWindow window : WINDOWS) {
+            String prefix = "payment.velocity." + window.name().toLowerCase() + ".";
+            // 0 表示该窗口不限制
+            maxCounts[window.ordinal()] = environment.getProperty(prefix + "max-count", Long.class, 0L);
+            maxAmounts[window.ordinal()] = environment.getProperty(prefix + "max-amount", Long.class, 0L);
+            flagged[window.ordinal()] = Counter.builder("payment.velocity.flagged")
+                    .description("超出速率阈值的支付数")
+                    .tag("window", window.getLabel())
+                    .tag("action", action)
+                    .register(meterRegistry);
+        }
+        this.untracked = Counter.builder("payment.velocity.untracked")
+                .description("因跟踪的用户数已达上限而未做速率检查的支付数")
+                .register(meterRegistry);
+        Gauge.builder("payment.velocity.keys", partitions, VelocityEngine::trackedKeys)
+                .description("正在跟踪的用户与货币组合数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        maintenance.scheduleWithFixedDelay(this::evictIdle, 10, 10, TimeUnit.SECONDS);
+        maintenance.scheduleWithFixedDelay(this::snapshot, snapshotIntervalMillis, snapshotIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把一笔支付计入其用户的滑动窗口并检查阈值；payment.velocity.action=reject 时被拒绝的支付不计入。
+     * <p>
+     * 由分区的状态机线程调用，同一分区的位移单调递增。
+     *
+     * @param partition      事件所在的 Kafka 分区。
+     * @param offset         事件的 Kafka 位移。
+     * @param paymentRequest 已通过基本校验的支付请求。
+     * @return payment.velocity.action=reject 且超出阈值时返回拒绝原因，否则返回 null。
+     */
+    public String check(int partition, long offset, PaymentRequest paymentRequest) {
+        PartitionVelocity state = partitions.get(partition);
+        if (state == null) {
+            state = partitions.computeIfAbsent(partition, PartitionVelocity::new);
+        }
+        Money amount = paymentRequest.getAmount();
+        CurrencyUnit currency = amount.getCurrency();
+        String key = key(paymentRequest.getUserId(), currency);
+        UserVelocity velocity = state.users().get(key);
+        if (velocity == null) {
+            if (trackedKeys(partitions) >= maxKeys) {
+                untracked.increment();
+                return null;
+            }
+            velocity = state.users().computeIfAbsent(key, k -> new UserVelocity(paymentRequest.getUserId(), currency));
+        }
+        long now = System.currentTimeMillis();
+        long minorUnits = amount.getMinorUnits();
+        // reject 模式下先按计入这笔支付之后的值比较，接受后才计入；重放的事件已经计入过（或曾被拒绝），不再加上
+        boolean pending = reject && !state.isReplay(velocity, offset);
+        if (!reject) {
+            state.record(velocity, offset, now, minorUnits);
+        }
+
+        for (VelocityWindow window : WINDOWS) {
+            long maxCount = maxCounts[window.ordinal()];
+            long maxAmount = maxAmounts[window.ordinal()];
+            long count = maxCount > 0 ? velocity.count(window, now) + (pending ? 1 : 0) : 0;
+            long sum = maxAmount > 0 ? saturatedAdd(velocity.sum(window, now), pending ? minorUnits : 0) : 0;
+            boolean overCount = maxCount > 0 && count > maxCount;
+            boolean overAmount = maxAmount > 0 && sum > toMinorUnits(maxAmount, currency);
+            if (overCount || overAmount) {
+                flagged[window.ordinal()].increment();
+                logger.warn("支付 {} 超出用户 {} 的 {} 速率阈值: 次数 {}, 金额 {}", paymentRequest.getOrderId(),
+                        paymentRequest.getUserId(), window.getLabel(), count, Money.ofMinor(currency, sum));
+                return reject ? "超出 " + window.getLabel() + " 速率阈值" : null;
+            }
+        }
+        if (reject) {
+            state.record(velocity, offset, now, minorUnits);
+        }
+        return null;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        return a > Long.MAX_VALUE - b ? Long.MAX_VALUE : a + b;
+    }
+
+    private static long toMinorUnits(long majorUnits, CurrencyUnit currency) {
+        long factor = currency.getMinorFactor();
+        return majorUnits > Long.MAX_VALUE / factor ? Long.MAX_VALUE : majorUnits * factor;
+    }
+
+    static String key(String userId, CurrencyUnit currency) {
+        return userId + ':' + currency.getCode();
+    }
+
+    private static int trackedKeys(Map<Integer, PartitionVelocity> partitions) {
+        int keys = 0;
+        for (PartitionVelocity state : partitions.values()) {
+            keys += state.users().size();
+        }
+        return keys;
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (PartitionVelocity state : partitions.values()) {
+            state.users().values().removeIf(velocity -> {
+                if (velocity.getLastSeenMillis() >= cutoff) {
+                    return false;
+                }
+                state.markDirty(PartitionVelocity.group(velocity.getUserId()));
+                return true;
+            });
+        }
+        int tracked = trackedKeys(partitions);
+        if (tracked >= maxKeys) {
+            // 已达上限，按最后活动时间淘汰最久未活动的用户，为新用户留出十分之一的空间
+            int excess = tracked - maxKeys * 9 / 10;
+            List<Map.Entry<PartitionVelocity, UserVelocity>> entries = new ArrayList<>(tracked);
+            for (PartitionVelocity state : partitions.values()) {
+                for (UserVelocity velocity : state.users().values()) {
+                    entries.add(Map.entry(state, velocity));
+                }
+            }
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().getLastSeenMillis()));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                PartitionVelocity state = entries.get(i).getKey();
+                UserVelocity velocity = entries.get(i).getValue();
+                if (state.users().remove(key(velocity.getUserId(), velocity.getCurrency()), velocity)) {
+                    state.markDirty(PartitionVelocity.group(velocity.getUserId()));
+                }
+            }
+            logger.info("速率检查跟踪的用户数达到上限 {}，已淘汰 {} 个最久未活动的用户", maxKeys, excess);
+        }
+    }
+
+    /**
+     * 把有变化的窗口写入快照主题并等待确认，写入失败的组在下个周期重试。
+     */
+    public synchronized void snapshot() {
+        try {
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            for (PartitionVelocity state : partitions.values()) {
+                for (Map.Entry<Integer, byte[]> snapshot : state.snapshotsIfDirty().entrySet()) {
+                    int group = snapshot.getKey();
+                    sends.add(kafkaTemplate.send(SNAPSHOT_TOPIC, state.getPartition() + ":" + group, snapshot.getValue())
+                            .completable()
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    state.markDirty(group);
+                                }
+                            }));
+                }
+            }
+            if (!sends.isEmpty()) {
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]))
+                        .get(kafkaTimeoutMillis, TimeUnit.MILLISECONDS);
+                logger.debug("写入了 {} 组速率窗口快照", sends.size());
+            }
+        } catch (IOException | ExecutionException | TimeoutException | RuntimeException e) {
+            logger.warn("写入速率窗口快照失败，下个周期重试", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 分区被分配时从快照主题恢复这些分区的窗口。
+     * <p>
+     * 由消费线程在开始消费这些分区之前调用；已在内存中的分区保持不变。
+     */
+    public synchronized void onPartitionsAssigned(Collection<TopicPartition> assigned) {
+        Set<Integer> missing = assigned.stream()
+                .map(TopicPartition::partition)
+                .filter(partition -> !partitions.containsKey(partition))
+                .collect(Collectors.toSet());
+        if (!missing.isEmpty()) {
+            restore(missing);
+        }
+    }
+
+    /**
+     * 分区被撤销时同步写入快照，再从内存中移除这些分区的窗口，由接手的实例从快照主题恢复。
+     * <p>
+     * 应在这些分区的状态机线程停止之后调用，快照包含所有已处理的事件。
+     */
+    public synchronized void onPartitionsRevoked(Collection<TopicPartition> revoked) {
+        if (revoked.isEmpty()) {
+            return;
+        }
+        snapshot();
+        for (TopicPartition topicPartition : revoked) {
+            partitions.remove(topicPartition.partition());
+        }
+    }
+
+    private void restore(Set<Integer> assigned) {
+        Map<String, byte[]> latest;
+        try {
+            latest = CompactedTopicReader.readLatest(consumerFactory, "-velocity-restore", SNAPSHOT_TOPIC,
+                    Duration.ofMillis(kafkaTimeoutMillis), key -> isAssigned(key, assigned));
+        } catch (TimeoutException | RuntimeException e) {
+            logger.warn("从 {} 恢复分区 {} 的速率窗口失败，将从空状态开始", SNAPSHOT_TOPIC, assigned, e);
+            return;
+        }
+        Map<Integer, PartitionVelocity> restored = new HashMap<>();
+        int users = 0;
+        for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+            String key = entry.getKey();
+            int partition = Integer.parseInt(key.substring(0, key.indexOf(':')));
+            try {
+                users += restored.computeIfAbsent(partition, PartitionVelocity::new).restore(entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("忽略无法解析的速率窗口快照 {}", key, e);
+            }
+        }
+        partitions.putAll(restored);
+        logger.info("从 {} 为分区 {} 恢复了 {} 个用户的速率窗口", SNAPSHOT_TOPIC, assigned, users);
+    }
+
+    private static boolean isAssigned(String key, Set<Integer> assigned) {
+        int separator = key.indexOf(':');
+        try {
+            return separator > 0 && assigned.contains(Integer.parseInt(key.substring(0, separator)));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenance.shutdownNow();
+        snapshot();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.paymentsystem.velocity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 速率检查的滑动窗口。
+ * <p>
+ * 每个窗口由若干个时间桶组成，统计值为当前桶与之前 {@code buckets - 1} 个桶之和，
+ * 因此实际覆盖的时长在 {@code (buckets - 1) × bucketMillis} 与窗口长度之间，误差不超过一个桶。
+ */
+public enum VelocityWindow {
+
+    MINUTE("1m", TimeUnit.SECONDS.toMillis(10), 6),
+    HOUR("1h", TimeUnit.MINUTES.toMillis(5), 12),
+    DAY("24h", TimeUnit.HOURS.toMillis(1), 24);
+
+    private final String label;
+    private final long bucketMillis;
+    private final int buckets;
+
+    VelocityWindow(String label, long bucketMillis, int buckets) {
+        this.label = label;
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+    }
+
+    /**
+     * @return 用于日志和指标标签的窗口名称，例如 {@code 1m}。
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    int getBuckets() {
+        return buckets;
+    }
+
+    long getLengthMillis() {
+        return bucketMillis * buckets;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.paymentsystem.codec;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPaymentEventCodecTest {
+
+    private final BinaryPaymentEventCodec codec = new BinaryPaymentEventCodec();
+
+    @Test
+    void roundTripsTypicalPayment() {
+        assertRoundTrip(request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050)));
+    }
+
+    @Test
+    void roundTripsCurrenciesWithDifferentPrecision() {
+        assertRoundTrip(request("order-jpy", "user-1", Money.ofMinor(CurrencyUnit.of("JPY"), 12345)));
+        assertRoundTrip(request("order-bhd", "user-1", Money.ofMinor(CurrencyUnit.of("BHD"), 1234)));
+        assertRoundTrip(request("order-neg", "user-1", Money.ofMinor(CurrencyUnit.of("EUR"), -99)));
+        assertRoundTrip(request("order-max", "user-1", Money.ofMinor(CurrencyUnit.of("EUR"), Long.MAX_VALUE)));
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        assertRoundTrip(request(null, null, null));
+        assertRoundTrip(request("", "", Money.ofMinor(CurrencyUnit.of("USD"), 0)));
+    }
+
+    @Test
+    void roundTripsMultiByteAndLongStrings() {
+        assertRoundTrip(request("订单-é-😀", "用户", Money.ofMinor(CurrencyUnit.of("CNY"), 100)));
+        char[] longId = new char[20_000];
+        Arrays.fill(longId, 'x');
+        assertRoundTrip(request(new String(longId), "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1)));
+    }
+
+    @Test
+    void encodesLoneSurrogatesLikeStringGetBytes() {
+        String orderId = "a\uD800b";
+        PaymentRequest decoded = codec.decode(codec.encode(request(orderId, "user-1", null)));
+        assertEquals(new String(orderId.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                decoded.getOrderId());
+    }
+
+    @Test
+    void encodesIntoCallerBufferAtOffset() {
+        PaymentRequest paymentRequest = request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050));
+        byte[] expected = codec.encode(paymentRequest);
+        byte[] target = new byte[expected.length + 10];
+        assertEquals(expected.length, codec.encode(paymentRequest, target, 5));
+        assertArrayEquals(expected, Arrays.copyOfRange(target, 5, 5 + expected.length));
+    }
+
+    @Test
+    void writesVersion2AndOmitsCurrencyWithoutAmount() {
+        byte[] withAmount = codec.encode(request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050)));
+        assertEquals(BinaryPaymentEventCodec.VERSION_2, withAmount[0]);
+        byte[] withoutAmount = codec.encode(request("order-1", "user-1", null));
+        assertEquals(withAmount.length - Long.BYTES - 1 - 3, withoutAmount.length);
+    }
+
+    @Test
+    void decodesAmountsWrittenWithAnotherScale() {
+        PaymentRequest paymentRequest = request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050));
+        byte[] payload = codec.encode(paymentRequest);
+        // 以 4 位小数写入的 10.5000 USD
+        BinaryPaymentEventCodec.writeLong(payload, 2, 105000);
+        payload[2 + Long.BYTES] = 4;
+        assertEquals(paymentRequest.getAmount(), codec.decode(payload).getAmount());
+
+        BinaryPaymentEventCodec.writeLong(payload, 2, 105001);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(payload));
+    }
+
+    @Test
+    void decodesVersion1Payloads() {
+        // 10.5 USD，按 BigDecimal 的未缩放值 105 和精度 1 写入
+        byte[] iso = version1(0, amount(105, 1), new byte[]{'U', 'S', 'D'});
+        PaymentRequest decoded = codec.decode(iso);
+        assertTrue(codec.canDecode(iso));
+        assertEquals(Money.ofMinor(CurrencyUnit.of("USD"), 1050), decoded.getAmount());
+        assertEquals("order-1", decoded.getOrderId());
+        assertEquals("user-1", decoded.getUserId());
+
+        // 金额为空时货币仍被写出，可能是 ISO 代码、自定义字符串或 null
+        assertNull(codec.decode(version1(BinaryPaymentEventCodec.FLAG_AMOUNT_NULL, new byte[0],
+                new byte[]{'E', 'U', 'R'})).getAmount());
+        assertEquals("order-1", codec.decode(version1(
+                BinaryPaymentEventCodec.FLAG_AMOUNT_NULL | BinaryPaymentEventCodec.FLAG_CUSTOM_CURRENCY,
+                new byte[0], new byte[]{5, 'G', 'O', 'L', 'D'})).getOrderId());
+        assertEquals("user-1", codec.decode(version1(
+                BinaryPaymentEventCodec.FLAG_AMOUNT_NULL | BinaryPaymentEventCodec.FLAG_CUSTOM_CURRENCY,
+                new byte[0], new byte[]{0})).getUserId());
+    }
+
+    @Test
+    void rejectsVersion1AmountsThatAreNotMoney() {
+        byte[] customCurrency = version1(BinaryPaymentEventCodec.FLAG_CUSTOM_CURRENCY, amount(105, 1),
+                new byte[]{5, 'G', 'O', 'L', 'D'});
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(customCurrency));
+
+        byte[] excessScale = version1(0, amount(10501, 3), new byte[]{'U', 'S', 'D'});
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(excessScale));
+
+        byte[] unknownCurrency = version1(0, amount(105, 1), new byte[]{'Q', 'Q', 'Q'});
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(unknownCurrency));
+    }
+
+    @Test
+    void rejectsTruncatedAndTrailingBytes() {
+        byte[] payload = codec.encode(request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050)));
+        for (int length = 1; length < payload.length; length++) {
+            byte[] truncated = Arrays.copyOf(payload, length);
+            assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated), "长度 " + length);
+        }
+        byte[] trailing = Arrays.copyOf(payload, payload.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(trailing));
+    }
+
+    @Test
+    void rejectsUnknownVersionCurrencyAndCustomCurrencyFlag() {
+        byte[] payload = codec.encode(request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050)));
+        assertFalse(codec.canDecode(new byte[0]));
+        assertFalse(codec.canDecode(new byte[]{0x03}));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{0x03}));
+
+        byte[] unknownCurrency = payload.clone();
+        int currencyStart = 2 + Long.BYTES + 1;
+        unknownCurrency[currencyStart] = 'Q';
+        unknownCurrency[currencyStart + 1] = 'Q';
+        unknownCurrency[currencyStart + 2] = 'Q';
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(unknownCurrency));
+
+        byte[] customCurrency = payload.clone();
+        customCurrency[1] = BinaryPaymentEventCodec.FLAG_CUSTOM_CURRENCY;
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(customCurrency));
+    }
+
+    @Test
+    void delegatingCodecDecodesBinaryAndJson() {
+        JsonPaymentEventCodec json = new JsonPaymentEventCodec(new ObjectMapper());
+        PaymentEventCodec delegating = new DelegatingPaymentEventCodec(codec, List.of(codec, json));
+        PaymentRequest paymentRequest = request("order-1", "user-1", Money.ofMinor(CurrencyUnit.of("USD"), 1050));
+
+        byte[] binary = delegating.encode(paymentRequest);
+        assertTrue(codec.canDecode(binary));
+        assertEquals(paymentRequest, delegating.decode(binary));
+        assertEquals(paymentRequest, delegating.decode(json.encode(paymentRequest)));
+        assertThrows(IllegalArgumentException.class, () -> delegating.decode(new byte[]{0x7F}));
+    }
+
+    private static byte[] amount(long unscaled, int scale) {
+        byte[] amount = new byte[Long.BYTES + 1];
+        BinaryPaymentEventCodec.writeLong(amount, 0, unscaled);
+        amount[Long.BYTES] = (byte) scale;
+        return amount;
+    }
+
+    /**
+     * 按版本 1 的布局拼出 orderId 为 order-1、userId 为 user-1 的事件。
+     */
+    private static byte[] version1(int flags, byte[] amount, byte[] currency) {
+        byte[] orderId = {8, 'o', 'r', 'd', 'e', 'r', '-', '1'};
+        byte[] userId = {7, 'u', 's', 'e', 'r', '-', '1'};
+        byte[] payload = new byte[2 + amount.length + currency.length + orderId.length + userId.length];
+        payload[0] = BinaryPaymentEventCodec.VERSION_1;
+        payload[1] = (byte) flags;
+        int pos = 2;
+        for (byte[] part : List.of(amount, currency, orderId, userId)) {
+            System.arraycopy(part, 0, payload, pos, part.length);
+            pos += part.length;
+        }
+        return payload;
+    }
+
+    private void assertRoundTrip(PaymentRequest paymentRequest) {
+        byte[] payload = codec.encode(paymentRequest);
+        assertEquals(codec.encodedSize(paymentRequest), payload.length);
+        assertTrue(codec.canDecode(payload));
+        assertEquals(paymentRequest, codec.decode(payload));
+    }
+
+    private static PaymentRequest request(String orderId, String userId, Money amount) {
+        PaymentRequest paymentRequest = new PaymentRequest();
+        paymentRequest.setOrderId(orderId);
+        paymentRequest.setUserId(userId);
+        paymentRequest.setAmount(amount);
+        return paymentRequest;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.paymentsystem.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalSegmentTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final long BASE_SEQUENCE = 100;
+    private static final long ACCEPTED_AT = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void committedRecordsSurviveReopen() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, BASE_SEQUENCE, SEGMENT_SIZE);
+        int position = appendAndCommit(segment, 0, BASE_SEQUENCE, 3);
+        segment.close();
+
+        JournalSegment reopened = JournalSegment.open(directory.resolve(JournalSegment.fileName(BASE_SEQUENCE)),
+                BASE_SEQUENCE);
+        assertEquals(BASE_SEQUENCE + 2, reopened.lastSequence());
+        assertEquals(position, reopened.committedPosition());
+        List<JournalSegment.Entry> entries = readAll(reopened);
+        assertEquals(3, entries.size());
+        for (int i = 0; i < 3; i++) {
+            assertEntry(entries.get(i), BASE_SEQUENCE + i, i);
+        }
+        reopened.close();
+    }
+
+    @Test
+    void corruptTailIsDiscardedAndOverwritten() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, BASE_SEQUENCE, SEGMENT_SIZE);
+        int secondEnd = appendAndCommit(segment, 0, BASE_SEQUENCE, 2);
+        appendAndCommit(segment, secondEnd, BASE_SEQUENCE + 2, 1);
+        segment.close();
+
+        // 模拟崩溃时只写出了一部分的第三条记录：改坏其事件内容，长度和校验和保持不变
+        Path file = directory.resolve(JournalSegment.fileName(BASE_SEQUENCE));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), secondEnd + JournalSegment.HEADER_BYTES + 20);
+        }
+
+        JournalSegment reopened = JournalSegment.open(file, BASE_SEQUENCE);
+        assertEquals(BASE_SEQUENCE + 1, reopened.lastSequence());
+        assertEquals(secondEnd, reopened.committedPosition());
+        assertEquals(2, readAll(reopened).size());
+
+        // 恢复后的写入从最后一条有效记录之后继续，覆盖损坏的内容
+        appendAndCommit(reopened, reopened.committedPosition(), BASE_SEQUENCE + 2, 1);
+        reopened.close();
+        JournalSegment recovered = JournalSegment.open(file, BASE_SEQUENCE);
+        List<JournalSegment.Entry> entries = readAll(recovered);
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(2), BASE_SEQUENCE + 2, 2);
+        recovered.close();
+    }
+
+    @Test
+    void lengthPastSegmentEndStopsRecovery() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, BASE_SEQUENCE, SEGMENT_SIZE);
+        int position = appendAndCommit(segment, 0, BASE_SEQUENCE, 1);
+        segment.close();
+
+        Path file = directory.resolve(JournalSegment.fileName(BASE_SEQUENCE));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).putInt(0, SEGMENT_SIZE);
+            channel.write(length, position);
+        }
+
+        JournalSegment reopened = JournalSegment.open(file, BASE_SEQUENCE);
+        assertEquals(BASE_SEQUENCE, reopened.lastSequence());
+        assertEquals(position, reopened.committedPosition());
+        reopened.close();
+    }
+
+    @Test
+    void emptySegmentRecoversToBeforeBaseSequence() throws IOException {
+        JournalSegment.create(directory, BASE_SEQUENCE, SEGMENT_SIZE).close();
+
+        JournalSegment reopened = JournalSegment.open(directory.resolve(JournalSegment.fileName(BASE_SEQUENCE)),
+                BASE_SEQUENCE);
+        assertEquals(BASE_SEQUENCE - 1, reopened.lastSequence());
+        assertEquals(0, reopened.committedPosition());
+        assertTrue(readAll(reopened).isEmpty());
+        reopened.close();
+    }
+
+    private static int appendAndCommit(JournalSegment segment, int position, long firstSequence, int count) {
+        long sequence = firstSequence;
+        for (int i = 0; i < count; i++, sequence++) {
+            int index = (int) (sequence - BASE_SEQUENCE);
+            position = segment.append(position, sequence, ACCEPTED_AT + index, bytes("order-" + index),
+                    bytes("user-" + index), bytes("event-payload-" + index));
+        }
+        segment.commit(position, sequence - 1);
+        return position;
+    }
+
+    private static List<JournalSegment.Entry> readAll(JournalSegment segment) {
+        List<JournalSegment.Entry> entries = new ArrayList<>();
+        JournalSegment.Reader reader = segment.reader();
+        JournalSegment.Entry entry;
+        while ((entry = reader.next()) != null) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void assertEntry(JournalSegment.Entry entry, long sequence, int index) {
+        assertEquals(sequence, entry.sequence);
+        assertEquals(ACCEPTED_AT + index, entry.acceptedAtMillis);
+        assertEquals("order-" + index, entry.orderId);
+        assertEquals("user-" + index, entry.key);
+        assertArrayEquals(bytes("event-payload-" + index), entry.paymentEvent);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.paymentsystem.journal;
+
+import com.example.paymentsystem.latency.IngestTimestamp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentJournalTest {
+
+    // 每条事件约 200KB，1MB 的段放不下 5 条，8 条事件会跨越两个段
+    private static final int EVENT_SIZE = 200 * 1024;
+    private static final int EVENT_COUNT = 8;
+    private static final long ACCEPTED_AT = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final List<PaymentJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        for (PaymentJournal journal : journals) {
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    void undeliveredRecordsAreSentAfterRestart() throws Exception {
+        KafkaTemplate<String, byte[]> unavailable = kafkaTemplate(false);
+        PaymentJournal journal = start(unavailable);
+        List<CompletableFuture<Long>> appends = new ArrayList<>();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            appends.add(journal.append("order-" + i, "user-" + i, ACCEPTED_AT + i, event(i)));
+        }
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            assertEquals(i, appends.get(i).get(5, TimeUnit.SECONDS));
+        }
+        verify(unavailable, timeout(5000).atLeastOnce()).send(anyRecord());
+        journal.shutdown();
+        journals.remove(journal);
+
+        KafkaTemplate<String, byte[]> available = kafkaTemplate(true);
+        start(available);
+        ArgumentCaptor<ProducerRecord<String, byte[]>> records = recordCaptor();
+        verify(available, timeout(5000).times(EVENT_COUNT)).send(records.capture());
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            assertRecord(records.getAllValues().get(i), i);
+        }
+    }
+
+    @Test
+    void deliveredRecordsAreNotResentAfterRestart() throws Exception {
+        KafkaTemplate<String, byte[]> first = kafkaTemplate(true);
+        PaymentJournal journal = start(first);
+        journal.append("order-0", "user-0", ACCEPTED_AT, event(0)).get(5, TimeUnit.SECONDS);
+        journal.append("order-1", "user-1", ACCEPTED_AT + 1, event(1)).get(5, TimeUnit.SECONDS);
+        verify(first, timeout(5000).times(2)).send(anyRecord());
+        awaitCheckpoint(1);
+        journal.shutdown();
+        journals.remove(journal);
+
+        KafkaTemplate<String, byte[]> second = kafkaTemplate(true);
+        PaymentJournal restarted = start(second);
+        assertEquals(2, restarted.append("order-2", "user-2", ACCEPTED_AT + 2, event(2)).get(5, TimeUnit.SECONDS));
+        ArgumentCaptor<ProducerRecord<String, byte[]>> records = recordCaptor();
+        verify(second, timeout(5000)).send(records.capture());
+        assertRecord(records.getValue(), 2);
+        verify(second, after(200).times(1)).send(anyRecord());
+    }
+
+    private PaymentJournal start(KafkaTemplate<String, byte[]> kafkaTemplate) throws IOException {
+        PaymentJournal journal = new PaymentJournal(kafkaTemplate, new SimpleMeterRegistry(), directory.toString(),
+                1, 16, 64, 1000, 16, 100, 10);
+        journals.add(journal);
+        journal.start();
+        return journal;
+    }
+
+    private void awaitCheckpoint(long sequence) throws Exception {
+        Path checkpoint = directory.resolve("checkpoint");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            byte[] bytes = Files.readAllBytes(checkpoint);
+            if (bytes.length == Long.BYTES && ByteBuffer.wrap(bytes).getLong() == sequence) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        fail("检查点未推进到序号 " + sequence);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static KafkaTemplate<String, byte[]> kafkaTemplate(boolean available) {
+        KafkaTemplate<String, byte[]> kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(anyRecord())).thenAnswer(invocation -> {
+            SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+            if (available) {
+                future.set(null);
+            } else {
+                future.setException(new IllegalStateException("broker unavailable"));
+            }
+            return future;
+        });
+        return kafkaTemplate;
+    }
+
+    private static void assertRecord(ProducerRecord<String, byte[]> record, int index) {
+        assertEquals("payment-events", record.topic());
+        assertEquals("user-" + index, record.key());
+        assertArrayEquals(event(index), record.value());
+        assertEquals(ACCEPTED_AT + index, IngestTimestamp.read(record.headers()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ProducerRecord<String, byte[]> anyRecord() {
+        return any(ProducerRecord.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor() {
+        return ArgumentCaptor.forClass((Class<ProducerRecord<String, byte[]>>) (Class<?>) ProducerRecord.class);
+    }
+
+    private static byte[] event(int index) {
+        byte[] event = new byte[EVENT_SIZE];
+        byte[] prefix = ("event-" + index).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, event, 0, prefix.length);
+        event[EVENT_SIZE - 1] = (byte) index;
+        return event;
+    }
+}
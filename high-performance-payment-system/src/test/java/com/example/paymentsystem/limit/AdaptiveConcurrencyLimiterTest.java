@@ -0,0 +1,144 @@
+package com.example.paymentsystem.limit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void limitShrinksWhenRttRisesAndStaysAboveMin() {
+        // 不调用 start()，更新周期由测试驱动
+        AdaptiveConcurrencyLimiter limiter = limiter(100, 10, 1000, 0, 0);
+        // 占满名额，让 in-flight 峰值说明负载受限于当前限制
+        acquire(limiter, 100);
+        cycles(limiter, FAST, 5);
+        int settled = limiter.getLimit();
+        assertTrue(settled > 100);
+
+        cycles(limiter, SLOW, 1);
+        int previous = limiter.getLimit();
+        assertTrue(previous < settled);
+        for (int i = 0; i < 10; i++) {
+            cycles(limiter, SLOW, 1);
+            assertTrue(limiter.getLimit() < previous);
+            assertTrue(limiter.getLimit() >= 10);
+            previous = limiter.getLimit();
+        }
+    }
+
+    @Test
+    void dropsShrinkTheLimitDownToMinAndItGrowsBack() {
+        AdaptiveConcurrencyLimiter limiter = limiter(100, 10, 1000, 0, 0);
+        acquire(limiter, 100);
+
+        limiter.onDropped();
+        limiter.updateLimit();
+        assertEquals(90, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.onDropped();
+            limiter.updateLimit();
+        }
+        assertEquals(10, limiter.getLimit());
+
+        // 依赖恢复后每个周期按平滑系数增长约 0.2 × √limit
+        int previous = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            cycles(limiter, FAST, 1);
+            assertTrue(limiter.getLimit() >= previous);
+            previous = limiter.getLimit();
+        }
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    void limitNeverExceedsMax() {
+        AdaptiveConcurrencyLimiter limiter = limiter(100, 10, 150, 0, 0);
+        acquire(limiter, 100);
+
+        cycles(limiter, FAST, 50);
+
+        assertEquals(150, limiter.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWhileConcurrencyIsFarBelowIt() {
+        AdaptiveConcurrencyLimiter limiter = limiter(100, 10, 1000, 0, 0);
+        acquire(limiter, 10);
+
+        cycles(limiter, FAST, 20);
+
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    void waiterGetsTheReleasedPermitAndQueueOverflowIsShed() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 1, 10_000);
+        assertTrue(limiter.tryAcquire());
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(limiter::tryAcquire);
+        awaitQueued(1);
+        // 队列已满，新请求不等待直接被拒绝
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1.0, meterRegistry.get("payment.limiter.shed").counter().count());
+
+        limiter.release();
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0.0, meterRegistry.get("payment.limiter.queue").gauge().value());
+    }
+
+    @Test
+    void waiterIsShedAfterMaxWait() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10, 50);
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire());
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1.0, meterRegistry.get("payment.limiter.shed").counter().count());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                                               long maxWaitMillis) {
+        return new AdaptiveConcurrencyLimiter(meterRegistry, initialLimit, minLimit, maxLimit, maxQueue,
+                maxWaitMillis, 0.2, 1.5, 100, 1);
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimiter limiter, int permits) {
+        for (int i = 0; i < permits; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+
+    private static void cycles(AdaptiveConcurrencyLimiter limiter, long latencyNanos, int count) {
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < 10; j++) {
+                limiter.onSample(latencyNanos);
+            }
+            limiter.updateLimit();
+        }
+    }
+
+    private void awaitQueued(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("payment.limiter.queue").gauge().value() < expected) {
+            assertTrue(System.nanoTime() < deadline, "等待者没有进入队列");
+            Thread.sleep(1);
+        }
+    }
+}
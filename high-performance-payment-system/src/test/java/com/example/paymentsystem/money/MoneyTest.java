@@ -0,0 +1,36 @@
+package com.example.paymentsystem.money;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    private static final CurrencyUnit USD = CurrencyUnit.of("USD");
+
+    @Test
+    void parsesPlainDecimals() {
+        assertEquals(Money.ofMinor(USD, 1050), Money.parse(USD, "10.5"));
+        assertEquals(Money.ofMinor(USD, -300), Money.parse(USD, "-3"));
+        assertEquals(Money.ofMinor(USD, 1), Money.parse(USD, "+0.01"));
+    }
+
+    @Test
+    void parsesExponentNotation() {
+        assertEquals(Money.ofMinor(USD, 10000), Money.parse(USD, "1e2"));
+        assertEquals(Money.ofMinor(USD, 1050), Money.parse(USD, "1.05E1"));
+        assertEquals(Money.ofMinor(USD, 1050), Money.parse(USD, "1050e-2"));
+        assertEquals(Money.ofMinor(USD, -1050), Money.parse(USD, "-1.05e+1"));
+    }
+
+    @Test
+    void rejectsMalformedAndOutOfRangeAmounts() {
+        assertThrows(NumberFormatException.class, () -> Money.parse(USD, "e2"));
+        assertThrows(NumberFormatException.class, () -> Money.parse(USD, "1e"));
+        assertThrows(NumberFormatException.class, () -> Money.parse(USD, "1e2.5"));
+        assertThrows(ArithmeticException.class, () -> Money.parse(USD, "1e-3"));
+        assertThrows(ArithmeticException.class, () -> Money.parse(USD, "1e30"));
+        assertThrows(ArithmeticException.class, () -> Money.parse(USD, "1e99999999999"));
+    }
+}
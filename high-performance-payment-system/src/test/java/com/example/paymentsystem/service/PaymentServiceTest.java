@@ -0,0 +1,173 @@
+package com.example.paymentsystem.service;
+
+import com.example.paymentsystem.codec.BinaryPaymentEventCodec;
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.idempotency.Acceptance;
+import com.example.paymentsystem.idempotency.IdempotencyGuard;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.example.paymentsystem.status.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private final Map<String, String> idempotencyKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger sends = new AtomicInteger();
+    private final AtomicLong recordIds = new AtomicLong();
+
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private RedisStreamBatchWriter statusWriter;
+    private IdempotencyGuard idempotencyGuard;
+    private PaymentService paymentService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // 第一次发送失败，之后的发送都成功
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+            if (sends.getAndIncrement() == 0) {
+                future.setException(new IllegalStateException("broker unavailable"));
+            } else {
+                future.set(null);
+            }
+            return future;
+        });
+
+        statusWriter = mock(RedisStreamBatchWriter.class);
+        when(statusWriter.write(anyString(), eq(PaymentStatus.PENDING), any(byte[].class), isNull()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                        RecordId.of(1, recordIds.incrementAndGet())));
+
+        // 幂等键保存在内存中；守卫未预热，所有检查都走 SET NX
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenAnswer(invocation ->
+                idempotencyKeys.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(values.get(anyString())).thenAnswer(invocation -> idempotencyKeys.get(invocation.getArgument(0)));
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation ->
+                idempotencyKeys.remove(invocation.<String>getArgument(0)) != null);
+        idempotencyGuard = new IdempotencyGuard(redisTemplate, new SimpleMeterRegistry(), 1000, 0.01, 60, 1);
+
+        paymentService = new PaymentService(kafkaTemplate, statusWriter, new BinaryPaymentEventCodec(),
+                provider(null), provider(idempotencyGuard), provider(null),
+                new PipelineLatency(new SimpleMeterRegistry(), 60));
+    }
+
+    @AfterEach
+    void shutdown() {
+        idempotencyGuard.shutdown();
+    }
+
+    @Test
+    void asyncRetryIsPublishedAfterKafkaSendFails() throws Exception {
+        PaymentRequest paymentRequest = request("order-1");
+
+        assertThrows(ExecutionException.class,
+                () -> paymentService.processPaymentAsync(paymentRequest).get(5, TimeUnit.SECONDS));
+        verify(statusWriter).remove("order-1", RecordId.of(1, 1));
+        assertTrue(idempotencyKeys.isEmpty());
+
+        Acceptance retried = paymentService.processPaymentAsync(paymentRequest).get(5, TimeUnit.SECONDS);
+        assertFalse(retried.isReplay());
+        verify(kafkaTemplate, times(2)).send(anyRecord());
+
+        Acceptance replayed = paymentService.processPaymentAsync(paymentRequest).get(5, TimeUnit.SECONDS);
+        assertTrue(replayed.isReplay());
+        verify(kafkaTemplate, times(2)).send(anyRecord());
+    }
+
+    @Test
+    void syncRetryIsPublishedAfterKafkaSendFails() {
+        PaymentRequest paymentRequest = request("order-2");
+
+        assertThrows(CompletionException.class, () -> paymentService.processPayment(paymentRequest));
+        verify(statusWriter).remove("order-2", RecordId.of(1, 1));
+        assertTrue(idempotencyKeys.isEmpty());
+
+        assertFalse(paymentService.processPayment(paymentRequest).isReplay());
+        verify(kafkaTemplate, times(2)).send(anyRecord());
+
+        assertTrue(paymentService.processPayment(paymentRequest).isReplay());
+        verify(kafkaTemplate, times(2)).send(anyRecord());
+    }
+
+    @Test
+    void duplicateDuringInFlightPublishFailsWithTheOriginal() throws Exception {
+        SettableListenableFuture<SendResult<String, byte[]>> send = new SettableListenableFuture<>();
+        doReturn(send).when(kafkaTemplate).send(anyRecord());
+        PaymentRequest paymentRequest = request("order-3");
+
+        CompletableFuture<Acceptance> original = paymentService.processPaymentAsync(paymentRequest);
+        verify(kafkaTemplate, timeout(5000)).send(anyRecord());
+        CompletableFuture<Acceptance> duplicate = paymentService.processPaymentAsync(paymentRequest);
+        // 首次受理的事件还没有发布，重复请求不能先得到成功
+        assertThrows(TimeoutException.class, () -> duplicate.get(200, TimeUnit.MILLISECONDS));
+
+        send.setException(new IllegalStateException("broker unavailable"));
+        assertThrows(ExecutionException.class, () -> original.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> duplicate.get(5, TimeUnit.SECONDS));
+        verify(statusWriter).remove("order-3", RecordId.of(1, 1));
+        assertTrue(idempotencyKeys.isEmpty());
+        verify(kafkaTemplate, times(1)).send(anyRecord());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ProducerRecord<String, byte[]> anyRecord() {
+        return any(ProducerRecord.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+
+    private static PaymentRequest request(String orderId) {
+        PaymentRequest paymentRequest = new PaymentRequest();
+        paymentRequest.setOrderId(orderId);
+        paymentRequest.setUserId("user-1");
+        paymentRequest.setAmount(Money.ofMinor(CurrencyUnit.of("USD"), 1050));
+        return paymentRequest;
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.paymentsystem.state;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.latency.PipelineLatency;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import com.example.paymentsystem.status.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionStateMachineTest {
+
+    private static final CurrencyUnit USD = CurrencyUnit.of("USD");
+    private static final int PARTITION = 3;
+    // 很小的环形缓冲区，让生产者反复追上消费者并回绕
+    private static final int RING_SIZE = 4;
+    // 测试期间不按时间间隔生成快照，快照只在 stop() 时写入
+    private static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    @TempDir
+    Path directory;
+
+    private final List<PartitionStateMachine> machines = new ArrayList<>();
+    private final List<SnapshotStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (PartitionStateMachine machine : machines) {
+            machine.stop();
+        }
+        for (SnapshotStore store : stores) {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void ringWrapsAroundWithoutLosingOrReorderingEvents() {
+        PartitionStateMachine machine = start(store());
+        Recorder recorder = new Recorder();
+
+        long sequence = -1;
+        for (int i = 0; i < RING_SIZE * 25; i++) {
+            sequence = machine.publish(i, request("order-" + i, 100), recorder);
+        }
+        machine.awaitProcessed(sequence);
+
+        assertEquals(RING_SIZE * 25 * 2, recorder.transitions.size());
+        for (int i = 0; i < RING_SIZE * 25; i++) {
+            assertEquals("order-" + i + ":AUTHORIZED", recorder.transitions.get(i * 2));
+            assertEquals("order-" + i + ":SETTLED", recorder.transitions.get(i * 2 + 1));
+        }
+        assertTrue(recorder.replays.isEmpty());
+    }
+
+    @Test
+    void invalidPaymentFails() {
+        PartitionStateMachine machine = start(store());
+        Recorder recorder = new Recorder();
+
+        machine.awaitProcessed(machine.publish(0, request("order-1", 0), recorder));
+
+        assertEquals(List.of("order-1:FAILED"), recorder.transitions);
+    }
+
+    @Test
+    void redeliveredOffsetReplaysTheCurrentStatusWithoutTransition() {
+        PartitionStateMachine machine = start(store());
+        Recorder first = new Recorder();
+        machine.awaitProcessed(machine.publish(0, request("order-1", 100), first));
+
+        // Kafka 重投同一位移：不再迁移，只重新发出当前状态以便补写 Redis
+        Recorder redelivery = new Recorder();
+        machine.awaitProcessed(machine.publish(0, request("order-1", 100), redelivery));
+
+        assertEquals(List.of("order-1:AUTHORIZED", "order-1:SETTLED"), first.transitions);
+        assertTrue(redelivery.transitions.isEmpty());
+        assertEquals(List.of("order-1:SETTLED"), redelivery.replays);
+    }
+
+    @Test
+    void resubmittedOrderIdUnderNewOffsetIsReplayed() {
+        PartitionStateMachine machine = start(store());
+        machine.awaitProcessed(machine.publish(0, request("order-1", 0), new Recorder()));
+
+        // 同一订单以新位移再次提交，即使这次的金额合法，也不会从 FAILED 重新走一遍
+        Recorder resubmission = new Recorder();
+        machine.awaitProcessed(machine.publish(1, request("order-1", 100), resubmission));
+
+        assertTrue(resubmission.transitions.isEmpty());
+        assertEquals(List.of("order-1:FAILED"), resubmission.replays);
+    }
+
+    @Test
+    void restartFromSnapshotReplaysWithoutApplyingAnyTransitionTwice() throws InterruptedException {
+        SnapshotStore store = store();
+        PartitionStateMachine machine = start(store);
+        Recorder recorder = new Recorder();
+        long sequence = -1;
+        for (int i = 0; i < 10; i++) {
+            sequence = machine.publish(i, request("order-" + i, 100), recorder);
+        }
+        machine.awaitProcessed(sequence);
+        machine.stop();
+        machines.remove(machine);
+        assertEquals(20, recorder.transitions.size());
+
+        PartitionStateMachine restarted = start(store);
+        assertEquals(9, restarted.restoredOffset());
+
+        // 提交前崩溃时 Kafka 从更早的位移重投，已应用的事件全部按重放处理；之后的新事件照常应用
+        sequence = -1;
+        for (int i = 5; i < 12; i++) {
+            sequence = restarted.publish(i, request("order-" + i, 100), recorder);
+        }
+        restarted.awaitProcessed(sequence);
+
+        assertEquals(24, recorder.transitions.size());
+        assertEquals(List.of("order-10:AUTHORIZED", "order-10:SETTLED", "order-11:AUTHORIZED", "order-11:SETTLED"),
+                recorder.transitions.subList(20, 24));
+        assertEquals(List.of("order-5:SETTLED", "order-6:SETTLED", "order-7:SETTLED", "order-8:SETTLED",
+                "order-9:SETTLED"), recorder.replays);
+        assertEquals(recorder.transitions.size(), recorder.transitions.stream().distinct().count());
+    }
+
+    @Test
+    void stopSkipsTheFinalSnapshotWhenTheThreadDoesNotExit() throws InterruptedException {
+        SnapshotStore store = store();
+        PartitionStateMachine machine = start(store);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(1);
+        // 监听器忽略中断一直阻塞，stop() 等待和中断后线程仍未退出
+        TransitionListener stuck = (orderId, status) -> {
+            entered.countDown();
+            boolean released = false;
+            while (!released) {
+                try {
+                    released = release.await(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    // 模拟不响应中断的阻塞调用
+                }
+            }
+        };
+        machine.publish(0, request("order-1", 100), stuck);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        machine.stop();
+        release.countDown();
+        machines.remove(machine);
+
+        // 状态机线程仍可能修改变更列表，此时写出的快照可能与位移不一致，宁可不写
+        assertNull(store.read(PARTITION));
+    }
+
+    private SnapshotStore store() {
+        SnapshotStore store = new SnapshotStore(directory);
+        stores.add(store);
+        return store;
+    }
+
+    private PartitionStateMachine start(SnapshotStore store) {
+        PaymentStateMachine.Metrics metrics = new PaymentStateMachine.Metrics(new SimpleMeterRegistry(),
+                new PipelineLatency(new SimpleMeterRegistry(), 60));
+        PartitionStateMachine machine = new PartitionStateMachine(PARTITION, RING_SIZE, 1000, store,
+                SNAPSHOT_INTERVAL_NANOS, null, metrics);
+        machine.start();
+        machines.add(machine);
+        return machine;
+    }
+
+    private static PaymentRequest request(String orderId, long minorUnits) {
+        PaymentRequest paymentRequest = new PaymentRequest();
+        paymentRequest.setOrderId(orderId);
+        paymentRequest.setUserId("user-1");
+        paymentRequest.setAmount(Money.ofMinor(USD, minorUnits));
+        return paymentRequest;
+    }
+
+    /**
+     * 按顺序记录回调。回调只在状态机线程上执行，awaitProcessed 返回后即可在测试线程上读取。
+     */
+    private static final class Recorder implements TransitionListener {
+
+        final List<String> transitions = new ArrayList<>();
+        final List<String> replays = new ArrayList<>();
+
+        @Override
+        public void onTransition(String orderId, PaymentStatus status) {
+            transitions.add(orderId + ":" + status);
+        }
+
+        @Override
+        public void onReplay(String orderId, PaymentStatus status) {
+            replays.add(orderId + ":" + status);
+        }
+    }
+}
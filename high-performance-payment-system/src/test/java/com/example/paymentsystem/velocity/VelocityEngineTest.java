@@ -0,0 +1,81 @@
+package com.example.paymentsystem.velocity;
+
+import com.example.paymentsystem.dto.PaymentRequest;
+import com.example.paymentsystem.money.CurrencyUnit;
+import com.example.paymentsystem.money.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class VelocityEngineTest {
+
+    private static final CurrencyUnit USD = CurrencyUnit.of("USD");
+
+    private final AtomicLong offsets = new AtomicLong();
+
+    @Test
+    void rejectedPaymentsDoNotCountTowardsTheWindow() {
+        // 24 小时内最多 100 美元
+        VelocityEngine engine = engine("reject");
+
+        assertNull(check(engine, 60_00));
+        assertNotNull(check(engine, 50_00));
+        // 被拒绝的重试不计入，额度内的支付仍被接受
+        assertNotNull(check(engine, 50_00));
+        assertNull(check(engine, 40_00));
+        assertNotNull(check(engine, 1));
+    }
+
+    @Test
+    void rejectModeComparesTheSumIncludingThisPayment() {
+        VelocityEngine engine = engine("reject");
+
+        assertNull(check(engine, 100_00));
+        assertNotNull(check(engine, 1));
+    }
+
+    @Test
+    void flagModeNeverRejects() {
+        VelocityEngine engine = engine("flag");
+
+        assertNull(check(engine, 60_00));
+        assertNull(check(engine, 50_00));
+        assertNull(check(engine, 50_00));
+    }
+
+    @Test
+    void replayedOffsetIsNotCountedTwice() {
+        VelocityEngine engine = engine("reject");
+
+        assertNull(engine.check(0, 7, request(100_00)));
+        // 重放的事件已经计入过，按原有的统计判断
+        assertNull(engine.check(0, 7, request(100_00)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static VelocityEngine engine(String action) {
+        MockEnvironment environment = new MockEnvironment().withProperty("payment.velocity.day.max-amount", "100");
+        return new VelocityEngine(mock(KafkaTemplate.class), mock(ConsumerFactory.class), environment,
+                new SimpleMeterRegistry(), action, 1000, 30000, 1000);
+    }
+
+    private String check(VelocityEngine engine, long minorUnits) {
+        return engine.check(0, offsets.incrementAndGet(), request(minorUnits));
+    }
+
+    private static PaymentRequest request(long minorUnits) {
+        PaymentRequest paymentRequest = new PaymentRequest();
+        paymentRequest.setOrderId("order-" + minorUnits);
+        paymentRequest.setUserId("user-1");
+        paymentRequest.setAmount(Money.ofMinor(USD, minorUnits));
+        return paymentRequest;
+    }
+}
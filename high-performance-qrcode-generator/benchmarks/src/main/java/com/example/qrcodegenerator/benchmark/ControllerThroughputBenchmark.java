@@ -0,0 +1,107 @@
+package com.example.qrcodegenerator.benchmark;
+
+import com.example.qrcodegenerator.QRCodeGeneratorApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Requests per second through the full Spring MVC stack of {@code GET /api/qrcode} (argument resolution, ETag, render
+ * cache, render scheduler, message converters) at a fixed concurrency of 16 threads, driven with {@link MockMvc} so
+ * that no network or Tomcat cost is included.
+ * <p>
+ * {@code cache=hit} cycles through a small set of texts that stay cached; {@code cache=miss} requests a new text
+ * every time and so renders on every request. Change the concurrency with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ControllerThroughputBenchmark {
+
+    private static final int HOT_TEXTS = 64;
+
+    @Param({"hit", "miss"})
+    private String cache;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"PNG", "SVG"})
+    private String format;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private Path jobsDir;
+    private ConfigurableApplicationContext application;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jobsDir = Files.createTempDirectory("qrcode-benchmark-jobs");
+        application = new SpringApplicationBuilder(QRCodeGeneratorApplication.class)
+                .run("--server.port=0", "--qrcode.jobs.dir=" + jobsDir, "--logging.level.root=WARN");
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) application).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+        FileSystemUtils.deleteRecursively(jobsDir);
+    }
+
+    @Benchmark
+    public int generateQRCode() throws Exception {
+        long n = sequence.getAndIncrement();
+        String text = "https://example.com/p/" + (cache.equals("hit") ? n % HOT_TEXTS : n);
+        MvcResult result = mockMvc.perform(get("/api/qrcode")
+                        .param("text", text)
+                        .param("size", Integer.toString(size))
+                        .param("format", format))
+                .andReturn();
+        // a 503 from the render scheduler would inflate the score, so it fails the run like any other error
+        int status = result.getResponse().getStatus();
+        if (status != 200) {
+            throw new IllegalStateException("Unexpected status " + status);
+        }
+        return result.getResponse().getContentAsByteArray().length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ControllerThroughputBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
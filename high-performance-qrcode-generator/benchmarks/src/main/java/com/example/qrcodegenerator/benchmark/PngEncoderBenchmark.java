@@ -0,0 +1,91 @@
+package com.example.qrcodegenerator.benchmark;
+
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG encoding of an already encoded {@link BitMatrix}: ZXing's {@code MatrixToImageWriter} (BufferedImage + ImageIO)
+ * against {@link BitMatrixPngWriter}, into a byte array and streamed. Run {@code main} to include the GC profiler,
+ * which reports allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngEncoderBenchmark {
+
+    @Param({"64", "256", "1024", "2048"})
+    private int size;
+
+    private BitMatrix matrix;
+    private BitMatrixPngWriter pngWriter;
+    private OutputStream discard;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws WriterException {
+        matrix = new QRCodeWriter().encode("https://example.com/catalog/item/0123456789", BarcodeFormat.QR_CODE,
+                size, size);
+        pngWriter = new BitMatrixPngWriter();
+        discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(b);
+            }
+        };
+    }
+
+    @Benchmark
+    public byte[] imageIo() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(matrix, "PNG", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] bitMatrixPngWriter() throws IOException {
+        return pngWriter.toByteArray(matrix);
+    }
+
+    @Benchmark
+    public void bitMatrixPngWriterStreamed() throws IOException {
+        pngWriter.write(matrix, discard);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PngEncoderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
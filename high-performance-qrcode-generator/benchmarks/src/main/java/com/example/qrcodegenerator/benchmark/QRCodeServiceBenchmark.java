@@ -0,0 +1,101 @@
+package com.example.qrcodegenerator.benchmark;
+
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.example.qrcodegenerator.service.QRCodeService;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QRCodeService#generateQRCodeImage} across payload length, output size and error correction level.
+ * <p>
+ * {@code encodeAndRender} uses a service without module grid cache, so every call pays for the Reed-Solomon encode
+ * and mask selection as well as scaling and PNG encoding; {@code renderCachedGrid} reuses the encoded grid and
+ * measures scaling and PNG encoding alone. Run {@code main} to include the GC profiler. The full matrix takes a while;
+ * narrow it with {@code -p}, e.g. {@code -p size=256 -p errorCorrection=M}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QRCodeServiceBenchmark {
+
+    @Param({"16", "128", "512", "1024"})
+    private int payloadLength;
+
+    @Param({"64", "256", "1024", "2048"})
+    private int size;
+
+    @Param({"L", "M", "Q", "H"})
+    private ErrorCorrectionLevel errorCorrection;
+
+    private String text;
+    private QRCodeService uncachedGrids;
+    private QRCodeService cachedGrids;
+    private RenderScheduler renderScheduler;
+
+    @Setup
+    public void setUp() throws Exception {
+        text = payload(payloadLength);
+        renderScheduler = new RenderScheduler(1, 1, 1000, 0);
+        BitMatrixPngWriter pngWriter = new BitMatrixPngWriter();
+        uncachedGrids = new QRCodeService(new RenderCache(0, 0), new ModuleGridCache(0), pngWriter, renderScheduler,
+                4096);
+        cachedGrids = new QRCodeService(new RenderCache(0, 0), new ModuleGridCache(16 * 1024 * 1024), pngWriter,
+                renderScheduler, 4096);
+        cachedGrids.generateQRCodeImage(text, size, size, errorCorrection);
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderScheduler.shutdown();
+    }
+
+    @Benchmark
+    public byte[] encodeAndRender() throws Exception {
+        return uncachedGrids.generateQRCodeImage(text, size, size, errorCorrection);
+    }
+
+    @Benchmark
+    public byte[] renderCachedGrid() throws Exception {
+        return cachedGrids.generateQRCodeImage(text, size, size, errorCorrection);
+    }
+
+    /**
+     * A URL-like payload of exactly {@code length} characters, the typical content of catalog codes.
+     */
+    static String payload(int length) {
+        StringBuilder text = new StringBuilder(length).append("https://example.com/p/");
+        for (int i = 0; text.length() < length; i++) {
+            text.append((char) ('a' + (i * 7) % 26));
+        }
+        return text.substring(0, length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QRCodeServiceBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
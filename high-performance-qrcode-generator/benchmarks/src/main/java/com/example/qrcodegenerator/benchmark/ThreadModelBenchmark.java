@@ -0,0 +1,112 @@
+package com.example.qrcodegenerator.benchmark;
+
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.example.qrcodegenerator.service.QRCodeService;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QRCodeService#generateQRCodeImage} for a burst of {@value #BURST} concurrent requests, each on its own task:
+ * <ul>
+ *     <li>{@code PLATFORM}: a fixed pool of platform threads, one per CPU</li>
+ *     <li>{@code VIRTUAL}: one virtual thread per request rendering directly, as before the render scheduler</li>
+ *     <li>{@code VIRTUAL_SCHEDULED}: one virtual thread per request handing the render to {@link RenderScheduler},
+ *     as the application serves cache misses</li>
+ * </ul>
+ * The score is time per render including the wait for the whole burst. Run {@code main} to include the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModelBenchmark {
+
+    private static final int BURST = 256;
+
+    @Param({"PLATFORM", "VIRTUAL", "VIRTUAL_SCHEDULED"})
+    private String threads;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    private QRCodeService qrCodeService;
+    private RenderScheduler renderScheduler;
+    private ExecutorService executor;
+    private String[] texts;
+
+    @Setup
+    public void setUp() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        renderScheduler = new RenderScheduler(cpus, BURST, TimeUnit.MINUTES.toMillis(1), 0);
+        qrCodeService = new QRCodeService(new RenderCache(0, 0), new ModuleGridCache(0), new BitMatrixPngWriter(),
+                renderScheduler, 4096);
+        executor = threads.equals("PLATFORM")
+                ? Executors.newFixedThreadPool(cpus)
+                : Executors.newVirtualThreadPerTaskExecutor();
+        texts = new String[BURST];
+        for (int i = 0; i < BURST; i++) {
+            texts[i] = QRCodeServiceBenchmark.payload(64) + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        renderScheduler.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long burst() throws Exception {
+        boolean scheduled = threads.equals("VIRTUAL_SCHEDULED");
+        List<Future<byte[]>> renders = new ArrayList<>(BURST);
+        for (String text : texts) {
+            renders.add(executor.submit(() -> scheduled
+                    ? renderScheduler.execute(() -> render(text))
+                    : render(text)));
+        }
+        long bytes = 0;
+        for (Future<byte[]> render : renders) {
+            bytes += render.get().length;
+        }
+        return bytes;
+    }
+
+    private byte[] render(String text) throws Exception {
+        return qrCodeService.generateQRCodeImage(text, size, size, ErrorCorrectionLevel.M);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ThreadModelBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -7,7 +7,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class QRCodeGeneratorApplication {
 
     public static void main(String[] args) {
-        // Enable virtual threads
+        // Enable virtual threads for request I/O; rendering itself runs on the CPU-sized RenderScheduler pool
         System.setProperty("spring.threads.virtual.enabled", "true");
         SpringApplication.run(QRCodeGeneratorApplication.class, args);
     }
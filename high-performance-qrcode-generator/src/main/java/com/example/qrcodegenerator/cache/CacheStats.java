@@ -0,0 +1,14 @@
+package com.example.qrcodegenerator.cache;
+
+public record CacheStats(
+        long hitCount,
+        long missCount,
+        double hitRatio,
+        long loadCount,
+        long evictionCount,
+        long rejectedCount,
+        int entryCount,
+        long heapBytes,
+        long offHeapBytes,
+        long maxBytes) {
+}
@@ -0,0 +1,55 @@
+package com.example.qrcodegenerator.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * An immutable rendered image, held either on the heap or in a direct (off-heap) buffer.
+ */
+public final class CachedImage {
+
+    private final byte[] heap;
+    private final ByteBuffer direct;
+
+    private CachedImage(byte[] heap, ByteBuffer direct) {
+        this.heap = heap;
+        this.direct = direct;
+    }
+
+    public static CachedImage onHeap(byte[] bytes) {
+        return new CachedImage(bytes, null);
+    }
+
+    static CachedImage offHeap(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        return new CachedImage(null, buffer.asReadOnlyBuffer());
+    }
+
+    public int length() {
+        return heap != null ? heap.length : direct.capacity();
+    }
+
+    public boolean isOffHeap() {
+        return direct != null;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (heap != null) {
+            out.write(heap);
+        } else {
+            // duplicate() so concurrent writers each get their own position
+            Channels.newChannel(out).write(direct.duplicate());
+        }
+    }
+
+    public byte[] toByteArray() {
+        if (heap != null) {
+            return heap.clone();
+        }
+        byte[] bytes = new byte[direct.capacity()];
+        direct.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.qrcodegenerator.cache;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+public record GridKey(String text, ErrorCorrectionLevel errorCorrection) {
+}
@@ -0,0 +1,42 @@
+package com.example.qrcodegenerator.cache;
+
+import com.example.qrcodegenerator.image.ModuleGrid;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encoded module grids by text and error correction level, so every size of the same code shares one
+ * Reed-Solomon encode and mask selection.
+ */
+@Component
+public class ModuleGridCache {
+
+    private final TinyLfuCache<GridKey, ModuleGrid> cache;
+
+    public ModuleGridCache(@Value("${qrcode.grid-cache.max-bytes:16777216}") long maxBytes) {
+        // the key text is weighed too: for short payloads it is as large as the grid itself
+        this.cache = new TinyLfuCache<>(maxBytes, (key, grid) -> grid.byteSize() + 2 * key.text().length(),
+                grid -> false, 256);
+    }
+
+    public ModuleGrid get(String text, ErrorCorrectionLevel errorCorrection) throws WriterException {
+        try {
+            return cache.get(new GridKey(text, errorCorrection),
+                    key -> ModuleGrid.encode(key.text(), key.errorCorrection()));
+        } catch (WriterException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean contains(String text, ErrorCorrectionLevel errorCorrection) {
+        return cache.containsKey(new GridKey(text, errorCorrection));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
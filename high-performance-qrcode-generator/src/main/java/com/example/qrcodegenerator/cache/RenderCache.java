@@ -0,0 +1,46 @@
+package com.example.qrcodegenerator.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rendered images by {@link RenderKey}, bounded by the total bytes of the images and their key texts. Images of at
+ * least {@code qrcode.cache.off-heap-min-bytes} are kept in direct buffers.
+ */
+@Component
+public class RenderCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        byte[] render(RenderKey key) throws Exception;
+    }
+
+    private final TinyLfuCache<RenderKey, CachedImage> cache;
+    private final int offHeapMinBytes;
+
+    public RenderCache(@Value("${qrcode.cache.max-bytes:67108864}") long maxBytes,
+                       @Value("${qrcode.cache.off-heap-min-bytes:0}") int offHeapMinBytes) {
+        // the key text is weighed too: a long payload can outweigh its 1-bit PNG
+        this.cache = new TinyLfuCache<>(maxBytes, (key, image) -> image.length() + 2 * key.text().length(),
+                CachedImage::isOffHeap, 1024);
+        this.offHeapMinBytes = offHeapMinBytes;
+    }
+
+    public CachedImage get(RenderKey key, Loader loader) throws Exception {
+        return cache.get(key, k -> {
+            byte[] bytes = loader.render(k);
+            // images too large to be admitted are served once and dropped, so keep them on the heap
+            boolean offHeap = offHeapMinBytes > 0 && bytes.length >= offHeapMinBytes
+                    && bytes.length + 2L * k.text().length() <= cache.maxEntryBytes();
+            return offHeap ? CachedImage.offHeap(bytes) : CachedImage.onHeap(bytes);
+        });
+    }
+
+    public boolean contains(RenderKey key) {
+        return cache.containsKey(key);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
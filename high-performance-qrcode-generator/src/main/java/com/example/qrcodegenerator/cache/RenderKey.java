@@ -0,0 +1,10 @@
+package com.example.qrcodegenerator.cache;
+
+import com.example.qrcodegenerator.service.QRCodeFormat;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * Identity of a rendered image. Two requests with equal keys produce byte-identical output.
+ */
+public record RenderKey(String text, int size, QRCodeFormat format, ErrorCorrectionLevel errorCorrection) {
+}
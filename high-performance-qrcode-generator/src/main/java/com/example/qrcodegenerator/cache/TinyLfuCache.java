@@ -0,0 +1,269 @@
+package com.example.qrcodegenerator.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Byte-bounded cache with W-TinyLFU eviction.
+ * <p>
+ * New entries enter a small LRU window (1% of the budget). When the window overflows, its least recently used entry
+ * competes with the main LRU's victim and only the one with the higher estimated access frequency is kept, so a burst
+ * of one-off payloads cannot flush the hot set. Hits are lock-free; recording the access is skipped when the policy
+ * lock is contended, trading a little precision for no blocking on the hot path.
+ * <p>
+ * Concurrent misses for the same key share a single render.
+ */
+public final class TinyLfuCache<K, V> {
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> main = new AccessOrderQueue<>();
+    private final FrequencySketch sketch;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final Predicate<? super V> offHeap;
+    private final long maxBytes;
+    private final long windowMaxBytes;
+    private final long mainMaxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    // guarded by lock
+    private long heapBytes;
+    private long offHeapBytes;
+
+    /**
+     * @param weigher  size in bytes of an entry
+     * @param offHeap  whether a value's bytes live outside the heap, for {@link CacheStats} only
+     * @param averageEntryBytes expected entry size, used to size the frequency sketch
+     */
+    public TinyLfuCache(long maxBytes, ToIntBiFunction<? super K, ? super V> weigher, Predicate<? super V> offHeap,
+                        int averageEntryBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.windowMaxBytes = maxBytes / 100;
+        this.mainMaxBytes = maxBytes - windowMaxBytes;
+        this.weigher = weigher;
+        this.offHeap = offHeap;
+        this.sketch = new FrequencySketch((int) Math.min(maxBytes / averageEntryBytes, 1 << 20));
+    }
+
+    /**
+     * @return the largest entry that can be admitted; heavier values are returned to the caller but not cached
+     */
+    public long maxEntryBytes() {
+        return mainMaxBytes;
+    }
+
+    /**
+     * Checks for a cached value without counting a hit or miss or touching the eviction policy.
+     */
+    public boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    public V get(K key, Loader<? super K, ? extends V> loader) throws Exception {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            hits.increment();
+            recordAccess(node);
+            return node.value;
+        }
+        misses.increment();
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, loading);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // another caller may have finished loading between the lookup and putIfAbsent
+            Node<K, V> loaded = data.get(key);
+            V value = loaded != null ? loaded.value : admit(key, loader.load(key));
+            loading.complete(value);
+            return value;
+        } catch (Throwable e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    public CacheStats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        lock.lock();
+        try {
+            return new CacheStats(hitCount, missCount, requests == 0 ? 0.0 : (double) hitCount / requests,
+                    loads.sum(), evictions.sum(), rejections.sum(), data.size(), heapBytes, offHeapBytes, maxBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordAccess(Node<K, V> node) {
+        if (lock.tryLock()) {
+            try {
+                sketch.increment(node.key);
+                if (node.queue != null) {
+                    node.queue.moveToFront(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private V admit(K key, V value) {
+        loads.increment();
+        Node<K, V> node = new Node<>(key, value, weigher.applyAsInt(key, value), offHeap.test(value));
+        lock.lock();
+        try {
+            sketch.increment(key);
+            if (node.weight > mainMaxBytes) {
+                rejections.increment();
+                return value;
+            }
+            data.put(key, node);
+            window.addFirst(node);
+            addBytes(node, node.weight);
+            evictFromWindow();
+        } finally {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    private void evictFromWindow() {
+        while (window.bytes > windowMaxBytes) {
+            Node<K, V> candidate = window.last();
+            window.remove(candidate);
+            main.addFirst(candidate);
+            while (main.bytes > mainMaxBytes) {
+                Node<K, V> victim = main.last();
+                if (victim != candidate && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    discard(victim);
+                    evictions.increment();
+                } else {
+                    discard(candidate);
+                    if (victim == candidate) {
+                        evictions.increment();
+                    } else {
+                        rejections.increment();
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private void discard(Node<K, V> node) {
+        node.queue.remove(node);
+        data.remove(node.key, node);
+        addBytes(node, -node.weight);
+    }
+
+    private void addBytes(Node<K, V> node, long delta) {
+        if (node.offHeap) {
+            offHeapBytes += delta;
+        } else {
+            heapBytes += delta;
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> loading) throws Exception {
+        try {
+            return loading.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        final boolean offHeap;
+        AccessOrderQueue<K, V> queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight, boolean offHeap) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.offHeap = offHeap;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list, most recently used first, tracking the total weight of its nodes.
+     */
+    private static final class AccessOrderQueue<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        long bytes;
+
+        void addFirst(Node<K, V> node) {
+            node.queue = this;
+            node.prev = null;
+            node.next = head;
+            if (head != null) {
+                head.prev = node;
+            } else {
+                tail = node;
+            }
+            head = node;
+            bytes += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                tail = node.prev;
+            }
+            node.queue = null;
+            node.prev = null;
+            node.next = null;
+            bytes -= node.weight;
+        }
+
+        void moveToFront(Node<K, V> node) {
+            if (head != node) {
+                remove(node);
+                addFirst(node);
+            }
+        }
+
+        Node<K, V> last() {
+            return tail;
+        }
+    }
+}
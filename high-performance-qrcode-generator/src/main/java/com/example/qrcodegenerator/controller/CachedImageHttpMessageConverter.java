@@ -0,0 +1,36 @@
+package com.example.qrcodegenerator.controller;
+
+import com.example.qrcodegenerator.cache.CachedImage;
+import com.example.qrcodegenerator.service.QRCodeFormat;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link CachedImage} straight to the response body, without copying it into a new array first.
+ */
+@Component
+public class CachedImageHttpMessageConverter extends WriteOnlyHttpMessageConverter<CachedImage> {
+
+    public CachedImageHttpMessageConverter() {
+        super(Arrays.stream(QRCodeFormat.values()).map(QRCodeFormat::getMediaType).toArray(MediaType[]::new));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return CachedImage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected Long getContentLength(CachedImage image, MediaType contentType) {
+        return (long) image.length();
+    }
+
+    @Override
+    protected void writeInternal(CachedImage image, HttpOutputMessage outputMessage) throws IOException {
+        image.writeTo(outputMessage.getBody());
+    }
+}
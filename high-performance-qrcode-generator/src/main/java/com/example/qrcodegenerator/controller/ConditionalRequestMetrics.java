@@ -0,0 +1,42 @@
+package com.example.qrcodegenerator.controller;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts {@code If-None-Match} requests and how much work the resulting 304 responses saved. A 304 avoids a render
+ * when the output was not cached at the time; for PNG the saved time is estimated from the mean render time.
+ */
+@Component
+public class ConditionalRequestMetrics {
+
+    private final LongAdder conditionalRequests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder rendersAvoided = new LongAdder();
+    private final DoubleAdder renderNanosAvoided = new DoubleAdder();
+
+    public void recordConditionalRequest() {
+        conditionalRequests.increment();
+    }
+
+    /**
+     * @param estimatedRenderNanos time the render would have taken, or 0 when the output was cached or unknown
+     */
+    public void recordNotModified(boolean renderAvoided, double estimatedRenderNanos) {
+        notModified.increment();
+        if (renderAvoided) {
+            rendersAvoided.increment();
+            renderNanosAvoided.add(estimatedRenderNanos);
+        }
+    }
+
+    public ConditionalRequestStats stats() {
+        long requests = conditionalRequests.sum();
+        long notModifiedCount = notModified.sum();
+        return new ConditionalRequestStats(requests, notModifiedCount,
+                requests == 0 ? 0.0 : (double) notModifiedCount / requests, rendersAvoided.sum(),
+                renderNanosAvoided.sum() / 1_000_000.0);
+    }
+}
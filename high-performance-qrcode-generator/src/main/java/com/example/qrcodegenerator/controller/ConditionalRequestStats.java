@@ -0,0 +1,9 @@
+package com.example.qrcodegenerator.controller;
+
+public record ConditionalRequestStats(
+        long conditionalRequests,
+        long notModifiedCount,
+        double notModifiedRatio,
+        long rendersAvoided,
+        double estimatedRenderMillisAvoided) {
+}
@@ -0,0 +1,42 @@
+package com.example.qrcodegenerator.controller;
+
+import com.example.qrcodegenerator.image.ModuleGridWriter;
+import com.example.qrcodegenerator.service.ModuleGridImage;
+import com.example.qrcodegenerator.service.QRCodeFormat;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Streams a {@link ModuleGridImage} as SVG or raw module matrix, written row by row from the grid.
+ */
+@Component
+public class ModuleGridImageHttpMessageConverter extends WriteOnlyHttpMessageConverter<ModuleGridImage> {
+
+    public ModuleGridImageHttpMessageConverter() {
+        super(QRCodeFormat.SVG.getMediaType(), QRCodeFormat.MATRIX.getMediaType(),
+                QRCodeFormat.MATRIX_JSON.getMediaType());
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ModuleGridImage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected Long getContentLength(ModuleGridImage image, MediaType contentType) {
+        return image.format() == QRCodeFormat.MATRIX ? (long) ModuleGridWriter.matrixLength(image.grid()) : null;
+    }
+
+    @Override
+    protected void writeInternal(ModuleGridImage image, HttpOutputMessage outputMessage) throws IOException {
+        switch (image.format()) {
+            case SVG -> ModuleGridWriter.writeSvg(image.grid(), image.size(), outputMessage.getBody());
+            case MATRIX -> ModuleGridWriter.writeMatrix(image.grid(), outputMessage.getBody());
+            case MATRIX_JSON -> ModuleGridWriter.writeMatrixJson(image.grid(), outputMessage.getBody());
+            default -> throw new IllegalArgumentException("Not a module grid format: " + image.format());
+        }
+    }
+}
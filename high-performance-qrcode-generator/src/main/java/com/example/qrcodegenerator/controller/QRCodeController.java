@@ -1,33 +1,155 @@
 package com.example.qrcodegenerator.controller;
 
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.scheduler.RenderRejectedException;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.example.qrcodegenerator.scheduler.RenderSchedulerStats;
+import com.example.qrcodegenerator.service.BatchRenderService;
+import com.example.qrcodegenerator.service.QRCodeFormat;
 import com.example.qrcodegenerator.service.QRCodeService;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/qrcode")
 public class QRCodeController {
 
     private final QRCodeService qrCodeService;
+    private final RenderCache renderCache;
+    private final ModuleGridCache moduleGridCache;
+    private final BatchRenderService batchRenderService;
+    private final RenderScheduler renderScheduler;
+    private final ConditionalRequestMetrics conditionalRequestMetrics;
+    private final CacheControl cacheControl;
 
-    public QRCodeController(QRCodeService qrCodeService) {
+    public QRCodeController(QRCodeService qrCodeService, RenderCache renderCache, ModuleGridCache moduleGridCache,
+                            BatchRenderService batchRenderService, RenderScheduler renderScheduler,
+                            ConditionalRequestMetrics conditionalRequestMetrics,
+                            @Value("${qrcode.http.max-age:365d}") Duration maxAge) {
         this.qrCodeService = qrCodeService;
+        this.renderCache = renderCache;
+        this.moduleGridCache = moduleGridCache;
+        this.batchRenderService = batchRenderService;
+        this.renderScheduler = renderScheduler;
+        this.conditionalRequestMetrics = conditionalRequestMetrics;
+        // the output for a URL never changes, so caches need not revalidate it
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic().immutable();
     }
 
-    @GetMapping(produces = MediaType.IMAGE_PNG_VALUE)
-    public ResponseEntity<byte[]> generateQRCode(
+    /**
+     * The format comes from the {@code format} parameter when given, otherwise from the {@code Accept} header; PNG
+     * is the default.
+     * <p>
+     * The ETag is derived from the parameters, so {@code If-None-Match} is answered with 304 before any encode or
+     * render work. The parameters are validated first, so an invalid request gets 400 even with
+     * {@code If-None-Match: *}.
+     */
+    @GetMapping(produces = {MediaType.IMAGE_PNG_VALUE, "image/svg+xml", MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Object> generateQRCode(
             @RequestParam("text") String text,
-            @RequestParam(value = "size", defaultValue = "256") int size) {
+            @RequestParam(value = "size", defaultValue = "256") int size,
+            @RequestParam(value = "ecc", defaultValue = "L") ErrorCorrectionLevel errorCorrection,
+            @RequestParam(value = "format", required = false) QRCodeFormat format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.ALL_VALUE) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            byte[] image = qrCodeService.generateQRCodeImage(text, size, size);
-            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(image);
+            qrCodeService.validate(text, size);
+            QRCodeFormat resolved = format != null ? format : QRCodeFormat.negotiate(MediaType.parseMediaTypes(accept));
+            String eTag = qrCodeService.getETag(text, size, resolved, errorCorrection);
+            if (ifNoneMatch != null) {
+                conditionalRequestMetrics.recordConditionalRequest();
+                if (matches(ifNoneMatch, eTag)) {
+                    boolean renderAvoided = !qrCodeService.isCached(text, size, resolved, errorCorrection);
+                    conditionalRequestMetrics.recordNotModified(renderAvoided,
+                            resolved == QRCodeFormat.PNG ? renderScheduler.meanRenderNanos() : 0);
+                    return cacheable(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag, format == null).build();
+                }
+            }
+            Object body = resolved == QRCodeFormat.PNG
+                    ? qrCodeService.getQRCodeImage(text, size, errorCorrection)
+                    : qrCodeService.getModuleGridImage(text, size, resolved, errorCorrection);
+            return cacheable(ResponseEntity.ok(), eTag, format == null).contentType(resolved.getMediaType()).body(body);
+        } catch (RenderRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             // A more robust error handling would be better in a real application
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * {@code If-None-Match} uses weak comparison (RFC 9110, section 13.1.2): a {@code W/} prefix is ignored.
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ResponseEntity.BodyBuilder cacheable(ResponseEntity.BodyBuilder builder, String eTag, boolean negotiated) {
+        builder.eTag(eTag).cacheControl(cacheControl);
+        if (negotiated) {
+            // without a format parameter the same URL serves different formats depending on Accept
+            builder.varyBy(HttpHeaders.ACCEPT);
+        }
+        return builder;
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = "application/zip")
+    public void generateBatch(
+            InputStream body,
+            HttpServletResponse response,
+            @RequestParam(value = "size", defaultValue = "256") int size,
+            @RequestParam(value = "ecc", defaultValue = "L") ErrorCorrectionLevel errorCorrection) throws IOException {
+        try {
+            qrCodeService.validateSize(size);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"qrcodes.zip\"");
+        batchRenderService.render(body, response.getOutputStream(), size, errorCorrection);
+    }
+
+    @GetMapping(value = "/cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> cacheStats() {
+        return Map.of("render", renderCache.stats(), "grid", moduleGridCache.stats(),
+                "conditional", conditionalRequestMetrics.stats());
+    }
+
+    @GetMapping(value = "/scheduler", produces = MediaType.APPLICATION_JSON_VALUE)
+    public RenderSchedulerStats schedulerStats() {
+        return renderScheduler.stats();
+    }
 }
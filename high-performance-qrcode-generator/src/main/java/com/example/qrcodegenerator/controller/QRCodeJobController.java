@@ -0,0 +1,128 @@
+package com.example.qrcodegenerator.controller;
+
+import com.example.qrcodegenerator.job.ArchiveRegion;
+import com.example.qrcodegenerator.job.JobProgress;
+import com.example.qrcodegenerator.job.JobService;
+import com.example.qrcodegenerator.service.QRCodeService;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/qrcode/jobs")
+public class QRCodeJobController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final JobService jobService;
+    private final QRCodeService qrCodeService;
+
+    public QRCodeJobController(JobService jobService, QRCodeService qrCodeService) {
+        this.jobService = jobService;
+        this.qrCodeService = qrCodeService;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobProgress> submit(
+            InputStream body,
+            @RequestParam(value = "size", defaultValue = "256") int size,
+            @RequestParam(value = "ecc", defaultValue = "L") ErrorCorrectionLevel errorCorrection) throws IOException {
+        try {
+            qrCodeService.validateSize(size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        JobProgress job = jobService.submit(body, size, errorCorrection);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{id}").build(job.id()))
+                .body(job);
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobProgress> progress(@PathVariable("id") String id) {
+        return ResponseEntity.of(jobService.get(id));
+    }
+
+    @GetMapping(value = "/{id}/archive", produces = "application/zip")
+    public void archive(@PathVariable("id") String id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<ArchiveRegion> archive = jobService.archive(id);
+        if (archive.isEmpty()) {
+            Optional<JobProgress> job = jobService.get(id);
+            response.sendError(job.isEmpty() ? HttpStatus.NOT_FOUND.value() : HttpStatus.CONFLICT.value(),
+                    job.map(j -> "Job is " + j.status()).orElse(null));
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + archive.get().fileName() + "\"");
+        send(archive.get(), "application/zip", request, response);
+    }
+
+    /**
+     * A single entry of the archive by position (input order), available while the job is still running.
+     */
+    @GetMapping("/{id}/items/{item}")
+    public void item(@PathVariable("id") String id, @PathVariable("item") long item, HttpServletRequest request,
+                     HttpServletResponse response) throws IOException {
+        Optional<ArchiveRegion> entry = jobService.item(id, item);
+        if (entry.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        boolean image = entry.get().fileName().endsWith(".png");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + entry.get().fileName() + "\"");
+        send(entry.get(), image ? MediaType.IMAGE_PNG_VALUE : "text/plain;charset=UTF-8", request, response);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable("id") String id) throws IOException {
+        return jobService.delete(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Serves a file region without copying it through the heap: Tomcat's sendfile when the connector supports it,
+     * otherwise {@link FileChannel#transferTo} into the response.
+     */
+    private static void send(ArchiveRegion region, String contentType, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        response.setContentType(contentType);
+        response.setContentLengthLong(region.length());
+        long start = region.offset();
+        long end = region.offset() + region.length();
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, region.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel file = FileChannel.open(region.file(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end; ) {
+                position += file.transferTo(position, end - position, out);
+            }
+        }
+    }
+}
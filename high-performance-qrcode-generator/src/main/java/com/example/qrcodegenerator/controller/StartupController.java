@@ -0,0 +1,38 @@
+package com.example.qrcodegenerator.controller;
+
+import com.example.qrcodegenerator.startup.StartupReport;
+import com.example.qrcodegenerator.startup.WarmupRunner;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class StartupController {
+
+    private final ApplicationAvailability applicationAvailability;
+    private final WarmupRunner warmupRunner;
+
+    public StartupController(ApplicationAvailability applicationAvailability, WarmupRunner warmupRunner) {
+        this.applicationAvailability = applicationAvailability;
+        this.warmupRunner = warmupRunner;
+    }
+
+    /**
+     * Readiness probe: 503 until startup, including warmup, has completed.
+     */
+    @GetMapping(value = "/ready", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> ready() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        return ResponseEntity.status(state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK
+                : HttpStatus.SERVICE_UNAVAILABLE).body(state.name());
+    }
+
+    @GetMapping(value = "/api/qrcode/startup", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StartupReport> startupReport() {
+        return ResponseEntity.of(warmupRunner.getReport());
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.qrcodegenerator.controller;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Base for converters that only write response bodies; request bodies are never read into their types.
+ */
+abstract class WriteOnlyHttpMessageConverter<T> extends AbstractHttpMessageConverter<T> {
+
+    WriteOnlyHttpMessageConverter(MediaType... supportedMediaTypes) {
+        super(supportedMediaTypes);
+    }
+
+    @Override
+    protected final boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * Never called, since {@link #canRead(MediaType)} is false; fails as an unreadable body should anything call it.
+     */
+    @Override
+    protected final T readInternal(Class<? extends T> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(clazz.getSimpleName() + " cannot be read from a request body",
+                inputMessage);
+    }
+}
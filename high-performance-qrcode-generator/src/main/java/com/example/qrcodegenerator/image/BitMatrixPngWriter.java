@@ -0,0 +1,227 @@
+package com.example.qrcodegenerator.image;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a {@link BitMatrix} as a 1-bit grayscale PNG (set bits black), without building a {@code BufferedImage}.
+ * <p>
+ * Rows are packed eight pixels per byte straight from the matrix words and deflated with a pooled {@link Deflater};
+ * the compressed stream is emitted in fixed-size IDAT chunks, so nothing proportional to the image size is buffered.
+ * The pool is sized to the CPU count; encoders beyond it are released instead of retained, which keeps native
+ * zlib memory bounded even when many virtual threads render at once.
+ */
+@Component
+public class BitMatrixPngWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int RAW_BUFFER_SIZE = 32 * 1024;
+
+    private final BlockingQueue<Encoder> pool;
+
+    public BitMatrixPngWriter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BitMatrixPngWriter(int poolSize) {
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public void write(BitMatrix matrix, OutputStream out) throws IOException {
+        Encoder encoder = acquire();
+        try {
+            encoder.write(matrix, out);
+        } finally {
+            release(encoder);
+        }
+    }
+
+    /**
+     * Encodes into the encoder's reusable output buffer and returns an exact-size copy.
+     */
+    public byte[] toByteArray(BitMatrix matrix) throws IOException {
+        Encoder encoder = acquire();
+        try {
+            encoder.sink.reset();
+            encoder.write(matrix, encoder.sink);
+            return encoder.sink.toByteArray();
+        } finally {
+            release(encoder);
+        }
+    }
+
+    private Encoder acquire() {
+        Encoder encoder = pool.poll();
+        return encoder != null ? encoder : new Encoder();
+    }
+
+    private void release(Encoder encoder) {
+        encoder.deflater.reset();
+        if (encoder.sink.buffer.length > 4 * CHUNK_SIZE) {
+            encoder.sink.buffer = new byte[CHUNK_SIZE];
+        }
+        if (!pool.offer(encoder)) {
+            encoder.deflater.end();
+        }
+    }
+
+    private static final class Encoder {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        final CRC32 crc = new CRC32();
+        // 4-byte length + 4-byte type + data + 4-byte CRC
+        final byte[] chunk = new byte[8 + CHUNK_SIZE + 4];
+        final ReusableSink sink = new ReusableSink();
+        byte[] raw = new byte[RAW_BUFFER_SIZE];
+        BitArray row = new BitArray(1);
+        int[] previousWords = new int[0];
+        int pending;
+
+        void write(BitMatrix matrix, OutputStream out) throws IOException {
+            int width = matrix.getWidth();
+            int height = matrix.getHeight();
+            int packedLength = (width + 7) >>> 3;
+            // filter byte plus whole 32-bit words, so the packing loop never checks bounds
+            int rowStride = 1 + (((width + 31) >>> 5) << 2);
+            if (raw.length < rowStride) {
+                raw = new byte[rowStride];
+            }
+
+            out.write(SIGNATURE);
+            writeHeader(out, width, height);
+
+            int wordCount = (width + 31) >>> 5;
+            if (previousWords.length < wordCount) {
+                previousWords = new int[wordCount];
+            }
+            pending = 0;
+            int filled = 0;
+            for (int y = 0; y < height; y++) {
+                if (filled + rowStride > raw.length) {
+                    deflate(raw, filled, out);
+                    filled = 0;
+                }
+                row = matrix.getRow(y, row);
+                int[] words = row.getBitArray();
+                if (y > 0 && Arrays.equals(words, 0, wordCount, previousWords, 0, wordCount)) {
+                    // each module spans several identical rows; the Up filter turns repeats into zeros
+                    raw[filled] = 2;
+                    Arrays.fill(raw, filled + 1, filled + 1 + packedLength, (byte) 0);
+                    filled += 1 + packedLength;
+                    continue;
+                }
+                System.arraycopy(words, 0, previousWords, 0, wordCount);
+                raw[filled] = 0; // filter type None
+                int p = filled + 1;
+                for (int i = 0; i < wordCount; i++) {
+                    // BitArray stores pixel 0 in the lowest bit; PNG wants it in the highest. 0 is black in grayscale.
+                    int word = ~Integer.reverse(words[i]);
+                    raw[p] = (byte) (word >>> 24);
+                    raw[p + 1] = (byte) (word >>> 16);
+                    raw[p + 2] = (byte) (word >>> 8);
+                    raw[p + 3] = (byte) word;
+                    p += 4;
+                }
+                filled += 1 + packedLength;
+            }
+            deflate(raw, filled, out);
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(out);
+            }
+            if (pending > 0) {
+                writeChunk(out, IDAT, pending);
+            }
+            writeChunk(out, IEND, 0);
+        }
+
+        private void writeHeader(OutputStream out, int width, int height) throws IOException {
+            putInt(chunk, 8, width);
+            putInt(chunk, 12, height);
+            chunk[16] = 1; // bit depth
+            chunk[17] = 0; // color type: grayscale
+            chunk[18] = 0; // compression: deflate
+            chunk[19] = 0; // filter method
+            chunk[20] = 0; // no interlace
+            writeChunk(out, IHDR, 13);
+        }
+
+        private void deflate(byte[] input, int length, OutputStream out) throws IOException {
+            deflater.setInput(input, 0, length);
+            while (!deflater.needsInput()) {
+                drain(out);
+            }
+        }
+
+        private void drain(OutputStream out) throws IOException {
+            pending += deflater.deflate(chunk, 8 + pending, CHUNK_SIZE - pending);
+            if (pending == CHUNK_SIZE) {
+                writeChunk(out, IDAT, pending);
+                pending = 0;
+            }
+        }
+
+        private void writeChunk(OutputStream out, byte[] type, int length) throws IOException {
+            putInt(chunk, 0, length);
+            System.arraycopy(type, 0, chunk, 4, 4);
+            crc.reset();
+            crc.update(chunk, 4, 4 + length);
+            putInt(chunk, 8 + length, (int) crc.getValue());
+            out.write(chunk, 0, 12 + length);
+        }
+
+        private static void putInt(byte[] buffer, int offset, int value) {
+            buffer[offset] = (byte) (value >>> 24);
+            buffer[offset + 1] = (byte) (value >>> 16);
+            buffer[offset + 2] = (byte) (value >>> 8);
+            buffer[offset + 3] = (byte) value;
+        }
+    }
+
+    /**
+     * Unsynchronized growable byte sink, reused across renders by its owning encoder.
+     */
+    private static final class ReusableSink extends OutputStream {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int count;
+
+        void reset() {
+            count = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.qrcodegenerator.image;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+/**
+ * The encoded QR symbol at one bit per module, without quiet zone. Immutable once built.
+ * <p>
+ * {@link #toBitMatrix(int, int)} lays the grid out exactly as {@code QRCodeWriter} does (4-module quiet zone,
+ * largest integer scale that fits, centered), so the pixels are identical to encoding at that size directly.
+ */
+public final class ModuleGrid {
+
+    public static final int QUIET_ZONE = 4;
+
+    private final BitMatrix modules;
+
+    private ModuleGrid(BitMatrix modules) {
+        this.modules = modules;
+    }
+
+    public static ModuleGrid encode(String text, ErrorCorrectionLevel errorCorrection) throws WriterException {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Found empty contents");
+        }
+        ByteMatrix matrix = Encoder.encode(text, errorCorrection, null).getMatrix();
+        int size = matrix.getWidth();
+        BitMatrix modules = new BitMatrix(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (matrix.get(x, y) == 1) {
+                    modules.set(x, y);
+                }
+            }
+        }
+        return new ModuleGrid(modules);
+    }
+
+    /**
+     * @return modules per side, excluding the quiet zone
+     */
+    public int getSize() {
+        return modules.getWidth();
+    }
+
+    public boolean isDark(int x, int y) {
+        return modules.get(x, y);
+    }
+
+    /**
+     * @param row reused if large enough, see {@link BitMatrix#getRow(int, BitArray)}
+     */
+    public BitArray getRow(int y, BitArray row) {
+        return modules.getRow(y, row);
+    }
+
+    public int byteSize() {
+        return modules.getRowSize() * 4 * modules.getHeight();
+    }
+
+    /**
+     * Scales the grid to pixels: each module becomes a square of the largest integer size that fits the requested
+     * dimensions together with the quiet zone. The output is never smaller than one pixel per module.
+     */
+    public BitMatrix toBitMatrix(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Requested dimensions are too small: " + width + 'x' + height);
+        }
+        int size = modules.getWidth();
+        int qrSize = size + QUIET_ZONE * 2;
+        int outputWidth = Math.max(width, qrSize);
+        int outputHeight = Math.max(height, qrSize);
+        int multiple = Math.min(outputWidth / qrSize, outputHeight / qrSize);
+        int leftPadding = (outputWidth - size * multiple) / 2;
+        int topPadding = (outputHeight - size * multiple) / 2;
+
+        BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+        BitArray pixelRow = new BitArray(outputWidth);
+        BitArray moduleRow = new BitArray(size);
+        for (int y = 0, outputY = topPadding; y < size; y++, outputY += multiple) {
+            moduleRow = modules.getRow(y, moduleRow);
+            pixelRow.clear();
+            int x = moduleRow.getNextSet(0);
+            while (x < size) {
+                int end = moduleRow.getNextUnset(x);
+                pixelRow.setRange(leftPadding + x * multiple, leftPadding + end * multiple);
+                x = end < size ? moduleRow.getNextSet(end) : size;
+            }
+            // one scaled row, copied word-wise to every pixel row of the module
+            for (int i = 0; i < multiple; i++) {
+                output.setRow(outputY + i, pixelRow);
+            }
+        }
+        return output;
+    }
+}
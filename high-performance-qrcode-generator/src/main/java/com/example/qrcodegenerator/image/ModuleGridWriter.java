@@ -0,0 +1,125 @@
+package com.example.qrcodegenerator.image;
+
+import com.google.zxing.common.BitArray;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams a {@link ModuleGrid} as vector or raw module data, row by row, without rasterizing it.
+ */
+public final class ModuleGridWriter {
+
+    private ModuleGridWriter() {
+    }
+
+    /**
+     * Writes an SVG of {@code size} x {@code size} pixels whose user units are modules, quiet zone included. Each
+     * horizontal run of dark modules becomes one {@code h} segment of a single stroked path, with relative moves
+     * between runs, so a row costs a few bytes per run rather than one element per module.
+     */
+    public static void writeSvg(ModuleGrid grid, int size, OutputStream out) throws IOException {
+        int modules = grid.getSize();
+        int extent = modules + 2 * ModuleGrid.QUIET_ZONE;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 8192);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        writer.write(Integer.toString(size));
+        writer.write("\" height=\"");
+        writer.write(Integer.toString(size));
+        writer.write("\" viewBox=\"0 0 ");
+        writer.write(Integer.toString(extent));
+        writer.write(' ');
+        writer.write(Integer.toString(extent));
+        writer.write("\" shape-rendering=\"crispEdges\"><rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>"
+                + "<path stroke=\"#000\" d=\"");
+        BitArray row = new BitArray(modules);
+        for (int y = 0; y < modules; y++) {
+            row = grid.getRow(y, row);
+            int x = row.getNextSet(0);
+            if (x >= modules) {
+                continue;
+            }
+            // stroke width 1 centered on the row: the segment covers the module from y to y + 1
+            writer.write('M');
+            writer.write(Integer.toString(x + ModuleGrid.QUIET_ZONE));
+            writer.write(' ');
+            writer.write(Integer.toString(y + ModuleGrid.QUIET_ZONE));
+            writer.write(".5");
+            int penX = x;
+            while (x < modules) {
+                int end = row.getNextUnset(x);
+                if (x > penX) {
+                    writer.write('m');
+                    writer.write(Integer.toString(x - penX));
+                    writer.write(" 0");
+                }
+                writer.write('h');
+                writer.write(Integer.toString(end - x));
+                penX = end;
+                x = end < modules ? row.getNextSet(end) : modules;
+            }
+        }
+        writer.write("\"/></svg>\n");
+        writer.flush();
+    }
+
+    /**
+     * @return the length of {@link #writeMatrix} output for this grid
+     */
+    public static int matrixLength(ModuleGrid grid) {
+        int modules = grid.getSize();
+        return 1 + modules * rowBytes(modules);
+    }
+
+    /**
+     * Writes one byte with the module count per side (at most 177), then every row packed most significant bit
+     * first and padded to a whole byte; 1 is a dark module. The quiet zone is not included.
+     */
+    public static void writeMatrix(ModuleGrid grid, OutputStream out) throws IOException {
+        int modules = grid.getSize();
+        int rowBytes = rowBytes(modules);
+        byte[] buffer = new byte[1 + modules * rowBytes];
+        buffer[0] = (byte) modules;
+        BitArray row = new BitArray(modules);
+        for (int y = 0; y < modules; y++) {
+            row = grid.getRow(y, row);
+            row.toBytes(0, buffer, 1 + y * rowBytes, rowBytes);
+        }
+        out.write(buffer);
+    }
+
+    /**
+     * Writes {@code {"size":n,"quietZone":4,"rows":["1110...", ...]}}: one string per row, {@code 1} for dark
+     * modules.
+     */
+    public static void writeMatrixJson(ModuleGrid grid, OutputStream out) throws IOException {
+        int modules = grid.getSize();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 8192);
+        writer.write("{\"size\":");
+        writer.write(Integer.toString(modules));
+        writer.write(",\"quietZone\":");
+        writer.write(Integer.toString(ModuleGrid.QUIET_ZONE));
+        writer.write(",\"rows\":[");
+        BitArray row = new BitArray(modules);
+        char[] chars = new char[modules];
+        for (int y = 0; y < modules; y++) {
+            row = grid.getRow(y, row);
+            for (int x = 0; x < modules; x++) {
+                chars[x] = row.get(x) ? '1' : '0';
+            }
+            writer.write(y == 0 ? "\"" : ",\"");
+            writer.write(chars);
+            writer.write('"');
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    private static int rowBytes(int modules) {
+        return (modules + 7) / 8;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.qrcodegenerator.job;
+
+import java.nio.file.Path;
+
+/**
+ * A byte range of a job archive, served to clients straight from the file.
+ */
+public record ArchiveRegion(Path file, String fileName, long offset, long length) {
+}
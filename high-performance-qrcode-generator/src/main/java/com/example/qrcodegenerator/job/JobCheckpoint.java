@@ -0,0 +1,62 @@
+package com.example.qrcodegenerator.job;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.time.Instant;
+
+/**
+ * Durable state of a job, stored as {@code job.json} next to its input and archive.
+ * <p>
+ * The counters, {@code inputOffset} and {@code dataLength} are only advanced after the archive and index have been
+ * forced to disk, so on restart the job truncates both files to the checkpoint and resumes reading the input at
+ * {@code inputOffset}: items rendered after the last checkpoint are rendered again, never duplicated or lost.
+ * {@code finishedAt} is set when the job completes or fails and starts its {@code qrcode.jobs.ttl}.
+ */
+record JobCheckpoint(
+        String id,
+        JobStatus status,
+        Instant createdAt,
+        int size,
+        ErrorCorrectionLevel errorCorrection,
+        long totalItems,
+        long items,
+        long rendered,
+        long failed,
+        long inputOffset,
+        long lineNumber,
+        long dataLength,
+        boolean inputDone,
+        long archiveBytes,
+        String error,
+        Instant finishedAt) {
+
+    static JobCheckpoint queued(String id, int size, ErrorCorrectionLevel errorCorrection, long totalItems) {
+        return new JobCheckpoint(id, JobStatus.QUEUED, Instant.now(), size, errorCorrection, totalItems,
+                0, 0, 0, 0, 0, 0, false, 0, null, null);
+    }
+
+    JobCheckpoint withStatus(JobStatus status) {
+        return new JobCheckpoint(id, status, createdAt, size, errorCorrection, totalItems, items, rendered, failed,
+                inputOffset, lineNumber, dataLength, inputDone, archiveBytes, error, finishedAt);
+    }
+
+    JobCheckpoint withProgress(long items, long rendered, long failed, long inputOffset, long lineNumber,
+                               long dataLength, boolean inputDone) {
+        return new JobCheckpoint(id, status, createdAt, size, errorCorrection, totalItems, items, rendered, failed,
+                inputOffset, lineNumber, dataLength, inputDone, archiveBytes, error, finishedAt);
+    }
+
+    JobCheckpoint completed(long archiveBytes) {
+        return new JobCheckpoint(id, JobStatus.COMPLETED, createdAt, size, errorCorrection, totalItems, items,
+                rendered, failed, inputOffset, lineNumber, dataLength, inputDone, archiveBytes, null, Instant.now());
+    }
+
+    JobCheckpoint failed(String error) {
+        return new JobCheckpoint(id, JobStatus.FAILED, createdAt, size, errorCorrection, totalItems, items, rendered,
+                failed, inputOffset, lineNumber, dataLength, inputDone, archiveBytes, error, Instant.now());
+    }
+
+    boolean isFinished() {
+        return status == JobStatus.COMPLETED || status == JobStatus.FAILED;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.qrcodegenerator.job;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JobProgress(
+        String id,
+        JobStatus status,
+        Instant createdAt,
+        long totalItems,
+        long processedItems,
+        long renderedItems,
+        long failedItems,
+        double progress,
+        Long archiveBytes,
+        String error,
+        Instant expiresAt) {
+}
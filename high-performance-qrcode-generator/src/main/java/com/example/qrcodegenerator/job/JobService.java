@@ -0,0 +1,539 @@
+package com.example.qrcodegenerator.job;
+
+import com.example.qrcodegenerator.service.BatchItem;
+import com.example.qrcodegenerator.service.BatchRenderService;
+import com.example.qrcodegenerator.service.BatchResult;
+import com.example.qrcodegenerator.service.QRCodeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous batch jobs rendered into a local ZIP archive.
+ * <p>
+ * The submitted NDJSON is spooled to the job directory first, so a job survives a restart. A runner thread reads it
+ * in order, renders up to {@code qrcode.jobs.max-in-flight} items ahead as batch renders, and appends each
+ * result to {@code archive.zip} in input order through a {@link FileChannel}; {@code index.bin} records the offset of
+ * every entry. Every {@code qrcode.jobs.checkpoint-items} items both files are forced to disk and {@code job.json}
+ * is replaced atomically (see {@link JobCheckpoint}). Once the input is exhausted the central directory is appended,
+ * which makes the archive a complete ZIP that is downloaded without copying through the heap.
+ * <p>
+ * On startup every job that was queued or running resumes from its last checkpoint. Completed and failed jobs are
+ * deleted with their files {@code qrcode.jobs.ttl} after they finished; expiry is checked every minute.
+ */
+@Service
+public class JobService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String INPUT_FILE = "input.ndjson";
+    private static final String ARCHIVE_FILE = "archive.zip";
+    private static final String INDEX_FILE = "index.bin";
+    /**
+     * Longest input line that is parsed: the longest text with every character written as a six-byte JSON unicode
+     * escape, plus room for the other fields. Longer lines can never render and fail without being buffered whole.
+     */
+    private static final int MAX_LINE_BYTES = QRCodeService.MAX_TEXT_LENGTH * 6 + 4096;
+
+    private final BatchRenderService batchRenderService;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int maxInFlight;
+    private final int checkpointItems;
+    private final Duration ttl;
+    private final ExecutorService runners;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "qr-job-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentHashMap<String, JobHandle> jobs = new ConcurrentHashMap<>();
+    private volatile boolean stopping;
+
+    public JobService(BatchRenderService batchRenderService, ObjectMapper objectMapper,
+                      @Value("${qrcode.jobs.dir:./data/jobs}") Path directory,
+                      @Value("${qrcode.jobs.concurrency:1}") int concurrency,
+                      @Value("${qrcode.jobs.max-in-flight:64}") int maxInFlight,
+                      @Value("${qrcode.jobs.checkpoint-items:1000}") int checkpointItems,
+                      @Value("${qrcode.jobs.ttl:24h}") Duration ttl) {
+        this.batchRenderService = batchRenderService;
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.maxInFlight = maxInFlight;
+        this.checkpointItems = checkpointItems;
+        this.ttl = ttl;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.runners = Executors.newFixedThreadPool(concurrency, task -> {
+            Thread thread = new Thread(task, "qr-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void resume() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> jobDirectories = Files.list(directory)) {
+            for (Path jobDirectory : jobDirectories.sorted().toList()) {
+                Path jobFile = jobDirectory.resolve(JOB_FILE);
+                if (!Files.isRegularFile(jobFile)) {
+                    continue;
+                }
+                JobCheckpoint checkpoint = objectMapper.readValue(jobFile.toFile(), JobCheckpoint.class);
+                JobHandle handle = new JobHandle(checkpoint);
+                if (checkpoint.status() == JobStatus.QUEUED || checkpoint.status() == JobStatus.RUNNING) {
+                    handle.future = runners.submit(() -> run(handle));
+                }
+                jobs.put(checkpoint.id(), handle);
+            }
+        }
+        if (!ttl.isZero()) {
+            sweeper.scheduleWithFixedDelay(this::deleteExpired, 0, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // running jobs keep their last checkpoint and resume on the next start
+        stopping = true;
+        sweeper.shutdownNow();
+        runners.shutdownNow();
+        runners.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public JobProgress submit(InputStream ndjson, int size, ErrorCorrectionLevel errorCorrection) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path jobDirectory = directory.resolve(id);
+        Files.createDirectories(jobDirectory);
+        JobCheckpoint checkpoint;
+        try {
+            long totalItems = spool(ndjson, jobDirectory.resolve(INPUT_FILE));
+            checkpoint = JobCheckpoint.queued(id, size, errorCorrection, totalItems);
+            save(jobDirectory, checkpoint);
+        } catch (IOException | RuntimeException e) {
+            // a partly spooled input without job.json would never be resumed or cleaned up
+            try {
+                FileSystemUtils.deleteRecursively(jobDirectory);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        JobHandle handle = new JobHandle(checkpoint);
+        handle.future = runners.submit(() -> run(handle));
+        jobs.put(id, handle);
+        return handle.progress(ttl);
+    }
+
+    public Optional<JobProgress> get(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(handle -> handle.progress(ttl));
+    }
+
+    /**
+     * Deletes a job and its files. A queued job never starts; a running job stops at the next item and its files are
+     * deleted once the runner has exited.
+     */
+    public boolean delete(String id) throws IOException {
+        JobHandle handle = jobs.remove(id);
+        if (handle == null) {
+            return false;
+        }
+        handle.deleted = true;
+        if (handle.started.compareAndSet(false, true)) {
+            // no runner has started and none will, including for jobs that finished before this process started
+            Future<?> future = handle.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            handle.exited.complete(null);
+        }
+        Path jobDirectory = directory.resolve(id);
+        if (handle.exited.isDone()) {
+            FileSystemUtils.deleteRecursively(jobDirectory);
+        } else {
+            handle.exited.whenComplete((result, error) -> {
+                try {
+                    FileSystemUtils.deleteRecursively(jobDirectory);
+                } catch (IOException ignored) {
+                    // nothing references the directory any more
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Deletes completed and failed jobs whose TTL has passed. Jobs written before {@code finishedAt} existed count from
+     * their creation.
+     */
+    private void deleteExpired() {
+        Instant cutoff = Instant.now().minus(ttl);
+        for (JobHandle handle : jobs.values()) {
+            JobCheckpoint checkpoint = handle.checkpoint;
+            Instant finishedAt = checkpoint.finishedAt() != null ? checkpoint.finishedAt() : checkpoint.createdAt();
+            if (checkpoint.isFinished() && finishedAt.isBefore(cutoff)) {
+                try {
+                    delete(checkpoint.id());
+                } catch (IOException e) {
+                    // the job is already forgotten; files left behind are found and swept again after a restart
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the complete archive, or empty while the job is unknown or not completed
+     */
+    public Optional<ArchiveRegion> archive(String id) {
+        JobHandle handle = jobs.get(id);
+        if (handle == null || handle.checkpoint.status() != JobStatus.COMPLETED) {
+            return Optional.empty();
+        }
+        return Optional.of(new ArchiveRegion(directory.resolve(id).resolve(ARCHIVE_FILE), id + ".zip", 0,
+                handle.checkpoint.archiveBytes()));
+    }
+
+    /**
+     * Looks up one entry through the index; available as soon as the item has been written, before the job completes.
+     *
+     * @param item zero-based position in the archive, which follows input order
+     */
+    public Optional<ArchiveRegion> item(String id, long item) throws IOException {
+        JobHandle handle = jobs.get(id);
+        if (handle == null || item < 0 || item >= handle.items) {
+            return Optional.empty();
+        }
+        Path jobDirectory = directory.resolve(id);
+        try (FileChannel index = FileChannel.open(jobDirectory.resolve(INDEX_FILE), StandardOpenOption.READ);
+             FileChannel archive = FileChannel.open(jobDirectory.resolve(ARCHIVE_FILE), StandardOpenOption.READ)) {
+            ByteBuffer offset = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            while (offset.hasRemaining()) {
+                if (index.read(offset, item * 8 + offset.position()) < 0) {
+                    return Optional.empty();
+                }
+            }
+            ZipArchive.Entry entry = ZipArchive.readEntry(archive, offset.getLong(0));
+            return Optional.of(new ArchiveRegion(jobDirectory.resolve(ARCHIVE_FILE), entry.name(),
+                    entry.dataOffset(), entry.size()));
+        }
+    }
+
+    private void run(JobHandle handle) {
+        if (!handle.started.compareAndSet(false, true)) {
+            // deleted while queued
+            return;
+        }
+        Path jobDirectory = directory.resolve(handle.checkpoint.id());
+        try {
+            JobCheckpoint checkpoint = handle.checkpoint.withStatus(JobStatus.RUNNING);
+            save(jobDirectory, checkpoint);
+            handle.checkpoint = checkpoint;
+            try (FileChannel archive = FileChannel.open(jobDirectory.resolve(ARCHIVE_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileChannel index = FileChannel.open(jobDirectory.resolve(INDEX_FILE),
+                         StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // drop whatever was written after the last checkpoint, including a partial central directory
+                archive.truncate(checkpoint.dataLength()).position(checkpoint.dataLength());
+                index.truncate(checkpoint.items() * 8).position(checkpoint.items() * 8);
+                if (!checkpoint.inputDone()) {
+                    checkpoint = render(handle, checkpoint, jobDirectory, archive, index);
+                    if (checkpoint == null) {
+                        return;
+                    }
+                }
+                ZipArchive.finish(archive, index, checkpoint.items());
+                archive.force(true);
+                checkpoint = checkpoint.completed(archive.size());
+            }
+            save(jobDirectory, checkpoint);
+            handle.checkpoint = checkpoint;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!handle.deleted && !stopping) {
+                JobCheckpoint failed = handle.checkpoint.failed(e.getMessage() != null ? e.getMessage() : e.toString());
+                handle.checkpoint = failed;
+                try {
+                    save(jobDirectory, failed);
+                } catch (IOException ignored) {
+                    // the in-memory status still reports the failure
+                }
+            }
+        } finally {
+            handle.exited.complete(null);
+        }
+    }
+
+    /**
+     * @return the checkpoint after the last item, or null when the job was deleted or the service is stopping
+     */
+    private JobCheckpoint render(JobHandle handle, JobCheckpoint checkpoint, Path jobDirectory, FileChannel archive,
+                                 FileChannel index) throws IOException, InterruptedException, ExecutionException {
+        LocalDateTime modified = LocalDateTime.ofInstant(checkpoint.createdAt(), ZoneId.systemDefault());
+        ByteBuffer offset = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        Deque<Pending> window = new ArrayDeque<>();
+        long items = checkpoint.items();
+        long rendered = checkpoint.rendered();
+        long failed = checkpoint.failed();
+        long lineNumber = checkpoint.lineNumber();
+        int sinceCheckpoint = 0;
+        try (FileChannel input = FileChannel.open(jobDirectory.resolve(INPUT_FILE), StandardOpenOption.READ)) {
+            input.position(checkpoint.inputOffset());
+            LineReader reader = new LineReader(Channels.newInputStream(input), checkpoint.inputOffset(),
+                    MAX_LINE_BYTES);
+            while (true) {
+                if (handle.deleted || stopping) {
+                    return null;
+                }
+                String line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                    if (!reader.blank()) {
+                        CompletableFuture<BatchResult> result = reader.oversized()
+                                ? CompletableFuture.completedFuture(BatchResult.failed(BatchItem.entryName(lineNumber,
+                                        null), "Invalid item: line is longer than " + MAX_LINE_BYTES + " bytes"))
+                                : submit(line, lineNumber, checkpoint);
+                        window.add(new Pending(result, reader.position(), lineNumber));
+                    }
+                }
+                while (!window.isEmpty() && (line == null || window.size() >= maxInFlight)) {
+                    Pending pending = window.poll();
+                    BatchResult result = pending.result().get();
+                    byte[] data = result.isFailed() ? result.error().getBytes(StandardCharsets.UTF_8) : result.image();
+                    offset.clear();
+                    offset.putLong(ZipArchive.writeEntry(archive, result.fileName(), data, modified)).flip();
+                    while (offset.hasRemaining()) {
+                        index.write(offset);
+                    }
+                    items++;
+                    if (result.isFailed()) {
+                        failed++;
+                    } else {
+                        rendered++;
+                    }
+                    handle.items = items;
+                    handle.rendered = rendered;
+                    handle.failed = failed;
+                    if (++sinceCheckpoint >= checkpointItems) {
+                        checkpoint = checkpoint(jobDirectory, archive, index, checkpoint.withProgress(items, rendered,
+                                failed, pending.inputOffset(), pending.lineNumber(), archive.position(), false));
+                        handle.checkpoint = checkpoint;
+                        sinceCheckpoint = 0;
+                    }
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+            checkpoint = checkpoint(jobDirectory, archive, index, checkpoint.withProgress(items, rendered, failed,
+                    reader.position(), lineNumber, archive.position(), true));
+            handle.checkpoint = checkpoint;
+            return checkpoint;
+        }
+    }
+
+    private CompletableFuture<BatchResult> submit(String line, long lineNumber, JobCheckpoint checkpoint) {
+        try {
+            return batchRenderService.renderAsync(batchRenderService.parse(lineNumber, line, checkpoint.size(),
+                    checkpoint.errorCorrection()));
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    BatchResult.failed(BatchItem.entryName(lineNumber, null), "Invalid item: " + e.getMessage()));
+        }
+    }
+
+    private JobCheckpoint checkpoint(Path jobDirectory, FileChannel archive, FileChannel index,
+                                     JobCheckpoint checkpoint) throws IOException {
+        archive.force(false);
+        index.force(false);
+        save(jobDirectory, checkpoint);
+        return checkpoint;
+    }
+
+    private void save(Path jobDirectory, JobCheckpoint checkpoint) throws IOException {
+        Path temporary = jobDirectory.resolve(JOB_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer json = ByteBuffer.wrap(objectMapper.writeValueAsBytes(checkpoint));
+            while (json.hasRemaining()) {
+                channel.write(json);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, jobDirectory.resolve(JOB_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Copies the request body to disk and counts its non-blank lines, with the same test the runner applies through
+     * {@link LineReader#blank()}, so {@code totalItems} matches the number of items written.
+     */
+    private static long spool(InputStream ndjson, Path input) throws IOException {
+        long lines = 0;
+        boolean content = false;
+        byte[] buffer = new byte[64 * 1024];
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (int read = ndjson.read(buffer); read >= 0; read = ndjson.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        lines += content ? 1 : 0;
+                        content = false;
+                    } else if (!isBlank(b)) {
+                        content = true;
+                    }
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            channel.force(true);
+        }
+        return lines + (content ? 1 : 0);
+    }
+
+    /**
+     * JSON whitespace other than the line separator; a line made only of these bytes is skipped.
+     */
+    private static boolean isBlank(int b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private record Pending(CompletableFuture<BatchResult> result, long inputOffset, long lineNumber) {
+    }
+
+    private static final class JobHandle {
+        volatile JobCheckpoint checkpoint;
+        volatile long items;
+        volatile long rendered;
+        volatile long failed;
+        volatile boolean deleted;
+        volatile Future<?> future;
+        // claimed by the runner when it starts, or by delete() while the job is still queued
+        final AtomicBoolean started = new AtomicBoolean();
+        // completed once the runner has exited or can no longer start; delete() removes the files only after this
+        final CompletableFuture<Void> exited = new CompletableFuture<>();
+
+        JobHandle(JobCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+            this.items = checkpoint.items();
+            this.rendered = checkpoint.rendered();
+            this.failed = checkpoint.failed();
+        }
+
+        JobProgress progress(Duration ttl) {
+            JobCheckpoint current = checkpoint;
+            long total = current.totalItems();
+            boolean completed = current.status() == JobStatus.COMPLETED;
+            Instant expiresAt = current.finishedAt() != null && !ttl.isZero() ? current.finishedAt().plus(ttl) : null;
+            return new JobProgress(current.id(), current.status(), current.createdAt(), total, items, rendered, failed,
+                    total == 0 ? (completed ? 1.0 : 0.0) : (double) items / total,
+                    completed ? current.archiveBytes() : null, current.error(), expiresAt);
+        }
+    }
+
+    /**
+     * Reads UTF-8 lines while tracking the byte offset after each one, so reading can resume exactly there. At most
+     * {@code maxLength} bytes of a line are kept; the rest is skipped up to the next newline and the line is reported
+     * as {@link #oversized()}.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final int maxLength;
+        private long position;
+        private byte[] line = new byte[256];
+        private boolean blank;
+        private boolean oversized;
+
+        LineReader(InputStream in, long position, int maxLength) {
+            this.in = new BufferedInputStream(in, 64 * 1024);
+            this.position = position;
+            this.maxLength = maxLength;
+        }
+
+        String readLine() throws IOException {
+            int length = 0;
+            blank = true;
+            oversized = false;
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            while (b >= 0) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+                blank &= isBlank(b);
+                if (length == maxLength) {
+                    oversized = true;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, Math.min(length * 2, maxLength));
+                    }
+                    line[length++] = (byte) b;
+                }
+                b = in.read();
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        long position() {
+            return position;
+        }
+
+        /**
+         * @return whether the last line held only whitespace and is skipped
+         */
+        boolean blank() {
+            return blank;
+        }
+
+        /**
+         * @return whether the last line was longer than {@code maxLength}; {@link #readLine()} returned its prefix
+         */
+        boolean oversized() {
+            return oversized;
+        }
+    }
+}
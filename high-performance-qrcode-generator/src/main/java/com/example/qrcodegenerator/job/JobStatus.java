@@ -0,0 +1,8 @@
+package com.example.qrcodegenerator.job;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
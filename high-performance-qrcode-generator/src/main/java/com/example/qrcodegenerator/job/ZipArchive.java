@@ -0,0 +1,193 @@
+package com.example.qrcodegenerator.job;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.CRC32;
+
+/**
+ * Minimal ZIP writer over a {@link FileChannel}: entries are appended as STORED local entries, and the central
+ * directory is built at the end from an index of local header offsets. ZIP64 records are written when the entry
+ * count or offsets exceed the classic format's limits.
+ */
+final class ZipArchive {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int UTF8_NAMES = 0x0800;
+
+    private ZipArchive() {
+    }
+
+    /**
+     * Appends an entry at the channel's position.
+     *
+     * @return the offset of the entry's local header, to be recorded in the index
+     */
+    static long writeEntry(FileChannel channel, String name, byte[] data, LocalDateTime modified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER)
+                .putShort((short) 20)
+                .putShort((short) UTF8_NAMES)
+                .putShort((short) 0) // STORED
+                .putShort(dosTime(modified))
+                .putShort(dosDate(modified))
+                .putInt((int) crc.getValue())
+                .putInt(data.length)
+                .putInt(data.length)
+                .putShort((short) nameBytes.length)
+                .putShort((short) 0)
+                .put(nameBytes)
+                .flip();
+        long offset = channel.position();
+        writeFully(channel, new ByteBuffer[]{header, ByteBuffer.wrap(data)});
+        return offset;
+    }
+
+    /**
+     * Location of an entry's data, read back from its local header.
+     */
+    record Entry(String name, long dataOffset, int size) {
+    }
+
+    static Entry readEntry(FileChannel channel, long headerOffset) throws IOException {
+        ByteBuffer header = readFully(channel, headerOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new IOException("No local header at offset " + headerOffset);
+        }
+        int size = header.getInt(22);
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        ByteBuffer name = readFully(channel, headerOffset + LOCAL_HEADER_SIZE, nameLength);
+        return new Entry(StandardCharsets.UTF_8.decode(name).toString(),
+                headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength, size);
+    }
+
+    /**
+     * Appends the central directory for the entries whose local header offsets are listed in {@code index}
+     * (little-endian longs), followed by the end records, at the channel's position.
+     */
+    static void finish(FileChannel channel, FileChannel index, long entryCount) throws IOException {
+        long directoryOffset = channel.position();
+        ByteBuffer out = ByteBuffer.allocate(256 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer offsets = ByteBuffer.allocate(8 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        for (long i = 0; i < entryCount; i++) {
+            if (!offsets.hasRemaining() || i == 0) {
+                offsets.clear();
+                offsets.limit((int) Math.min(offsets.capacity(), (entryCount - i) * 8));
+                readFully(index, i * 8, offsets);
+            }
+            long headerOffset = offsets.getLong();
+            ByteBuffer local = readFully(channel, headerOffset, LOCAL_HEADER_SIZE);
+            int nameLength = Short.toUnsignedInt(local.getShort(26));
+            ByteBuffer name = readFully(channel, headerOffset + LOCAL_HEADER_SIZE, nameLength);
+            boolean zip64Offset = headerOffset >= 0xFFFFFFFFL;
+            if (out.remaining() < 46 + nameLength + 12) {
+                drain(channel, out);
+            }
+            out.putInt(CENTRAL_HEADER)
+                    .putShort((short) 45)
+                    .putShort((short) (zip64Offset ? 45 : 20))
+                    .putShort((short) UTF8_NAMES)
+                    .putShort((short) 0)
+                    .putShort(local.getShort(10)) // time
+                    .putShort(local.getShort(12)) // date
+                    .putInt(local.getInt(14)) // crc
+                    .putInt(local.getInt(18)) // compressed size
+                    .putInt(local.getInt(22)) // size
+                    .putShort((short) nameLength)
+                    .putShort((short) (zip64Offset ? 12 : 0))
+                    .putShort((short) 0) // comment
+                    .putShort((short) 0) // disk
+                    .putShort((short) 0) // internal attributes
+                    .putInt(0) // external attributes
+                    .putInt(zip64Offset ? -1 : (int) headerOffset)
+                    .put(name);
+            if (zip64Offset) {
+                out.putShort((short) 1).putShort((short) 8).putLong(headerOffset);
+            }
+        }
+        drain(channel, out);
+        long directorySize = channel.position() - directoryOffset;
+
+        boolean zip64 = entryCount >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL || directorySize >= 0xFFFFFFFFL;
+        if (zip64) {
+            long zip64EndOffset = channel.position();
+            out.putInt(ZIP64_END)
+                    .putLong(44)
+                    .putShort((short) 45)
+                    .putShort((short) 45)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entryCount)
+                    .putLong(entryCount)
+                    .putLong(directorySize)
+                    .putLong(directoryOffset);
+            out.putInt(ZIP64_LOCATOR)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+        }
+        out.putInt(END)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) (zip64 ? 0xFFFF : entryCount))
+                .putShort((short) (zip64 ? 0xFFFF : entryCount))
+                .putInt(zip64 ? -1 : (int) directorySize)
+                .putInt(zip64 ? -1 : (int) directoryOffset)
+                .putShort((short) 0);
+        drain(channel, out);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers) throws IOException {
+        // checking only the last buffer would skip the header of an entry with no data
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, position, buffer);
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new EOFException("Unexpected end of archive at offset " + position);
+            }
+        }
+        buffer.flip();
+    }
+
+    private static short dosTime(LocalDateTime time) {
+        return (short) (time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1);
+    }
+
+    private static short dosDate(LocalDateTime time) {
+        return (short) ((time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth());
+    }
+}
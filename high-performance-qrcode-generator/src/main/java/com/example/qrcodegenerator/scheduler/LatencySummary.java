@@ -0,0 +1,10 @@
+package com.example.qrcodegenerator.scheduler;
+
+public record LatencySummary(
+        long count,
+        double meanMillis,
+        double p50Millis,
+        double p99Millis,
+        double p999Millis,
+        double maxMillis) {
+}
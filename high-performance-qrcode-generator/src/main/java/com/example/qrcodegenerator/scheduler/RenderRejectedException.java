@@ -0,0 +1,20 @@
+package com.example.qrcodegenerator.scheduler;
+
+/**
+ * Thrown when a render cannot start within the queueing deadline; the request should be retried later.
+ */
+public class RenderRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public RenderRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
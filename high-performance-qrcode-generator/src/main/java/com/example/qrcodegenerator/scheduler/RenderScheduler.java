@@ -0,0 +1,285 @@
+package com.example.qrcodegenerator.scheduler;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs CPU-bound renders on a fixed pool of platform threads sized to the CPU count.
+ * <p>
+ * Requests are served on virtual threads, which would otherwise all render at once and share the carrier threads,
+ * so that every request in a spike finishes late. Here the calling (virtual) thread hands the render off and parks;
+ * at most {@code threads} renders run at a time and the rest wait in a bounded queue.
+ * <p>
+ * A render that cannot start within {@code qrcode.render.max-queue-time-ms} is rejected with
+ * {@link RenderRejectedException}: immediately when the queue is full or the expected wait (queue length times recent
+ * render time) already exceeds the deadline, otherwise when the deadline passes while it is still queued. Queue time
+ * and render time are recorded separately, see {@link #stats()}.
+ * <p>
+ * Batch and job items run on the same threads through {@link #submitBatch}, so that interactive and batch renders
+ * share one CPU-sized pool instead of each sizing its own pool to the CPU count. Batch renders wait in a queue of
+ * their own (bounded by each batch's read-ahead) and are only handed to the pool while no interactive render is
+ * queued, at most {@code qrcode.batch.parallelism} at a time; an interactive render therefore waits for at most the
+ * batch renders already handed to the pool, never for a batch backlog.
+ */
+@Component
+public class RenderScheduler {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int EXPIRED = 2;
+    /**
+     * Weight of the latest render in the moving average used for admission and Retry-After, so that the estimate
+     * follows a change in render cost (larger images, a slower host) within a few dozen renders.
+     */
+    private static final double RECENT_WEIGHT = 0.1;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int queueCapacity;
+    private final long maxQueueTimeNanos;
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram renderTime = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    // exponentially weighted moving average of render time in nanoseconds, as double bits
+    private final AtomicLong recentRenderNanos = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final int batchThreads;
+    private final ConcurrentLinkedDeque<BatchTask<?>> batchQueue = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger batchRunning = new AtomicInteger();
+
+    public RenderScheduler(@Value("${qrcode.render.threads:0}") int threads,
+                           @Value("${qrcode.render.queue-capacity:0}") int queueCapacity,
+                           @Value("${qrcode.render.max-queue-time-ms:500}") long maxQueueTimeMillis,
+                           @Value("${qrcode.batch.parallelism:0}") int batchThreads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchThreads = batchThreads > 0 ? Math.min(batchThreads, this.threads) : this.threads;
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : 16 * this.threads;
+        this.maxQueueTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueTimeMillis);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), task -> {
+                    Thread thread = new Thread(task, "qr-render-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.prestartAllCoreThreads();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        for (BatchTask<?> task = batchQueue.poll(); task != null; task = batchQueue.poll()) {
+            task.result.completeExceptionally(new RejectedExecutionException("Render scheduler is shut down"));
+        }
+    }
+
+    /**
+     * Runs {@code render} on the render pool and waits for its result. Exceptions thrown by the render are rethrown
+     * as is.
+     *
+     * @throws RenderRejectedException if the render could not start within the queueing deadline
+     */
+    public <T> T execute(Callable<T> render) throws Exception {
+        int queued = executor.getQueue().size();
+        if (queued > 0 && queued * recentRenderNanos() / threads > maxQueueTimeNanos) {
+            throw reject("Render queue wait exceeds deadline");
+        }
+        Task<T> task = new Task<>(render);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            throw reject("Render queue is full");
+        }
+        try {
+            return task.result.get(maxQueueTimeNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (task.state.compareAndSet(QUEUED, EXPIRED)) {
+                executor.remove(task);
+                expired.increment();
+                startBatchRenders();
+                throw reject("Render did not start within deadline");
+            }
+            // already rendering: the work is being done, so wait for it
+            return await(task);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            task.state.compareAndSet(QUEUED, EXPIRED);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a batch render. It runs on the render pool once no interactive render is waiting and fewer than
+     * {@code qrcode.batch.parallelism} batch renders are running.
+     *
+     * @return the render's result; completed exceptionally with what the render threw, or with
+     * {@link RejectedExecutionException} if the scheduler shuts down first
+     */
+    public <T> CompletableFuture<T> submitBatch(Callable<T> render) {
+        BatchTask<T> task = new BatchTask<>(render);
+        batchQueue.add(task);
+        startBatchRenders();
+        return task.result;
+    }
+
+    /**
+     * @return the most batch renders that run at once
+     */
+    public int batchThreads() {
+        return batchThreads;
+    }
+
+    /**
+     * Hands queued batch renders to the pool while it has no interactive render waiting. Called whenever a render is
+     * submitted or finishes.
+     */
+    private void startBatchRenders() {
+        while (!batchQueue.isEmpty() && executor.getQueue().isEmpty() && !executor.isShutdown()) {
+            int running = batchRunning.get();
+            if (running >= batchThreads) {
+                return;
+            }
+            if (!batchRunning.compareAndSet(running, running + 1)) {
+                continue;
+            }
+            BatchTask<?> task = batchQueue.poll();
+            if (task == null) {
+                // another thread took it; the loop re-checks for tasks added since
+                batchRunning.decrementAndGet();
+                continue;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                batchRunning.decrementAndGet();
+                batchQueue.addFirst(task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return mean render time since startup
+     */
+    public double meanRenderNanos() {
+        return renderTime.meanNanos();
+    }
+
+    /**
+     * @return moving average of recent render times, 0 before the first render
+     */
+    double recentRenderNanos() {
+        return Double.longBitsToDouble(recentRenderNanos.get());
+    }
+
+    private void recordRecent(long nanos) {
+        long current;
+        long next;
+        do {
+            current = recentRenderNanos.get();
+            double average = Double.longBitsToDouble(current);
+            double updated = average == 0 ? nanos : average + RECENT_WEIGHT * (nanos - average);
+            next = Double.doubleToRawLongBits(updated);
+        } while (!recentRenderNanos.compareAndSet(current, next));
+    }
+
+    public RenderSchedulerStats stats() {
+        return new RenderSchedulerStats(threads, queueCapacity, TimeUnit.NANOSECONDS.toMillis(maxQueueTimeNanos),
+                executor.getQueue().size(), executor.getActiveCount(), executor.getCompletedTaskCount(),
+                rejected.sum(), expired.sum(), queueTime.summary(), renderTime.summary(), batchThreads,
+                batchQueue.size(), batchRunning.get());
+    }
+
+    private RenderRejectedException reject(String message) {
+        rejected.increment();
+        // time for the pool to work through the current queue, rounded up to whole seconds
+        double drainNanos = (executor.getQueue().size() + 1) * recentRenderNanos() / threads;
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(drainNanos / 1_000_000_000.0));
+        return new RenderRejectedException(message, retryAfterSeconds);
+    }
+
+    private static <T> T await(Task<T> task) throws Exception {
+        try {
+            return task.result.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        if (e.getCause() instanceof Exception cause) {
+            return cause;
+        }
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        return e;
+    }
+
+    private final class Task<T> implements Runnable {
+        final Callable<T> render;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final long enqueuedNanos = System.nanoTime();
+
+        Task(Callable<T> render) {
+            this.render = render;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                startBatchRenders();
+                return;
+            }
+            long started = System.nanoTime();
+            queueTime.record(started - enqueuedNanos);
+            try {
+                result.complete(render.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                long elapsed = System.nanoTime() - started;
+                renderTime.record(elapsed);
+                recordRecent(elapsed);
+                startBatchRenders();
+            }
+        }
+    }
+
+    private final class BatchTask<T> implements Runnable {
+        final Callable<T> render;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        BatchTask(Callable<T> render) {
+            this.render = render;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(render.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                batchRunning.decrementAndGet();
+                startBatchRenders();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.qrcodegenerator.scheduler;
+
+public record RenderSchedulerStats(
+        int threads,
+        int queueCapacity,
+        long maxQueueTimeMillis,
+        int queued,
+        int active,
+        long completedCount,
+        long rejectedCount,
+        long expiredCount,
+        LatencySummary queueTime,
+        LatencySummary renderTime,
+        int batchThreads,
+        int batchQueued,
+        int batchRunning) {
+}
@@ -0,0 +1,47 @@
+package com.example.qrcodegenerator.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.io.IOException;
+
+/**
+ * One line of a batch: a JSON string (the text) or an object with {@code text} and optional {@code size},
+ * {@code ecc} and {@code name}.
+ */
+public record BatchItem(String entryName, String text, int size, ErrorCorrectionLevel errorCorrection) {
+
+    public static BatchItem parse(ObjectMapper objectMapper, long lineNumber, String line, int defaultSize,
+                                  ErrorCorrectionLevel defaultErrorCorrection) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        if (node.isTextual()) {
+            return new BatchItem(entryName(lineNumber, null), node.asText(), defaultSize, defaultErrorCorrection);
+        }
+        if (!node.isObject() || !node.path("text").isTextual()) {
+            throw new IllegalArgumentException("expected a string or an object with a \"text\" field");
+        }
+        JsonNode name = node.path("name");
+        JsonNode size = node.path("size");
+        JsonNode ecc = node.path("ecc");
+        if (!size.isMissingNode() && !size.canConvertToInt()) {
+            throw new IllegalArgumentException("\"size\" must be an integer");
+        }
+        return new BatchItem(entryName(lineNumber, name.isTextual() ? name.asText() : null),
+                node.path("text").asText(),
+                size.asInt(defaultSize),
+                ecc.isTextual() ? ErrorCorrectionLevel.valueOf(ecc.asText()) : defaultErrorCorrection);
+    }
+
+    /**
+     * Entries are prefixed with the input line number, which keeps names unique without remembering earlier ones.
+     */
+    public static String entryName(long lineNumber, String name) {
+        String prefix = String.format("%06d", lineNumber);
+        if (name == null || name.isBlank()) {
+            return prefix;
+        }
+        String safe = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        return prefix + "-" + (safe.length() > 100 ? safe.substring(0, 100) : safe);
+    }
+}
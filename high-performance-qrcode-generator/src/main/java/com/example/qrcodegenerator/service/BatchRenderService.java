@@ -0,0 +1,185 @@
+package com.example.qrcodegenerator.service;
+
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders an NDJSON stream of QR codes into a ZIP stream.
+ * <p>
+ * Each input line is a {@link BatchItem}. Items are rendered in parallel on the render threads, behind interactive
+ * renders (see {@link RenderScheduler#submitBatch}), and each image is written as soon as it is done, so entries
+ * appear in completion order. At most {@code qrcode.batch.max-in-flight} items per batch are read ahead, which bounds
+ * memory regardless of batch length.
+ * An item that fails, including one whose size is over {@code qrcode.max-size}, produces a {@code .error.txt} entry in
+ * its place; a final {@code summary.json} holds the counts.
+ * <p>
+ * Batch renders bypass both the image cache and the module grid cache: catalog payloads are mostly one-off and would
+ * only churn them.
+ */
+@Service
+public class BatchRenderService {
+
+    private final QRCodeService qrCodeService;
+    private final RenderScheduler renderScheduler;
+    private final ObjectMapper objectMapper;
+    private final int maxInFlight;
+
+    public BatchRenderService(QRCodeService qrCodeService, RenderScheduler renderScheduler, ObjectMapper objectMapper,
+                              @Value("${qrcode.batch.max-in-flight:0}") int maxInFlight) {
+        this.qrCodeService = qrCodeService;
+        this.renderScheduler = renderScheduler;
+        this.objectMapper = objectMapper;
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : 4 * renderScheduler.batchThreads();
+    }
+
+    public BatchSummary render(InputStream ndjson, OutputStream out, int defaultSize,
+                               ErrorCorrectionLevel defaultErrorCorrection) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+        ZipOutputStream zip = new ZipOutputStream(out);
+        BlockingQueue<CompletableFuture<BatchResult>> completed = new LinkedBlockingQueue<>();
+        Counts counts = new Counts();
+        int inFlight = 0;
+        long lineNumber = 0;
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                counts.items++;
+                BatchItem item;
+                try {
+                    item = parse(lineNumber, line, defaultSize, defaultErrorCorrection);
+                } catch (IOException | IllegalArgumentException e) {
+                    String entryName = BatchItem.entryName(lineNumber, null);
+                    write(zip, BatchResult.failed(entryName, "Invalid item: " + e.getMessage()), counts);
+                    continue;
+                }
+                while (inFlight >= maxInFlight) {
+                    write(zip, result(completed.take()), counts);
+                    inFlight--;
+                }
+                inFlight -= drain(zip, completed, counts);
+                CompletableFuture<BatchResult> rendered = renderAsync(item);
+                rendered.whenComplete((result, error) -> completed.add(rendered));
+                inFlight++;
+            }
+            while (inFlight > 0) {
+                inFlight -= drain(zip, completed, counts);
+                if (inFlight > 0) {
+                    zip.flush();
+                    write(zip, result(completed.take()), counts);
+                    inFlight--;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        }
+        BatchSummary summary = new BatchSummary(counts.items, counts.rendered, counts.failed);
+        zip.putNextEntry(new ZipEntry("summary.json"));
+        zip.write(objectMapper.writeValueAsBytes(summary));
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+        return summary;
+    }
+
+    /**
+     * Parses one input line and checks its size against {@code qrcode.max-size}.
+     *
+     * @throws IllegalArgumentException if the line is not a valid item or its size is out of range
+     */
+    public BatchItem parse(long lineNumber, String line, int defaultSize, ErrorCorrectionLevel defaultErrorCorrection)
+            throws IOException {
+        BatchItem item = BatchItem.parse(objectMapper, lineNumber, line, defaultSize, defaultErrorCorrection);
+        qrCodeService.validateSize(item.size());
+        return item;
+    }
+
+    /**
+     * Renders an item on the render threads as a batch render. Exceptions become failed results; only an
+     * {@link Error}, or the scheduler shutting down, completes the future exceptionally.
+     */
+    public CompletableFuture<BatchResult> renderAsync(BatchItem item) {
+        return renderScheduler.submitBatch(() -> render(item));
+    }
+
+    private BatchResult render(BatchItem item) {
+        try {
+            byte[] image = qrCodeService.renderUncached(item.text(), item.size(), item.errorCorrection());
+            return new BatchResult(item.entryName(), image, null);
+        } catch (Exception e) {
+            return BatchResult.failed(item.entryName(), e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private int drain(ZipOutputStream zip, BlockingQueue<CompletableFuture<BatchResult>> completed, Counts counts)
+            throws IOException {
+        int written = 0;
+        for (CompletableFuture<BatchResult> rendered = completed.poll(); rendered != null; rendered = completed.poll()) {
+            write(zip, result(rendered), counts);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * An {@link Error} from a render aborts the whole batch rather than becoming an entry.
+     */
+    private static BatchResult result(CompletableFuture<BatchResult> rendered) {
+        try {
+            return rendered.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private static void write(ZipOutputStream zip, BatchResult result, Counts counts) throws IOException {
+        if (result.isFailed()) {
+            counts.failed++;
+            zip.putNextEntry(new ZipEntry(result.fileName()));
+            zip.write(result.error().getBytes(StandardCharsets.UTF_8));
+        } else {
+            counts.rendered++;
+            // PNG data is already deflated; store it as is
+            ZipEntry entry = new ZipEntry(result.fileName());
+            CRC32 crc = new CRC32();
+            crc.update(result.image());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(result.image().length);
+            entry.setCompressedSize(result.image().length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(result.image());
+        }
+        zip.closeEntry();
+    }
+
+    private static final class Counts {
+        long items;
+        long rendered;
+        long failed;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.qrcodegenerator.service;
+
+/**
+ * A rendered batch item: the PNG image, or the reason it failed.
+ */
+public record BatchResult(String entryName, byte[] image, String error) {
+
+    public static BatchResult failed(String entryName, String error) {
+        return new BatchResult(entryName, null, error);
+    }
+
+    public boolean isFailed() {
+        return image == null;
+    }
+
+    /**
+     * @return the archive file name: {@code .png} for images, {@code .error.txt} for failures
+     */
+    public String fileName() {
+        return entryName + (isFailed() ? ".error.txt" : ".png");
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.qrcodegenerator.service;
+
+public record BatchSummary(long items, long rendered, long failed) {
+}
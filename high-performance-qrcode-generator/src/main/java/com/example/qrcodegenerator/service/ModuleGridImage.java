@@ -0,0 +1,9 @@
+package com.example.qrcodegenerator.service;
+
+import com.example.qrcodegenerator.image.ModuleGrid;
+
+/**
+ * A QR code to be streamed in a non-raster {@link QRCodeFormat} straight from its module grid.
+ */
+public record ModuleGridImage(ModuleGrid grid, int size, QRCodeFormat format) {
+}
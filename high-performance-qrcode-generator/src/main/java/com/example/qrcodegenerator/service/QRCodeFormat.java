@@ -0,0 +1,43 @@
+package com.example.qrcodegenerator.service;
+
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public enum QRCodeFormat {
+
+    PNG(MediaType.IMAGE_PNG),
+    SVG(MediaType.valueOf("image/svg+xml")),
+    /** One byte holding the module count per side, then each row packed most significant bit first. */
+    MATRIX(MediaType.APPLICATION_OCTET_STREAM),
+    MATRIX_JSON(MediaType.APPLICATION_JSON);
+
+    private final MediaType mediaType;
+
+    QRCodeFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Picks the format for an {@code Accept} header: the accepted type with the highest quality that covers one of
+     * the formats wins, and wildcards resolve to the first format in declaration order, so {@code *}{@code /*} and
+     * {@code image/*} stay PNG.
+     *
+     * @return the format, or PNG when nothing matches (the request mapping rejects unacceptable requests first)
+     */
+    public static QRCodeFormat negotiate(List<MediaType> accepted) {
+        return accepted.stream()
+                .filter(mediaType -> mediaType.getQualityValue() > 0)
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .flatMap(mediaType -> Arrays.stream(values())
+                        .filter(format -> mediaType.includes(format.mediaType)))
+                .findFirst()
+                .orElse(PNG);
+    }
+}
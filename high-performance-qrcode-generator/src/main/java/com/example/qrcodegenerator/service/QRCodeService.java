@@ -1,22 +1,142 @@
 package com.example.qrcodegenerator.service;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
+import com.example.qrcodegenerator.cache.CachedImage;
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.cache.RenderKey;
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.example.qrcodegenerator.image.ModuleGrid;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 @Service
 public class QRCodeService {
 
-    public byte[] generateQRCodeImage(String text, int width, int height) throws Exception {
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
+    /**
+     * Part of every ETag. Bump it whenever a change to rendering alters the bytes produced for the same parameters,
+     * so that clients and CDNs holding the old images fetch them again.
+     */
+    private static final int OUTPUT_VERSION = 1;
 
-        ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
-        return pngOutputStream.toByteArray();
+    /**
+     * The most characters any QR code holds (version 40, numeric mode, ECC level L); longer text can never encode.
+     */
+    public static final int MAX_TEXT_LENGTH = 7089;
+
+    private final RenderCache renderCache;
+    private final ModuleGridCache moduleGridCache;
+    private final BitMatrixPngWriter pngWriter;
+    private final RenderScheduler renderScheduler;
+    private final int maxSize;
+
+    public QRCodeService(RenderCache renderCache, ModuleGridCache moduleGridCache, BitMatrixPngWriter pngWriter,
+                         RenderScheduler renderScheduler, @Value("${qrcode.max-size:4096}") int maxSize) {
+        this.renderCache = renderCache;
+        this.moduleGridCache = moduleGridCache;
+        this.pngWriter = pngWriter;
+        this.renderScheduler = renderScheduler;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Rejects sizes outside {@code 0..qrcode.max-size}, so that no request can make the renderer allocate an
+     * arbitrarily large raster.
+     */
+    public void validateSize(int size) {
+        if (size < 0 || size > maxSize) {
+            throw new IllegalArgumentException("size must be between 0 and " + maxSize + ", was " + size);
+        }
+    }
+
+    /**
+     * Checks the request parameters without encoding, so that invalid requests are rejected before any conditional
+     * request handling. Text that passes can still be too long for the chosen error correction level; that is only
+     * found by encoding.
+     */
+    public void validate(String text, int size) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Found empty contents");
+        }
+        if (text.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("text is longer than any QR code can hold");
+        }
+        validateSize(size);
+    }
+
+    /**
+     * A strong ETag for the output of the given parameters, computed from the parameters alone: rendering is
+     * deterministic, so equal parameters always produce equal bytes. The value is the same on every instance.
+     */
+    public String getETag(String text, int size, QRCodeFormat format, ErrorCorrectionLevel errorCorrection) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // the text goes last, so the separators cannot be ambiguous
+        digest.update((OUTPUT_VERSION + "|" + format + "|" + size + "|" + errorCorrection + "|")
+                .getBytes(StandardCharsets.US_ASCII));
+        byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        return '"' + HexFormat.of().formatHex(hash, 0, 16) + '"';
+    }
+
+    /**
+     * @return whether the output could be served from cache, i.e. whether generating it now would skip the encode
+     */
+    public boolean isCached(String text, int size, QRCodeFormat format, ErrorCorrectionLevel errorCorrection) {
+        return format == QRCodeFormat.PNG
+                ? renderCache.contains(new RenderKey(text, size, format, errorCorrection))
+                : moduleGridCache.contains(text, errorCorrection);
+    }
+
+    public CachedImage getQRCodeImage(String text, int size, ErrorCorrectionLevel errorCorrection) throws Exception {
+        return renderCache.get(new RenderKey(text, size, QRCodeFormat.PNG, errorCorrection), this::render);
+    }
+
+    /**
+     * Vector and matrix formats are written straight from the cached module grid, so they skip the image cache and the
+     * render scheduler: there is no raster to build.
+     */
+    public ModuleGridImage getModuleGridImage(String text, int size, QRCodeFormat format,
+                                              ErrorCorrectionLevel errorCorrection) throws Exception {
+        if (format == QRCodeFormat.PNG) {
+            throw new IllegalArgumentException("PNG is rendered by getQRCodeImage");
+        }
+        validateSize(size);
+        return new ModuleGridImage(moduleGridCache.get(text, errorCorrection), size, format);
+    }
+
+    /**
+     * Cache misses render on the CPU-sized render pool; hits are served directly on the request thread.
+     */
+    private byte[] render(RenderKey key) throws Exception {
+        return renderScheduler.execute(() -> generateQRCodeImage(key.text(), key.size(), key.size(),
+                key.errorCorrection()));
+    }
+
+    /**
+     * Renders a PNG without touching either cache, on the calling thread. Used for batch items, which are mostly
+     * one-off and would only evict entries that interactive requests reuse.
+     */
+    public byte[] renderUncached(String text, int size, ErrorCorrectionLevel errorCorrection) throws Exception {
+        validateSize(size);
+        ModuleGrid grid = ModuleGrid.encode(text, errorCorrection);
+        return pngWriter.toByteArray(grid.toBitMatrix(size, size));
+    }
+
+    public byte[] generateQRCodeImage(String text, int width, int height, ErrorCorrectionLevel errorCorrection)
+            throws Exception {
+        validateSize(width);
+        validateSize(height);
+        ModuleGrid grid = moduleGridCache.get(text, errorCorrection);
+        return pngWriter.toByteArray(grid.toBitMatrix(width, height));
     }
 }
@@ -0,0 +1,24 @@
+package com.example.qrcodegenerator.startup;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Startup timings, as milliseconds of JVM uptime unless noted.
+ *
+ * @param startedMillis            application started and listening, before warmup
+ * @param readyMillis              warmup finished; readiness switches to accepting traffic right after
+ * @param warmupRequests           requests rendered during warmup
+ * @param firstResponseMillis      latency of the first warmup request
+ * @param timeToFastResponseMillis uptime when a warmup request first completed within
+ *                                 {@code qrcode.warmup.fast-response-ms}; null if none did
+ * @param warmResponseMillis       median latency over the last tenth of the warmup requests
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StartupReport(
+        long startedMillis,
+        long readyMillis,
+        int warmupRequests,
+        Double firstResponseMillis,
+        Long timeToFastResponseMillis,
+        Double warmResponseMillis) {
+}
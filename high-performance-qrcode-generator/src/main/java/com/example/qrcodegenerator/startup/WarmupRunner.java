@@ -0,0 +1,130 @@
+package com.example.qrcodegenerator.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Renders representative QR codes through the local HTTP endpoint before the instance reports ready.
+ * <p>
+ * Spring Boot switches readiness to accepting traffic only after all {@link ApplicationRunner}s have returned, so
+ * while this runs {@code GET /ready} answers 503 and the load balancer keeps traffic away. The requests cover every
+ * output format, sizes up to 2048 and all error correction levels, which loads and JIT-compiles ZXing, the PNG and
+ * SVG writers, the caches and the Spring MVC path that real requests take. Each text is new, so every request is a
+ * cold render like a cache miss.
+ * <p>
+ * With {@code qrcode.warmup.exit-after} the application exits once warmup is done; the {@code cds} build profile uses
+ * this for the training run that records the AppCDS archive.
+ */
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+
+    private static final String[] FORMATS = {"PNG", "SVG", "PNG", "MATRIX", "PNG", "MATRIX_JSON"};
+    private static final int[] SIZES = {128, 256, 512, 1024, 2048};
+    private static final String[] ERROR_CORRECTION = {"L", "M", "Q", "H"};
+
+    private final WebServerApplicationContext context;
+    private final int requests;
+    private final long fastResponseNanos;
+    private final boolean exitAfter;
+    private volatile StartupReport report;
+
+    public WarmupRunner(WebServerApplicationContext context,
+                        @Value("${qrcode.warmup.requests:300}") int requests,
+                        @Value("${qrcode.warmup.fast-response-ms:10}") long fastResponseMillis,
+                        @Value("${qrcode.warmup.exit-after:false}") boolean exitAfter) {
+        this.context = context;
+        this.requests = requests;
+        this.fastResponseNanos = Duration.ofMillis(fastResponseMillis).toNanos();
+        this.exitAfter = exitAfter;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        long startedMillis = uptimeMillis();
+        long[] latencies = new long[requests];
+        Long timeToFastResponse = null;
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String baseUrl = "http://localhost:" + context.getWebServer().getPort() + "/api/qrcode?text=";
+        for (int i = 0; i < requests; i++) {
+            String url = baseUrl + "https%3A%2F%2Fexample.com%2Fwarmup%2F" + "x".repeat(i % 97) + i
+                    + "&format=" + FORMATS[i % FORMATS.length]
+                    + "&size=" + SIZES[i % SIZES.length]
+                    + "&ecc=" + ERROR_CORRECTION[i % ERROR_CORRECTION.length];
+            long start = System.nanoTime();
+            int status = send(client, url);
+            latencies[i] = System.nanoTime() - start;
+            if (status != 200) {
+                log.warn("Warmup request {} answered {}", url, status);
+            }
+            if (timeToFastResponse == null && latencies[i] <= fastResponseNanos) {
+                timeToFastResponse = uptimeMillis();
+            }
+        }
+        report = new StartupReport(startedMillis, uptimeMillis(), requests,
+                requests > 0 ? millis(latencies[0]) : null, timeToFastResponse, warmResponseMillis(latencies));
+        log.info("Started after {} ms, ready after {} ms of JVM uptime; {} warmup requests, first response {} ms, "
+                        + "first response within {} ms after {} ms of uptime, warm response {} ms",
+                report.startedMillis(), report.readyMillis(), report.warmupRequests(), report.firstResponseMillis(),
+                Duration.ofNanos(fastResponseNanos).toMillis(), report.timeToFastResponseMillis(),
+                report.warmResponseMillis());
+        if (exitAfter) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * @return the startup report, empty until warmup has finished
+     */
+    public Optional<StartupReport> getReport() {
+        return Optional.ofNullable(report);
+    }
+
+    private static int send(HttpClient client, String url) throws InterruptedException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            // warmup is best effort: a failed request must not keep the instance from becoming ready
+            return -1;
+        }
+    }
+
+    /**
+     * Median over the last tenth of the requests, by then compiled and with warm caches.
+     */
+    private static Double warmResponseMillis(long[] latencies) {
+        if (latencies.length == 0) {
+            return null;
+        }
+        long[] tail = Arrays.copyOfRange(latencies, latencies.length - Math.max(1, latencies.length / 10),
+                latencies.length);
+        Arrays.sort(tail);
+        return millis(tail[tail.length / 2]);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.qrcodegenerator.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsAccessesPerKey() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("warm");
+
+        assertEquals(5, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("warm"));
+        assertEquals(0, sketch.frequency("unseen"));
+    }
+
+    @Test
+    void saturatesAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+    }
+
+    @Test
+    void halvesCountersAfterSamplePeriod() {
+        // 16 entries -> 16 longs -> a sample period of 160 additions
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(12, sketch.frequency("hot"));
+
+        for (int i = 0; i < 160; i++) {
+            sketch.increment(i);
+        }
+        int aged = sketch.frequency("hot");
+        assertTrue(aged >= 6 && aged < 12, "expected the count to be halved, was " + aged);
+    }
+}
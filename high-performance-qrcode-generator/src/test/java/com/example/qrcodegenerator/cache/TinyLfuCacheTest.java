@@ -0,0 +1,155 @@
+package com.example.qrcodegenerator.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinyLfuCacheTest {
+
+    private static final int ENTRY_BYTES = 100;
+
+    /**
+     * 10,000 bytes of 100-byte entries: a one-entry window and a 99-entry main region.
+     */
+    private static TinyLfuCache<String, String> newCache() {
+        return new TinyLfuCache<>(10_000, (key, value) -> ENTRY_BYTES, value -> value.startsWith("direct"),
+                ENTRY_BYTES);
+    }
+
+    @Test
+    void hitsDoNotReload() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value-a", cache.get("a", key -> {
+                loads.incrementAndGet();
+                return "value-" + key;
+            }));
+        }
+
+        assertEquals(1, loads.get());
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(1, stats.loadCount());
+        assertEquals(ENTRY_BYTES, stats.heapBytes());
+    }
+
+    @Test
+    void scanDoesNotEvictFrequentlyUsedEntries() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot-" + i, key -> "value");
+            }
+        }
+        for (int i = 0; i < 1_000; i++) {
+            cache.get("scan-" + i, key -> "value");
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(cache.containsKey("hot-" + i), "hot-" + i + " was evicted by the scan");
+        }
+        CacheStats stats = cache.stats();
+        assertTrue(stats.rejectedCount() > 0);
+        assertTrue(stats.heapBytes() <= stats.maxBytes());
+        assertEquals(stats.entryCount() * (long) ENTRY_BYTES, stats.heapBytes());
+    }
+
+    @Test
+    void frequentNewcomerReplacesColdEntry() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        for (int i = 0; i < 100; i++) {
+            cache.get("cold-" + i, key -> "value");
+        }
+        assertEquals(0, cache.stats().evictionCount());
+
+        // each rejected miss still counts towards the newcomer's frequency
+        for (int i = 0; i < 5 && !cache.containsKey("newcomer"); i++) {
+            cache.get("newcomer", key -> "value");
+            cache.get("filler-" + i, key -> "value");
+        }
+
+        assertTrue(cache.containsKey("newcomer"));
+        assertTrue(cache.stats().evictionCount() > 0);
+        assertEquals(100, cache.stats().entryCount());
+    }
+
+    @Test
+    void oversizedValuesAreReturnedButNotCached() throws Exception {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10_000, (key, value) -> value.length(),
+                value -> false, ENTRY_BYTES);
+        String large = "x".repeat((int) cache.maxEntryBytes() + 1);
+
+        assertSame(large, cache.get("large", key -> large));
+        assertFalse(cache.containsKey("large"));
+        assertEquals(1, cache.stats().rejectedCount());
+        assertEquals(0, cache.stats().heapBytes());
+    }
+
+    @Test
+    void tracksOffHeapBytesSeparately() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        cache.get("heap", key -> "heap-value");
+        cache.get("direct", key -> "direct-value");
+
+        CacheStats stats = cache.stats();
+        assertEquals(ENTRY_BYTES, stats.heapBytes());
+        assertEquals(ENTRY_BYTES, stats.offHeapBytes());
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        assertThrows(IOException.class, () -> cache.get("a", key -> {
+            throw new IOException("render failed");
+        }));
+        assertFalse(cache.containsKey("a"));
+
+        assertEquals("value", cache.get("a", key -> "value"));
+        assertTrue(cache.containsKey("a"));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        TinyLfuCache<String, String> cache = newCache();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "value";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> cache.get("a", key -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            // give the second caller time to join the in-flight load before it completes
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+
+            assertEquals("value", first.get(5, TimeUnit.SECONDS));
+            assertEquals("value", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.qrcodegenerator.controller;
+
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.example.qrcodegenerator.service.BatchRenderService;
+import com.example.qrcodegenerator.service.QRCodeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@WebMvcTest(QRCodeController.class)
+@Import({QRCodeService.class, RenderCache.class, ModuleGridCache.class, BitMatrixPngWriter.class,
+        RenderScheduler.class, ConditionalRequestMetrics.class})
+class QRCodeControllerTest {
+
+    private static final String URL = "/api/qrcode";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private BatchRenderService batchRenderService;
+
+    @Test
+    void eTagIsStableForEqualParametersAndChangesWithThem() throws Exception {
+        MockHttpServletResponse first = perform(get(URL).param("text", "hello"));
+        MockHttpServletResponse second = perform(get(URL).param("text", "hello"));
+        MockHttpServletResponse larger = perform(get(URL).param("text", "hello").param("size", "512"));
+        MockHttpServletResponse svg = perform(get(URL).param("text", "hello").param("format", "SVG"));
+
+        assertEquals(HttpStatus.OK.value(), first.getStatus());
+        String eTag = first.getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""), eTag);
+        assertEquals(eTag, second.getHeader(HttpHeaders.ETAG));
+        assertNotEquals(eTag, larger.getHeader(HttpHeaders.ETAG));
+        assertNotEquals(eTag, svg.getHeader(HttpHeaders.ETAG));
+        assertTrue(first.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+    }
+
+    @Test
+    void matchingIfNoneMatchGetsNotModifiedWithTheSameHeaders() throws Exception {
+        String eTag = perform(get(URL).param("text", "hello")).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse response = perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(0, response.getContentLength());
+        assertEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+        assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+    }
+
+    @Test
+    void ifNoneMatchUsesWeakComparisonAcrossAList() throws Exception {
+        String eTag = perform(get(URL).param("text", "hello")).getHeader(HttpHeaders.ETAG);
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/" + eTag)).getStatus());
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + eTag)).getStatus());
+        assertEquals(HttpStatus.OK.value(), perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"another\"")).getStatus());
+        // the ETag of other parameters does not match
+        assertEquals(HttpStatus.OK.value(), perform(get(URL).param("text", "hello").param("size", "512")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)).getStatus());
+    }
+
+    @Test
+    void wildcardMatchesAnyValidRequest() throws Exception {
+        MockHttpServletResponse response = perform(get(URL).param("text", "never requested before")
+                .header(HttpHeaders.IF_NONE_MATCH, "*"));
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void invalidRequestGetsBadRequestBeforeConditionalHandling() throws Exception {
+        assertEquals(HttpStatus.BAD_REQUEST.value(), perform(get(URL).param("text", "")
+                .header(HttpHeaders.IF_NONE_MATCH, "*")).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), perform(get(URL).param("text", "hello").param("size", "100000")
+                .header(HttpHeaders.IF_NONE_MATCH, "*")).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), perform(get(URL)
+                .param("text", "x".repeat(QRCodeService.MAX_TEXT_LENGTH + 1))
+                .header(HttpHeaders.IF_NONE_MATCH, "*")).getStatus());
+    }
+
+    @Test
+    void varyAcceptOnlyWhenTheFormatIsNegotiated() throws Exception {
+        MockHttpServletResponse negotiated = perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.ACCEPT, "image/svg+xml"));
+        MockHttpServletResponse explicit = perform(get(URL).param("text", "hello").param("format", "SVG")
+                .header(HttpHeaders.ACCEPT, "image/svg+xml"));
+        MockHttpServletResponse notModified = perform(get(URL).param("text", "hello")
+                .header(HttpHeaders.ACCEPT, "image/svg+xml")
+                .header(HttpHeaders.IF_NONE_MATCH, negotiated.getHeader(HttpHeaders.ETAG)));
+
+        assertEquals("image/svg+xml", negotiated.getContentType());
+        assertTrue(negotiated.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT));
+        assertEquals("image/svg+xml", explicit.getContentType());
+        assertFalse(explicit.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT));
+        // both name the same output, so they share the ETag
+        assertEquals(negotiated.getHeader(HttpHeaders.ETAG), explicit.getHeader(HttpHeaders.ETAG));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), notModified.getStatus());
+        assertTrue(notModified.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT));
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andReturn().getResponse();
+    }
+}
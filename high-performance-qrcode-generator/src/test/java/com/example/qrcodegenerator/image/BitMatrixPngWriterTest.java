@@ -0,0 +1,87 @@
+package com.example.qrcodegenerator.image;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BitMatrixPngWriterTest {
+
+    private final BitMatrixPngWriter writer = new BitMatrixPngWriter(1);
+
+    @Test
+    void qrCodesDecodeToTheSameMatrix() throws Exception {
+        QRCodeWriter qrCodeWriter = new QRCodeWriter();
+        for (int size : new int[]{21, 64, 250, 1024}) {
+            BitMatrix matrix = qrCodeWriter.encode("https://example.com/" + size, BarcodeFormat.QR_CODE, size, size);
+            assertDecodesTo(matrix, writer.toByteArray(matrix));
+        }
+    }
+
+    @Test
+    void widthsThatAreNotWholeWordsDecodeToTheSameMatrix() throws IOException {
+        for (int width : new int[]{1, 7, 8, 9, 31, 33, 63}) {
+            BitMatrix matrix = randomMatrix(width, 5, width);
+            assertDecodesTo(matrix, writer.toByteArray(matrix));
+        }
+    }
+
+    @Test
+    void noisyMatrixSpanningSeveralChunksDecodesToTheSameMatrix() throws IOException {
+        // random pixels barely compress, so the output spans many IDAT chunks and raw buffer flushes
+        BitMatrix matrix = randomMatrix(1500, 1200, 42);
+        assertDecodesTo(matrix, writer.toByteArray(matrix));
+    }
+
+    @Test
+    void streamedOutputMatchesByteArray() throws IOException {
+        BitMatrix matrix = randomMatrix(300, 300, 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(matrix, out);
+        assertArrayEquals(writer.toByteArray(matrix), out.toByteArray());
+    }
+
+    @Test
+    void pooledEncoderIsResetBetweenImages() throws IOException {
+        BitMatrix large = randomMatrix(1500, 1200, 1);
+        BitMatrix small = randomMatrix(40, 3, 2);
+        writer.toByteArray(large);
+        assertDecodesTo(small, writer.toByteArray(small));
+        assertDecodesTo(large, writer.toByteArray(large));
+    }
+
+    private static BitMatrix randomMatrix(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BitMatrix matrix = new BitMatrix(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextBoolean()) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private static void assertDecodesTo(BitMatrix matrix, byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(matrix.getWidth(), image.getWidth());
+        assertEquals(matrix.getHeight(), image.getHeight());
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                boolean black = (image.getRGB(x, y) & 0xFFFFFF) == 0;
+                assertEquals(matrix.get(x, y), black, "pixel " + x + "," + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.qrcodegenerator.image;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModuleGridTest {
+
+    private static final String[] TEXTS = {
+            "1",
+            "https://example.com/p/12345",
+            "HELLO WORLD 0123456789",
+            "Grüße, 你好, こんにちは",
+            "x".repeat(1000),
+    };
+
+    private static final int[][] SIZES = {
+            {0, 0}, {1, 1}, {21, 21}, {64, 64}, {250, 250}, {257, 257}, {1024, 1024},
+            {200, 100}, {100, 200}, {300, 301}, {0, 150},
+    };
+
+    @Test
+    void scaledGridMatchesQrCodeWriter() throws Exception {
+        QRCodeWriter writer = new QRCodeWriter();
+        for (String text : TEXTS) {
+            for (ErrorCorrectionLevel errorCorrection : ErrorCorrectionLevel.values()) {
+                ModuleGrid grid = ModuleGrid.encode(text, errorCorrection);
+                Map<EncodeHintType, ?> hints = Map.of(EncodeHintType.ERROR_CORRECTION, errorCorrection);
+                for (int[] size : SIZES) {
+                    BitMatrix expected = writer.encode(text, BarcodeFormat.QR_CODE, size[0], size[1], hints);
+                    assertEquals(expected, grid.toBitMatrix(size[0], size[1]),
+                            text.length() + " chars, " + errorCorrection + ", " + size[0] + 'x' + size[1]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.qrcodegenerator.job;
+
+import com.example.qrcodegenerator.cache.ModuleGridCache;
+import com.example.qrcodegenerator.cache.RenderCache;
+import com.example.qrcodegenerator.image.BitMatrixPngWriter;
+import com.example.qrcodegenerator.scheduler.RenderScheduler;
+import com.example.qrcodegenerator.service.BatchItem;
+import com.example.qrcodegenerator.service.BatchRenderService;
+import com.example.qrcodegenerator.service.BatchResult;
+import com.example.qrcodegenerator.service.QRCodeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JobServiceTest {
+
+    private static final int ITEMS = 10;
+    private static final int CHECKPOINT_ITEMS = 4;
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final RenderScheduler renderScheduler = new RenderScheduler(2, 0, 500, 0);
+    private final QRCodeService qrCodeService = new QRCodeService(new RenderCache(0, 0), new ModuleGridCache(0),
+            new BitMatrixPngWriter(), renderScheduler, 4096);
+    private final List<JobService> jobServices = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        for (JobService jobService : jobServices) {
+            jobService.shutdown();
+        }
+        renderScheduler.shutdown();
+    }
+
+    @Test
+    void resumesFromLastCheckpointAfterRestart() throws Exception {
+        // item 7 never finishes rendering, so items 5 and 6 are written after the checkpoint at item 4
+        CountDownLatch stalled = new CountDownLatch(1);
+        BatchRenderService stalling = new BatchRenderService(qrCodeService, renderScheduler, objectMapper, 0) {
+            @Override
+            public CompletableFuture<BatchResult> renderAsync(BatchItem item) {
+                if (item.text().equals("item-7")) {
+                    stalled.countDown();
+                    return new CompletableFuture<>();
+                }
+                return super.renderAsync(item);
+            }
+        };
+        JobService first = start(stalling, Duration.ZERO);
+        String id = first.submit(input(), 64, ErrorCorrectionLevel.M).id();
+        assertTrue(stalled.await(10, TimeUnit.SECONDS));
+        assertEquals(6, first.get(id).orElseThrow().processedItems());
+        first.shutdown();
+
+        Path jobDirectory = directory.resolve(id);
+        JobCheckpoint checkpoint = objectMapper.readValue(jobDirectory.resolve("job.json").toFile(),
+                JobCheckpoint.class);
+        assertEquals(JobStatus.RUNNING, checkpoint.status());
+        assertEquals(CHECKPOINT_ITEMS, checkpoint.items());
+        assertTrue(Files.size(jobDirectory.resolve("archive.zip")) > checkpoint.dataLength());
+
+        JobService second = start(batchRenderService(), Duration.ZERO);
+        await(() -> second.get(id).orElseThrow().status() == JobStatus.COMPLETED);
+
+        JobProgress progress = second.get(id).orElseThrow();
+        assertEquals(ITEMS, progress.processedItems());
+        assertEquals(ITEMS, progress.renderedItems());
+        assertEquals(0, progress.failedItems());
+        ArchiveRegion archive = second.archive(id).orElseThrow();
+        assertEquals(Files.size(archive.file()), archive.length());
+        try (ZipFile zip = new ZipFile(archive.file().toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(zip.entries());
+            assertEquals(ITEMS, entries.size());
+            for (int i = 0; i < ITEMS; i++) {
+                assertEquals(String.format("%06d.png", i + 1), entries.get(i).getName());
+                try (InputStream in = zip.getInputStream(entries.get(i))) {
+                    byte[] png = in.readAllBytes();
+                    assertTrue(png.length > 8 && png[1] == 'P' && png[2] == 'N' && png[3] == 'G');
+                }
+            }
+        }
+        assertEquals("000005.png", second.item(id, 4).orElseThrow().fileName());
+    }
+
+    @Test
+    void finishedJobsExpireAfterTtl() throws Exception {
+        JobService first = start(batchRenderService(), Duration.ZERO);
+        String id = first.submit(input(), 64, ErrorCorrectionLevel.M).id();
+        await(() -> first.get(id).orElseThrow().status() == JobStatus.COMPLETED);
+        assertNull(first.get(id).orElseThrow().expiresAt());
+        first.shutdown();
+
+        // the sweeper runs once on startup, by which time the job finished more than a millisecond ago
+        JobService second = start(batchRenderService(), Duration.ofMillis(1));
+        await(() -> second.get(id).isEmpty());
+        await(() -> !Files.exists(directory.resolve(id)));
+        assertFalse(second.archive(id).isPresent());
+    }
+
+    @Test
+    void deletedJobFilesAreRemovedOnlyAfterItsRunnerExits() throws Exception {
+        // the first job holds the only runner until the gate opens, so the second job stays queued
+        CountDownLatch rendering = new CountDownLatch(1);
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        BatchRenderService gated = new BatchRenderService(qrCodeService, renderScheduler, objectMapper, 0) {
+            @Override
+            public CompletableFuture<BatchResult> renderAsync(BatchItem item) {
+                rendering.countDown();
+                return gate.thenCompose(ignored -> super.renderAsync(item));
+            }
+        };
+        JobService jobService = start(gated, Duration.ZERO);
+        String running = jobService.submit(input(), 64, ErrorCorrectionLevel.M).id();
+        String queued = jobService.submit(input(), 64, ErrorCorrectionLevel.M).id();
+        assertTrue(rendering.await(10, TimeUnit.SECONDS));
+
+        assertTrue(jobService.delete(queued));
+        assertFalse(Files.exists(directory.resolve(queued)));
+
+        assertTrue(jobService.delete(running));
+        assertTrue(jobService.get(running).isEmpty());
+        assertTrue(Files.exists(directory.resolve(running)));
+        gate.complete(null);
+        await(() -> !Files.exists(directory.resolve(running)));
+        assertFalse(jobService.delete(running));
+    }
+
+    @Test
+    void oversizedLinesFailWithoutStoppingTheJobAndBlankLinesAreSkipped() throws Exception {
+        String oversized = "\"" + "x".repeat(QRCodeService.MAX_TEXT_LENGTH * 10) + "\"";
+        // a form feed is not JSON whitespace, so that line is an item that fails to parse
+        String ndjson = "\"a\"\n" + oversized + "\n \t\r\n\f\n\n\"b\"";
+        JobService jobService = start(batchRenderService(), Duration.ZERO);
+        JobProgress submitted = jobService.submit(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)),
+                64, ErrorCorrectionLevel.M);
+        assertEquals(4, submitted.totalItems());
+        await(() -> jobService.get(submitted.id()).orElseThrow().status() == JobStatus.COMPLETED);
+
+        JobProgress progress = jobService.get(submitted.id()).orElseThrow();
+        assertEquals(4, progress.processedItems());
+        assertEquals(2, progress.renderedItems());
+        assertEquals(2, progress.failedItems());
+        assertEquals("000001.png", jobService.item(submitted.id(), 0).orElseThrow().fileName());
+        assertEquals("000002.error.txt", jobService.item(submitted.id(), 1).orElseThrow().fileName());
+        assertEquals("000004.error.txt", jobService.item(submitted.id(), 2).orElseThrow().fileName());
+        assertEquals("000006.png", jobService.item(submitted.id(), 3).orElseThrow().fileName());
+    }
+
+    private JobService start(BatchRenderService batchRenderService, Duration ttl) throws IOException {
+        JobService jobService = new JobService(batchRenderService, objectMapper, directory, 1, 1, CHECKPOINT_ITEMS,
+                ttl);
+        jobServices.add(jobService);
+        jobService.resume();
+        return jobService;
+    }
+
+    private BatchRenderService batchRenderService() {
+        return new BatchRenderService(qrCodeService, renderScheduler, objectMapper, 0);
+    }
+
+    private static InputStream input() {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 1; i <= ITEMS; i++) {
+            ndjson.append("\"item-").append(i).append("\"\n");
+        }
+        return new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("condition not met within 10 seconds");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
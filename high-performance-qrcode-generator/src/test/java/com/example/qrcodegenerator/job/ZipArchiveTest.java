@@ -0,0 +1,127 @@
+package com.example.qrcodegenerator.job;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZipArchiveTest {
+
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2024, 5, 17, 13, 45, 30);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesArchiveReadableByZipFile() throws IOException {
+        Path file = directory.resolve("archive.zip");
+        try (FileChannel archive = open(file); FileChannel index = open(directory.resolve("index.bin"))) {
+            append(archive, index, "000001.png", bytes("first"));
+            append(archive, index, "000002-café.png", bytes("second"));
+            append(archive, index, "000003.error.txt", new byte[0]);
+            ZipArchive.finish(archive, index, 3);
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+            List<? extends ZipEntry> entries = Collections.list(zip.entries());
+            assertEquals(3, entries.size());
+            assertEntry(zip, entries.get(0), "000001.png", bytes("first"));
+            assertEntry(zip, entries.get(1), "000002-café.png", bytes("second"));
+            assertEntry(zip, entries.get(2), "000003.error.txt", new byte[0]);
+            assertEquals(MODIFIED, entries.get(0).getTimeLocal());
+        }
+    }
+
+    @Test
+    void readEntryLocatesEntryData() throws IOException {
+        Path file = directory.resolve("archive.zip");
+        try (FileChannel archive = open(file); FileChannel index = open(directory.resolve("index.bin"))) {
+            append(archive, index, "000001.png", bytes("first"));
+            long offset = append(archive, index, "000002.png", bytes("second"));
+
+            ZipArchive.Entry entry = ZipArchive.readEntry(archive, offset);
+            assertEquals("000002.png", entry.name());
+            assertEquals(6, entry.size());
+            ByteBuffer data = ByteBuffer.allocate(entry.size());
+            archive.read(data, entry.dataOffset());
+            assertArrayEquals(bytes("second"), data.array());
+        }
+    }
+
+    @Test
+    void writesZip64RecordsForMoreThan65535Entries() throws IOException {
+        int count = 70_000;
+        Path file = directory.resolve("archive.zip");
+        try (FileChannel archive = open(file); FileChannel index = open(directory.resolve("index.bin"))) {
+            for (int i = 0; i < count; i++) {
+                append(archive, index, String.format("%06d.png", i), new byte[]{(byte) i});
+            }
+            ZipArchive.finish(archive, index, count);
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+            assertEquals(count, zip.size());
+            assertEntry(zip, zip.getEntry("000000.png"), "000000.png", new byte[]{0});
+            assertEntry(zip, zip.getEntry("069999.png"), "069999.png", new byte[]{(byte) 69_999});
+        }
+    }
+
+    @Test
+    void writesZip64OffsetsForEntriesBeyondFourGigabytes() throws IOException {
+        Path file = directory.resolve("archive.zip");
+        try (FileChannel archive = open(file); FileChannel index = open(directory.resolve("index.bin"))) {
+            append(archive, index, "000001.png", bytes("near"));
+            // leave a sparse gap so the next local header starts past the 32-bit offset limit
+            archive.position(0x1_0000_0000L);
+            append(archive, index, "000002.png", bytes("far"));
+            ZipArchive.finish(archive, index, 2);
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+            assertEquals(2, zip.size());
+            assertEntry(zip, zip.getEntry("000001.png"), "000001.png", bytes("near"));
+            assertEntry(zip, zip.getEntry("000002.png"), "000002.png", bytes("far"));
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private static long append(FileChannel archive, FileChannel index, String name, byte[] data) throws IOException {
+        long offset = ZipArchive.writeEntry(archive, name, data, MODIFIED);
+        ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(offset).flip();
+        while (entry.hasRemaining()) {
+            index.write(entry);
+        }
+        return offset;
+    }
+
+    private static void assertEntry(ZipFile zip, ZipEntry entry, String name, byte[] data) throws IOException {
+        assertEquals(name, entry.getName());
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        try (InputStream in = zip.getInputStream(entry)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.qrcodegenerator.scheduler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class RenderSchedulerTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final List<RenderScheduler> schedulers = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        callers.shutdownNow();
+        schedulers.forEach(RenderScheduler::shutdown);
+    }
+
+    @Test
+    void renderThatCannotStartInTimeExpiresAndLeavesTheQueue() throws Exception {
+        RenderScheduler scheduler = scheduler(1, 4, 100, 0);
+        occupy(scheduler);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        RenderRejectedException rejected = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(() -> ran.getAndSet(true)));
+        assertEquals("Render did not start within deadline", rejected.getMessage());
+        RenderSchedulerStats stats = scheduler.stats();
+        assertEquals(1, stats.expiredCount());
+        assertEquals(1, stats.rejectedCount());
+        assertEquals(0, stats.queued());
+
+        release.countDown();
+        // the pool has drained once a later render completes
+        assertEquals("next", scheduler.execute(() -> "next"));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void fullQueueIsRejectedWithoutWaiting() throws Exception {
+        RenderScheduler scheduler = scheduler(1, 1, 5_000, 0);
+        occupy(scheduler);
+        queue(scheduler, 1);
+
+        long start = System.nanoTime();
+        RenderRejectedException rejected = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(() -> "rejected"));
+        assertEquals("Render queue is full", rejected.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(rejected.getRetryAfterSeconds() >= 1);
+    }
+
+    @Test
+    void admissionRejectsWhenRecentRenderTimesPredictAMissedDeadline() throws Exception {
+        RenderScheduler scheduler = scheduler(1, 16, 1_000, 0);
+        // the first render sets the estimate directly; it is updated just after the caller gets the result
+        scheduler.execute(() -> {
+            TimeUnit.MILLISECONDS.sleep(600);
+            return null;
+        });
+        await(() -> scheduler.recentRenderNanos() >= TimeUnit.MILLISECONDS.toNanos(600));
+        occupy(scheduler);
+
+        // one queued render at about 600 ms fits in the 1 s deadline, two do not
+        queue(scheduler, 1);
+        queue(scheduler, 2);
+        long start = System.nanoTime();
+        RenderRejectedException rejected = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(() -> "rejected"));
+        assertEquals("Render queue wait exceeds deadline", rejected.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        // three renders ahead, including this one, at about 600 ms each
+        assertTrue(rejected.getRetryAfterSeconds() >= 2);
+    }
+
+    @Test
+    void recentRenderTimeFollowsFasterRenders() throws Exception {
+        RenderScheduler scheduler = scheduler(1, 16, 1_000, 0);
+        scheduler.execute(() -> {
+            TimeUnit.MILLISECONDS.sleep(50);
+            return null;
+        });
+        await(() -> scheduler.recentRenderNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        double slow = scheduler.recentRenderNanos();
+        for (int i = 0; i < 50; i++) {
+            scheduler.execute(() -> null);
+        }
+
+        await(() -> scheduler.recentRenderNanos() < slow / 10);
+        // the lifetime mean still carries the slow render
+        assertTrue(scheduler.meanRenderNanos() > scheduler.recentRenderNanos());
+    }
+
+    @Test
+    void batchRendersWaitBehindQueuedInteractiveRenders() throws Exception {
+        RenderScheduler scheduler = scheduler(1, 16, 5_000, 1);
+        occupy(scheduler);
+        Queue<String> order = new ConcurrentLinkedQueue<>();
+        Future<Object> interactive = queue(scheduler, 1, () -> order.add("interactive"));
+
+        CompletableFuture<Boolean> first = scheduler.submitBatch(() -> order.add("batch-1"));
+        CompletableFuture<Boolean> second = scheduler.submitBatch(() -> order.add("batch-2"));
+        assertEquals(2, scheduler.stats().batchQueued());
+        assertEquals(0, scheduler.stats().batchRunning());
+
+        release.countDown();
+        interactive.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("interactive", "batch-1", "batch-2"), List.copyOf(order));
+    }
+
+    private RenderScheduler scheduler(int threads, int queueCapacity, long maxQueueTimeMillis, int batchThreads) {
+        RenderScheduler scheduler = new RenderScheduler(threads, queueCapacity, maxQueueTimeMillis, batchThreads);
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    /**
+     * Keeps the only render thread busy until {@link #release} is counted down.
+     */
+    private void occupy(RenderScheduler scheduler) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        callers.submit(() -> scheduler.execute(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private Future<Object> queue(RenderScheduler scheduler, int queued) throws InterruptedException {
+        return queue(scheduler, queued, () -> null);
+    }
+
+    /**
+     * Submits a render from another thread and waits until the pool queue holds {@code queued} renders.
+     */
+    private Future<Object> queue(RenderScheduler scheduler, int queued, Callable<Object> render)
+            throws InterruptedException {
+        Future<Object> result = callers.submit(() -> scheduler.execute(render));
+        await(() -> scheduler.stats().queued() == queued);
+        return result;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("condition not met within 5 seconds");
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+}